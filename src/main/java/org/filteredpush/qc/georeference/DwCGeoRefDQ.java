@@ -4,6 +4,7 @@ package org.filteredpush.qc.georeference;
 
 import java.io.IOException;
 import java.text.NumberFormat;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
@@ -17,6 +18,9 @@ import org.datakurator.ffdq.model.ResultState;
 import org.filteredpush.qc.georeference.util.CountryLookup;
 import org.filteredpush.qc.georeference.util.GEOUtil;
 import org.filteredpush.qc.georeference.util.GISDataLoader;
+import org.filteredpush.qc.georeference.util.GeolocationAlternative;
+import org.filteredpush.qc.georeference.util.SpatialContext;
+import org.filteredpush.qc.georeference.util.SpatialLayerRegistry;
 import org.filteredpush.qc.georeference.util.GeoUtilSingleton;
 import org.filteredpush.qc.georeference.util.GeorefServiceException;
 import org.filteredpush.qc.georeference.util.GettyLookup;
@@ -1013,6 +1017,32 @@ public class DwCGeoRefDQ{
     		@Parameter(name="bdq:spatialBufferInMeters") String spatialBufferInMeters, 
     		@Parameter(name="bdq:sourceAuthority") String sourceAuthority
     		) {
+        return validationCoordinatesCountrycodeConsistent(decimalLatitude, decimalLongitude, countryCode, spatialBufferInMeters, sourceAuthority, null);
+    }
+
+    /**
+     * Do the geographic coordinates fall on or within the boundaries of the territory given in dwc:countryCode or its Exclusive Economic Zone?
+     *
+     * Spatial lookups are made through a SpatialContext, which may be shared with other
+     * tests run on the same record.
+     *
+     * @param decimalLatitude the provided dwc:decimalLatitude to evaluate
+     * @param decimalLongitude the provided dwc:decimalLongitude to evaluate
+     * @param countryCode the provided dwc:countryCode to evaluate
+     * @param spatialBufferInMeters the value of bdq:spatialBufferInMeters to apply.
+     * @param sourceAuthority the spatial source authority to consult.
+     * @param spatialContext the spatial lookups for the coordinate of the record, may be null,
+     *   ignored if it is for a different coordinate.
+     * @return DQResponse the response of type ComplianceValue  to return
+     */
+    public static DQResponse<ComplianceValue> validationCoordinatesCountrycodeConsistent(
+    		String decimalLatitude,
+    		String decimalLongitude,
+    		String countryCode,
+    		String spatialBufferInMeters,
+    		String sourceAuthority,
+    		SpatialContext spatialContext
+    		) {
         DQResponse<ComplianceValue> result = new DQResponse<ComplianceValue>();
 
         // Specification
@@ -1082,7 +1112,7 @@ public class DwCGeoRefDQ{
         					Double lat = Double.parseDouble(decimalLatitude);
         					Double lng = Double.parseDouble(decimalLongitude);
         					result.setResultState(ResultState.RUN_HAS_RESULT);
-        					if (GEOUtil.isPointNearCountryPlusEEZ(countryCode3, lat, lng, buffer_km)) { 
+        					if (GEOUtil.isPointNearCountryPlusEEZ(countryCode3, SpatialContext.forCoordinate(spatialContext, lat, lng), buffer_km)) { 
         						result.setValue(ComplianceValue.COMPLIANT);
         						result.addComment("Provided coordinate lies within the bounds of the country specified by the country code.");
         					} else { 
@@ -1387,6 +1417,36 @@ public class DwCGeoRefDQ{
     		@Parameter(name="bdq:spatialBufferInMeters") String spatialBufferInMeters
     		) 
     {
+        return validationCoordinatesStateprovinceConsistent(decimalLatitude, decimalLongitude, stateProvince, sourceAuthority, spatialBufferInMeters, null);
+    }
+
+    /**
+     * Do the geographic coordinates fall on or within the boundary from the
+     * bdq:sourceAuthority for the given dwc:stateProvince or within the distance
+     * given by bdq:spatialBufferInMeters outside that boundary?
+     *
+     * Spatial lookups are made through a SpatialContext, which may be shared with other
+     * tests run on the same record.
+     *
+     * @param decimalLatitude the provided dwc:decimalLatitude to evaluate
+     * @param decimalLongitude the provided dwc:decimalLongitude to evaluate
+     * @param stateProvince the provided dwc:stateProvince to evaluate
+     * @param sourceAuthority the provided parameter bdq:sourceAuthority use null for default value,
+     *   "ADM1 boundaries" uses the GADM boundaries if a GeoPackage of them has been registered
+     *   for GADM_ADM1 with the SpatialLayerRegistry, otherwise the source authority is not available.
+     * @param spatialBufferInMeters the provided parameter bdq:spatialBufferInMeters use null for default value.
+     * @param spatialContext the spatial lookups for the coordinate of the record, may be null,
+     *   ignored if it is for a different coordinate.
+     * @return DQResponse the response of type ComplianceValue  to return
+     */
+    public static DQResponse<ComplianceValue> validationCoordinatesStateprovinceConsistent(
+    		String decimalLatitude,
+    		String decimalLongitude,
+    		String stateProvince,
+    		String sourceAuthority,
+    		String spatialBufferInMeters,
+    		SpatialContext spatialContext
+    		) {
         DQResponse<ComplianceValue> result = new DQResponse<ComplianceValue>();
 
         // Specification
@@ -1430,6 +1490,15 @@ public class DwCGeoRefDQ{
         	if (sourceAuthorityObject.getAuthority().equals(EnumGeoRefSourceAuthority.INVALID)) { 
         		throw new SourceAuthorityException("Invalid Source Authority");
         	}
+        	// GADM boundaries can not be distributed, they are used when a GeoPackage 
+        	// of them has been registered for the source authority.
+        	EnumGeoRefSourceAuthority primaryLayer = EnumGeoRefSourceAuthority.NE_ADMIN_1;
+        	if (sourceAuthorityObject.getAuthority().equals(EnumGeoRefSourceAuthority.GADM_ADM1)) { 
+        		if (!SpatialLayerRegistry.getInstance().isAvailable(EnumGeoRefSourceAuthority.GADM_ADM1)) { 
+        			throw new SourceAuthorityException("No boundaries are available for " + EnumGeoRefSourceAuthority.GADM_ADM1.getName());
+        		}
+        		primaryLayer = EnumGeoRefSourceAuthority.GADM_ADM1;
+        	}
         	
         	if (GEOUtil.isEmpty(spatialBufferInMeters)) { 
         		spatialBufferInMeters = "3000";
@@ -1455,12 +1524,12 @@ public class DwCGeoRefDQ{
         	} else { 
         		try { 
         			logger.debug(stateProvince);
-        			if (GEOUtil.isPrimaryAloneKnown(stateProvince)) { 
+        			if (GEOUtil.isPrimaryAloneKnown(primaryLayer, stateProvince)) { 
         				Double lat = Double.parseDouble(decimalLatitude);
         				Double lng = Double.parseDouble(decimalLongitude);
         				result.setResultState(ResultState.RUN_HAS_RESULT);
-        				logger.debug(GEOUtil.isPointNearPrimaryAllowDuplicates(stateProvince, lat, lng, buffer_km)); 
-        				if (GEOUtil.isPointNearPrimaryAllowDuplicates(stateProvince, lat, lng, buffer_km)) { 
+        				SpatialContext context = SpatialContext.forCoordinate(spatialContext, lat, lng);
+        				if (GEOUtil.isPointNearPrimaryAllowDuplicates(primaryLayer, stateProvince, context, buffer_km)) { 
         					result.setValue(ComplianceValue.COMPLIANT);
         					result.addComment("Provided coordinate decimalLatitude=["+decimalLatitude+"], decimalLongitude=["+decimalLongitude+"] lies within the bounds of the provided stateProvince ["+stateProvince+"] (plus a spatial buffer of ["+spatialBufferInMeters+"]m).");
         				} else { 
@@ -2003,6 +2072,30 @@ public class DwCGeoRefDQ{
     		@ActedUpon("dwc:countryCode") String countryCode, 
     		@Parameter(name="bdq:sourceAuthority") String sourceAuthority
     	) {
+        return amendmentCountrycodeFromCoordinates(decimalLatitude, decimalLongitude, countryCode, sourceAuthority, null);
+    }
+
+    /**
+     * Proposes an amendment to the value of dwc:countryCode if dwc:decimalLatitude and dwc:decimalLongitude fall within a boundary from the bdq:countryShapes that is attributable to a single valid country code.
+     *
+     * Spatial lookups are made through a SpatialContext, which may be shared with other
+     * tests run on the same record.
+     *
+     * @param decimalLatitude the provided dwc:decimalLatitude to evaluate
+     * @param decimalLongitude the provided dwc:decimalLongitude to evaluate
+     * @param countryCode the provided dwc:countryCode to evaluate
+     * @param sourceAuthority the spatial source authority to consult.
+     * @param spatialContext the spatial lookups for the coordinate of the record, may be null,
+     *   ignored if it is for a different coordinate.
+     * @return DQResponse the response of type AmendmentValue to return
+     */
+    public static DQResponse<AmendmentValue> amendmentCountrycodeFromCoordinates(
+    		String decimalLatitude,
+    		String decimalLongitude,
+    		String countryCode,
+    		String sourceAuthority,
+    		SpatialContext spatialContext
+    		) {
         DQResponse<AmendmentValue> result = new DQResponse<AmendmentValue>();
 
         // Specification
@@ -2041,7 +2134,11 @@ public class DwCGeoRefDQ{
         		result.setResultState(ResultState.INTERNAL_PREREQUISITES_NOT_MET);
         	} else { 
 
-        		String countryCode3 = GEOUtil.getCountryForPoint(decimalLatitude, decimalLongitude);
+        		String countryCode3 = null;
+        		SpatialContext context = SpatialContext.forCoordinate(spatialContext, decimalLatitude, decimalLongitude);
+        		if (context!=null) { 
+        			countryCode3 = GEOUtil.getCountryForPoint(context);
+        		}
         		if (countryCode3== null) { 
         			result.addComment("No unique dwc:contryCode found containing the coordinate specified by dwc:decimalLatitude ["+decimalLatitude+"], dwc:decimalLongitude ["+decimalLongitude+"].");
         			result.setResultState(ResultState.NOT_AMENDED);
@@ -3186,6 +3283,37 @@ public class DwCGeoRefDQ{
         @Parameter(name="bdq:assumptionOnUnknownBiome") String assumptionOnUnknownBiome,
         @Parameter(name="bdq:spatialBufferInMeters") String spatialBufferInMeters
     ) {
+        return validationCoordinatesTerrestrialmarine(decimalLatitude, decimalLongitude, scientificName, taxonIsMarine, geospatialLand, assumptionOnUnknownBiome, spatialBufferInMeters, null);
+    }
+
+    /**
+     * Does the marine/non-marine biome of a taxon from the bdq:sourceAuthority
+     * match the biome at the location given by the coordinates?
+     *
+     * Spatial lookups are made through a SpatialContext, which may be shared with other
+     * tests run on the same record.
+     *
+     * @param decimalLatitude  the provided dwc:decimalLatitude to evaluate as ActedUpon.
+     * @param decimalLongitude the provided dwc:decimalLongitude to evaluate as ActedUpon.
+     * @param scientificName   the provided dwc:scientificName to evaluate as Consulted.
+     * @param taxonIsMarine the provided parameter bdq:taxonIsMarine use null for default value.
+     * @param geospatialLand the provided parameter bdq:geospatialLand use null for default value.
+     * @param assumptionOnUnknownBiome the provided parameter bdq:assumptionOnUnknownBiome use null for default value.
+     * @param spatialBufferInMeters the provided parameter bdq:spatialBufferInMeters use null for default value.
+     * @param spatialContext the spatial lookups for the coordinate of the record, may be null,
+     *   ignored if it is for a different coordinate.
+     * @return DQResponse the response of type ComplianceValue to return
+     */
+    public static DQResponse<ComplianceValue> validationCoordinatesTerrestrialmarine(
+    		String decimalLatitude,
+    		String decimalLongitude,
+    		String scientificName,
+    		String taxonIsMarine,
+    		String geospatialLand,
+    		String assumptionOnUnknownBiome,
+    		String spatialBufferInMeters,
+    		SpatialContext spatialContext
+    		) {
         DQResponse<ComplianceValue> result = new DQResponse<ComplianceValue>();
 
         // Specification
@@ -3398,9 +3526,10 @@ public class DwCGeoRefDQ{
        					Double lat = Double.parseDouble(decimalLatitude);
        					Double lon = Double.parseDouble(decimalLongitude);
        					Double buffer_meters = Double.parseDouble(spatialBufferInMeters);
+       					SpatialContext context = SpatialContext.forCoordinate(spatialContext, lat, lon);
         				if (marine) { 
         					
-        					if (GEOUtil.isOnOrNearLand(lon, lat, false, buffer_meters)) { 
+        					if (GEOUtil.isOnOrNearLand(context, false, buffer_meters)) { 
         						result.setResultState(ResultState.RUN_HAS_RESULT);
         						result.setValue(ComplianceValue.NOT_COMPLIANT);
         						result.addComment("Provided scientificName ["+scientificName+"] is known from marine habitats, but the provided coordinate is non-marine.");
@@ -3410,7 +3539,7 @@ public class DwCGeoRefDQ{
         						result.addComment("Provided scientificName ["+scientificName+"] is known from marine habitats and the provided coordinate is marine.");
         					}
         				} else { 
-        					if (GEOUtil.isOnOrNearLand(lon, lat, true, buffer_meters)) { 
+        					if (GEOUtil.isOnOrNearLand(context, true, buffer_meters)) { 
         						// test with invert sense is:  isMarine, thus non-marine habitat and marine location
         						result.setResultState(ResultState.RUN_HAS_RESULT);
         						result.setValue(ComplianceValue.NOT_COMPLIANT);
@@ -3458,6 +3587,30 @@ public class DwCGeoRefDQ{
         @Consulted("dwc:countryCode") String countryCode,
     	@Parameter(name="bdq:sourceAuthority") String sourceAuthority
     ) {
+        return amendmentCoordinatesTransposed(decimalLatitude, decimalLongitude, countryCode, sourceAuthority, null);
+    }
+
+    /**
+     * Propose amendment of the signs of dwc:decimalLatitude and/or dwc:decimalLongitude to align the location with the dwc:countryCode.
+     *
+     * Spatial lookups are made through a SpatialContext, which may be shared with other
+     * tests run on the same record.
+     *
+     * @param decimalLatitude the provided dwc:decimalLatitude to evaluate as ActedUpon.
+     * @param decimalLongitude the provided dwc:decimalLongitude to evaluate as ActedUpon.
+     * @param countryCode the provided dwc:countryCode to evaluate as Consulted.
+     * @param sourceAuthority the spatial source authority for countries.
+     * @param spatialContext the spatial lookups for the coordinate of the record, may be null,
+     *   ignored if it is for a different coordinate.
+     * @return DQResponse the response of type AmendmentValue to return
+     */
+    public static DQResponse<AmendmentValue> amendmentCoordinatesTransposed(
+    		String decimalLatitude,
+    		String decimalLongitude,
+    		String countryCode,
+    		String sourceAuthority,
+    		SpatialContext spatialContext
+    		) {
         DQResponse<AmendmentValue> result = new DQResponse<AmendmentValue>();
 
         // Specification
@@ -3510,13 +3663,25 @@ public class DwCGeoRefDQ{
         				try { 
         					Double lat = Double.parseDouble(decimalLatitude);
         					Double lng = Double.parseDouble(decimalLongitude);
-        					if (GEOUtil.isPointNearCountryPlusEEZ(countryCode3, lat, lng, buffer_km)) { 
+        					if (GEOUtil.isPointNearCountryPlusEEZ(countryCode3, SpatialContext.forCoordinate(spatialContext, lat, lng), buffer_km)) { 
         						result.setResultState(ResultState.NOT_AMENDED);
         						result.addComment("Provided coordinate lies within the bounds of the country specified by the country code.");
         					} else {
         						result.addComment("Provided decimalLatitude and decimalLongitude fall outside the bounds of the country specified by the countryCode");
-        						// Point is outside country, try transpositions: 
-        						if (lng <= 90 && GEOUtil.isPointNearCountryPlusEEZ(countryCode3, lng, lat, buffer_km)) { 
+        						// Point is outside country, try transpositions, all evaluated against the country in one call: 
+        						List<GeolocationAlternative> candidates = new ArrayList<GeolocationAlternative>();
+        						GeolocationAlternative transposed = new GeolocationAlternative(lng, lat, "Transposed");
+        						if (lng <= 90) { 
+        							candidates.add(transposed);
+        						}
+        						GeolocationAlternative latitudeSignChanged = new GeolocationAlternative(-lat, lng, "Latitude sign changed");
+        						GeolocationAlternative longitudeSignChanged = new GeolocationAlternative(lat, -lng, "Longitude sign changed");
+        						GeolocationAlternative signsChanged = new GeolocationAlternative(-lat, -lng, "Signs changed");
+        						candidates.add(latitudeSignChanged);
+        						candidates.add(longitudeSignChanged);
+        						candidates.add(signsChanged);
+        						GEOUtil.findAlternativesNearCountryPlusEEZ(countryCode3, candidates, buffer_km);
+        						if (lng <= 90 && transposed.isMatched()) { 
         							// lat/long switched
         							result.setResultState(ResultState.AMENDED);
         							result.addComment("Coordinate with dwc:decimalLatitude and dwc:decimalLongitude transposed lies within the bounds of the country specified by the country code.");
@@ -3524,7 +3689,7 @@ public class DwCGeoRefDQ{
         	        				values.put("dwc:decimalLatitude", decimalLongitude);
         	        				values.put("dwc:decimalLongitude", decimalLatitude);
         	        				result.setValue(new AmendmentValue(values));
-        						} else if (GEOUtil.isPointNearCountryPlusEEZ(countryCode3, -lat, lng, buffer_km)) {
+        						} else if (latitudeSignChanged.isMatched()) {
         							// lat sign switched
         							result.setResultState(ResultState.AMENDED);
         							result.addComment("Coordinate with dwc:decimalLatitude and dwc:decimalLongitude transposed lies within the bounds of the country specified by the country code.");
@@ -3538,7 +3703,7 @@ public class DwCGeoRefDQ{
         	        				values.put("dwc:decimalLatitude", switchedLat);
         	        				values.put("dwc:decimalLongitude", decimalLongitude);
         	        				result.setValue(new AmendmentValue(values));
-        						} else if (GEOUtil.isPointNearCountryPlusEEZ(countryCode3, lat, -lng, buffer_km)) {
+        						} else if (longitudeSignChanged.isMatched()) {
         							// long sign switched
         							result.setResultState(ResultState.AMENDED);
         							result.addComment("Coordinate with dwc:decimalLatitude and dwc:decimalLongitude transposed lies within the bounds of the country specified by the country code.");
@@ -3552,7 +3717,7 @@ public class DwCGeoRefDQ{
         	        				values.put("dwc:decimalLatitude", decimalLatitude);
         	        				values.put("dwc:decimalLongitude", switchedLong);
         	        				result.setValue(new AmendmentValue(values));      
-        						} else if (GEOUtil.isPointNearCountryPlusEEZ(countryCode3, -lat, -lng, buffer_km)) {
+        						} else if (signsChanged.isMatched()) {
         							// lat and long sign switched
         							result.setResultState(ResultState.AMENDED);
         							result.addComment("Coordinate with dwc:decimalLatitude and dwc:decimalLongitude transposed lies within the bounds of the country specified by the country code.");
@@ -3619,6 +3784,35 @@ public class DwCGeoRefDQ{
     	@Parameter(name="bdq:spatialBufferInMeters") String spatialBufferInMeters,
     	@Parameter(name="bdq:sourceAuthority") String sourceAuthority
     ) {
+        return issueCoordinatesCenterofcountry(decimalLatitude, decimalLongitude, countryCode, coordinateUncertaintyInMeters, spatialBufferInMeters, sourceAuthority, null);
+    }
+
+    /**
+     * Are the supplied geographic coordinates within a defined buffer of the center of the country?
+     *
+     * Spatial lookups are made through a SpatialContext, which may be shared with other
+     * tests run on the same record.
+     *
+     * @param decimalLatitude the provided dwc:decimalLatitude to evaluate as ActedUpon.
+     * @param decimalLongitude the provided dwc:decimalLongitude to evaluate as ActedUpon.
+     * @param countryCode the provided dwc:countryCode to evaluate as Consulted.
+     * @param coordinateUncertaintyInMeters the provided dwc:coordinateUncertaintyInMeters to evaluate as Consulted.
+     * @param spatialBufferInMeters the distance in meters within which a point must fall from 
+     *   a centroid to be considered an issue.
+     * @param sourceAuthority the spatial source authority to consult for country centroids
+     * @param spatialContext the spatial lookups for the coordinate of the record, may be null,
+     *   ignored if it is for a different coordinate.
+     * @return DQResponse the response of type AmendmentValue to return
+     */
+    public static DQResponse<IssueValue> issueCoordinatesCenterofcountry(
+    		String decimalLatitude,
+    		String decimalLongitude,
+    		String countryCode,
+    		String coordinateUncertaintyInMeters,
+    		String spatialBufferInMeters,
+    		String sourceAuthority,
+    		SpatialContext spatialContext
+    		) {
 		DQResponse<IssueValue> result = new DQResponse<IssueValue>();
 
         // EXTERNAL_PREREQUISITES_NOT_MET if the bdq:sourceAuthority 
@@ -3697,7 +3891,7 @@ public class DwCGeoRefDQ{
         				Double dLongitude = Double.parseDouble(decimalLongitude);
         				Double dLatitude = Double.parseDouble(decimalLatitude);
 
-        				if (GISDataLoader.isPointNearCentroid(dLongitude, dLatitude, countryCode, buffer_km)) { 
+        				if (GISDataLoader.isPointNearCentroid(SpatialContext.forCoordinate(spatialContext, dLatitude, dLongitude), countryCode, buffer_km)) { 
         					result.setResultState(ResultState.RUN_HAS_RESULT);
         					result.setValue(IssueValue.POTENTIAL_ISSUE);
         					result.addComment("Provided dwc:decimalLatitude ["+decimalLatitude+"] and dwc:decimalLongitude ["+decimalLongitude+"] are within ["+spatialBufferInMeters+"]m of the centroid of the dwc:countryCode ["+countryCode+"], and may reflect a georeference for the entire country.");
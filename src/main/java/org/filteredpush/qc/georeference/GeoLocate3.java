@@ -280,6 +280,10 @@ public class GeoLocate3 {
             // Some error condition was found, see if any transposition returns a plausible locality
             boolean matchFound = false;
             if (flagError) {
+            	if ((potentialMatches==null || potentialMatches.size()==0) && !isMarine && GEOUtil.isCountryKnown(country)) { 
+            		// test all of the alternatives against the country in one call
+            		GEOUtil.findAlternativesInCountry(country, alternatives);
+            	}
             	Iterator<GeolocationAlternative> i = alternatives.iterator();
             	while (i.hasNext() && !matchFound) { 
             		GeolocationAlternative alt = i.next();
@@ -303,8 +307,7 @@ public class GeoLocate3 {
             					}
             				}
             			} else { 
-            				if (GEOUtil.isCountryKnown(country) && 
-            						GEOUtil.isPointInCountry(country, alt.getLatitude(), alt.getLongitude())) { 
+            				if (GEOUtil.isCountryKnown(country) && alt.isMatched()) { 
             					//addToComment("Modified coordinate ("+alt.getAlternative()+") is inside country ("+country+").");
             					if (GEOUtil.isPrimaryKnown(country, stateProvince) && 
             							GEOUtil.isPointInPrimary(country, stateProvince, originalLat, originalLong)) { 
@@ -0,0 +1,185 @@
+/**
+ * GeoRefQC.java
+ *
+ * Copyright 2026 President and Fellows of Harvard College
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.filteredpush.qc.georeference;
+
+import java.io.IOException;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.filteredpush.qc.georeference.util.SpatialLayerRegistry;
+import org.geotools.api.referencing.FactoryException;
+import org.geotools.api.referencing.crs.CoordinateReferenceSystem;
+import org.geotools.referencing.CRS;
+
+/**
+ * Readiness of the spatial data and coordinate reference system support used by the
+ * georeference tests.  Without a warm up, the first call to a spatial test loads and indexes
+ * its layer, and the first call to a test which decodes a coordinate reference system
+ * (such as GEOUtil.isDatumKnown or GEOUtil.datumTransform) starts the GeoTools EPSG
+ * database, each taking seconds inside the call.  A service can instead call
+ * {@link #warmUp(Set)} at startup, which does this work on background threads, and wait
+ * on the returned future or poll {@link #isReady()} before accepting requests.
+ *
+ * Warm up only front loads work which would otherwise be done on first use, the tests give
+ * the same results whether or not it has been done.  Releasing the spatial data with
+ * {@link SpatialLayerRegistry#release()} discards the warmed layers, and a new warm up
+ * is needed to load them again in advance.
+ *
+ * @author mole
+ * @version $Id: $Id
+ */
+public class GeoRefQC {
+
+	private static final Log logger = LogFactory.getLog(GeoRefQC.class);
+
+	private static final ExecutorService executor = Executors.newFixedThreadPool(2, new ThreadFactory() {
+		private final AtomicInteger count = new AtomicInteger();
+
+		@Override
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "georef-warmup-" + count.incrementAndGet());
+			// warm up must not keep a finished batch run from exiting
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+
+	/** Completes when all warm ups requested so far have completed, null before the first. */
+	private static CompletableFuture<Void> readiness = null;
+
+	private GeoRefQC() {
+	}
+
+	/**
+	 * Warm up all of the spatial layers shipped with this library and the EPSG database,
+	 * in the background.
+	 *
+	 * @return a future which completes when the warm up is done, or completes exceptionally
+	 *   if any of the data cannot be loaded.
+	 */
+	public static CompletableFuture<Void> warmUp() {
+		return warmUp(SpatialLayerRegistry.getInstance().getAuthorities());
+	}
+
+	/**
+	 * Warm up a set of spatial layers and the EPSG database, in the background.  Each layer
+	 * is opened and indexed by the spatial backend which answers its queries, see
+	 * {@link SpatialLayerRegistry#warmUp(EnumGeoRefSourceAuthority)}, and the EPSG
+	 * database is started by decoding the geographic coordinate reference systems and finding
+	 * a transformation between datums.
+	 *
+	 * @param layers the source authorities of the spatial layers to load, may be empty to
+	 *   warm up only the EPSG database.
+	 * @return a future which completes when the warm up is done, or completes exceptionally
+	 *   if any of the data cannot be loaded.
+	 * @throws IllegalArgumentException if any of the source authorities has neither a spatial
+	 *   layer nor a registered backend.
+	 */
+	public static CompletableFuture<Void> warmUp(Set<EnumGeoRefSourceAuthority> layers) {
+		final SpatialLayerRegistry registry = SpatialLayerRegistry.getInstance();
+		final Set<EnumGeoRefSourceAuthority> toLoad = layers.isEmpty()
+				? EnumSet.noneOf(EnumGeoRefSourceAuthority.class) : EnumSet.copyOf(layers);
+		for (EnumGeoRefSourceAuthority authority : toLoad) {
+			if (!registry.isAvailable(authority)) {
+				throw new IllegalArgumentException("No spatial layer for source authority " + authority);
+			}
+		}
+		final long startTime = System.currentTimeMillis();
+		CompletableFuture<Void> referencing = CompletableFuture.runAsync(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					warmUpReferencing();
+				} catch (FactoryException e) {
+					throw new CompletionException(e);
+				}
+			}
+		}, executor);
+		CompletableFuture<Void> spatial = CompletableFuture.runAsync(new Runnable() {
+			@Override
+			public void run() {
+				for (EnumGeoRefSourceAuthority authority : toLoad) {
+					try {
+						registry.warmUp(authority);
+					} catch (IOException e) {
+						throw new CompletionException(e);
+					}
+				}
+			}
+		}, executor);
+		CompletableFuture<Void> result = CompletableFuture.allOf(referencing, spatial);
+		result.whenComplete(new BiConsumer<Void,Throwable>() {
+			@Override
+			public void accept(Void ignored, Throwable failure) {
+				if (failure==null) {
+					logger.debug("Warm up of " + toLoad + " done in " + (System.currentTimeMillis() - startTime) + " ms");
+				} else {
+					logger.error("Warm up of " + toLoad + " failed: " + failure.getMessage(), failure);
+				}
+			}
+		});
+		synchronized (GeoRefQC.class) {
+			readiness = readiness==null ? result : CompletableFuture.allOf(readiness, result);
+		}
+		return result;
+	}
+
+	/**
+	 * Obtain a future which completes when every warm up requested so far has completed.
+	 *
+	 * @return the future, or null if no warm up has been requested.
+	 */
+	public static synchronized CompletableFuture<Void> getReadiness() {
+		return readiness;
+	}
+
+	/**
+	 * Test whether every warm up requested so far has completed successfully.
+	 *
+	 * @return true if a warm up has been requested and all requested warm ups have
+	 *   completed without error, false otherwise.
+	 */
+	public static boolean isReady() {
+		CompletableFuture<Void> current = getReadiness();
+		return current!=null && current.isDone() && !current.isCompletedExceptionally();
+	}
+
+	/**
+	 * Start the EPSG database and the coordinate operation factory, which are otherwise
+	 * started by the first call which decodes a coordinate reference system.
+	 *
+	 * @throws FactoryException if the EPSG database cannot be started.
+	 */
+	private static void warmUpReferencing() throws FactoryException {
+		long startTime = System.currentTimeMillis();
+		CoordinateReferenceSystem wgs84 = CRS.decode("EPSG:4326");
+		CoordinateReferenceSystem nad83 = CRS.decode("EPSG:4269");
+		CRS.getCoordinateOperationFactory(true).findOperations(nad83, wgs84);
+		logger.debug("Started EPSG database in " + (System.currentTimeMillis() - startTime) + " ms");
+	}
+
+}
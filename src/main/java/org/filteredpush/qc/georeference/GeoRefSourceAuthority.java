@@ -73,7 +73,9 @@ public class GeoRefSourceAuthority {
 	    } else if (authorityString.toUpperCase().equals("10M-ADMIN-1 BOUNDARIES UNION WITH EXCLUSIVE ECONOMIC ZONES")) {
 	    	this.authority = EnumGeoRefSourceAuthority.ADM1_UNION_EEZ;	
 	    } else if (authorityString.toUpperCase().equals("ADM1 BOUNDARIES")) {
-	    	// TODO: Add support, unable to distribute.
+	    	// Unable to distribute, available when a GeoPackage is registered for GADM_ADM1.
+	    	this.authority = EnumGeoRefSourceAuthority.GADM_ADM1;	
+	    } else if (authorityString.toUpperCase().equals("GADM_ADM1")) {
 	    	this.authority = EnumGeoRefSourceAuthority.GADM_ADM1;	
 	    } else if (authorityString.toUpperCase().equals("DATAHUB.IO")) {
 	    	this.authority = EnumGeoRefSourceAuthority.DATAHUB;	
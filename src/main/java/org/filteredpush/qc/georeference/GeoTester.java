@@ -16,18 +16,15 @@
  */
 package org.filteredpush.qc.georeference;
 
-import org.filteredpush.qc.georeference.util.GEOUtil;
-import org.geotools.api.data.FileDataStore;
-import org.geotools.api.data.FileDataStoreFinder;
-import org.geotools.api.data.SimpleFeatureSource;
-import org.geotools.api.feature.simple.SimpleFeature;
-import org.geotools.data.simple.SimpleFeatureIterator;
+import org.filteredpush.qc.georeference.util.BoundaryFile;
+import org.filteredpush.qc.georeference.util.OffHeapPolygonStore;
+import org.filteredpush.qc.georeference.util.SpatialFeature;
+import org.filteredpush.qc.georeference.util.SpatialLayer;
+import org.filteredpush.qc.georeference.util.SpatialLayerRegistry;
 import org.geotools.geometry.jts.JTSFactoryFinder;
 import org.locationtech.jts.geom.Coordinate;
-import org.locationtech.jts.geom.MultiPolygon;
 
 import java.io.IOException;
-import java.net.URL;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.TreeMap;
@@ -45,8 +42,11 @@ public class GeoTester {
     private final ExecutorService executor = Executors.newFixedThreadPool(8);
     private final org.locationtech.jts.geom.GeometryFactory geometryFactory = JTSFactoryFinder.getGeometryFactory(null);
 
-    private Map<String, MultiPolygon> countryPolys = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
-    private Map<String, Map<String, MultiPolygon>> countryPrimaryDivisions = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+    // features rather than bare polygons, so that point tests use the prepared and generalized forms of each polygon
+    private Map<String, SpatialFeature> countryPolys = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+    // the many primary divisions are held off heap, by feature id in the polygon store
+    private OffHeapPolygonStore primaryDivisionPolys;
+    private Map<String, Map<String, Integer>> countryPrimaryDivisions = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
 
     /**
      * <p>Constructor for GeoTester.</p>
@@ -60,66 +60,44 @@ public class GeoTester {
     }
 
     private void loadCountryPolys() {
-        URL shapeFile = GEOUtil.class.getResource("/org.filteredpush.kuration.services/ne_10m_admin_0_countries.shp");
-        FileDataStore store = null;
-        SimpleFeatureIterator iter = null;
-
+        SpatialLayer layer = SpatialLayerRegistry.getInstance().getLayer(EnumGeoRefSourceAuthority.NE_ADMIN_0);
         try {
-            store = FileDataStoreFinder.getDataStore(shapeFile);
-            SimpleFeatureSource featureSource = store.getFeatureSource();
-
-            iter = featureSource.getFeatures().features();
-
             // Store the polygon objects in a map referenced by key country name
-            while (iter.hasNext()) {
-                SimpleFeature feature = iter.next();
-                String name = (String) feature.getAttribute("NAME");
-                MultiPolygon poly = (MultiPolygon) feature.getAttribute("the_geom");
-
-                countryPolys.put(name, poly);
+            for (SpatialFeature feature : layer.getFeatureLayer().getFeatures()) {
+                String name = feature.getAttributeAsString("NAME");
+                countryPolys.put(name, feature);
             }
         } catch (IOException e) {
-            throw new RuntimeException("Error loading shapefile: " + shapeFile.getPath(), e);
-        } finally {
-            if (iter!=null) { iter.close(); }
-            if (store!=null) { store.dispose(); }
+            throw new RuntimeException("Error loading shapefile: " + layer.getResource(), e);
         }
     }
 
     private void loadStateProvincePolys() {
-        URL shapeFile = GEOUtil.class.getResource("/org.filteredpush.kuration.services/ne_10m_admin_1_states_provinces.shp");
-        FileDataStore store = null;
-        SimpleFeatureIterator iter = null;
-
+        SpatialLayer layer = SpatialLayerRegistry.getInstance().getLayer(EnumGeoRefSourceAuthority.NE_ADMIN_1);
         try {
-            store = FileDataStoreFinder.getDataStore(shapeFile);
-            SimpleFeatureSource featureSource = store.getFeatureSource();
-
-            iter = featureSource.getFeatures().features();
-
-            while (iter.hasNext()) {
-                SimpleFeature feature = iter.next();
-                String name = (String) feature.getAttribute("name");
-                String admin = (String) feature.getAttribute("admin");
-                MultiPolygon poly = (MultiPolygon) feature.getAttribute("the_geom");
+            primaryDivisionPolys = SpatialLayerRegistry.getInstance().getPolygonStore(EnumGeoRefSourceAuthority.NE_ADMIN_1);
+            BoundaryFile boundaries = primaryDivisionPolys.getBoundaryFile();
+            for (int id = 0; id < boundaries.getFeatureCount(); id++) {
+                Object name = boundaries.getAttribute(id, "name");
+                Object admin = boundaries.getAttribute(id, "admin");
+                if (name == null || admin == null) {
+                    continue;
+                }
 
                 // Get the map of state province names to polygons for this feature's country
-                Map<String, MultiPolygon> primaryDivisions = countryPrimaryDivisions.get(admin);
+                Map<String, Integer> primaryDivisions = countryPrimaryDivisions.get(admin.toString());
 
                 if (primaryDivisions == null) {
                     // Create a new state province to polygon map if it doesn't already exist
                     primaryDivisions = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
-                    countryPrimaryDivisions.put(admin, primaryDivisions);
+                    countryPrimaryDivisions.put(admin.toString(), primaryDivisions);
                 }
 
                 // Add the polygon for the current feature's state province name
-                primaryDivisions.put(name, poly);
+                primaryDivisions.put(name.toString(), Integer.valueOf(id));
             }
         } catch (IOException e) {
-            throw new RuntimeException("Error loading shapefile: " + shapeFile.getPath(), e);
-        } finally {
-            if (iter!=null) { iter.close(); }
-            if (store!=null) { store.dispose(); }
+            throw new RuntimeException("Error loading shapefile: " + layer.getResource(), e);
         }
     }
 
@@ -136,7 +114,7 @@ public class GeoTester {
             return false;
         }
 
-        MultiPolygon polygon = countryPolys.get(country);
+        SpatialFeature polygon = countryPolys.get(country);
         return polygon.contains(geometryFactory.createPoint(new Coordinate(longitude, latitude)));
     }
 
@@ -158,7 +136,7 @@ public class GeoTester {
         // number of km in one degree of latitude (this will describe a wide ellipse far north or south).
         double distanceD = distanceKm / 111d;
 
-        MultiPolygon polygon = countryPolys.get(country);
+        SpatialFeature polygon = countryPolys.get(country);
         return polygon.isWithinDistance(geometryFactory.createPoint(new Coordinate(longitude, latitude)), distanceD);
     }
 
@@ -181,14 +159,14 @@ public class GeoTester {
             return false;
         }
 
-        Map<String, MultiPolygon> primaryDivisions = countryPrimaryDivisions.get(country);
+        Map<String, Integer> primaryDivisions = countryPrimaryDivisions.get(country);
 
         if (!primaryDivisions.containsKey(primaryDivision)) {
             return false;
         }
 
-        MultiPolygon polygon = primaryDivisions.get(primaryDivision);
-        return polygon.contains(geometryFactory.createPoint(new Coordinate(longitude, latitude)));
+        int polygon = primaryDivisions.get(primaryDivision).intValue();
+        return primaryDivisionPolys.contains(polygon, longitude, latitude);
     }
 
     /**
@@ -215,14 +193,14 @@ public class GeoTester {
             return false;
         }
 
-        Map<String, MultiPolygon> primaryDivisions = countryPrimaryDivisions.get(country);
+        Map<String, Integer> primaryDivisions = countryPrimaryDivisions.get(country);
 
         if (!primaryDivisions.containsKey(primaryDivision)) {
             return false;
         }
 
-        MultiPolygon polygon = primaryDivisions.get(primaryDivision);
-        return polygon.isWithinDistance(geometryFactory.createPoint(new Coordinate(longitude, latitude)), distanceD);
+        int polygon = primaryDivisions.get(primaryDivision).intValue();
+        return primaryDivisionPolys.isWithinDistance(polygon, longitude, latitude, distanceD);
     }
 
     /**
@@ -252,7 +230,7 @@ public class GeoTester {
             return false;
         }
 
-        Map<String, MultiPolygon> primaryDivisions = countryPrimaryDivisions.get(country);
+        Map<String, Integer> primaryDivisions = countryPrimaryDivisions.get(country);
         return primaryDivisions.containsKey(primaryDivision);
     }
 
@@ -0,0 +1,118 @@
+/**
+ * AlternativeEvaluator.java
+ *
+ * Copyright 2026 President and Fellows of Harvard College
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.filteredpush.qc.georeference.util;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.filteredpush.qc.georeference.EnumGeoRefSourceAuthority;
+
+/**
+ * Evaluates a set of alternative coordinates (transpositions, sign changes, and decimal point
+ * shifts of a coordinate, see {@link GeolocationAlternative}) against one region in a single
+ * call.  The region is the features of a layer satisfying an {@link AttributeMatch}, and
+ * each alternative is tested through the {@link SpatialBackend} the registry has for the
+ * layer, so that the alternatives get the same answers as the single coordinate tests.
+ *
+ * @author mole
+ * @version $Id: $Id
+ */
+public class AlternativeEvaluator {
+
+	private final EnumGeoRefSourceAuthority layer;
+	private final AttributeMatch region;
+	private final SpatialBackend backend;
+
+	/**
+	 * Construct an evaluator for a region made up of features of a layer.
+	 *
+	 * @param layer the layer the features of the region are drawn from.
+	 * @param region the match selecting the features making up the region, a point is in
+	 *   the region if any of the features contain it.
+	 */
+	public AlternativeEvaluator(EnumGeoRefSourceAuthority layer, AttributeMatch region) {
+		this.layer = layer;
+		this.region = region;
+		this.backend = SpatialLayerRegistry.getInstance().getBackend(layer);
+	}
+
+	/**
+	 * Construct an evaluator for a country from the Natural Earth admin 0 countries.
+	 *
+	 * @param country the name of the country, matched ignoring case.
+	 * @return an evaluator for the country, which matches no alternatives if the country is not known.
+	 */
+	public static AlternativeEvaluator forCountry(String country) {
+		return new AlternativeEvaluator(EnumGeoRefSourceAuthority.NE_ADMIN_0, AttributeMatch.equal("NAME", country));
+	}
+
+	/**
+	 * Test whether a point is contained by the region (a point on the boundary is not contained).
+	 *
+	 * @param latitude of the point.
+	 * @param longitude of the point.
+	 * @return true if a feature of the region contains the point.
+	 * @throws IOException if the spatial data cannot be read.
+	 */
+	public boolean contains(double latitude, double longitude) throws IOException {
+		return backend.contains(layer, region, longitude, latitude);
+	}
+
+	/**
+	 * Test each of a list of alternatives against the region, setting the matched flag of
+	 * each alternative to whether the region contains it.
+	 *
+	 * @param alternatives the alternatives to test.
+	 * @return the alternatives contained by the region, in the order of alternatives.
+	 * @throws IOException if the spatial data cannot be read.
+	 */
+	public List<GeolocationAlternative> findContained(List<GeolocationAlternative> alternatives) throws IOException {
+		List<GeolocationAlternative> result = new ArrayList<GeolocationAlternative>();
+		for (GeolocationAlternative alternative : alternatives) {
+			boolean matched = contains(alternative.getLatitude(), alternative.getLongitude());
+			alternative.setMatched(matched);
+			if (matched) {
+				result.add(alternative);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Test each of a list of alternatives against the region, setting the matched flag of
+	 * each alternative to whether it is inside, on, or within a distance of the region.
+	 *
+	 * @param alternatives the alternatives to test.
+	 * @param distanceMeters the buffer distance in meters.
+	 * @return the alternatives within the distance of the region, in the order of alternatives.
+	 * @throws IOException if the spatial data cannot be read.
+	 */
+	public List<GeolocationAlternative> findWithinDistance(List<GeolocationAlternative> alternatives, double distanceMeters) throws IOException {
+		List<GeolocationAlternative> result = new ArrayList<GeolocationAlternative>();
+		for (GeolocationAlternative alternative : alternatives) {
+			boolean matched = backend.isWithinDistance(layer, region, alternative.getLongitude(), alternative.getLatitude(), distanceMeters);
+			alternative.setMatched(matched);
+			if (matched) {
+				result.add(alternative);
+			}
+		}
+		return result;
+	}
+
+}
@@ -0,0 +1,133 @@
+/**
+ * Antimeridian.java
+ *
+ * Copyright 2026 President and Fellows of Harvard College
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.filteredpush.qc.georeference.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+
+/**
+ * Handling of features and search areas which cross the antimeridian (180 degrees east and
+ * west) in spatial indexes over geographic coordinates.
+ *
+ * The boundary layers store a feature which crosses the antimeridian, such as Fiji, Russia,
+ * Kiribati, or the United States, as a multipolygon with parts on either side of 180 degrees,
+ * so the envelope of the feature spans almost the whole globe and the feature would be a
+ * candidate in every search of an index of feature envelopes.  Such features are instead
+ * indexed under two envelopes, one over the parts in the western hemisphere and one over the
+ * parts in the eastern hemisphere.  Search areas around a point, given as a span of longitude,
+ * are wrapped the other way, into one rectangle on each side of 180 degrees where they reach
+ * across it.
+ *
+ * @author mole
+ * @version $Id: $Id
+ */
+public final class Antimeridian {
+
+	/** Width in degrees of longitude beyond which the envelope of a feature is split. */
+	public static final double SPLIT_WIDTH = 180d;
+
+	private Antimeridian() {
+	}
+
+	/**
+	 * Obtain the envelopes under which to index a geometry: the envelope of the geometry,
+	 * or, for a geometry with more than one part and an envelope wider than {@link #SPLIT_WIDTH},
+	 * the envelopes of the parts whose centres lie west and east of the prime meridian.
+	 *
+	 * @param geometry the geometry to index, not empty.
+	 * @return one or two envelopes which together cover the geometry.
+	 */
+	public static List<Envelope> splitEnvelope(Geometry geometry) {
+		Envelope envelope = geometry.getEnvelopeInternal();
+		if (envelope.getWidth() <= SPLIT_WIDTH || geometry.getNumGeometries() < 2) {
+			return Collections.singletonList(envelope);
+		}
+		Envelope west = new Envelope();
+		Envelope east = new Envelope();
+		for (int i=0; i<geometry.getNumGeometries(); i++) {
+			Envelope part = geometry.getGeometryN(i).getEnvelopeInternal();
+			if (part.isNull()) {
+				continue;
+			}
+			if (part.getMinX() + part.getMaxX() < 0d) {
+				west.expandToInclude(part);
+			} else {
+				east.expandToInclude(part);
+			}
+		}
+		if (west.isNull() || east.isNull()) {
+			return Collections.singletonList(envelope);
+		}
+		List<Envelope> result = new ArrayList<Envelope>(2);
+		result.add(west);
+		result.add(east);
+		return result;
+	}
+
+	/**
+	 * Normalize a longitude into the range -180 to 180 degrees.
+	 *
+	 * @param longitude the longitude, in degrees.
+	 * @return the equivalent longitude from -180 to 180, 180 itself is left unchanged.
+	 */
+	public static double normalizeLongitude(double longitude) {
+		if (longitude >= -180d && longitude <= 180d) {
+			return longitude;
+		}
+		return ((longitude + 180d) % 360d + 360d) % 360d - 180d;
+	}
+
+	/**
+	 * Obtain the rectangles to search for an area around a point, wrapping the area
+	 * across the antimeridian where it reaches past 180 degrees east or west.
+	 *
+	 * @param longitude the longitude of the centre of the area, normalized before use.
+	 * @param latitude the latitude of the centre of the area.
+	 * @param longitudeSpan the half width of the area, in degrees of longitude.
+	 * @param latitudeSpan the half height of the area, in degrees of latitude.
+	 * @return one or two rectangles, each within -180 to 180 degrees of longitude.
+	 */
+	public static List<Envelope> queryEnvelopes(double longitude, double latitude, double longitudeSpan, double latitudeSpan) {
+		double minY = latitude - latitudeSpan;
+		double maxY = latitude + latitudeSpan;
+		if (longitudeSpan >= 180d) {
+			return Collections.singletonList(new Envelope(-180d, 180d, minY, maxY));
+		}
+		double x = normalizeLongitude(longitude);
+		double minX = x - longitudeSpan;
+		double maxX = x + longitudeSpan;
+		if (minX < -180d) {
+			List<Envelope> result = new ArrayList<Envelope>(2);
+			result.add(new Envelope(-180d, maxX, minY, maxY));
+			result.add(new Envelope(minX + 360d, 180d, minY, maxY));
+			return result;
+		}
+		if (maxX > 180d) {
+			List<Envelope> result = new ArrayList<Envelope>(2);
+			result.add(new Envelope(minX, 180d, minY, maxY));
+			result.add(new Envelope(-180d, maxX - 360d, minY, maxY));
+			return result;
+		}
+		return Collections.singletonList(new Envelope(minX, maxX, minY, maxY));
+	}
+
+}
@@ -0,0 +1,271 @@
+/**
+ * AttributeIndex.java
+ *
+ * Copyright 2026 President and Fellows of Harvard College
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.filteredpush.qc.georeference.util;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+
+/**
+ * Case insensitive index of the values of one attribute over the features of a layer,
+ * supporting the three forms of ILIKE match used against the Natural Earth attribute
+ * tables: exact (attribute ILIKE 'value'), prefix (attribute ILIKE 'value%') and
+ * suffix (attribute ILIKE '%value'), and the element match of {@link AttributeMatch}
+ * against the values of a list attribute, such as the VARNAME_1 of GADM.
+ *
+ * Matches are returned as sets of feature ids, so that matches on several attributes
+ * can be combined with OR and AND.
+ *
+ * @author mole
+ * @version $Id: $Id
+ */
+public class AttributeIndex {
+
+	private final String attribute;
+	private final List<SpatialFeature> features;
+	private final Map<String,BitSet> exact;
+	private final TreeMap<String,BitSet> sorted;
+	private final TreeMap<String,BitSet> reversed;
+	private final Map<String,BitSet> elements;
+
+	/**
+	 * Build an index over the values of an attribute.
+	 *
+	 * @param attribute the name of the attribute.
+	 * @param features the features of the layer, the id of each feature being its position in the list.
+	 */
+	public AttributeIndex(String attribute, List<SpatialFeature> features) {
+		this(attribute, features, collectValues(attribute, features));
+	}
+
+	/**
+	 * Construct an index from values previously collected from the features of a layer,
+	 * as read back from an {@link IndexSnapshot}.
+	 *
+	 * @param attribute the name of the attribute.
+	 * @param features the features of the layer, null if the index is only used for selection.
+	 * @param exact the ids of the features with each case folded value of the attribute.
+	 */
+	AttributeIndex(String attribute, List<SpatialFeature> features, Map<String,BitSet> exact) {
+		this.attribute = attribute;
+		this.features = features;
+		this.exact = exact;
+		this.sorted = new TreeMap<String,BitSet>(exact);
+		this.reversed = new TreeMap<String,BitSet>();
+		for (Map.Entry<String,BitSet> entry : exact.entrySet()) {
+			reversed.put(reverse(entry.getKey()), entry.getValue());
+		}
+		this.elements = collectElements(exact);
+	}
+
+	/**
+	 * Build an index over the values of an attribute column of a boundary file.  The index
+	 * holds no features, so only the select methods may be used with it.
+	 *
+	 * @param attribute the name of the attribute.
+	 * @param boundaries the boundary file, the id of each feature being its position in the file.
+	 * @return a new index over the values of the attribute, empty if the file has no such attribute.
+	 */
+	static AttributeIndex fromBoundaryFile(String attribute, BoundaryFile boundaries) {
+		Map<String,BitSet> values = new HashMap<String,BitSet>();
+		for (int id=0; id<boundaries.getFeatureCount(); id++) {
+			Object value = boundaries.getAttribute(id, attribute);
+			if (value!=null) {
+				String key = foldCase(value.toString());
+				BitSet ids = values.get(key);
+				if (ids==null) {
+					ids = new BitSet();
+					values.put(key, ids);
+				}
+				ids.set(id);
+			}
+		}
+		return new AttributeIndex(attribute, null, values);
+	}
+
+	private static Map<String,BitSet> collectValues(String attribute, List<SpatialFeature> features) {
+		Map<String,BitSet> result = new HashMap<String,BitSet>();
+		for (SpatialFeature feature : features) {
+			String value = feature.getAttributeAsString(attribute);
+			if (value!=null) {
+				String key = foldCase(value);
+				BitSet ids = result.get(key);
+				if (ids==null) {
+					ids = new BitSet();
+					result.put(key, ids);
+				}
+				ids.set(feature.getId());
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Split the values which are lists into their elements, so that a value of A|B|C
+	 * is found by an element match on B as well as on A and C.
+	 */
+	private static Map<String,BitSet> collectElements(Map<String,BitSet> exact) {
+		Map<String,BitSet> result = new HashMap<String,BitSet>();
+		for (Map.Entry<String,BitSet> entry : exact.entrySet()) {
+			String key = entry.getKey();
+			if (key.contains(AttributeMatch.ELEMENT_DELIMITER)) {
+				for (String element : key.split(Pattern.quote(AttributeMatch.ELEMENT_DELIMITER), -1)) {
+					BitSet ids = result.get(element);
+					if (ids==null) {
+						ids = new BitSet();
+						result.put(element, ids);
+					}
+					ids.or(entry.getValue());
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * <p>Getter for the field <code>attribute</code>.</p>
+	 *
+	 * @return the name of the indexed attribute.
+	 */
+	public String getAttribute() {
+		return attribute;
+	}
+
+	/**
+	 * @return an unmodifiable view of the ids of the features with each case folded value
+	 *   of the attribute, the sets must not be modified.
+	 */
+	Map<String,BitSet> getValues() {
+		return Collections.unmodifiableMap(exact);
+	}
+
+	/**
+	 * Select the features where the attribute equals a value, ignoring case.
+	 *
+	 * @param value the value to match, null matches nothing.
+	 * @return a new set of the ids of the matching features.
+	 */
+	public BitSet selectEqual(String value) {
+		BitSet result = new BitSet();
+		if (value!=null) {
+			BitSet ids = exact.get(foldCase(value));
+			if (ids!=null) {
+				result.or(ids);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Select the features where the attribute starts with a value, ignoring case.
+	 *
+	 * @param prefix the value to match at the start of the attribute, null matches nothing.
+	 * @return a new set of the ids of the matching features.
+	 */
+	public BitSet selectPrefix(String prefix) {
+		BitSet result = new BitSet();
+		if (prefix!=null) {
+			String key = foldCase(prefix);
+			for (BitSet ids : sorted.subMap(key, true, key + Character.MAX_VALUE, false).values()) {
+				result.or(ids);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Select the features where the attribute ends with a value, ignoring case.
+	 *
+	 * @param suffix the value to match at the end of the attribute, null matches nothing.
+	 * @return a new set of the ids of the matching features.
+	 */
+	public BitSet selectSuffix(String suffix) {
+		BitSet result = new BitSet();
+		if (suffix!=null) {
+			String key = reverse(foldCase(suffix));
+			for (BitSet ids : reversed.subMap(key, true, key + Character.MAX_VALUE, false).values()) {
+				result.or(ids);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Select the features where any one of the values of the attribute, read as a list
+	 * separated by {@link AttributeMatch#ELEMENT_DELIMITER}, equals a value, ignoring case.
+	 *
+	 * @param element the value to match, null or a value containing the delimiter matches nothing.
+	 * @return a new set of the ids of the matching features.
+	 */
+	public BitSet selectElement(String element) {
+		BitSet result = new BitSet();
+		if (element!=null && !element.contains(AttributeMatch.ELEMENT_DELIMITER)) {
+			String key = foldCase(element);
+			BitSet ids = exact.get(key);
+			if (ids!=null) {
+				result.or(ids);
+			}
+			ids = elements.get(key);
+			if (ids!=null) {
+				result.or(ids);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Obtain the features for a set of ids.
+	 *
+	 * @param ids the ids of features in this layer.
+	 * @return the features in order of id.
+	 */
+	public List<SpatialFeature> getFeatures(BitSet ids) {
+		if (features==null) {
+			throw new IllegalStateException("The index of " + attribute + " holds no features");
+		}
+		if (ids.isEmpty()) {
+			return Collections.emptyList();
+		}
+		List<SpatialFeature> result = new ArrayList<SpatialFeature>(ids.cardinality());
+		for (int id = ids.nextSetBit(0); id >= 0; id = ids.nextSetBit(id + 1)) {
+			result.add(features.get(id));
+		}
+		return result;
+	}
+
+	/**
+	 * Fold the case of a string for case insensitive comparison.
+	 *
+	 * @param value the string to fold.
+	 * @return the lower case form of the string.
+	 */
+	public static String foldCase(String value) {
+		return value.toLowerCase(Locale.ROOT);
+	}
+
+	private static String reverse(String value) {
+		return new StringBuilder(value).reverse().toString();
+	}
+
+}
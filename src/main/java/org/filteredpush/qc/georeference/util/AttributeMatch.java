@@ -0,0 +1,397 @@
+/**
+ * AttributeMatch.java
+ *
+ * Copyright 2026 President and Fellows of Harvard College
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.filteredpush.qc.georeference.util;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A match on the attribute values of the features of a layer, as passed to a
+ * {@link SpatialBackend}.  A match is built from the three forms of case insensitive
+ * match supported by {@link AttributeIndex}: equal (attribute ILIKE 'value'), prefix
+ * (attribute ILIKE 'value%'), suffix (attribute ILIKE '%value') and element (one of the
+ * values of a list separated by {@link #ELEMENT_DELIMITER}, as in the VARNAME_1 of GADM,
+ * ILIKE 'value'), combined with AND and OR.  A match on a null value matches no features, and {@link #all()} matches
+ * every feature.
+ *
+ * Matches are immutable, and are equal when built in the same way from equal parts, so
+ * that they may be used as keys of results.
+ *
+ * @author mole
+ * @version $Id: $Id
+ */
+public final class AttributeMatch {
+
+	/** The forms of match. */
+	public enum Kind {
+		/** Matches every feature. */
+		ALL,
+		/** Attribute ILIKE 'value'. */
+		EQUAL,
+		/** Attribute ILIKE 'value%'. */
+		PREFIX,
+		/** Attribute ILIKE '%value'. */
+		SUFFIX,
+		/** '|' || attribute || '|' ILIKE '%|value|%'. */
+		ELEMENT,
+		/** All of the operands match. */
+		AND,
+		/** Any of the operands match. */
+		OR
+	}
+
+	/**
+	 * Selects the features of a layer by the value of one attribute, as an {@link AttributeIndex} does.
+	 */
+	public interface Selector {
+
+		/**
+		 * @param attribute the attribute to compare.
+		 * @param value the value, not null.
+		 * @return a new set of the ids of the features where the attribute equals the value, ignoring case.
+		 */
+		BitSet selectEqual(String attribute, String value);
+
+		/**
+		 * @param attribute the attribute to compare.
+		 * @param prefix the value, not null.
+		 * @return a new set of the ids of the features where the attribute starts with the value, ignoring case.
+		 */
+		BitSet selectPrefix(String attribute, String prefix);
+
+		/**
+		 * @param attribute the attribute to compare.
+		 * @param suffix the value, not null.
+		 * @return a new set of the ids of the features where the attribute ends with the value, ignoring case.
+		 */
+		BitSet selectSuffix(String attribute, String suffix);
+
+		/**
+		 * @param attribute the attribute to compare, a list of values separated by {@link AttributeMatch#ELEMENT_DELIMITER}.
+		 * @param element the value, not null.
+		 * @return a new set of the ids of the features where one of the values of the attribute equals the value, ignoring case.
+		 */
+		BitSet selectElement(String attribute, String element);
+	}
+
+	/** The separator of the values of an attribute holding a list, as compared by an element match. */
+	public static final String ELEMENT_DELIMITER = "|";
+
+	private static final AttributeMatch ALL = new AttributeMatch(Kind.ALL, null, null, Collections.<AttributeMatch>emptyList());
+
+	private final Kind kind;
+	private final String attribute;
+	private final String value;
+	private final List<AttributeMatch> operands;
+
+	private AttributeMatch(Kind kind, String attribute, String value, List<AttributeMatch> operands) {
+		this.kind = kind;
+		this.attribute = attribute;
+		this.value = value;
+		this.operands = operands;
+	}
+
+	/**
+	 * @return a match of every feature.
+	 */
+	public static AttributeMatch all() {
+		return ALL;
+	}
+
+	/**
+	 * Equivalent of attribute ILIKE 'value'.
+	 *
+	 * @param attribute the attribute to compare.
+	 * @param value the value to match, ignoring case, null matches nothing.
+	 * @return a match.
+	 */
+	public static AttributeMatch equal(String attribute, String value) {
+		return new AttributeMatch(Kind.EQUAL, attribute, value, Collections.<AttributeMatch>emptyList());
+	}
+
+	/**
+	 * Equivalent of attribute ILIKE 'value%'.
+	 *
+	 * @param attribute the attribute to compare.
+	 * @param prefix the value to match at the start of the attribute, ignoring case, null matches nothing.
+	 * @return a match.
+	 */
+	public static AttributeMatch prefix(String attribute, String prefix) {
+		return new AttributeMatch(Kind.PREFIX, attribute, prefix, Collections.<AttributeMatch>emptyList());
+	}
+
+	/**
+	 * Equivalent of attribute ILIKE '%value'.
+	 *
+	 * @param attribute the attribute to compare.
+	 * @param suffix the value to match at the end of the attribute, ignoring case, null matches nothing.
+	 * @return a match.
+	 */
+	public static AttributeMatch suffix(String attribute, String suffix) {
+		return new AttributeMatch(Kind.SUFFIX, attribute, suffix, Collections.<AttributeMatch>emptyList());
+	}
+
+	/**
+	 * Equivalent of '|' || attribute || '|' ILIKE '%|value|%', matching an attribute
+	 * holding a list of values separated by {@link #ELEMENT_DELIMITER} where any one of
+	 * the values, first, last, or in between, equals the value.  A value containing the
+	 * delimiter matches nothing.
+	 *
+	 * @param attribute the attribute to compare.
+	 * @param element the value to match against each value of the attribute, ignoring case, null matches nothing.
+	 * @return a match.
+	 */
+	public static AttributeMatch element(String attribute, String element) {
+		return new AttributeMatch(Kind.ELEMENT, attribute, element, Collections.<AttributeMatch>emptyList());
+	}
+
+	/**
+	 * Combine matches with AND.
+	 *
+	 * @param matches the matches to combine.
+	 * @return a match of the features matching all of matches, {@link #all()} if there are none.
+	 */
+	public static AttributeMatch allOf(AttributeMatch... matches) {
+		return combine(Kind.AND, matches);
+	}
+
+	/**
+	 * Combine matches with OR.
+	 *
+	 * @param matches the matches to combine, at least one.
+	 * @return a match of the features matching any of matches.
+	 */
+	public static AttributeMatch anyOf(AttributeMatch... matches) {
+		if (matches.length==0) {
+			throw new IllegalArgumentException("At least one match is required");
+		}
+		return combine(Kind.OR, matches);
+	}
+
+	/**
+	 * Combine an equal match for each entry of a map with AND.
+	 *
+	 * @param values the attributes and their values.
+	 * @return a match of the features where each attribute equals its value, ignoring case.
+	 */
+	public static AttributeMatch of(Map<String,String> values) {
+		AttributeMatch[] matches = new AttributeMatch[values.size()];
+		int i = 0;
+		for (Map.Entry<String,String> entry : values.entrySet()) {
+			matches[i++] = equal(entry.getKey(), entry.getValue());
+		}
+		return allOf(matches);
+	}
+
+	private static AttributeMatch combine(Kind kind, AttributeMatch[] matches) {
+		List<AttributeMatch> operands = new ArrayList<AttributeMatch>(matches.length);
+		for (AttributeMatch match : matches) {
+			if (match.kind==Kind.ALL) {
+				if (kind==Kind.OR) {
+					return ALL;
+				}
+			} else {
+				operands.add(match);
+			}
+		}
+		if (operands.isEmpty()) {
+			return ALL;
+		}
+		if (operands.size()==1) {
+			return operands.get(0);
+		}
+		return new AttributeMatch(kind, null, null, Collections.unmodifiableList(operands));
+	}
+
+	/**
+	 * <p>Getter for the field <code>kind</code>.</p>
+	 *
+	 * @return the form of this match.
+	 */
+	public Kind getKind() {
+		return kind;
+	}
+
+	/**
+	 * <p>Getter for the field <code>attribute</code>.</p>
+	 *
+	 * @return the attribute compared by an equal, prefix, suffix or element match, otherwise null.
+	 */
+	public String getAttribute() {
+		return attribute;
+	}
+
+	/**
+	 * <p>Getter for the field <code>value</code>.</p>
+	 *
+	 * @return the value of an equal, prefix, suffix or element match, otherwise null.
+	 */
+	public String getValue() {
+		return value;
+	}
+
+	/**
+	 * <p>Getter for the field <code>operands</code>.</p>
+	 *
+	 * @return the matches combined by an AND or OR match, otherwise empty.
+	 */
+	public List<AttributeMatch> getOperands() {
+		return operands;
+	}
+
+	/**
+	 * @return true if this match matches every feature.
+	 */
+	public boolean isAll() {
+		return kind==Kind.ALL;
+	}
+
+	/**
+	 * Obtain the value of this match if it is only a match of an attribute equal to a value.
+	 *
+	 * @param attribute the attribute.
+	 * @return the value if this is an equal match on attribute, otherwise null.
+	 */
+	public String getEqualValue(String attribute) {
+		return kind==Kind.EQUAL && attribute.equals(this.attribute) ? value : null;
+	}
+
+	/**
+	 * Test whether this match can match no feature whatever the data, because each way of
+	 * matching depends on a null value.
+	 *
+	 * @return true if this match matches no features.
+	 */
+	public boolean isNone() {
+		switch (kind) {
+		case ALL:
+			return false;
+		case AND:
+			for (AttributeMatch operand : operands) {
+				if (operand.isNone()) {
+					return true;
+				}
+			}
+			return false;
+		case OR:
+			for (AttributeMatch operand : operands) {
+				if (!operand.isNone()) {
+					return false;
+				}
+			}
+			return true;
+		default:
+			return value==null;
+		}
+	}
+
+	/**
+	 * Select the features of a layer matching this match.
+	 *
+	 * @param selector selects the features of the layer by the values of one attribute.
+	 * @param featureCount the number of features in the layer.
+	 * @return a new set of the ids of the matching features.
+	 */
+	public BitSet select(Selector selector, int featureCount) {
+		BitSet result;
+		switch (kind) {
+		case ALL:
+			result = new BitSet(featureCount);
+			result.set(0, featureCount);
+			return result;
+		case AND:
+			result = null;
+			for (AttributeMatch operand : operands) {
+				BitSet matches = operand.select(selector, featureCount);
+				if (result==null) {
+					result = matches;
+				} else {
+					result.and(matches);
+				}
+				if (result.isEmpty()) {
+					break;
+				}
+			}
+			return result;
+		case OR:
+			result = new BitSet();
+			for (AttributeMatch operand : operands) {
+				result.or(operand.select(selector, featureCount));
+			}
+			return result;
+		case EQUAL:
+			return value==null ? new BitSet() : selector.selectEqual(attribute, value);
+		case PREFIX:
+			return value==null ? new BitSet() : selector.selectPrefix(attribute, value);
+		case ELEMENT:
+			return value==null ? new BitSet() : selector.selectElement(attribute, value);
+		default:
+			return value==null ? new BitSet() : selector.selectSuffix(attribute, value);
+		}
+	}
+
+	@Override
+	public int hashCode() {
+		int result = kind.hashCode();
+		result = 31 * result + (attribute==null ? 0 : attribute.hashCode());
+		result = 31 * result + (value==null ? 0 : value.hashCode());
+		return 31 * result + operands.hashCode();
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this==obj) {
+			return true;
+		}
+		if (!(obj instanceof AttributeMatch)) {
+			return false;
+		}
+		AttributeMatch other = (AttributeMatch)obj;
+		return kind==other.kind && (attribute==null ? other.attribute==null : attribute.equals(other.attribute))
+				&& (value==null ? other.value==null : value.equals(other.value)) && operands.equals(other.operands);
+	}
+
+	@Override
+	public String toString() {
+		switch (kind) {
+		case ALL:
+			return "INCLUDE";
+		case EQUAL:
+			return attribute + " ILIKE '" + value + "'";
+		case PREFIX:
+			return attribute + " ILIKE '" + value + "%'";
+		case SUFFIX:
+			return attribute + " ILIKE '%" + value + "'";
+		case ELEMENT:
+			return "'" + ELEMENT_DELIMITER + "' || " + attribute + " || '" + ELEMENT_DELIMITER + "' ILIKE '%" + ELEMENT_DELIMITER + value + ELEMENT_DELIMITER + "%'";
+		default:
+			StringBuilder result = new StringBuilder("(");
+			for (int i=0; i<operands.size(); i++) {
+				if (i > 0) {
+					result.append(kind==Kind.AND ? " AND " : " OR ");
+				}
+				result.append(operands.get(i));
+			}
+			return result.append(")").toString();
+		}
+	}
+
+}
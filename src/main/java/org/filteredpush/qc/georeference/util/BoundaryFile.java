@@ -0,0 +1,921 @@
+/**
+ * BoundaryFile.java
+ *
+ * Copyright 2026 President and Fellows of Harvard College
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.filteredpush.qc.georeference.util;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.filteredpush.qc.georeference.EnumGeoRefSourceAuthority;
+import org.geotools.geometry.jts.JTSFactoryFinder;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.LinearRing;
+import org.locationtech.jts.geom.MultiPoint;
+import org.locationtech.jts.geom.MultiPolygon;
+import org.locationtech.jts.geom.Point;
+import org.locationtech.jts.geom.Polygon;
+
+/**
+ * Compact binary form of a boundary layer, generated from the bundled shapefiles at build
+ * time by {@link #main(String[])} and read at run time through a memory mapped buffer, so
+ * that the features of a layer can be loaded without parsing the shapefile through GeoTools,
+ * and so that several JVMs on one host share the mapped file through the page cache.
+ *
+ * A boundary file holds, in this order, with all values big endian:
+ * <ul>
+ * <li>a header: magic number, format version, data version, layer name, and the counts of
+ *  features, polygons, rings, and coordinates,</li>
+ * <li>the envelope of each feature as minX, maxX, minY, maxY,</li>
+ * <li>the geometry type of each feature,</li>
+ * <li>the geometries flattened into tables of the first polygon of each feature, the first
+ *  ring of each polygon (the shell followed by its holes), the first coordinate of each ring,
+ *  and the x y values of all of the coordinates (points are stored as a polygon with one
+ *  ring of one coordinate),</li>
+ * <li>a packed R-tree over the feature envelopes, sort tile recursive ordered, with
+ *  {@value #NODE_SIZE} entries per node, each item holding a feature id and an envelope,
+ *  with a feature which crosses the antimeridian held as two items, see
+ *  {@link Antimeridian#splitEnvelope(Geometry)},</li>
+ * <li>the attribute columns, each with a type, null flags, and the values.</li>
+ * </ul>
+ * Coordinates are held as doubles rather than floats so that tests against the boundary file
+ * give exactly the same results as tests against the shapefile.
+ *
+ * Instances are immutable and are safe to share between threads.
+ *
+ * @author mole
+ * @version $Id: $Id
+ */
+public class BoundaryFile {
+
+	private static final Log logger = LogFactory.getLog(BoundaryFile.class);
+
+	/** File name extension of boundary files, which replaces .shp in the name of the shapefile. */
+	public static final String EXTENSION = ".bnd";
+
+	/** Number of entries in each node of the packed R-tree. */
+	public static final int NODE_SIZE = 16;
+
+	private static final int MAGIC = 0x47424E44; // GBND
+	private static final int FORMAT_VERSION = 2;
+
+	private static final byte NO_GEOMETRY = 0;
+	private static final byte POINT = 1;
+	private static final byte MULTIPOINT = 2;
+	private static final byte POLYGON = 3;
+	private static final byte MULTIPOLYGON = 4;
+
+	private static final byte STRING_COLUMN = 1;
+	private static final byte INTEGER_COLUMN = 2;
+	private static final byte LONG_COLUMN = 3;
+	private static final byte DOUBLE_COLUMN = 4;
+
+	private static final int ENVELOPE_BYTES = 4 * 8;
+	private static final int NODE_BYTES = 4 * 8 + 2 * 4;
+	private static final int ITEM_BYTES = 4 + 4 * 8;
+
+	private final ByteBuffer buffer;
+	private final String dataVersion;
+	private final String name;
+	private final int featureCount;
+	private final int polygonCount;
+	private final int ringCount;
+	private final int coordinateCount;
+	private final int envelopesOffset;
+	private final int kindsOffset;
+	private final int featurePolygonsOffset;
+	private final int polygonRingsOffset;
+	private final int ringCoordinatesOffset;
+	private final int coordinatesOffset;
+	private final int itemsOffset;
+	private final int[] levelOffsets;
+	private final int[] levelCounts;
+	private final Map<String,Column> columns;
+
+	/**
+	 * The location of an attribute column within the buffer.
+	 */
+	private static class Column {
+		private final byte type;
+		private final int nullsOffset;
+		private final int valuesOffset;
+		private final int dataOffset;
+
+		private Column(byte type, int nullsOffset, int valuesOffset, int dataOffset) {
+			this.type = type;
+			this.nullsOffset = nullsOffset;
+			this.valuesOffset = valuesOffset;
+			this.dataOffset = dataOffset;
+		}
+	}
+
+	/**
+	 * Parse the header and locate the sections of a boundary file held in a buffer.
+	 *
+	 * @param buffer the content of the boundary file.
+	 * @throws IOException if the buffer does not hold a boundary file.
+	 */
+	private BoundaryFile(ByteBuffer buffer) throws IOException {
+		this.buffer = buffer;
+		try {
+			int position = 0;
+			if (buffer.getInt(position)!=MAGIC || buffer.getInt(position + 4)!=FORMAT_VERSION) {
+				throw new IOException("Not a boundary file, or unsupported format version.");
+			}
+			position += 8;
+			this.dataVersion = readString(buffer, position);
+			position += 4 + buffer.getInt(position);
+			this.name = readString(buffer, position);
+			position += 4 + buffer.getInt(position);
+			this.featureCount = buffer.getInt(position);
+			this.polygonCount = buffer.getInt(position + 4);
+			this.ringCount = buffer.getInt(position + 8);
+			this.coordinateCount = buffer.getInt(position + 12);
+			position += 16;
+			this.envelopesOffset = position;
+			position += featureCount * ENVELOPE_BYTES;
+			this.kindsOffset = position;
+			position += featureCount;
+			this.featurePolygonsOffset = position;
+			position += (featureCount + 1) * 4;
+			this.polygonRingsOffset = position;
+			position += (polygonCount + 1) * 4;
+			this.ringCoordinatesOffset = position;
+			position += (ringCount + 1) * 4;
+			this.coordinatesOffset = position;
+			position += coordinateCount * 16;
+			int itemCount = buffer.getInt(position);
+			this.itemsOffset = position + 4;
+			position += 4 + itemCount * ITEM_BYTES;
+			int levelCount = buffer.getInt(position);
+			position += 4;
+			this.levelOffsets = new int[levelCount];
+			this.levelCounts = new int[levelCount];
+			for (int level=0; level<levelCount; level++) {
+				levelCounts[level] = buffer.getInt(position);
+				levelOffsets[level] = position + 4;
+				position += 4 + levelCounts[level] * NODE_BYTES;
+			}
+			int attributeCount = buffer.getInt(position);
+			position += 4;
+			Map<String,Column> columnMap = new LinkedHashMap<String,Column>();
+			for (int i=0; i<attributeCount; i++) {
+				String attribute = readString(buffer, position);
+				position += 4 + buffer.getInt(position);
+				byte type = buffer.get(position);
+				position += 1;
+				int nullsOffset = position;
+				position += featureCount;
+				int valuesOffset = position;
+				int dataOffset = position;
+				switch (type) {
+				case INTEGER_COLUMN:
+					position += featureCount * 4;
+					break;
+				case LONG_COLUMN:
+				case DOUBLE_COLUMN:
+					position += featureCount * 8;
+					break;
+				case STRING_COLUMN:
+					dataOffset = valuesOffset + (featureCount + 1) * 4;
+					position = dataOffset + buffer.getInt(valuesOffset + featureCount * 4);
+					break;
+				default:
+					throw new IOException("Unknown type of attribute column " + attribute);
+				}
+				columnMap.put(attribute, new Column(type, nullsOffset, valuesOffset, dataOffset));
+			}
+			this.columns = Collections.unmodifiableMap(columnMap);
+		} catch (IndexOutOfBoundsException e) {
+			throw new IOException("Boundary file is truncated.", e);
+		}
+	}
+
+	/**
+	 * Open a boundary file, mapping it into memory.
+	 *
+	 * @param file the boundary file.
+	 * @return the boundary file.
+	 * @throws IOException if the file cannot be mapped or is not a boundary file.
+	 */
+	public static BoundaryFile open(File file) throws IOException {
+		RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = randomAccessFile.getChannel();
+			// the mapping remains valid once the channel is closed
+			return new BoundaryFile(channel.map(FileChannel.MapMode.READ_ONLY, 0L, channel.size()));
+		} finally {
+			randomAccessFile.close();
+		}
+	}
+
+	/**
+	 * Open a boundary file from a URL, mapping it in place if it is a file, otherwise (for
+	 * example within a jar) copying it to a temporary file and mapping the copy.  Layers
+	 * instead map the copy kept by {@link LocalShapefiles#getLocalCompanion(String, String)},
+	 * and use this only when extraction is disabled.
+	 *
+	 * @param location the location of the boundary file.
+	 * @return the boundary file.
+	 * @throws IOException if the file cannot be read or is not a boundary file.
+	 */
+	public static BoundaryFile open(URL location) throws IOException {
+		if ("file".equals(location.getProtocol())) {
+			try {
+				return open(new File(location.toURI()));
+			} catch (URISyntaxException e) {
+				throw new IOException(e.getMessage(), e);
+			}
+		}
+		File copy = File.createTempFile("geo_ref_qc", EXTENSION);
+		copy.deleteOnExit();
+		InputStream in = location.openStream();
+		try {
+			Files.copy(in, copy.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		} finally {
+			in.close();
+		}
+		return open(copy);
+	}
+
+	/**
+	 * Write a layer as a boundary file held in a direct buffer, outside of the heap.
+	 *
+	 * @param layer the layer to hold.
+	 * @param dataVersion the version of the data of the layer.
+	 * @return the boundary file.
+	 * @throws IOException if the layer has geometries other than points and polygons.
+	 */
+	public static BoundaryFile fromLayer(IndexedFeatureLayer layer, String dataVersion) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		write(layer, dataVersion, out);
+		byte[] bytes = out.toByteArray();
+		ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length);
+		direct.put(bytes);
+		// through Buffer, as ByteBuffer.flip() only exists from Java 9
+		((Buffer)direct).flip();
+		return new BoundaryFile(direct);
+	}
+
+	/**
+	 * <p>Getter for the field <code>dataVersion</code>.</p>
+	 *
+	 * @return the version of the data the boundary file was generated from.
+	 */
+	public String getDataVersion() {
+		return dataVersion;
+	}
+
+	/**
+	 * <p>Getter for the field <code>name</code>.</p>
+	 *
+	 * @return the name of the layer the boundary file was generated from.
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * <p>Getter for the field <code>featureCount</code>.</p>
+	 *
+	 * @return the number of features.
+	 */
+	public int getFeatureCount() {
+		return featureCount;
+	}
+
+	/**
+	 * @return the total number of coordinates in the geometries of all of the features.
+	 */
+	public int getCoordinateCount() {
+		return coordinateCount;
+	}
+
+	/**
+	 * @return the total number of rings in the polygons of all of the features.
+	 */
+	public int getRingCount() {
+		return ringCount;
+	}
+
+	/**
+	 * Test whether the geometry of a feature is a polygon or multipolygon.
+	 *
+	 * @param id the id of the feature.
+	 * @return true if the feature is polygonal, false for points or no geometry.
+	 */
+	public boolean isPolygonal(int id) {
+		byte kind = buffer.get(kindsOffset + id);
+		return kind==POLYGON || kind==MULTIPOLYGON;
+	}
+
+	/**
+	 * Obtain the first ring of a feature, the rings of a feature are numbered consecutively
+	 * from this ring up to the first ring of the next feature.
+	 *
+	 * @param id the id of the feature, or the feature count for the end of the last feature.
+	 * @return the number of the first ring of the feature.
+	 */
+	public int getFirstRing(int id) {
+		return buffer.getInt(polygonRingsOffset + buffer.getInt(featurePolygonsOffset + id * 4) * 4);
+	}
+
+	/**
+	 * Obtain the first coordinate of a ring, the coordinates of a ring are numbered consecutively
+	 * from this coordinate up to the first coordinate of the next ring.
+	 *
+	 * @param ring the number of the ring, or the ring count for the end of the last ring.
+	 * @return the number of the first coordinate of the ring.
+	 */
+	public int getFirstCoordinate(int ring) {
+		return buffer.getInt(ringCoordinatesOffset + ring * 4);
+	}
+
+	/**
+	 * @param coordinate the number of a coordinate.
+	 * @return the x value of the coordinate.
+	 */
+	public double getX(int coordinate) {
+		return buffer.getDouble(coordinatesOffset + coordinate * 16);
+	}
+
+	/**
+	 * @param coordinate the number of a coordinate.
+	 * @return the y value of the coordinate.
+	 */
+	public double getY(int coordinate) {
+		return buffer.getDouble(coordinatesOffset + coordinate * 16 + 8);
+	}
+
+	/**
+	 * @return the names of the attributes, in the order of the attributes in the shapefile.
+	 */
+	public List<String> getAttributeNames() {
+		return new ArrayList<String>(columns.keySet());
+	}
+
+	/**
+	 * Obtain the envelope of a feature.
+	 *
+	 * @param id the id of the feature.
+	 * @return the envelope, a null envelope if the feature has no geometry.
+	 */
+	public Envelope getEnvelope(int id) {
+		int offset = envelopesOffset + id * ENVELOPE_BYTES;
+		double minX = buffer.getDouble(offset);
+		double maxX = buffer.getDouble(offset + 8);
+		if (maxX < minX) {
+			return new Envelope();
+		}
+		return new Envelope(minX, maxX, buffer.getDouble(offset + 16), buffer.getDouble(offset + 24));
+	}
+
+	/**
+	 * Obtain the value of an attribute of a feature.
+	 *
+	 * @param id the id of the feature.
+	 * @param attribute the name of the attribute.
+	 * @return the value, as a String, Integer, Long, or Double, null if the value or the attribute is absent.
+	 */
+	public Object getAttribute(int id, String attribute) {
+		Column column = columns.get(attribute);
+		if (column==null || buffer.get(column.nullsOffset + id)!=0) {
+			return null;
+		}
+		switch (column.type) {
+		case INTEGER_COLUMN:
+			return Integer.valueOf(buffer.getInt(column.valuesOffset + id * 4));
+		case LONG_COLUMN:
+			return Long.valueOf(buffer.getLong(column.valuesOffset + id * 8));
+		case DOUBLE_COLUMN:
+			return Double.valueOf(buffer.getDouble(column.valuesOffset + id * 8));
+		default:
+			int start = buffer.getInt(column.valuesOffset + id * 4);
+			int end = buffer.getInt(column.valuesOffset + (id + 1) * 4);
+			byte[] bytes = new byte[end - start];
+			ByteBuffer view = buffer.duplicate();
+			// through Buffer, as ByteBuffer.position(int) only exists from Java 9
+			((Buffer)view).position(column.dataOffset + start);
+			view.get(bytes);
+			return new String(bytes, StandardCharsets.UTF_8);
+		}
+	}
+
+	/**
+	 * Find the features whose envelopes intersect a rectangle, using the packed R-tree.
+	 *
+	 * @param rectangle the rectangle to search.
+	 * @return the ids of the candidate features.
+	 */
+	public BitSet query(Envelope rectangle) {
+		BitSet result = new BitSet(featureCount);
+		if (levelCounts.length > 0) {
+			int top = levelCounts.length - 1;
+			for (int node=0; node<levelCounts[top]; node++) {
+				search(top, node, rectangle, result);
+			}
+		}
+		return result;
+	}
+
+	private void search(int level, int node, Envelope rectangle, BitSet result) {
+		int offset = levelOffsets[level] + node * NODE_BYTES;
+		if (buffer.getDouble(offset) > rectangle.getMaxX() || buffer.getDouble(offset + 8) < rectangle.getMinX()
+				|| buffer.getDouble(offset + 16) > rectangle.getMaxY() || buffer.getDouble(offset + 24) < rectangle.getMinY()) {
+			return;
+		}
+		int firstChild = buffer.getInt(offset + 32);
+		int childCount = buffer.getInt(offset + 36);
+		for (int child=firstChild; child<firstChild + childCount; child++) {
+			if (level==0) {
+				int item = itemsOffset + child * ITEM_BYTES;
+				if (buffer.getDouble(item + 4) <= rectangle.getMaxX() && buffer.getDouble(item + 12) >= rectangle.getMinX()
+						&& buffer.getDouble(item + 20) <= rectangle.getMaxY() && buffer.getDouble(item + 28) >= rectangle.getMinY()) {
+					result.set(buffer.getInt(item));
+				}
+			} else {
+				search(level - 1, child, rectangle, result);
+			}
+		}
+	}
+
+	/**
+	 * Reconstruct the geometry of a feature.
+	 *
+	 * @param id the id of the feature.
+	 * @param geometryFactory the factory to create the geometry with.
+	 * @return the geometry, null if the feature has no geometry.
+	 */
+	public Geometry getGeometry(int id, GeometryFactory geometryFactory) {
+		byte kind = buffer.get(kindsOffset + id);
+		if (kind==NO_GEOMETRY) {
+			return null;
+		}
+		int firstPolygon = buffer.getInt(featurePolygonsOffset + id * 4);
+		int lastPolygon = buffer.getInt(featurePolygonsOffset + (id + 1) * 4);
+		if (kind==POINT || kind==MULTIPOINT) {
+			Point[] points = new Point[lastPolygon - firstPolygon];
+			for (int polygon=firstPolygon; polygon<lastPolygon; polygon++) {
+				int coordinate = buffer.getInt(ringCoordinatesOffset + buffer.getInt(polygonRingsOffset + polygon * 4) * 4);
+				points[polygon - firstPolygon] = geometryFactory.createPoint(getCoordinates(coordinate, coordinate + 1)[0]);
+			}
+			if (kind==POINT && points.length==1) {
+				return points[0];
+			}
+			return geometryFactory.createMultiPoint(points);
+		}
+		Polygon[] polygons = new Polygon[lastPolygon - firstPolygon];
+		for (int polygon=firstPolygon; polygon<lastPolygon; polygon++) {
+			int firstRing = buffer.getInt(polygonRingsOffset + polygon * 4);
+			int lastRing = buffer.getInt(polygonRingsOffset + (polygon + 1) * 4);
+			LinearRing shell = createRing(firstRing, geometryFactory);
+			LinearRing[] holes = new LinearRing[lastRing - firstRing - 1];
+			for (int ring=firstRing + 1; ring<lastRing; ring++) {
+				holes[ring - firstRing - 1] = createRing(ring, geometryFactory);
+			}
+			polygons[polygon - firstPolygon] = geometryFactory.createPolygon(shell, holes);
+		}
+		if (kind==POLYGON && polygons.length==1) {
+			return polygons[0];
+		}
+		return geometryFactory.createMultiPolygon(polygons);
+	}
+
+	private LinearRing createRing(int ring, GeometryFactory geometryFactory) {
+		int first = buffer.getInt(ringCoordinatesOffset + ring * 4);
+		int last = buffer.getInt(ringCoordinatesOffset + (ring + 1) * 4);
+		return geometryFactory.createLinearRing(getCoordinates(first, last));
+	}
+
+	private Coordinate[] getCoordinates(int first, int last) {
+		Coordinate[] result = new Coordinate[last - first];
+		for (int i=first; i<last; i++) {
+			int offset = coordinatesOffset + i * 16;
+			result[i - first] = new Coordinate(buffer.getDouble(offset), buffer.getDouble(offset + 8));
+		}
+		return result;
+	}
+
+	/**
+	 * Load all of the features of the boundary file into an indexed in memory layer.
+	 *
+	 * @return a new IndexedFeatureLayer containing the features.
+	 */
+	public IndexedFeatureLayer toFeatureLayer() {
+		long startTime = System.currentTimeMillis();
+		GeometryFactory geometryFactory = JTSFactoryFinder.getGeometryFactory(null);
+		List<SpatialFeature> features = new ArrayList<SpatialFeature>(featureCount);
+		for (int id=0; id<featureCount; id++) {
+			Map<String,Object> attributes = new LinkedHashMap<String,Object>();
+			for (String attribute : columns.keySet()) {
+				attributes.put(attribute, getAttribute(id, attribute));
+			}
+			features.add(new SpatialFeature(id, attributes, getGeometry(id, geometryFactory)));
+		}
+		logger.debug("Loaded " + featureCount + " features from boundary file of " + name + " in " + (System.currentTimeMillis() - startTime) + " ms");
+		return new IndexedFeatureLayer(name, features);
+	}
+
+	private static String readString(ByteBuffer buffer, int position) {
+		byte[] bytes = new byte[buffer.getInt(position)];
+		ByteBuffer view = buffer.duplicate();
+		((Buffer)view).position(position + 4);
+		view.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private static void writeString(DataOutputStream data, String value) throws IOException {
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		data.writeInt(bytes.length);
+		data.write(bytes);
+	}
+
+	/**
+	 * Write the features of a layer as a boundary file.
+	 *
+	 * @param layer the layer to write.
+	 * @param dataVersion the version of the data of the layer.
+	 * @param out the stream to write to, closed on completion.
+	 * @throws IOException on an error writing, or if the layer has geometries other than points and polygons.
+	 */
+	public static void write(IndexedFeatureLayer layer, String dataVersion, OutputStream out) throws IOException {
+		List<SpatialFeature> features = layer.getFeatures();
+		int featureCount = features.size();
+		byte[] kinds = new byte[featureCount];
+		int[] featurePolygons = new int[featureCount + 1];
+		List<Integer> polygonRings = new ArrayList<Integer>();
+		List<Integer> ringCoordinates = new ArrayList<Integer>();
+		List<Coordinate> coordinates = new ArrayList<Coordinate>();
+		for (int id=0; id<featureCount; id++) {
+			featurePolygons[id] = polygonRings.size();
+			Geometry geometry = features.get(id).getGeometry();
+			if (geometry==null || geometry.isEmpty()) {
+				kinds[id] = NO_GEOMETRY;
+			} else if (geometry instanceof Point || geometry instanceof MultiPoint) {
+				kinds[id] = geometry instanceof Point ? POINT : MULTIPOINT;
+				for (int i=0; i<geometry.getNumGeometries(); i++) {
+					polygonRings.add(Integer.valueOf(ringCoordinates.size()));
+					ringCoordinates.add(Integer.valueOf(coordinates.size()));
+					coordinates.add(geometry.getGeometryN(i).getCoordinate());
+				}
+			} else if (geometry instanceof Polygon || geometry instanceof MultiPolygon) {
+				kinds[id] = geometry instanceof Polygon ? POLYGON : MULTIPOLYGON;
+				for (int i=0; i<geometry.getNumGeometries(); i++) {
+					Polygon polygon = (Polygon)geometry.getGeometryN(i);
+					polygonRings.add(Integer.valueOf(ringCoordinates.size()));
+					ringCoordinates.add(Integer.valueOf(coordinates.size()));
+					coordinates.addAll(Arrays.asList(polygon.getExteriorRing().getCoordinates()));
+					for (int j=0; j<polygon.getNumInteriorRing(); j++) {
+						ringCoordinates.add(Integer.valueOf(coordinates.size()));
+						coordinates.addAll(Arrays.asList(polygon.getInteriorRingN(j).getCoordinates()));
+					}
+				}
+			} else {
+				throw new IOException("Unsupported geometry type " + geometry.getGeometryType() + " in " + layer.getName());
+			}
+		}
+		featurePolygons[featureCount] = polygonRings.size();
+		int polygonCount = polygonRings.size();
+		int ringCount = ringCoordinates.size();
+		polygonRings.add(Integer.valueOf(ringCount));
+		ringCoordinates.add(Integer.valueOf(coordinates.size()));
+
+		DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+		try {
+			data.writeInt(MAGIC);
+			data.writeInt(FORMAT_VERSION);
+			writeString(data, dataVersion);
+			writeString(data, layer.getName());
+			data.writeInt(featureCount);
+			data.writeInt(polygonCount);
+			data.writeInt(ringCount);
+			data.writeInt(coordinates.size());
+			for (SpatialFeature feature : features) {
+				Envelope envelope = feature.getGeometry()==null ? new Envelope() : feature.getGeometry().getEnvelopeInternal();
+				data.writeDouble(envelope.getMinX());
+				data.writeDouble(envelope.getMaxX());
+				data.writeDouble(envelope.getMinY());
+				data.writeDouble(envelope.getMaxY());
+			}
+			data.write(kinds);
+			for (int i=0; i<featurePolygons.length; i++) {
+				data.writeInt(featurePolygons[i]);
+			}
+			for (Integer value : polygonRings) {
+				data.writeInt(value.intValue());
+			}
+			for (Integer value : ringCoordinates) {
+				data.writeInt(value.intValue());
+			}
+			for (Coordinate coordinate : coordinates) {
+				data.writeDouble(coordinate.x);
+				data.writeDouble(coordinate.y);
+			}
+			writeIndex(data, features);
+			writeAttributes(data, features);
+		} finally {
+			data.close();
+		}
+	}
+
+	/**
+	 * Write a packed R-tree over the envelopes of the features, with the envelope of a
+	 * feature which crosses the antimeridian split in two.  The items are sorted into
+	 * vertical slices by the x of their centres, and each slice by the y of their
+	 * centres, then packed into leaf nodes, with each higher level packing consecutive
+	 * nodes of the level below.
+	 */
+	private static void writeIndex(DataOutputStream data, List<SpatialFeature> features) throws IOException {
+		List<IndexItem> items = new ArrayList<IndexItem>();
+		for (SpatialFeature feature : features) {
+			if (feature.getGeometry()!=null && !feature.getGeometry().isEmpty()) {
+				for (Envelope envelope : Antimeridian.splitEnvelope(feature.getGeometry())) {
+					items.add(new IndexItem(feature.getId(), envelope));
+				}
+			}
+		}
+		Collections.sort(items, new CentreComparator(true));
+		int leafCount = (items.size() + NODE_SIZE - 1) / NODE_SIZE;
+		int sliceSize = NODE_SIZE * (int)Math.ceil(Math.sqrt(leafCount));
+		for (int start=0; start<items.size(); start=start+sliceSize) {
+			Collections.sort(items.subList(start, Math.min(items.size(), start + sliceSize)), new CentreComparator(false));
+		}
+		data.writeInt(items.size());
+		List<Envelope> entries = new ArrayList<Envelope>();
+		for (IndexItem item : items) {
+			data.writeInt(item.id);
+			data.writeDouble(item.envelope.getMinX());
+			data.writeDouble(item.envelope.getMaxX());
+			data.writeDouble(item.envelope.getMinY());
+			data.writeDouble(item.envelope.getMaxY());
+			entries.add(item.envelope);
+		}
+		List<List<Envelope>> levels = new ArrayList<List<Envelope>>();
+		List<List<int[]>> children = new ArrayList<List<int[]>>();
+		while (!entries.isEmpty() && (levels.isEmpty() || entries.size() > 1)) {
+			List<Envelope> nodes = new ArrayList<Envelope>();
+			List<int[]> nodeChildren = new ArrayList<int[]>();
+			for (int start=0; start<entries.size(); start=start+NODE_SIZE) {
+				int end = Math.min(entries.size(), start + NODE_SIZE);
+				Envelope node = new Envelope();
+				for (int i=start; i<end; i++) {
+					node.expandToInclude(entries.get(i));
+				}
+				nodes.add(node);
+				nodeChildren.add(new int[] { start, end - start });
+			}
+			levels.add(nodes);
+			children.add(nodeChildren);
+			entries = nodes;
+		}
+		data.writeInt(levels.size());
+		for (int level=0; level<levels.size(); level++) {
+			List<Envelope> nodes = levels.get(level);
+			data.writeInt(nodes.size());
+			for (int i=0; i<nodes.size(); i++) {
+				Envelope node = nodes.get(i);
+				data.writeDouble(node.getMinX());
+				data.writeDouble(node.getMaxX());
+				data.writeDouble(node.getMinY());
+				data.writeDouble(node.getMaxY());
+				data.writeInt(children.get(level).get(i)[0]);
+				data.writeInt(children.get(level).get(i)[1]);
+			}
+		}
+	}
+
+	/**
+	 * An entry in the packed R-tree, a feature id with an envelope.
+	 */
+	private static class IndexItem {
+		private final int id;
+		private final Envelope envelope;
+
+		private IndexItem(int id, Envelope envelope) {
+			this.id = id;
+			this.envelope = envelope;
+		}
+	}
+
+	/**
+	 * Order index items by the x or y of the centre of their envelopes.
+	 */
+	private static class CentreComparator implements Comparator<IndexItem> {
+		private final boolean byX;
+
+		private CentreComparator(boolean byX) {
+			this.byX = byX;
+		}
+
+		@Override
+		public int compare(IndexItem a, IndexItem b) {
+			Envelope first = a.envelope;
+			Envelope second = b.envelope;
+			if (byX) {
+				return Double.compare(first.getMinX() + first.getMaxX(), second.getMinX() + second.getMaxX());
+			}
+			return Double.compare(first.getMinY() + first.getMaxY(), second.getMinY() + second.getMaxY());
+		}
+	}
+
+	/**
+	 * Write the attribute columns, each column taking the narrowest type that holds all of
+	 * its values, values of types other than numbers and strings are written as strings.
+	 */
+	private static void writeAttributes(DataOutputStream data, List<SpatialFeature> features) throws IOException {
+		List<String> attributes = new ArrayList<String>();
+		for (SpatialFeature feature : features) {
+			for (String attribute : feature.getAttributes().keySet()) {
+				if (!attributes.contains(attribute)) {
+					attributes.add(attribute);
+				}
+			}
+		}
+		data.writeInt(attributes.size());
+		for (String attribute : attributes) {
+			boolean allIntegers = true;
+			boolean allLongs = true;
+			boolean allDoubles = true;
+			boolean anyValue = false;
+			for (SpatialFeature feature : features) {
+				Object value = feature.getAttribute(attribute);
+				if (value!=null) {
+					anyValue = true;
+					allIntegers = allIntegers && value instanceof Integer;
+					allLongs = allLongs && (value instanceof Long || value instanceof Integer);
+					allDoubles = allDoubles && value instanceof Double;
+				}
+			}
+			byte type = STRING_COLUMN;
+			if (anyValue && allIntegers) {
+				type = INTEGER_COLUMN;
+			} else if (anyValue && allLongs) {
+				type = LONG_COLUMN;
+			} else if (anyValue && allDoubles) {
+				type = DOUBLE_COLUMN;
+			}
+			writeString(data, attribute);
+			data.writeByte(type);
+			for (SpatialFeature feature : features) {
+				data.writeByte(feature.getAttribute(attribute)==null ? 1 : 0);
+			}
+			if (type==STRING_COLUMN) {
+				List<byte[]> values = new ArrayList<byte[]>(features.size());
+				int offset = 0;
+				for (SpatialFeature feature : features) {
+					Object value = feature.getAttribute(attribute);
+					byte[] bytes = value==null ? new byte[0] : value.toString().getBytes(StandardCharsets.UTF_8);
+					values.add(bytes);
+					data.writeInt(offset);
+					offset += bytes.length;
+				}
+				data.writeInt(offset);
+				for (byte[] bytes : values) {
+					data.write(bytes);
+				}
+			} else {
+				for (SpatialFeature feature : features) {
+					Number value = (Number)feature.getAttribute(attribute);
+					if (type==INTEGER_COLUMN) {
+						data.writeInt(value==null ? 0 : value.intValue());
+					} else if (type==LONG_COLUMN) {
+						data.writeLong(value==null ? 0L : value.longValue());
+					} else {
+						data.writeDouble(value==null ? 0d : value.doubleValue());
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Obtain the classpath location of the boundary file for a shapefile.
+	 *
+	 * @param shapeFileResource the classpath location of the shapefile.
+	 * @return the classpath location of the corresponding boundary file.
+	 */
+	public static String getResource(String shapeFileResource) {
+		return baseName(shapeFileResource) + EXTENSION;
+	}
+
+	private static String baseName(String shapeFileResource) {
+		if (shapeFileResource.toLowerCase().endsWith(".shp")) {
+			return shapeFileResource.substring(0, shapeFileResource.length() - 4);
+		}
+		return shapeFileResource;
+	}
+
+	/**
+	 * Read the version of the data of a shapefile from the VERSION.txt file beside it.
+	 *
+	 * @param shapeFileResource the classpath location of the shapefile.
+	 * @return the first line of the version file, or an empty string if there is no version file.
+	 * @throws IOException if the version file cannot be read.
+	 */
+	public static String readDataVersion(String shapeFileResource) throws IOException {
+		InputStream in = BoundaryFile.class.getResourceAsStream(baseName(shapeFileResource) + ".VERSION.txt");
+		if (in==null) {
+			return "";
+		}
+		BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+		try {
+			String line = reader.readLine();
+			return line==null ? "" : line.trim();
+		} finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * Generate a boundary file for each of the layers of the {@link SpatialLayerRegistry}
+	 * from the shapefiles on the classpath.  A boundary file is regenerated only if it is
+	 * missing, is from a different data version, or is older than its shapefile.
+	 *
+	 * @param args the output directory.
+	 * @throws IOException on an error reading a shapefile or writing a boundary file.
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1) {
+			System.out.println("Usage: BoundaryFile outputdirectory");
+			System.exit(1);
+		}
+		File outputDirectory = new File(args[0]);
+		outputDirectory.mkdirs();
+		SpatialLayerRegistry registry = SpatialLayerRegistry.getInstance();
+		for (EnumGeoRefSourceAuthority authority : registry.getAuthorities()) {
+			SpatialLayer layer = registry.getLayer(authority);
+			URL shapeFile = BoundaryFile.class.getResource(layer.getResource());
+			if (shapeFile==null) {
+				System.out.println("No shapefile for " + authority.getName() + ", skipping.");
+				continue;
+			}
+			String resource = getResource(layer.getResource());
+			File outputFile = new File(outputDirectory, resource.substring(resource.lastIndexOf('/') + 1));
+			String dataVersion = readDataVersion(layer.getResource());
+			if (outputFile.exists()) {
+				try {
+					BoundaryFile existing = open(outputFile);
+					boolean newer = !"file".equals(shapeFile.getProtocol()) || outputFile.lastModified() >= new File(shapeFile.toURI()).lastModified();
+					if (existing.getDataVersion().equals(dataVersion) && newer) {
+						System.out.println("Boundary file " + outputFile.getPath() + " is up to date.");
+						continue;
+					}
+				} catch (IOException e) {
+					logger.debug(e.getMessage());
+				} catch (URISyntaxException e) {
+					logger.debug(e.getMessage());
+				}
+			}
+			IndexedFeatureLayer features = IndexedFeatureLayer.load(shapeFile);
+			// written beside and then moved over the old file, which may still be mapped
+			File temporary = new File(outputDirectory, outputFile.getName() + ".tmp");
+			write(features, dataVersion, new FileOutputStream(temporary));
+			Files.move(temporary.toPath(), outputFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			System.out.println("Wrote boundary file " + outputFile.getPath());
+		}
+	}
+
+}
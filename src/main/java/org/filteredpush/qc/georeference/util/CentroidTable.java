@@ -0,0 +1,243 @@
+/**
+ * CentroidTable.java
+ *
+ * Copyright 2026 President and Fellows of Harvard College
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.filteredpush.qc.georeference.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.index.kdtree.KdNode;
+import org.locationtech.jts.index.kdtree.KdTree;
+
+/**
+ * Resident tables of the country centroids and country areas from the GBIF catalogue of
+ * country centroids, keyed by ISO two letter country code, with a k-d tree over all of
+ * the centroids for distance queries.  The centroid layer is small, so it is read once
+ * into these tables and the centre of country test makes no further use of the shapefile.
+ *
+ * Instances are immutable once built and are safe to share between threads.
+ *
+ * @author mole
+ * @version $Id: $Id
+ */
+public class CentroidTable {
+
+	private static final Log logger = LogFactory.getLog(CentroidTable.class);
+
+	/** Attribute of the centroid layer holding the ISO two letter country code. */
+	public static final String CODE_ATTRIBUTE = "iso2";
+
+	/** Attribute of the centroid layer holding the area of the country in square km. */
+	public static final String AREA_ATTRIBUTE = "area_sqkm";
+
+	/** Margin added to query envelopes so that centroids exactly at the buffer distance are found. */
+	private static final double ENVELOPE_MARGIN = 1e-9d;
+
+	private final Map<String,List<Centroid>> centroidsByCode;
+	private final Map<String,Double> areaByCode;
+	private final KdTree tree;
+	private final int centroidCount;
+
+	/**
+	 * One centroid of a country.
+	 */
+	public static class Centroid {
+
+		private final String countryCode;
+		private final double longitude;
+		private final double latitude;
+
+		private Centroid(String countryCode, double longitude, double latitude) {
+			this.countryCode = countryCode;
+			this.longitude = longitude;
+			this.latitude = latitude;
+		}
+
+		/**
+		 * <p>Getter for the field <code>countryCode</code>.</p>
+		 *
+		 * @return the country code of the centroid, as given in the layer.
+		 */
+		public String getCountryCode() {
+			return countryCode;
+		}
+
+		/**
+		 * <p>Getter for the field <code>longitude</code>.</p>
+		 *
+		 * @return the longitude of the centroid.
+		 */
+		public double getLongitude() {
+			return longitude;
+		}
+
+		/**
+		 * <p>Getter for the field <code>latitude</code>.</p>
+		 *
+		 * @return the latitude of the centroid.
+		 */
+		public double getLatitude() {
+			return latitude;
+		}
+	}
+
+	/**
+	 * Build the tables from the features of the centroid layer.
+	 *
+	 * @param layer the GBIF country centroid features.
+	 */
+	public CentroidTable(IndexedFeatureLayer layer) {
+		long startTime = System.currentTimeMillis();
+		this.centroidsByCode = new HashMap<String,List<Centroid>>();
+		this.areaByCode = new HashMap<String,Double>();
+		this.tree = new KdTree();
+		int count = 0;
+		for (SpatialFeature feature : layer.getFeatures()) {
+			String code = feature.getAttributeAsString(CODE_ATTRIBUTE);
+			if (code==null) {
+				continue;
+			}
+			String key = AttributeIndex.foldCase(code);
+			// the area of a country is taken from the first of its features with a numeric area
+			Object area = feature.getAttribute(AREA_ATTRIBUTE);
+			if (area instanceof Double && !areaByCode.containsKey(key)) {
+				areaByCode.put(key, (Double)area);
+			}
+			Geometry geometry = feature.getGeometry();
+			if (geometry==null || geometry.isEmpty()) {
+				continue;
+			}
+			List<Centroid> centroids = centroidsByCode.get(key);
+			if (centroids==null) {
+				centroids = new ArrayList<Centroid>();
+				centroidsByCode.put(key, centroids);
+			}
+			for (Coordinate coordinate : geometry.getCoordinates()) {
+				Centroid centroid = new Centroid(code, coordinate.x, coordinate.y);
+				centroids.add(centroid);
+				insert(centroid);
+				count++;
+			}
+		}
+		this.centroidCount = count;
+		logger.debug("Loaded " + count + " centroids for " + centroidsByCode.size() + " countries in " + (System.currentTimeMillis() - startTime) + " ms");
+	}
+
+	@SuppressWarnings("unchecked")
+	private void insert(Centroid centroid) {
+		// coincident points share one node of the tree, each node holds the list of its centroids
+		KdNode node = tree.insert(new Coordinate(centroid.getLongitude(), centroid.getLatitude()), new ArrayList<Centroid>(1));
+		((List<Centroid>)node.getData()).add(centroid);
+	}
+
+	/**
+	 * @return the number of centroids in the table.
+	 */
+	public int getCentroidCount() {
+		return centroidCount;
+	}
+
+	/**
+	 * Obtain the centroids for a country.
+	 *
+	 * @param countryCode the ISO two letter country code, case is ignored.
+	 * @return the centroids for the country, empty if the country code is not known.
+	 */
+	public List<Centroid> getCentroids(String countryCode) {
+		List<Centroid> result = countryCode==null ? null : centroidsByCode.get(AttributeIndex.foldCase(countryCode));
+		if (result==null) {
+			return Collections.emptyList();
+		}
+		return Collections.unmodifiableList(result);
+	}
+
+	/**
+	 * Obtain the area of a country.
+	 *
+	 * @param countryCode the ISO two letter country code, case is ignored.
+	 * @return the area of the country in square km, or null if not found.
+	 */
+	public Double getArea(String countryCode) {
+		if (countryCode==null) {
+			return null;
+		}
+		return areaByCode.get(AttributeIndex.foldCase(countryCode));
+	}
+
+	/**
+	 * Find the centroids of any country within a distance of a point.
+	 *
+	 * @param longitude of the point.
+	 * @param latitude of the point.
+	 * @param distanceMeters the buffer distance in meters, measured along the surface of the earth.
+	 * @return the centroids within the distance of the point.
+	 */
+	@SuppressWarnings("unchecked")
+	public List<Centroid> findWithinDistance(double longitude, double latitude, double distanceMeters) {
+		List<Centroid> result = new ArrayList<Centroid>();
+		for (KdNode node : queryNodes(longitude, latitude, distanceMeters)) {
+			for (Centroid centroid : (List<Centroid>)node.getData()) {
+				if (GeodesicDistanceIndex.distanceMeters(longitude, latitude, centroid.getLongitude(), centroid.getLatitude()) <= distanceMeters) {
+					result.add(centroid);
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Test whether a point is within a distance of a centroid of a country.
+	 *
+	 * @param countryCode the ISO two letter country code, case is ignored.
+	 * @param longitude of the point.
+	 * @param latitude of the point.
+	 * @param distanceMeters the buffer distance in meters, measured along the surface of the earth.
+	 * @return true if any centroid of the country is within the distance of the point.
+	 */
+	public boolean isNearCentroid(String countryCode, double longitude, double latitude, double distanceMeters) {
+		if (countryCode==null || !centroidsByCode.containsKey(AttributeIndex.foldCase(countryCode))) {
+			return false;
+		}
+		for (Centroid centroid : findWithinDistance(longitude, latitude, distanceMeters)) {
+			if (centroid.getCountryCode().equalsIgnoreCase(countryCode)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@SuppressWarnings("unchecked")
+	private List<KdNode> queryNodes(double longitude, double latitude, double distanceMeters) {
+		double latitudeSpan = GeodesicDistanceIndex.latitudeSpan(distanceMeters) + ENVELOPE_MARGIN;
+		double longitudeSpan = GeodesicDistanceIndex.longitudeSpan(latitude, distanceMeters) + ENVELOPE_MARGIN;
+		List<KdNode> result = new ArrayList<KdNode>();
+		// the search area wraps across the antimeridian
+		for (Envelope search : Antimeridian.queryEnvelopes(longitude, latitude, longitudeSpan, latitudeSpan)) {
+			result.addAll(tree.query(search));
+		}
+		return result;
+	}
+
+}
@@ -6,7 +6,7 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.net.URI;
-import java.net.URL;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Iterator;
@@ -20,13 +20,9 @@ import java.util.regex.Pattern;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.filteredpush.qc.georeference.EnumGeoRefSourceAuthority;
 import org.filteredpush.qc.georeference.SourceAuthorityException;
-import org.geotools.api.data.FileDataStore;
-import org.geotools.api.data.FileDataStoreFinder;
-import org.geotools.api.data.SimpleFeatureSource;
 import org.geotools.api.feature.Property;
-import org.geotools.api.feature.simple.SimpleFeature;
-import org.geotools.api.filter.Filter;
 import org.geotools.api.metadata.quality.PositionalAccuracy;
 import org.geotools.api.metadata.quality.QuantitativeResult;
 import org.geotools.api.metadata.quality.Result;
@@ -43,10 +39,6 @@ import org.geotools.api.referencing.operation.CoordinateOperation;
 import org.geotools.api.referencing.operation.TransformException;
 import org.geotools.api.referencing.operation.MathTransform;
 import org.geotools.api.util.Record;
-import org.geotools.data.simple.SimpleFeatureCollection;
-import org.geotools.data.simple.SimpleFeatureIterator;
-import org.geotools.filter.text.cql2.CQLException;
-import org.geotools.filter.text.ecql.ECQL;
 import org.geotools.geometry.jts.JTS;
 import org.geotools.referencing.CRS;
 import org.geotools.referencing.GeodeticCalculator;
@@ -377,13 +369,33 @@ public class GEOUtil {
      * @throws SourceAuthorityException 
      */
     public static boolean isOnOrNearLand(double Xvalue, double Yvalue, boolean invertSense, double bufferInMeters) throws SourceAuthorityException { 
+    	return isOnOrNearLand(new SpatialContext(Yvalue, Xvalue), invertSense, bufferInMeters);
+    }
+
+    /**
+     * Test to see if the coordinate of a spatial context is on or near land.
+     *
+     * @param context the spatial context for the coordinate.
+     * @param invertSense true to return true when the coordinate is not on or near land.
+     * @param bufferInMeters the buffer distance in meters.
+     * @return true if the coordinate is on or within bufferInMeters of land, inverted if invertSense is true.
+     * @throws SourceAuthorityException if the land data cannot be read.
+     */
+    public static boolean isOnOrNearLand(SpatialContext context, boolean invertSense, double bufferInMeters) throws SourceAuthorityException { 
     	boolean result = false;
     	
     	double bufferKm = bufferInMeters/1000;
     	
-    	GISDataLoader loader = new GISDataLoader();
+    	try {
+    		result = context.isOnOrNearLand(bufferKm);
+    	} catch (IOException e) {
+    		logger.error(e.getMessage(), e);
+    		throw new SourceAuthorityException("Error reading spatial data file: " + e.getMessage());
+    	}
     	
-    	result = loader.pointIsWithinOrNearLand(Xvalue, Yvalue, invertSense,bufferKm);
+    	if (invertSense) {
+    		result = !result;
+    	}
     	
     	return result;
     }
@@ -418,27 +430,41 @@ public class GEOUtil {
 	 * @param longitude a double.
 	 * @return a boolean.
 	 */
-	public static boolean isPointInCountry(String country, double latitude, double longitude) { 
+	public static boolean isPointInCountry(final String country, final double latitude, final double longitude) { 
 		boolean result = false;
-        URL countryShapeFile = GEOUtil.class.getResource("/org.filteredpush.kuration.services/ne_10m_admin_0_countries.shp");
-        FileDataStore store = null;
 		try {
-			store = FileDataStoreFinder.getDataStore(countryShapeFile);
-            SimpleFeatureSource featureSource = store.getFeatureSource();
-		    Filter filter = ECQL.toFilter("NAME ILIKE '"+ country +"' AND CONTAINS(the_geom, POINT(" + Double.toString(longitude) + " " + Double.toString(latitude) + "))");
-		    SimpleFeatureCollection collection=featureSource.getFeatures(filter);
-		    result = !collection.isEmpty();
-		    featureSource.getFeatures().features().close();
+			SpatialResultCache.Key key = new SpatialResultCache.Key(EnumGeoRefSourceAuthority.NE_ADMIN_0, "isPointInCountry", latitude, longitude, 0d, country);
+			result = cachedTest(key, new SpatialResultCache.Computation<Boolean>() {
+				@Override
+				public Boolean compute() throws IOException {
+					if (country==null) {
+						return Boolean.FALSE;
+					}
+					// NAME ILIKE country AND CONTAINS(the_geom, point)
+					SpatialBackend backend = SpatialLayerRegistry.getInstance().getBackend(EnumGeoRefSourceAuthority.NE_ADMIN_0);
+					return Boolean.valueOf(backend.contains(EnumGeoRefSourceAuthority.NE_ADMIN_0, AttributeMatch.equal("NAME", country), longitude, latitude));
+				}
+			});
 		} catch (IOException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
-		} catch (CQLException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
-		} finally { 
-			if (store!=null) { 
-				store.dispose(); 
-			}			
+			logger.error(e.getMessage(), e);
+		}
+		return result;
+	}
+	
+	/**
+	 * Test a list of alternative coordinates against a country in one call, setting the matched
+	 * flag of each alternative to whether it is inside the country.
+	 *
+	 * @param country the name of the country.
+	 * @param alternatives the alternative coordinates to test.
+	 * @return the alternatives inside the country, in the order of alternatives.
+	 */
+	public static List<GeolocationAlternative> findAlternativesInCountry(String country, List<GeolocationAlternative> alternatives) { 
+		List<GeolocationAlternative> result = new ArrayList<GeolocationAlternative>();
+		try {
+			result = AlternativeEvaluator.forCountry(country).findContained(alternatives);
+		} catch (IOException e) {
+			logger.error(e.getMessage(), e);
 		}
 		return result;
 	}
@@ -453,57 +479,36 @@ public class GEOUtil {
 	 */
 	public static String getCountryForPoint(String latitude, String longitude) { 
 		String result = null;
-		URL combinedShapeFile = GEOUtil.class.getResource("/org.filteredpush.kuration.services/merged_countries_and_eez.shp");
-        FileDataStore store = null;
 		try {
-			store = FileDataStoreFinder.getDataStore(combinedShapeFile);
-            SimpleFeatureSource featureSource = store.getFeatureSource();
-		    Filter filter = ECQL.toFilter("CONTAINS(the_geom, POINT(" + longitude + " " + latitude + "))");
-		    logger.debug(filter.toString());
-		    SimpleFeatureCollection collection=featureSource.getFeatures(filter);
-		    logger.debug(collection.size());
-		    if (!collection.isEmpty()) {
-		    	if (collection.size()==1) {
-		    		SimpleFeature feature = collection.features().next();
-		    		result = feature.getAttribute("ISO_SOV1").toString();
-		    		if (!GEOUtil.isEmpty(feature.getAttribute("ISO_SOV2").toString())) {
-		    			result = null;
-		    		}
-		    	}  else { 
-		    		SimpleFeatureIterator i = collection.features();
-		    		SimpleFeature feature = i.next();
-		    		String aMatch = feature.getAttribute("ISO_SOV1").toString();
-		    		logger.debug(aMatch);
-		    		boolean singleMatch = true;
-	    			if (!GEOUtil.isEmpty(feature.getAttribute("ISO_SOV2").toString())) {
-	    				singleMatch=false;
-	    			}
-		    		while (i.hasNext() && singleMatch) { 
-		    			feature = i.next();
-		    			String anotherMatch = feature.getAttribute("ISO_SOV1").toString();
-		    			if (!GEOUtil.isEmpty(feature.getAttribute("ISO_SOV2").toString())) {
-		    				singleMatch=false;
-		    			}
-		    			logger.debug(anotherMatch);
-		    			if (! aMatch.equals(anotherMatch)) { 
-		    				singleMatch = false;
-		    			}
-		    		}
-		    		i.close();
-		    		if (singleMatch) {
-		    			result = aMatch;
-		    		}
-		    	}
-		    	featureSource.getDataStore().dispose();
-		    }
-		} catch (IOException e) {
+			double lat = Double.parseDouble(latitude.trim());
+			double lng = Double.parseDouble(longitude.trim());
+			result = getCountryForPoint(new SpatialContext(lat, lng));
+		} catch (NumberFormatException e) {
+			logger.debug(e.getMessage());
+		} catch (NullPointerException e) {
 			logger.debug(e.getMessage());
-		} catch (CQLException e) {
+		}
+		return result;
+	}
+	
+	/**
+	 * Return the country code for a containing country, including EEZ, for the coordinate of a spatial context.
+	 *
+	 * @param context the spatial context for the coordinate.
+	 * @return an ISO three letter country code, or null if not matched or if multiple matches.
+	 */
+	public static String getCountryForPoint(final SpatialContext context) { 
+		String result = null;
+		try {
+			SpatialResultCache.Key key = new SpatialResultCache.Key(EnumGeoRefSourceAuthority.ADM1_UNION_EEZ, "getCountryForPoint", context.getLatitude(), context.getLongitude(), 0d);
+			result = SpatialLayerRegistry.getInstance().getResultCache().get(key, new SpatialResultCache.Computation<String>() {
+				@Override
+				public String compute() throws IOException {
+					return context.getSovereign();
+				}
+			});
+		} catch (IOException e) {
 			logger.debug(e.getMessage());
-		} finally { 
-			if (store!=null) {
-				store.dispose(); 
-			}			
 		}
 		return result;
 	}
@@ -517,25 +522,19 @@ public class GEOUtil {
 	 * @param distanceKm a double.
 	 * @return true if latitude/longitude is inside or within distanceKm of any part of country.
 	 */
-	public static boolean isPointNearCountry(String country, double latitude, double longitude, double distanceKm) { 
+	public static boolean isPointNearCountry(final String country, final double latitude, final double longitude, final double distanceKm) { 
 		boolean result = false;
-        URL countryShapeFile = GEOUtil.class.getResource("/org.filteredpush.kuration.services/ne_10m_admin_0_countries.shp");
-        FileDataStore store = null;
 		try {
-			store = FileDataStoreFinder.getDataStore(countryShapeFile);
-            SimpleFeatureSource featureSource = store.getFeatureSource();
-            double distanceD = distanceKm / 111d; // GeoTools ignores units, uses units of underlying projection (degrees in this case), fudge by dividing km by number of km in one degree of latitude (this will describe a wide ellipse far north or south).
-		    Filter filter = ECQL.toFilter("NAME ILIKE '"+ country +"' AND DWITHIN(the_geom, POINT(" + Double.toString(longitude) + " " + Double.toString(latitude) + "), "+ distanceD +", kilometers)");
-		    SimpleFeatureCollection collection=featureSource.getFeatures(filter);
-		    result = !collection.isEmpty();
-		    SimpleFeatureIterator i = collection.features();
-		    i.close();
+			SpatialResultCache.Key key = new SpatialResultCache.Key(EnumGeoRefSourceAuthority.NE_ADMIN_0, "isPointNearCountry", latitude, longitude, distanceKm, country);
+			result = cachedTest(key, new SpatialResultCache.Computation<Boolean>() {
+				@Override
+				public Boolean compute() throws IOException {
+					SpatialBackend backend = SpatialLayerRegistry.getInstance().getBackend(EnumGeoRefSourceAuthority.NE_ADMIN_0);
+					return Boolean.valueOf(backend.isWithinDistance(EnumGeoRefSourceAuthority.NE_ADMIN_0, AttributeMatch.equal("NAME", country), longitude, latitude, distanceKm * 1000d));
+				}
+			});
 		} catch (IOException e) {
 			logger.debug(e.getMessage());
-		} catch (CQLException e) {
-			logger.debug(e.getMessage());
-		} finally { 
-			if (store!=null) { store.dispose(); }			
 		}
 		return result;
 	}	
@@ -551,32 +550,53 @@ public class GEOUtil {
 	 * @return true if latitude/longitude is inside or within distanceKm of any part of country or EEZ.
 	 */
 	public static boolean isPointNearCountryPlusEEZ(String countryCode, double latitude, double longitude, double distanceKm) { 
+		return isPointNearCountryPlusEEZ(countryCode, new SpatialContext(latitude, longitude), distanceKm);
+	}	
+	
+	/**
+	 * Test to see if the coordinate of a spatial context is near (to a specified distance in km) 
+	 * or within a country including Marine Exclusive Economic Zones.
+	 *
+	 * @param countryCode three letter country code
+	 * @param context the spatial context for the coordinate.
+	 * @param distanceKm buffer distance in km.
+	 * @return true if the coordinate is inside or within distanceKm of any part of country or EEZ.
+	 */
+	public static boolean isPointNearCountryPlusEEZ(final String countryCode, final SpatialContext context, final double distanceKm) { 
 		boolean result = false;
-		URL combinedShapeFile = GEOUtil.class.getResource("/org.filteredpush.kuration.services/merged_countries_and_eez.shp");
-		FileDataStore store = null;
 		try {
-			store = FileDataStoreFinder.getDataStore(combinedShapeFile);
-			SimpleFeatureSource featureSource = store.getFeatureSource();
-			double distanceD = distanceKm / 111d; // GeoTools ignores units, uses units of underlying projection (degrees in this case), fudge by dividing km by number of km in one degree of latitude (this will describe a wide ellipse far north or south).
-			Filter filter = ECQL.toFilter("ISO_SOV1 ILIKE '"+ countryCode +"' AND DWITHIN(the_geom, POINT(" + Double.toString(longitude) + " " + Double.toString(latitude) + "), "+ distanceD +", kilometers)");
-			SimpleFeatureCollection collection=featureSource.getFeatures(filter);
-			result = !collection.isEmpty();
-			featureSource.getDataStore().dispose();
-		    SimpleFeatureIterator i = collection.features();
-		    i.close();
+			SpatialResultCache.Key key = new SpatialResultCache.Key(EnumGeoRefSourceAuthority.ADM1_UNION_EEZ, "isPointNearCountryPlusEEZ", context.getLatitude(), context.getLongitude(), distanceKm, countryCode);
+			result = cachedTest(key, new SpatialResultCache.Computation<Boolean>() {
+				@Override
+				public Boolean compute() throws IOException {
+					return Boolean.valueOf(context.isWithinDistance(EnumGeoRefSourceAuthority.ADM1_UNION_EEZ, matchSovereign(countryCode), distanceKm));
+				}
+			});
 		} catch (IOException e) {
 			logger.debug(e.getMessage());
-		} catch (CQLException e) {
+		}
+		return result;
+	}	
+	
+	/**
+	 * Test a list of alternative coordinates against a country including Marine Exclusive
+	 * Economic Zones in one call, setting the matched flag of each alternative to whether it
+	 * is inside or within a distance of the country.
+	 *
+	 * @param countryCode three letter country code
+	 * @param alternatives the alternative coordinates to test.
+	 * @param distanceKm buffer distance in km.
+	 * @return the alternatives inside or within distanceKm of any part of country or EEZ, in
+	 *   the order of alternatives.
+	 */
+	public static List<GeolocationAlternative> findAlternativesNearCountryPlusEEZ(String countryCode, List<GeolocationAlternative> alternatives, double distanceKm) { 
+		List<GeolocationAlternative> result = new ArrayList<GeolocationAlternative>();
+		try {
+			AlternativeEvaluator sovereign = new AlternativeEvaluator(EnumGeoRefSourceAuthority.ADM1_UNION_EEZ, matchSovereign(countryCode));
+			result = sovereign.findWithinDistance(alternatives, distanceKm * 1000d);
+		} catch (IOException e) {
 			logger.debug(e.getMessage());
-		} finally { 
-			if (store!=null) { 
-				try { 
-					store.dispose();
-				} catch (Exception e) { 
-					logger.error(e.getMessage());
-				}
-			}			
-		}		
+		}
 		return result;
 	}	
 	
@@ -589,24 +609,23 @@ public class GEOUtil {
 	 * @param longitude a double.
 	 * @return a boolean.
 	 */
-	public static boolean isPointInPrimary(String country, String primaryDivision, double latitude, double longitude) { 
+	public static boolean isPointInPrimary(final String country, final String primaryDivision, final double latitude, final double longitude) { 
 		boolean result = false;
-        URL countryShapeFile = GEOUtil.class.getResource("/org.filteredpush.kuration.services/ne_10m_admin_1_states_provinces.shp");
-        FileDataStore store = null;
 		try {
-			store = FileDataStoreFinder.getDataStore(countryShapeFile);
-            SimpleFeatureSource featureSource = store.getFeatureSource();
-            if (country.toLowerCase().equals("united states")) { country = "United States of America"; } 
-		    Filter filter = ECQL.toFilter("name ILIKE '"+ primaryDivision.replace("'", "''") +"' AND admin ILIKE '"+ country +"' AND CONTAINS(the_geom, POINT(" + Double.toString(longitude) + " " + Double.toString(latitude) + "))");
-		    SimpleFeatureCollection collection=featureSource.getFeatures(filter);
-		    result = !collection.isEmpty();
+			SpatialResultCache.Key key = new SpatialResultCache.Key(EnumGeoRefSourceAuthority.NE_ADMIN_1, "isPointInPrimary", latitude, longitude, 0d, country, primaryDivision);
+			result = cachedTest(key, new SpatialResultCache.Computation<Boolean>() {
+				@Override
+				public Boolean compute() throws IOException {
+					String admin = country;
+					if (admin.toLowerCase().equals("united states")) { admin = "United States of America"; } 
+					// name ILIKE primaryDivision AND admin ILIKE country AND CONTAINS(the_geom, point)
+					AttributeMatch match = AttributeMatch.allOf(AttributeMatch.equal("name", primaryDivision), AttributeMatch.equal("admin", admin));
+					SpatialBackend backend = SpatialLayerRegistry.getInstance().getBackend(EnumGeoRefSourceAuthority.NE_ADMIN_1);
+					return Boolean.valueOf(backend.contains(EnumGeoRefSourceAuthority.NE_ADMIN_1, match, longitude, latitude));
+				}
+			});
 		} catch (IOException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
-		} catch (CQLException e) {
-			System.out.println("GEOUtil.isPointInPrimary error: " + e.getMessage());
-		} finally { 
-			if (store!=null) { store.dispose(); }			
+			logger.error(e.getMessage(), e);
 		}
 		return result;
 	}
@@ -621,26 +640,22 @@ public class GEOUtil {
 	 * @return true if latitude/longitude is inside or within distanceKm of a primary division (state/province) of a given country.
 	 * @param primaryDivision a {@link java.lang.String} object.
 	 */
-	public static boolean isPointNearPrimary(String country, String primaryDivision, double latitude, double longitude, double distanceKm) {
+	public static boolean isPointNearPrimary(final String country, final String primaryDivision, final double latitude, final double longitude, final double distanceKm) {
 		boolean result = false;
-		URL countryShapeFile = GEOUtil.class.getResource("/org.filteredpush.kuration.services/ne_10m_admin_1_states_provinces.shp");
-		FileDataStore store = null;
 		try {
-			store = FileDataStoreFinder.getDataStore(countryShapeFile);
-			SimpleFeatureSource featureSource = store.getFeatureSource();
-			if (country.toLowerCase().equals("united states")) { country = "United States of America"; }
-			double distanceD = distanceKm / 111d; // GeoTools ignores units, uses units of underlying projection (degrees in this case), fudge by dividing km by number of km in one degree of latitude (this will describe a wide ellipse far north or south).
-			Filter filter = ECQL.toFilter("name ILIKE '"+ primaryDivision.replace("'", "''") +"' AND admin ILIKE '"+ country +"' AND DWITHIN(the_geom, POINT(" + Double.toString(longitude) + " " + Double.toString(latitude) + "), "+ distanceD +", kilometers)");
-			SimpleFeatureCollection collection=featureSource.getFeatures(filter);
-			result = !collection.isEmpty();
+			SpatialResultCache.Key key = new SpatialResultCache.Key(EnumGeoRefSourceAuthority.NE_ADMIN_1, "isPointNearPrimary", latitude, longitude, distanceKm, country, primaryDivision);
+			result = cachedTest(key, new SpatialResultCache.Computation<Boolean>() {
+				@Override
+				public Boolean compute() throws IOException {
+					String admin = country;
+					if (admin.toLowerCase().equals("united states")) { admin = "United States of America"; }
+					AttributeMatch match = AttributeMatch.allOf(AttributeMatch.equal("name", primaryDivision), AttributeMatch.equal("admin", admin));
+					SpatialBackend backend = SpatialLayerRegistry.getInstance().getBackend(EnumGeoRefSourceAuthority.NE_ADMIN_1);
+					return Boolean.valueOf(backend.isWithinDistance(EnumGeoRefSourceAuthority.NE_ADMIN_1, match, longitude, latitude, distanceKm * 1000d));
+				}
+			});
 		} catch (IOException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
-		} catch (CQLException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
-		} finally {
-			if (store!=null) { store.dispose(); }
+			logger.error(e.getMessage(), e);
 		}
 		return result;
 	}
@@ -656,43 +671,61 @@ public class GEOUtil {
 	 * @return true if latitude/longitude is inside or within distanceKm of a primary division (state/province) of a given country.
 	 */
 	public static boolean isPointNearPrimaryAllowDuplicates(String primaryDivision, double latitude, double longitude, double distanceKm) {
+		return isPointNearPrimaryAllowDuplicates(primaryDivision, new SpatialContext(latitude, longitude), distanceKm);
+	}
+	
+	/**
+	 * Test to see if the coordinate of a spatial context is near (to a specified distance in km) or 
+	 * within a primary division (state/province) without specifying the country.
+	 *
+	 * @param primaryDivision the primary division to look up.
+	 * @param context the spatial context for the coordinate.
+	 * @param distanceKm a double.
+	 * @return true if the coordinate is inside or within distanceKm of a primary division (state/province) with a matching name.
+	 */
+	public static boolean isPointNearPrimaryAllowDuplicates(final String primaryDivision, final SpatialContext context, final double distanceKm) {
+		return isPointNearPrimaryAllowDuplicates(EnumGeoRefSourceAuthority.NE_ADMIN_1, primaryDivision, context, distanceKm);
+	}
+
+	/**
+	 * Test to see if the coordinate of a spatial context is near (to a specified distance in km) or 
+	 * within a primary division (state/province) of a primary division layer without specifying the country.
+	 *
+	 * @param primaryLayer the layer of primary divisions, NE_ADMIN_1 or GADM_ADM1.
+	 * @param primaryDivision the primary division to look up.
+	 * @param context the spatial context for the coordinate.
+	 * @param distanceKm a double.
+	 * @return true if the coordinate is inside or within distanceKm of a primary division (state/province) with a matching name.
+	 */
+	public static boolean isPointNearPrimaryAllowDuplicates(final EnumGeoRefSourceAuthority primaryLayer, final String primaryDivision, final SpatialContext context, final double distanceKm) {
+		final AttributeMatch match = matchPrimaryByAnyName(primaryLayer, primaryDivision);
 		boolean result = false;
-		URL countryShapeFile = GEOUtil.class.getResource("/org.filteredpush.kuration.services/ne_10m_admin_1_states_provinces.shp");
-		FileDataStore store = null;
 		try {
-			store = FileDataStoreFinder.getDataStore(countryShapeFile);
-			SimpleFeatureSource featureSource = store.getFeatureSource();
-			double distanceD = distanceKm / 111d; // GeoTools ignores units, uses units of underlying projection (degrees in this case), fudge by dividing km by number of km in one degree of latitude (this will describe a wide ellipse far north or south).
-			
-            String sanitized =  primaryDivision.replace("'", "''");
-            StringBuffer filterString = new StringBuffer();
-            filterString.append("(");
-            filterString.append("name ILIKE '"+ sanitized +"' ");
-            filterString.append("OR name_alt ILIKE '"+ sanitized +"' ");
-            filterString.append("OR name_local ILIKE '"+ sanitized +"' ");
-            filterString.append("OR gn_name ILIKE '"+ sanitized +"' ");
-            filterString.append("OR gns_name ILIKE '"+ sanitized +"' ");
-            filterString.append("OR woe_label ILIKE '"+ sanitized +"%' ");
-            filterString.append("OR woe_name ILIKE '"+ sanitized +"%'");
-            filterString.append(") AND (");
-			filterString.append("DWITHIN(the_geom, POINT(" + Double.toString(longitude) + " " + Double.toString(latitude) + "), "+ distanceD +", kilometers)");
-            filterString.append(")");
-            logger.debug(filterString);
-            Filter filter = ECQL.toFilter(filterString.toString());
-			SimpleFeatureCollection collection=featureSource.getFeatures(filter);
-			result = !collection.isEmpty();
+			SpatialResultCache.Key key = new SpatialResultCache.Key(primaryLayer, "isPointNearPrimaryAllowDuplicates", context.getLatitude(), context.getLongitude(), distanceKm, primaryDivision);
+			result = cachedTest(key, new SpatialResultCache.Computation<Boolean>() {
+				@Override
+				public Boolean compute() throws IOException {
+					return Boolean.valueOf(context.isWithinDistance(primaryLayer, match, distanceKm));
+				}
+			});
 		} catch (IOException e) {
 			logger.debug(e.getMessage());
-		} catch (CQLException e) {
-			logger.debug(e.getMessage());
-		} finally {
-			if (store!=null) { 
-				store.dispose(); 
-			}
 		}
 		return result;
 	}
 
+	/**
+	 * Evaluate a spatial predicate through the shared result cache.
+	 *
+	 * @param key the key of the result.
+	 * @param computation computes the result if it is not cached.
+	 * @return the result of the predicate.
+	 * @throws IOException if the result is not cached and the spatial data cannot be read.
+	 */
+	private static boolean cachedTest(SpatialResultCache.Key key, SpatialResultCache.Computation<Boolean> computation) throws IOException { 
+		return SpatialLayerRegistry.getInstance().getResultCache().get(key, computation).booleanValue();
+	}
+
 	/**
 	 * <p>isCountryKnown.</p>
 	 *
@@ -701,22 +734,11 @@ public class GEOUtil {
 	 */
 	public static boolean isCountryKnown(String country) { 
 		boolean result = false;
-        URL countryShapeFile = GEOUtil.class.getResource("/org.filteredpush.kuration.services/ne_10m_admin_0_countries.shp");
-        FileDataStore store = null;
 		try {
-			store = FileDataStoreFinder.getDataStore(countryShapeFile);
-            SimpleFeatureSource featureSource = store.getFeatureSource();
-		    Filter filter = ECQL.toFilter("NAME ILIKE '"+ country +"'");
-		    SimpleFeatureCollection collection=featureSource.getFeatures(filter);
-		    result = !collection.isEmpty();
+			SpatialBackend backend = SpatialLayerRegistry.getInstance().getBackend(EnumGeoRefSourceAuthority.NE_ADMIN_0);
+			result = backend.isKnown(EnumGeoRefSourceAuthority.NE_ADMIN_0, AttributeMatch.equal("NAME", country));
 		} catch (IOException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
-		} catch (CQLException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
-		} finally { 
-			if (store!=null) { store.dispose(); }
+			logger.error(e.getMessage(), e);
 		}
 		return result;
 	}	
@@ -730,38 +752,25 @@ public class GEOUtil {
 	 */
 	public static boolean isPrimaryKnown(String country, String primaryDivision) { 
 		boolean result = false;
-        URL countryShapeFile = GEOUtil.class.getResource("/org.filteredpush.kuration.services/ne_10m_admin_1_states_provinces.shp");
-        FileDataStore store = null;
 		try {
-			store = FileDataStoreFinder.getDataStore(countryShapeFile);
-            SimpleFeatureSource featureSource = store.getFeatureSource();
             if (country.toLowerCase().equals("united states")) { country = "United States of America"; } 
             
-            String sanitizedPrimary =  primaryDivision.replace("'", "''");
-            StringBuffer filterString = new StringBuffer();
-            filterString.append("( ");
-		    filterString.append("name ILIKE '"+ sanitizedPrimary +"' "); 
-            filterString.append("OR name_alt ILIKE '"+ sanitizedPrimary +"' ");
-            filterString.append("OR name_local ILIKE '"+ sanitizedPrimary +"' ");
-            filterString.append("OR woe_label ILIKE '"+ sanitizedPrimary +"%' ");
-            filterString.append("OR woe_name ILIKE '"+ sanitizedPrimary +"'");
-            filterString.append(") AND (");
-		    filterString.append("admin ILIKE '"+ country +"'");
-            filterString.append("OR woe_label ILIKE '%"+ country +"' ");
-            filterString.append(") ");
+            // (name, name_alt, name_local, woe_name equal to the primary, or woe_label starting with the primary)
+            AttributeMatch matchesPrimary = AttributeMatch.anyOf(
+            		AttributeMatch.equal("name", primaryDivision),
+            		AttributeMatch.equal("name_alt", primaryDivision),
+            		AttributeMatch.equal("name_local", primaryDivision),
+            		AttributeMatch.prefix("woe_label", primaryDivision),
+            		AttributeMatch.equal("woe_name", primaryDivision));
+            // and (admin equal to the country, or woe_label ending with the country)
+            AttributeMatch matchesCountry = AttributeMatch.anyOf(
+            		AttributeMatch.equal("admin", country),
+            		AttributeMatch.suffix("woe_label", country));
             
-		    Filter filter = ECQL.toFilter(filterString.toString());
-		    // Filter filter = ECQL.toFilter("name ILIKE '"+ primaryDivision +"'");
-		    SimpleFeatureCollection collection=featureSource.getFeatures(filter);
-		    if (collection!=null && collection.size()>0) { 
-		        result = !collection.isEmpty();
-		    }
+			SpatialBackend backend = SpatialLayerRegistry.getInstance().getBackend(EnumGeoRefSourceAuthority.NE_ADMIN_1);
+		    result = backend.isKnown(EnumGeoRefSourceAuthority.NE_ADMIN_1, AttributeMatch.allOf(matchesPrimary, matchesCountry));
 		} catch (IOException e) {
 			logger.debug(e.getMessage(),e);
-		} catch (CQLException e) {
-			System.out.println("GEOUtil.isPrimaryKnown error: " + e.getMessage());
-		} finally { 
-			if (store!=null) { store.dispose(); }			
 		}
 		return result;
 	}
@@ -774,40 +783,81 @@ public class GEOUtil {
 	 * @return a boolean true if found, otherwise false.
 	 */
 	public static boolean isPrimaryAloneKnown(String primaryDivision) { 
+		return isPrimaryAloneKnown(EnumGeoRefSourceAuthority.NE_ADMIN_1, primaryDivision);
+	}
+
+	/**
+	 * Is a primary division (state/province) name known in a primary division layer
+	 * within any country.
+	 *
+	 * @param primaryLayer the layer of primary divisions, NE_ADMIN_1 or GADM_ADM1.
+	 * @param primaryDivision the state/province to look up.
+	 * @return a boolean true if found, otherwise false.
+	 */
+	public static boolean isPrimaryAloneKnown(EnumGeoRefSourceAuthority primaryLayer, String primaryDivision) { 
+		AttributeMatch match = matchPrimaryByAnyName(primaryLayer, primaryDivision);
 		boolean result = false;
-        URL countryShapeFile = GEOUtil.class.getResource("/org.filteredpush.kuration.services/ne_10m_admin_1_states_provinces.shp");
-        FileDataStore store = null;
 		try {
-			store = FileDataStoreFinder.getDataStore(countryShapeFile);
-            SimpleFeatureSource featureSource = store.getFeatureSource();
-            
-            String sanitized =  primaryDivision.replace("'", "''");
-            StringBuffer filterString = new StringBuffer();
-            filterString.append("name ILIKE '"+ sanitized +"' ");
-            filterString.append("OR name_alt ILIKE '"+ sanitized +"' ");
-            filterString.append("OR name_local ILIKE '"+ sanitized +"' ");
-            filterString.append("OR gn_name ILIKE '"+ sanitized +"' ");
-            filterString.append("OR gns_name ILIKE '"+ sanitized +"' ");
-            filterString.append("OR woe_label ILIKE '"+ sanitized +"%' ");
-            filterString.append("OR woe_name ILIKE '"+ sanitized +"%'");
-            logger.debug(filterString);
-            Filter filter = ECQL.toFilter(filterString.toString());
-		    // Filter filter = ECQL.toFilter("name ILIKE '"+ primaryDivision +"'");
-		    SimpleFeatureCollection collection=featureSource.getFeatures(filter);
-		    logger.debug(collection.size());
-		    if (collection!=null && collection.size()>0) { 
-		        result = !collection.isEmpty();
-		    }
+			SpatialBackend backend = SpatialLayerRegistry.getInstance().getBackend(primaryLayer);
+			result = backend.isKnown(primaryLayer, match);
 		} catch (IOException e) {
 			logger.debug(e.getMessage(),e);
-		} catch (CQLException e) {
-			System.out.println("GEOUtil.isPrimaryKnown error: " + e.getMessage());
-		} finally { 
-			if (store!=null) { store.dispose(); }			
 		}
 		return result;
 	}
 
+	/**
+	 * Match the primary divisions where any of name, name_alt, name_local, gn_name, or gns_name 
+	 * match a name, or where woe_label or woe_name start with the name, ignoring case.
+	 * 
+	 * @param primaryDivision the name to match.
+	 * @return a match on the attributes of the admin 1 layer.
+	 */
+	protected static AttributeMatch matchPrimaryByAnyName(String primaryDivision) { 
+		return AttributeMatch.anyOf(
+				AttributeMatch.equal("name", primaryDivision),
+				AttributeMatch.equal("name_alt", primaryDivision),
+				AttributeMatch.equal("name_local", primaryDivision),
+				AttributeMatch.equal("gn_name", primaryDivision),
+				AttributeMatch.equal("gns_name", primaryDivision),
+				AttributeMatch.prefix("woe_label", primaryDivision),
+				AttributeMatch.prefix("woe_name", primaryDivision));
+	}
+
+	/**
+	 * Match the primary divisions of a primary division layer by any of their names.  For 
+	 * GADM_ADM1 these are NAME_1, NL_NAME_1 (the name in the local script), and the 
+	 * variant names in VARNAME_1, which GADM separates with |, any one of which may match.
+	 * 
+	 * @param primaryLayer the layer of primary divisions, NE_ADMIN_1 or GADM_ADM1.
+	 * @param primaryDivision the name to match.
+	 * @return a match on the attributes of the layer.
+	 * @throws IllegalArgumentException if the layer is not a layer of primary divisions.
+	 */
+	protected static AttributeMatch matchPrimaryByAnyName(EnumGeoRefSourceAuthority primaryLayer, String primaryDivision) { 
+		switch (primaryLayer) { 
+		case NE_ADMIN_1:
+			return matchPrimaryByAnyName(primaryDivision);
+		case GADM_ADM1:
+			return AttributeMatch.anyOf(
+					AttributeMatch.equal("NAME_1", primaryDivision),
+					AttributeMatch.equal("NL_NAME_1", primaryDivision),
+					AttributeMatch.element("VARNAME_1", primaryDivision));
+		default:
+			throw new IllegalArgumentException(primaryLayer + " is not a layer of primary divisions");
+		}
+	}
+
+	/**
+	 * Match the features of the merged countries and EEZ layer of a sovereign.
+	 * 
+	 * @param countryCode the ISO three letter code of the sovereign.
+	 * @return a match on the ISO_SOV1 attribute.
+	 */
+	protected static AttributeMatch matchSovereign(String countryCode) { 
+		return AttributeMatch.equal(SovereignCellIndex.SOVEREIGN_ATTRIBUTE, countryCode);
+	}
+
 	/**
 	 * Parse latitude from string and check that value is in range (-90 to 90 inclusive).
 	 *
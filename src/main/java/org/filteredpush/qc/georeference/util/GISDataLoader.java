@@ -4,21 +4,11 @@
 package org.filteredpush.qc.georeference.util;
 
 import java.io.IOException;
-import java.lang.System.Logger;
-import java.net.URL;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.filteredpush.qc.georeference.EnumGeoRefSourceAuthority;
 import org.filteredpush.qc.georeference.SourceAuthorityException;
-import org.geotools.api.data.FileDataStore;
-import org.geotools.api.data.FileDataStoreFinder;
-import org.geotools.api.data.SimpleFeatureSource;
-import org.geotools.api.feature.simple.SimpleFeature;
-import org.geotools.api.filter.Filter;
-import org.geotools.data.simple.SimpleFeatureCollection;
-import org.geotools.data.simple.SimpleFeatureIterator;
-import org.geotools.filter.text.cql2.CQLException;
-import org.geotools.filter.text.ecql.ECQL;
 
 /**
  * <p>GISDataLoader class.</p>
@@ -54,31 +44,10 @@ public class GISDataLoader {
 		
 		boolean result = false;
 
-        URL landShapeFile = GEOUtil.class.getResource("/org.filteredpush.kuration.services/ne_10m_land.shp");
-        FileDataStore store = null;
 		try {
-			store = FileDataStoreFinder.getDataStore(landShapeFile);
-            SimpleFeatureSource featureSource = store.getFeatureSource();
-            logger.debug(featureSource.getInfo().toString());
-            logger.debug(featureSource.getName().toString());
-		    String filterString = " CONTAINS (the_geom, POINT(" + Double.toString(longitude) + " " + Double.toString(latitude) + "))";
-		    logger.debug(filterString);
-		    Filter filter = ECQL.toFilter(filterString);
-		    SimpleFeatureCollection collection=featureSource.getFeatures(filter);
-		    result = !collection.isEmpty();
+			result = isWithinLand(longitude, latitude);
 		} catch (IOException e) {
 			logger.error(e.getMessage(), e);
-		} catch (CQLException e) {
-			logger.error(e.getMessage(), e);
-		} finally { 
-			// close 
-			if (store!=null) { 
-				try { 
-					store.dispose();
-				} catch (Exception e) { 
-					logger.error(e.getMessage());
-				}
-			}
 		}
 		
 		if (invertSense) {
@@ -102,36 +71,11 @@ public class GISDataLoader {
 		
 		boolean result = false;
 
-        URL landShapeFile = GEOUtil.class.getResource("/org.filteredpush.kuration.services/ne_10m_land.shp");
-        FileDataStore store = null;
 		try {
-			store = FileDataStoreFinder.getDataStore(landShapeFile);
-            SimpleFeatureSource featureSource = store.getFeatureSource();
-            logger.debug(featureSource.getInfo().toString());
-            logger.debug(featureSource.getName().toString());
-            double distanceD = distanceKm / 111d; // GeoTools ignores units, uses units of underlying projection (degrees in this case), fudge by dividing km by number of km in one degree of latitude (this will describe a wide ellipse far north or south).
-		    StringBuffer filterString = new StringBuffer();
-		    // filterString.append(" CONTAINS (the_geom, POINT(" + Double.toString(longitude) + " " + Double.toString(latitude) + "))");
-		    filterString.append(" DWITHIN(the_geom, POINT(" + Double.toString(longitude) + " " + Double.toString(latitude) + "), "+ distanceD +", kilometers)");
-		    logger.debug(filterString);
-		    Filter filter = ECQL.toFilter(filterString.toString());
-		    SimpleFeatureCollection collection=featureSource.getFeatures(filter);
-		    result = !collection.isEmpty();
+			result = isWithinDistanceOfLand(longitude, latitude, distanceKm * 1000d);
 		} catch (IOException e) {
 			logger.error(e.getMessage(), e);
 			throw new SourceAuthorityException("Error reading spatial data file: " + e.getMessage());
-		} catch (CQLException e) {
-			logger.error(e.getMessage(), e);
-			throw new SourceAuthorityException("Error querying spatial data file: " + e.getMessage());
-		} finally { 
-			// close 
-			if (store!=null) { 
-				try { 
-					store.dispose();
-				} catch (Exception e) { 
-					logger.error(e.getMessage());
-				}
-			}
 		}
 		
 		if (invertSense) {
@@ -141,6 +85,45 @@ public class GISDataLoader {
 		return result;
 	}
 	
+	/**
+	 * Test whether a point is on land, through the spatial backend for the land layer.
+	 * 
+	 * @param longitude of the point.
+	 * @param latitude of the point.
+	 * @return true if the point is inside the land polygons.
+	 * @throws IOException if the land data cannot be loaded.
+	 */
+	public static boolean isWithinLand(final double longitude, final double latitude) throws IOException { 
+		SpatialResultCache.Key key = new SpatialResultCache.Key(EnumGeoRefSourceAuthority.NE_LAND_UNION_ISLANDS, "isWithinLand", latitude, longitude, 0d);
+		return SpatialLayerRegistry.getInstance().getResultCache().get(key, new SpatialResultCache.Computation<Boolean>() {
+			@Override
+			public Boolean compute() throws IOException {
+				SpatialBackend backend = SpatialLayerRegistry.getInstance().getBackend(EnumGeoRefSourceAuthority.NE_LAND_UNION_ISLANDS);
+				return Boolean.valueOf(backend.contains(EnumGeoRefSourceAuthority.NE_LAND_UNION_ISLANDS, AttributeMatch.all(), longitude, latitude));
+			}
+		}).booleanValue();
+	}
+	
+	/**
+	 * Test whether a point is on or near land, through the spatial backend for the land layer.
+	 * 
+	 * @param longitude of the point.
+	 * @param latitude of the point.
+	 * @param distanceMeters the buffer distance in meters.
+	 * @return true if the point is inside or within the buffer distance of the land polygons.
+	 * @throws IOException if the land data cannot be loaded.
+	 */
+	public static boolean isWithinDistanceOfLand(final double longitude, final double latitude, final double distanceMeters) throws IOException { 
+		SpatialResultCache.Key key = new SpatialResultCache.Key(EnumGeoRefSourceAuthority.NE_LAND_UNION_ISLANDS, "isWithinDistanceOfLand", latitude, longitude, distanceMeters);
+		return SpatialLayerRegistry.getInstance().getResultCache().get(key, new SpatialResultCache.Computation<Boolean>() {
+			@Override
+			public Boolean compute() throws IOException {
+				SpatialBackend backend = SpatialLayerRegistry.getInstance().getBackend(EnumGeoRefSourceAuthority.NE_LAND_UNION_ISLANDS);
+				return Boolean.valueOf(backend.isWithinDistance(EnumGeoRefSourceAuthority.NE_LAND_UNION_ISLANDS, AttributeMatch.all(), longitude, latitude, distanceMeters));
+			}
+		}).booleanValue();
+	}
+	
 	/**
 	 * Determine if a point is near the centroid of a country. 
 	 *
@@ -152,40 +135,33 @@ public class GISDataLoader {
 	 * @throws SourceAuthorityException 
 	 */
 	public static boolean isPointNearCentroid(double longitude, double latitude, String countryCode, double distanceKm) throws SourceAuthorityException {
+		return isPointNearCentroid(new SpatialContext(latitude, longitude), countryCode, distanceKm);
+	}
+	
+	/**
+	 * Determine if the coordinate of a spatial context is near the centroid of a country. 
+	 *
+	 * @param context the spatial context for the coordinate.
+	 * @param countryCode to check for centroids of.
+	 * @param distanceKm the buffer distance in km.
+	 * @return true if the coordinate is within buffer distance of a centroid for the country code.
+	 * @throws SourceAuthorityException 
+	 */
+	public static boolean isPointNearCentroid(final SpatialContext context, final String countryCode, final double distanceKm) throws SourceAuthorityException {
 		
 		boolean result = false;
 
-        URL centroidShapeFile = GEOUtil.class.getResource("/org.filteredpush.kuration.services/gbif_pcli_country_centroids.shp");
-        FileDataStore store = null;
 		try {
-			store = FileDataStoreFinder.getDataStore(centroidShapeFile);
-            SimpleFeatureSource featureSource = store.getFeatureSource();
-            logger.debug(featureSource.getInfo().toString());
-            logger.debug(featureSource.getName().toString());
-            double distanceD = distanceKm / 111d; // GeoTools ignores units, uses units of underlying projection (degrees in this case), fudge by dividing km by number of km in one degree of latitude (this will describe a wide ellipse far north or south).
-		    StringBuffer filterString = new StringBuffer();
-		    filterString.append("DWITHIN(the_geom, POINT(" + Double.toString(longitude) + " " + Double.toString(latitude) + "), "+ distanceD +", kilometers)");
-		    filterString.append(" AND ");
-            filterString.append("iso2 ILIKE '"+ countryCode +"' ");
-		    logger.debug(filterString);
-		    Filter filter = ECQL.toFilter(filterString.toString());
-		    SimpleFeatureCollection collection=featureSource.getFeatures(filter);
-		    result = !collection.isEmpty();
+			SpatialResultCache.Key key = new SpatialResultCache.Key(EnumGeoRefSourceAuthority.GBIF_CENTROIDS, "isPointNearCentroid", context.getLatitude(), context.getLongitude(), distanceKm, countryCode);
+			result = SpatialLayerRegistry.getInstance().getResultCache().get(key, new SpatialResultCache.Computation<Boolean>() {
+				@Override
+				public Boolean compute() throws IOException {
+					return Boolean.valueOf(context.isWithinDistance(EnumGeoRefSourceAuthority.GBIF_CENTROIDS, AttributeMatch.equal(CentroidTable.CODE_ATTRIBUTE, countryCode), distanceKm));
+				}
+			}).booleanValue();
 		} catch (IOException e) {
 			logger.error(e.getMessage(), e);
 			throw new SourceAuthorityException("Error reading country centroids: " + e.getMessage());
-		} catch (CQLException e) {
-			logger.error(e.getMessage(), e);
-			throw new SourceAuthorityException("Error reading country centroids: " + e.getMessage());
-		} finally { 
-			// close 
-			if (store!=null) { 
-				try { 
-					store.dispose();
-				} catch (Exception e) { 
-					logger.error(e.getMessage());
-				}
-			}
 		}
 		
 		return result;
@@ -201,47 +177,10 @@ public class GISDataLoader {
 		
 		Double result = null;
 
-        URL centroidShapeFile = GEOUtil.class.getResource("/org.filteredpush.kuration.services/gbif_pcli_country_centroids.shp");
-        FileDataStore store = null;
 		try {
-			store = FileDataStoreFinder.getDataStore(centroidShapeFile);
-            SimpleFeatureSource featureSource = store.getFeatureSource();
-            logger.debug(featureSource.getInfo().toString());
-            logger.debug(featureSource.getName().toString());
-		    StringBuffer filterString = new StringBuffer();
-            filterString.append("iso2 ILIKE '"+ countryCode +"' ");
-		    logger.debug(filterString);
-		    Filter filter = ECQL.toFilter(filterString.toString());
-		    SimpleFeatureCollection collection=featureSource.getFeatures(filter);
-		    if (!collection.isEmpty()) { 
-		    	SimpleFeatureIterator i = collection.features();
-		    	boolean found = false;
-		    	while (i.hasNext() && !found) { 
-		    		SimpleFeature feature = i.next();
-		    		Object areaObject = feature.getAttribute("area_sqkm");
-		    		logger.debug(areaObject);
-		    		try { 
-		    			result = (Double)areaObject;
-		    			found = true;
-		    		} catch (ClassCastException e) { 
-		    			logger.debug(e.getMessage());
-		    		}
-		    	}
-		    	i.close();
-		    }
+			result = SpatialLayerRegistry.getInstance().getCentroidTable().getArea(countryCode);
 		} catch (IOException e) {
 			logger.error(e.getMessage(), e);
-		} catch (CQLException e) {
-			logger.error(e.getMessage(), e);
-		} finally { 
-			// close 
-			if (store!=null) { 
-				try { 
-					store.dispose();
-				} catch (Exception e) { 
-					logger.error(e.getMessage());
-				}
-			}
 		}
 		
 		return result;
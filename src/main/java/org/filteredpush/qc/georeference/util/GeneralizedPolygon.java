@@ -0,0 +1,142 @@
+/**
+ * GeneralizedPolygon.java
+ *
+ * Copyright 2026 President and Fellows of Harvard College
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.filteredpush.qc.georeference.util;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.Point;
+import org.locationtech.jts.geom.prep.PreparedGeometry;
+import org.locationtech.jts.geom.prep.PreparedGeometryFactory;
+import org.locationtech.jts.operation.buffer.BufferOp;
+import org.locationtech.jts.operation.buffer.BufferParameters;
+import org.locationtech.jts.simplify.TopologyPreservingSimplifier;
+
+/**
+ * Coarse inner and outer approximations of a polygonal geometry, for answering most point
+ * in polygon tests without touching the full resolution geometry.  The inner geometry lies
+ * entirely within the interior of the polygon, so a point inside it is definitely inside
+ * the polygon, and the outer geometry contains the polygon and its boundary in its interior,
+ * so a point outside it is definitely outside the polygon.  Only points in the thin band
+ * between the two need to be tested against the full geometry.
+ *
+ * Both approximations are built from the polygon simplified with a
+ * TopologyPreservingSimplifier at the tolerance, whose boundary lies within the tolerance
+ * of the boundary of the polygon, then buffered inwards and outwards by twice the tolerance,
+ * which leaves a margin of at least the tolerance on each side of the original boundary
+ * even with the few segments per quadrant used for the buffer corners.
+ *
+ * Instances are immutable and are safe to share between threads.
+ *
+ * @author mole
+ * @version $Id: $Id
+ */
+public class GeneralizedPolygon {
+
+	private static final Log logger = LogFactory.getLog(GeneralizedPolygon.class);
+
+	/** Default simplification tolerance in degrees. */
+	public static final double DEFAULT_TOLERANCE = 0.02d;
+
+	/** Number of vertices below which a polygon is tested at full resolution without approximations. */
+	public static final int MIN_VERTICES = 512;
+
+	/** Result of classify for a point definitely outside the polygon. */
+	public static final int OUTSIDE = 0;
+	/** Result of classify for a point definitely in the interior of the polygon. */
+	public static final int INSIDE = 1;
+	/** Result of classify for a point which must be tested against the full polygon. */
+	public static final int UNKNOWN = 2;
+
+	private static final int BUFFER_QUADRANT_SEGMENTS = 2;
+
+	private final PreparedGeometry inner;
+	private final PreparedGeometry outer;
+	private final int innerVertices;
+	private final int outerVertices;
+
+	/**
+	 * Build the approximations of a polygonal geometry.
+	 *
+	 * @param geometry a polygon or multipolygon.
+	 * @param tolerance the simplification tolerance in degrees.
+	 */
+	public GeneralizedPolygon(Geometry geometry, double tolerance) {
+		long startTime = System.currentTimeMillis();
+		PreparedGeometry innerResult = null;
+		PreparedGeometry outerResult = null;
+		int innerCount = 0;
+		int outerCount = 0;
+		try {
+			Geometry simplified = TopologyPreservingSimplifier.simplify(geometry, tolerance);
+			BufferParameters parameters = new BufferParameters(BUFFER_QUADRANT_SEGMENTS);
+			Geometry innerGeometry = BufferOp.bufferOp(simplified, -2d * tolerance, parameters);
+			if (!innerGeometry.isEmpty()) {
+				innerResult = PreparedGeometryFactory.prepare(innerGeometry);
+				innerCount = innerGeometry.getNumPoints();
+			}
+			Geometry outerGeometry = BufferOp.bufferOp(simplified, 2d * tolerance, parameters);
+			if (!outerGeometry.isEmpty()) {
+				outerResult = PreparedGeometryFactory.prepare(outerGeometry);
+				outerCount = outerGeometry.getNumPoints();
+			}
+		} catch (RuntimeException e) {
+			// without approximations every point is tested at full resolution
+			logger.debug("Unable to generalize geometry: " + e.getMessage());
+			innerResult = null;
+			outerResult = null;
+		}
+		this.inner = innerResult;
+		this.outer = outerResult;
+		this.innerVertices = innerCount;
+		this.outerVertices = outerCount;
+		logger.debug("Generalized " + geometry.getNumPoints() + " vertices to " + innerVertices + " inner and " + outerVertices + " outer in " + (System.currentTimeMillis() - startTime) + " ms");
+	}
+
+	/**
+	 * Classify a point against the approximations.
+	 *
+	 * @param point the point to classify.
+	 * @return INSIDE if the point is definitely in the interior of the polygon, OUTSIDE if it is
+	 *   definitely not in the polygon or on its boundary, otherwise UNKNOWN.
+	 */
+	public int classify(Point point) {
+		if (outer!=null && !outer.covers(point)) {
+			return OUTSIDE;
+		}
+		if (inner!=null && inner.covers(point)) {
+			return INSIDE;
+		}
+		return UNKNOWN;
+	}
+
+	/**
+	 * @return the number of vertices of the inner approximation, 0 if there is none.
+	 */
+	public int getInnerVertexCount() {
+		return innerVertices;
+	}
+
+	/**
+	 * @return the number of vertices of the outer approximation, 0 if there is none.
+	 */
+	public int getOuterVertexCount() {
+		return outerVertices;
+	}
+
+}
@@ -0,0 +1,588 @@
+/**
+ * GeoPackageSpatialBackend.java
+ *
+ * Copyright 2026 President and Fellows of Harvard College
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.filteredpush.qc.georeference.util;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.filteredpush.qc.georeference.EnumGeoRefSourceAuthority;
+import org.geotools.geometry.jts.JTSFactoryFinder;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.Point;
+import org.locationtech.jts.io.ParseException;
+import org.locationtech.jts.io.WKBReader;
+
+/**
+ * Spatial backend for one layer held in a feature table of a local GeoPackage file,
+ * read through JDBC with the SQLite driver (org.xerial:sqlite-jdbc, an optional
+ * dependency which applications using this backend must add).  Candidates come from
+ * the R*Tree spatial index the GeoPackage keeps for the geometry column, and only the
+ * geometries of the candidates are read and tested, so a layer of any size, such as the
+ * GADM boundaries for {@link EnumGeoRefSourceAuthority#GADM_ADM1}, is queried without
+ * being loaded into the heap.
+ *
+ * Each thread has its own read only connection and its own prepared statements, as an
+ * SQLite connection must not be used by more than one thread at a time.  Attribute
+ * matches are made in SQL with COLLATE NOCASE and LIKE, which ignore the case of ASCII
+ * letters only, so unlike the other backends, values differing in the case of other
+ * letters do not match.
+ *
+ * Instances are registered for a source authority with
+ * {@link SpatialLayerRegistry#registerBackend(EnumGeoRefSourceAuthority, SpatialBackend)},
+ * or with a system property {@link #PROPERTY_PREFIX} followed by the name of the source
+ * authority, with the path of the GeoPackage file as its value, optionally followed by #
+ * and the name of the feature table.
+ *
+ * @author mole
+ * @version $Id: $Id
+ */
+public class GeoPackageSpatialBackend implements SpatialBackend, Closeable {
+
+	private static final Log logger = LogFactory.getLog(GeoPackageSpatialBackend.class);
+
+	/** The name of this backend. */
+	public static final String NAME = "geopackage";
+
+	/** Prefix of the system properties giving the GeoPackage file for a source authority. */
+	public static final String PROPERTY_PREFIX = "org.filteredpush.qc.georeference.geopackage.";
+
+	/** Separates the path of the GeoPackage file from the name of the table in a system property. */
+	public static final String TABLE_SEPARATOR = "#";
+
+	/** Margin in degrees added to search rectangles to allow for rounding. */
+	private static final double ENVELOPE_MARGIN = 1e-9d;
+
+	/** SQLITE_OPEN_READONLY, passed to the driver as open_mode. */
+	private static final String READ_ONLY = "1";
+
+	private final EnumGeoRefSourceAuthority authority;
+	private final File file;
+	private final String table;
+	private final String geometryColumn;
+	private final String idColumn;
+	private final String rtree;
+	private final Set<String> columns;
+	private final GeometryFactory geometryFactory = JTSFactoryFinder.getGeometryFactory(null);
+
+	/** Every connection opened by any thread, so that all can be closed. */
+	private final List<Connection> connections = new ArrayList<Connection>();
+	private final ThreadLocal<ThreadState> threadState = new ThreadLocal<ThreadState>();
+	private volatile boolean closed = false;
+
+	/** The connection, prepared statements, and geometry reader of one thread. */
+	private static final class ThreadState {
+		private final Connection connection;
+		private final Map<String,PreparedStatement> statements = new HashMap<String,PreparedStatement>();
+		private final WKBReader reader;
+
+		private ThreadState(Connection connection, GeometryFactory geometryFactory) {
+			this.connection = connection;
+			this.reader = new WKBReader(geometryFactory);
+		}
+	}
+
+	/**
+	 * Open a layer in a GeoPackage file.
+	 *
+	 * @param authority the source authority whose layer the file holds.
+	 * @param file the GeoPackage file.
+	 * @param table the name of the feature table, or null to use the first feature table
+	 *   listed in the GeoPackage.
+	 * @throws IOException if the file cannot be opened, the SQLite driver is not available,
+	 *   or the table has no geometry column or no R*Tree spatial index.
+	 */
+	public GeoPackageSpatialBackend(EnumGeoRefSourceAuthority authority, File file, String table) throws IOException {
+		this.authority = authority;
+		this.file = file;
+		if (!file.isFile()) {
+			throw new IOException("GeoPackage not found: " + file.getPath());
+		}
+		try {
+			Connection connection = openConnection();
+			try {
+				String[] geometryTable = findGeometryColumn(connection, table);
+				this.table = geometryTable[0];
+				this.geometryColumn = geometryTable[1];
+				this.columns = new LinkedHashSet<String>();
+				String pk = null;
+				Statement statement = connection.createStatement();
+				try {
+					ResultSet rs = statement.executeQuery("PRAGMA table_info(" + quote(this.table) + ")");
+					while (rs.next()) {
+						columns.add(rs.getString("name"));
+						if (rs.getInt("pk")==1) {
+							pk = rs.getString("name");
+						}
+					}
+					rs.close();
+				} finally {
+					statement.close();
+				}
+				if (pk==null) {
+					throw new IOException("Feature table " + this.table + " in " + file.getPath() + " has no primary key");
+				}
+				this.idColumn = pk;
+				this.rtree = "rtree_" + this.table + "_" + this.geometryColumn;
+				PreparedStatement check = connection.prepareStatement("SELECT 1 FROM sqlite_master WHERE type='table' AND name=?");
+				try {
+					check.setString(1, rtree);
+					ResultSet rs = check.executeQuery();
+					boolean found = rs.next();
+					rs.close();
+					if (!found) {
+						throw new IOException("Feature table " + this.table + " in " + file.getPath() + " has no R*Tree spatial index");
+					}
+				} finally {
+					check.close();
+				}
+			} finally {
+				connection.close();
+			}
+		} catch (SQLException e) {
+			throw new IOException("Unable to open GeoPackage " + file.getPath() + ": " + e.getMessage(), e);
+		}
+		logger.debug("Opened " + this.table + " in " + file.getPath() + " for " + authority.getName());
+	}
+
+	/**
+	 * Open the GeoPackage named by a system property value.
+	 *
+	 * @param authority the source authority whose layer the file holds.
+	 * @param value the path of the GeoPackage file, optionally followed by {@link #TABLE_SEPARATOR}
+	 *   and the name of the feature table.
+	 * @return a new backend over the layer.
+	 * @throws IOException if the GeoPackage cannot be opened.
+	 */
+	public static GeoPackageSpatialBackend fromPropertyValue(EnumGeoRefSourceAuthority authority, String value) throws IOException {
+		String path = value.trim();
+		String table = null;
+		int separator = path.lastIndexOf(TABLE_SEPARATOR);
+		if (separator > 0) {
+			table = path.substring(separator + 1);
+			path = path.substring(0, separator);
+		}
+		return new GeoPackageSpatialBackend(authority, new File(path), table);
+	}
+
+	@Override
+	public String getName() {
+		return NAME;
+	}
+
+	/**
+	 * <p>Getter for the field <code>authority</code>.</p>
+	 *
+	 * @return the source authority whose layer this backend holds.
+	 */
+	public EnumGeoRefSourceAuthority getAuthority() {
+		return authority;
+	}
+
+	/**
+	 * <p>Getter for the field <code>file</code>.</p>
+	 *
+	 * @return the GeoPackage file.
+	 */
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * <p>Getter for the field <code>table</code>.</p>
+	 *
+	 * @return the name of the feature table.
+	 */
+	public String getTable() {
+		return table;
+	}
+
+	@Override
+	public boolean contains(EnumGeoRefSourceAuthority layer, AttributeMatch match, double longitude, double latitude) throws IOException {
+		checkLayer(layer);
+		if (match.isNone()) {
+			return false;
+		}
+		ThreadState state = getState();
+		Point point = geometryFactory.createPoint(new Coordinate(longitude, latitude));
+		try {
+			ResultSet rs = queryCandidates(state, match, pointEnvelope(longitude, latitude), new String[0]);
+			try {
+				while (rs.next()) {
+					Geometry geometry = readGeometry(state.reader, rs.getBytes(1));
+					if (geometry!=null && geometry.contains(point)) {
+						return true;
+					}
+				}
+			} finally {
+				rs.close();
+			}
+		} catch (SQLException e) {
+			throw new IOException(e.getMessage(), e);
+		}
+		return false;
+	}
+
+	@Override
+	public boolean isWithinDistance(EnumGeoRefSourceAuthority layer, AttributeMatch match, double longitude, double latitude, double distanceMeters) throws IOException {
+		checkLayer(layer);
+		if (match.isNone()) {
+			return false;
+		}
+		ThreadState state = getState();
+		double latitudeSpan = GeodesicDistanceIndex.latitudeSpan(distanceMeters) + ENVELOPE_MARGIN;
+		double longitudeSpan = GeodesicDistanceIndex.longitudeSpan(latitude, distanceMeters) + ENVELOPE_MARGIN;
+		// a feature reaching across the antimeridian may be a candidate in both rectangles
+		Set<Long> tested = new HashSet<Long>();
+		try {
+			for (Envelope search : Antimeridian.queryEnvelopes(longitude, latitude, longitudeSpan, latitudeSpan)) {
+				ResultSet rs = queryCandidates(state, match, search, new String[] { idColumn });
+				try {
+					while (rs.next()) {
+						if (tested.add(Long.valueOf(rs.getLong(2)))) {
+							Geometry geometry = readGeometry(state.reader, rs.getBytes(1));
+							if (GeodesicDistanceIndex.isWithinDistance(geometry, longitude, latitude, distanceMeters)) {
+								return true;
+							}
+						}
+					}
+				} finally {
+					rs.close();
+				}
+			}
+		} catch (SQLException e) {
+			throw new IOException(e.getMessage(), e);
+		}
+		return false;
+	}
+
+	@Override
+	public boolean isKnown(EnumGeoRefSourceAuthority layer, AttributeMatch match) throws IOException {
+		checkLayer(layer);
+		if (match.isNone()) {
+			return false;
+		}
+		ThreadState state = getState();
+		List<String> parameters = new ArrayList<String>();
+		StringBuilder sql = new StringBuilder("SELECT 1 FROM ").append(quote(table)).append(" f WHERE ");
+		appendMatch(sql, match, parameters);
+		sql.append(" LIMIT 1");
+		try {
+			PreparedStatement statement = prepare(state, sql.toString());
+			bindMatch(statement, 1, parameters);
+			ResultSet rs = statement.executeQuery();
+			try {
+				return rs.next();
+			} finally {
+				rs.close();
+			}
+		} catch (SQLException e) {
+			throw new IOException(e.getMessage(), e);
+		}
+	}
+
+	@Override
+	public List<String[]> findContaining(EnumGeoRefSourceAuthority layer, double longitude, double latitude, String... attributes) throws IOException {
+		checkLayer(layer);
+		ThreadState state = getState();
+		Point point = geometryFactory.createPoint(new Coordinate(longitude, latitude));
+		// attributes the table does not have are returned as null, as by the other backends
+		List<String> known = new ArrayList<String>();
+		for (String attribute : attributes) {
+			if (columns.contains(attribute) && !known.contains(attribute)) {
+				known.add(attribute);
+			}
+		}
+		List<String[]> result = new ArrayList<String[]>();
+		try {
+			ResultSet rs = queryCandidates(state, AttributeMatch.all(), pointEnvelope(longitude, latitude), known.toArray(new String[known.size()]));
+			try {
+				while (rs.next()) {
+					Geometry geometry = readGeometry(state.reader, rs.getBytes(1));
+					if (geometry!=null && geometry.contains(point)) {
+						String[] row = new String[attributes.length];
+						for (int i=0; i<attributes.length; i++) {
+							int column = known.indexOf(attributes[i]);
+							if (column >= 0) {
+								Object value = rs.getObject(column + 2);
+								row[i] = value==null ? null : value.toString();
+							}
+						}
+						result.add(row);
+					}
+				}
+			} finally {
+				rs.close();
+			}
+		} catch (SQLException e) {
+			throw new IOException(e.getMessage(), e);
+		}
+		return result;
+	}
+
+	/**
+	 * Open the connection of the calling thread and read from the feature table.
+	 */
+	@Override
+	public void warmUp(EnumGeoRefSourceAuthority layer) throws IOException {
+		isKnown(layer, AttributeMatch.all());
+	}
+
+	/**
+	 * Close the connections of all of the threads which have used this backend, after
+	 * which the backend cannot be used.
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		synchronized (connections) {
+			for (Connection connection : connections) {
+				try {
+					connection.close();
+				} catch (SQLException e) {
+					logger.debug(e.getMessage(), e);
+				}
+			}
+			connections.clear();
+		}
+	}
+
+	/**
+	 * Select the geometries, and any requested attributes, of the features satisfying a
+	 * match whose R*Tree entries intersect a rectangle, in order of feature id.
+	 */
+	private ResultSet queryCandidates(ThreadState state, AttributeMatch match, Envelope search, String[] attributes) throws SQLException {
+		StringBuilder sql = new StringBuilder("SELECT f.").append(quote(geometryColumn));
+		for (String attribute : attributes) {
+			sql.append(", f.").append(quote(attribute));
+		}
+		sql.append(" FROM ").append(quote(table)).append(" f JOIN ").append(quote(rtree)).append(" r ON f.").append(quote(idColumn)).append(" = r.id");
+		sql.append(" WHERE r.minx <= ? AND r.maxx >= ? AND r.miny <= ? AND r.maxy >= ?");
+		List<String> parameters = new ArrayList<String>();
+		if (!match.isAll()) {
+			sql.append(" AND ");
+			appendMatch(sql, match, parameters);
+		}
+		sql.append(" ORDER BY f.").append(quote(idColumn));
+		PreparedStatement statement = prepare(state, sql.toString());
+		statement.setDouble(1, search.getMaxX());
+		statement.setDouble(2, search.getMinX());
+		statement.setDouble(3, search.getMaxY());
+		statement.setDouble(4, search.getMinY());
+		bindMatch(statement, 5, parameters);
+		return statement.executeQuery();
+	}
+
+	/**
+	 * The rectangle to search for the features which may contain a point.
+	 */
+	private static Envelope pointEnvelope(double longitude, double latitude) {
+		return new Envelope(longitude - ENVELOPE_MARGIN, longitude + ENVELOPE_MARGIN, latitude - ENVELOPE_MARGIN, latitude + ENVELOPE_MARGIN);
+	}
+
+	/**
+	 * Append the SQL condition for a match, adding the values to bind to its parameters.
+	 * A comparison with a null value or with a column the table does not have matches
+	 * no features.
+	 */
+	private void appendMatch(StringBuilder sql, AttributeMatch match, List<String> parameters) {
+		switch (match.getKind()) {
+		case ALL:
+			sql.append("1=1");
+			break;
+		case AND:
+		case OR:
+			sql.append("(");
+			for (int i=0; i<match.getOperands().size(); i++) {
+				if (i > 0) {
+					sql.append(match.getKind()==AttributeMatch.Kind.AND ? " AND " : " OR ");
+				}
+				appendMatch(sql, match.getOperands().get(i), parameters);
+			}
+			sql.append(")");
+			break;
+		default:
+			if (match.getValue()==null || !columns.contains(match.getAttribute())) {
+				sql.append("1=0");
+			} else if (match.getKind()==AttributeMatch.Kind.ELEMENT) {
+				if (match.getValue().contains(AttributeMatch.ELEMENT_DELIMITER)) {
+					sql.append("1=0");
+				} else {
+					// delimit both ends of the list so the first and last values match as the others do
+					sql.append("(? || f.").append(quote(match.getAttribute())).append(" || ?) LIKE ? ESCAPE '\\'");
+					String delimiter = SpatialFilters.escape(AttributeMatch.ELEMENT_DELIMITER);
+					parameters.add(AttributeMatch.ELEMENT_DELIMITER);
+					parameters.add(AttributeMatch.ELEMENT_DELIMITER);
+					parameters.add("%" + delimiter + SpatialFilters.escape(match.getValue()) + delimiter + "%");
+				}
+			} else if (match.getKind()==AttributeMatch.Kind.EQUAL) {
+				sql.append("f.").append(quote(match.getAttribute())).append(" = ? COLLATE NOCASE");
+				parameters.add(match.getValue());
+			} else {
+				// LIKE ignores the case of ASCII letters, as COLLATE NOCASE does
+				sql.append("f.").append(quote(match.getAttribute())).append(" LIKE ? ESCAPE '\\'");
+				String value = SpatialFilters.escape(match.getValue());
+				parameters.add(match.getKind()==AttributeMatch.Kind.PREFIX ? value + "%" : "%" + value);
+			}
+			break;
+		}
+	}
+
+	private static void bindMatch(PreparedStatement statement, int first, List<String> parameters) throws SQLException {
+		int parameter = first;
+		for (String value : parameters) {
+			statement.setString(parameter++, value);
+		}
+	}
+
+	private void checkLayer(EnumGeoRefSourceAuthority layer) {
+		if (layer!=authority) {
+			throw new IllegalArgumentException("GeoPackage " + file.getPath() + " holds " + authority + " not " + layer);
+		}
+	}
+
+	private PreparedStatement prepare(ThreadState state, String sql) throws SQLException {
+		PreparedStatement result = state.statements.get(sql);
+		if (result==null) {
+			result = state.connection.prepareStatement(sql);
+			state.statements.put(sql, result);
+		}
+		return result;
+	}
+
+	private ThreadState getState() throws IOException {
+		if (closed) {
+			throw new IOException("GeoPackage " + file.getPath() + " has been closed");
+		}
+		ThreadState result = threadState.get();
+		if (result==null) {
+			try {
+				Connection connection = openConnection();
+				synchronized (connections) {
+					connections.add(connection);
+				}
+				result = new ThreadState(connection, geometryFactory);
+			} catch (SQLException e) {
+				throw new IOException("Unable to open GeoPackage " + file.getPath() + ": " + e.getMessage(), e);
+			}
+			threadState.set(result);
+		}
+		return result;
+	}
+
+	private Connection openConnection() throws SQLException {
+		Properties properties = new Properties();
+		properties.setProperty("open_mode", READ_ONLY);
+		return DriverManager.getConnection("jdbc:sqlite:" + file.getAbsolutePath(), properties);
+	}
+
+	/**
+	 * Find the table and geometry column to query, from gpkg_geometry_columns.
+	 *
+	 * @return the name of the table and of its geometry column.
+	 */
+	private String[] findGeometryColumn(Connection connection, String table) throws SQLException, IOException {
+		String sql = "SELECT g.table_name, g.column_name FROM gpkg_geometry_columns g JOIN gpkg_contents c ON g.table_name = c.table_name"
+				+ (table==null ? "" : " WHERE g.table_name = ?") + " ORDER BY g.table_name";
+		PreparedStatement statement = connection.prepareStatement(sql);
+		try {
+			if (table!=null) {
+				statement.setString(1, table);
+			}
+			ResultSet rs = statement.executeQuery();
+			try {
+				if (!rs.next()) {
+					throw new IOException("No feature table " + (table==null ? "" : table + " ") + "in GeoPackage " + file.getPath());
+				}
+				return new String[] { rs.getString(1), rs.getString(2) };
+			} finally {
+				rs.close();
+			}
+		} finally {
+			statement.close();
+		}
+	}
+
+	/**
+	 * Read a geometry in the GeoPackage binary format: a header of the magic GP, a version,
+	 * a flags byte, and the srs id, followed by an optional envelope, whose size is given
+	 * by the flags, followed by the geometry as WKB.
+	 *
+	 * @param reader the WKB reader to use.
+	 * @param blob the value of the geometry column.
+	 * @return the geometry, or null if the value is null.
+	 * @throws IOException if the value is not a GeoPackage geometry.
+	 */
+	static Geometry readGeometry(WKBReader reader, byte[] blob) throws IOException {
+		if (blob==null) {
+			return null;
+		}
+		if (blob.length < 8 || blob[0]!='G' || blob[1]!='P') {
+			throw new IOException("Not a GeoPackage geometry");
+		}
+		int envelopeIndicator = (blob[3] >> 1) & 0x07;
+		int envelopeBytes;
+		switch (envelopeIndicator) {
+		case 0:
+			envelopeBytes = 0;
+			break;
+		case 1:
+			envelopeBytes = 32;
+			break;
+		case 2:
+		case 3:
+			envelopeBytes = 48;
+			break;
+		case 4:
+			envelopeBytes = 64;
+			break;
+		default:
+			throw new IOException("Invalid envelope in GeoPackage geometry: " + envelopeIndicator);
+		}
+		try {
+			return reader.read(Arrays.copyOfRange(blob, 8 + envelopeBytes, blob.length));
+		} catch (ParseException e) {
+			throw new IOException(e.getMessage(), e);
+		}
+	}
+
+	private static String quote(String identifier) {
+		return "\"" + identifier.replace("\"", "\"\"") + "\"";
+	}
+
+}
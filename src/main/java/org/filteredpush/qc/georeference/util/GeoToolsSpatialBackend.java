@@ -0,0 +1,168 @@
+/**
+ * GeoToolsSpatialBackend.java
+ *
+ * Copyright 2026 President and Fellows of Harvard College
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.filteredpush.qc.georeference.util;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.filteredpush.qc.georeference.EnumGeoRefSourceAuthority;
+import org.geotools.api.data.SimpleFeatureSource;
+import org.geotools.api.feature.simple.SimpleFeature;
+import org.geotools.api.filter.Filter;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+
+/**
+ * Spatial backend which queries the shapefile of each layer through GeoTools with
+ * filters built by {@link SpatialFilters}.  Each query is evaluated by the shapefile
+ * data store, which reads the matching records from the shapefile, so this backend holds
+ * no features in memory, but is much slower than the others.  Distance queries select
+ * candidates with a BBOX filter around the point, and measure the distance in meters to
+ * the geometry of each candidate with
+ * {@link GeodesicDistanceIndex#isWithinDistance(Geometry, double, double, double)}, as
+ * the shapefile data store only measures distances in degrees.  It is the reference
+ * against which the other backends are checked, and selecting it with
+ * {@link SpatialLayerRegistry#BACKEND_PROPERTY} sends every spatial test through GeoTools.
+ *
+ * @author mole
+ * @version $Id: $Id
+ */
+public class GeoToolsSpatialBackend implements SpatialBackend {
+
+	/** The name of this backend. */
+	public static final String NAME = "geotools";
+
+	/** Margin in degrees added to search envelopes to allow for rounding. */
+	private static final double ENVELOPE_MARGIN = 1e-9d;
+
+	private final SpatialLayerRegistry registry;
+
+	/**
+	 * Construct a backend over the layers of a registry.
+	 *
+	 * @param registry the registry providing the layers.
+	 */
+	public GeoToolsSpatialBackend(SpatialLayerRegistry registry) {
+		this.registry = registry;
+	}
+
+	@Override
+	public String getName() {
+		return NAME;
+	}
+
+	@Override
+	public boolean contains(EnumGeoRefSourceAuthority layer, AttributeMatch match, double longitude, double latitude) throws IOException {
+		if (match.isNone()) {
+			return false;
+		}
+		return hasAny(layer, withMatch(SpatialFilters.containsPoint(longitude, latitude), match));
+	}
+
+	@Override
+	public boolean isWithinDistance(EnumGeoRefSourceAuthority layer, AttributeMatch match, double longitude, double latitude, double distanceMeters) throws IOException {
+		if (match.isNone()) {
+			return false;
+		}
+		// candidates from the envelopes around the point, wrapping across the antimeridian,
+		// then the distance in meters to each candidate
+		double latitudeSpan = GeodesicDistanceIndex.latitudeSpan(distanceMeters) + ENVELOPE_MARGIN;
+		double longitudeSpan = GeodesicDistanceIndex.longitudeSpan(latitude, distanceMeters) + ENVELOPE_MARGIN;
+		List<Envelope> searches = Antimeridian.queryEnvelopes(longitude, latitude, longitudeSpan, latitudeSpan);
+		Filter[] candidates = new Filter[searches.size()];
+		for (int i=0; i<candidates.length; i++) {
+			candidates[i] = SpatialFilters.intersectsEnvelope(searches.get(i));
+		}
+		Filter filter = withMatch(candidates.length==1 ? candidates[0] : SpatialFilters.or(candidates), match);
+		SimpleFeatureIterator iter = getFeatureSource(layer).getFeatures(filter).features();
+		try {
+			while (iter.hasNext()) {
+				Object geometry = iter.next().getDefaultGeometry();
+				if (geometry instanceof Geometry && GeodesicDistanceIndex.isWithinDistance((Geometry)geometry, longitude, latitude, distanceMeters)) {
+					return true;
+				}
+			}
+		} finally {
+			iter.close();
+		}
+		return false;
+	}
+
+	@Override
+	public boolean isKnown(EnumGeoRefSourceAuthority layer, AttributeMatch match) throws IOException {
+		if (match.isNone()) {
+			return false;
+		}
+		return hasAny(layer, SpatialFilters.matching(match));
+	}
+
+	@Override
+	public List<String[]> findContaining(EnumGeoRefSourceAuthority layer, double longitude, double latitude, String... attributes) throws IOException {
+		List<String[]> result = new ArrayList<String[]>();
+		SimpleFeatureIterator iter = getFeatureSource(layer).getFeatures(SpatialFilters.containsPoint(longitude, latitude)).features();
+		try {
+			while (iter.hasNext()) {
+				SimpleFeature feature = iter.next();
+				String[] values = new String[attributes.length];
+				for (int i=0; i<attributes.length; i++) {
+					Object value = feature.getAttribute(attributes[i]);
+					values[i] = value==null ? null : value.toString();
+				}
+				result.add(values);
+			}
+		} finally {
+			iter.close();
+		}
+		return result;
+	}
+
+	/**
+	 * Open the feature source of a layer, which creates the spatial index of its local
+	 * copy, and read the index once with a point query.
+	 */
+	@Override
+	public void warmUp(EnumGeoRefSourceAuthority layer) throws IOException {
+		hasAny(layer, SpatialFilters.containsPoint(0d, 0d));
+	}
+
+	private boolean hasAny(EnumGeoRefSourceAuthority layer, Filter filter) throws IOException {
+		SimpleFeatureIterator iter = getFeatureSource(layer).getFeatures(filter).features();
+		try {
+			return iter.hasNext();
+		} finally {
+			iter.close();
+		}
+	}
+
+	private SimpleFeatureSource getFeatureSource(EnumGeoRefSourceAuthority layer) throws IOException {
+		return registry.getLayer(layer).getFeatureSource();
+	}
+
+	/**
+	 * Combine a filter with the filter for a match.
+	 */
+	private static Filter withMatch(Filter filter, AttributeMatch match) {
+		if (match.isAll()) {
+			return filter;
+		}
+		return SpatialFilters.and(SpatialFilters.matching(match), filter);
+	}
+
+}
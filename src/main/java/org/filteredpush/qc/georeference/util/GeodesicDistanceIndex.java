@@ -0,0 +1,583 @@
+/**
+ * GeodesicDistanceIndex.java
+ *
+ * Copyright 2026 President and Fellows of Harvard College
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.filteredpush.qc.georeference.util;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.LineString;
+import org.locationtech.jts.geom.util.LinearComponentExtracter;
+import org.locationtech.jts.index.strtree.STRtree;
+
+/**
+ * Buffer distance tests in meters against the features of a layer, in place of testing
+ * within a distance in degrees of km/111 (which is distorted away from the equator).
+ *
+ * The boundaries of the features are broken into short runs of edges held in an STRtree.
+ * A query first selects the runs which intersect an envelope around the point that is
+ * wide enough in longitude for the latitude of the point, then computes the great circle
+ * distance in meters from the point to each edge of only those runs.  Distances are
+ * computed on a sphere of the mean radius of the earth, treating each edge between two
+ * vertices as a great circle arc.  The edges of the shapefiles are straight lines in
+ * longitude and latitude, which depart from the great circle arc between their ends by
+ * as much as a quarter of a degree on a long edge along a parallel, so edges longer than
+ * {@link #MAX_EDGE_DEGREES} are divided before they are indexed, leaving the arcs within
+ * a few meters of the edges.
+ *
+ * Instances are immutable once built and are safe to share between threads.
+ *
+ * @author mole
+ * @version $Id: $Id
+ */
+public class GeodesicDistanceIndex {
+
+	private static final Log logger = LogFactory.getLog(GeodesicDistanceIndex.class);
+
+	/** Mean radius of the earth in meters (IUGG). */
+	public static final double EARTH_MEAN_RADIUS_METERS = 6371008.8d;
+
+	/** Length of one degree of a great circle in meters. */
+	public static final double METERS_PER_DEGREE = EARTH_MEAN_RADIUS_METERS * Math.PI / 180d;
+
+	/** Longest edge in degrees indexed as a single great circle arc, longer edges are divided. */
+	public static final double MAX_EDGE_DEGREES = 0.1d;
+
+	/** Number of edges in each run of edges placed in the spatial index. */
+	private static final int EDGES_PER_RUN = 8;
+
+	/** Margin in degrees added to search envelopes to allow for rounding. */
+	private static final double ENVELOPE_MARGIN = 1e-9d;
+
+	private final IndexedFeatureLayer layer;
+	private final STRtree index;
+	private final int runCount;
+
+	/**
+	 * A run of consecutive edges from the boundary of one feature.
+	 */
+	private static class EdgeRun {
+		private final int featureId;
+		private final double[] xy;
+		private final int start;
+		private final int end;
+
+		/**
+		 * @param featureId the id of the feature the edges belong to.
+		 * @param xy the interleaved longitude and latitude of the vertices of the line.
+		 * @param start index of the first vertex of the run.
+		 * @param end index of the last vertex of the run.
+		 */
+		private EdgeRun(int featureId, double[] xy, int start, int end) {
+			this.featureId = featureId;
+			this.xy = xy;
+			this.start = start;
+			this.end = end;
+		}
+
+		/**
+		 * @return the envelope of the arcs of this run, including the latitude of any arc
+		 *   which bulges poleward of its ends.
+		 */
+		private Envelope getEnvelope() {
+			Envelope result = new Envelope();
+			result.expandToInclude(xy[2*start], xy[2*start+1]);
+			double[] a = toUnitVector(xy[2*start], xy[2*start+1]);
+			for (int i=start+1; i<=end; i++) {
+				result.expandToInclude(xy[2*i], xy[2*i+1]);
+				double[] b = toUnitVector(xy[2*i], xy[2*i+1]);
+				expandToArcLatitudes(result, a, b);
+				a = b;
+			}
+			return result;
+		}
+
+		/**
+		 * @return the smallest angular distance in radians from a unit vector to the edges of this run.
+		 */
+		private double angleTo(double px, double py, double pz) {
+			double result = Double.MAX_VALUE;
+			double[] a = toUnitVector(xy[2*start], xy[2*start+1]);
+			if (start==end) {
+				return angleBetween(px, py, pz, a[0], a[1], a[2]);
+			}
+			for (int i=start+1; i<=end; i++) {
+				double[] b = toUnitVector(xy[2*i], xy[2*i+1]);
+				result = Math.min(result, angleToArc(px, py, pz, a, b));
+				a = b;
+			}
+			return result;
+		}
+	}
+
+	/**
+	 * Build an index over the boundaries of the features of a layer.
+	 *
+	 * @param layer the layer to index.
+	 */
+	public GeodesicDistanceIndex(IndexedFeatureLayer layer) {
+		long startTime = System.currentTimeMillis();
+		this.layer = layer;
+		this.index = new STRtree();
+		int runs = 0;
+		for (SpatialFeature feature : layer.getFeatures()) {
+			Geometry geometry = feature.getGeometry();
+			if (geometry==null || geometry.isEmpty()) {
+				continue;
+			}
+			if (geometry.getDimension()==0) {
+				// points, a run of a single vertex each
+				for (Coordinate coordinate : geometry.getCoordinates()) {
+					double[] xy = new double[] { coordinate.x, coordinate.y };
+					runs += insert(new EdgeRun(feature.getId(), xy, 0, 0));
+				}
+			} else {
+				@SuppressWarnings("unchecked")
+				List<LineString> lines = LinearComponentExtracter.getLines(geometry);
+				for (LineString line : lines) {
+					runs += insertLine(feature.getId(), line.getCoordinates());
+				}
+			}
+		}
+		index.build();
+		this.runCount = runs;
+		logger.debug("Indexed " + runs + " runs of edges from " + layer.getName() + " in " + (System.currentTimeMillis() - startTime) + " ms");
+	}
+
+	private int insertLine(int featureId, Coordinate[] coordinates) {
+		if (coordinates.length==0) {
+			return 0;
+		}
+		double[] xy = densify(coordinates);
+		int vertices = xy.length / 2;
+		if (vertices==1) {
+			return insert(new EdgeRun(featureId, xy, 0, 0));
+		}
+		int result = 0;
+		for (int start=0; start<vertices-1; start+=EDGES_PER_RUN) {
+			int end = Math.min(start + EDGES_PER_RUN, vertices - 1);
+			result += insert(new EdgeRun(featureId, xy, start, end));
+		}
+		return result;
+	}
+
+	/**
+	 * Interleave the longitude and latitude of the vertices of a line, adding vertices along
+	 * the straight line in longitude and latitude of each edge longer than MAX_EDGE_DEGREES.
+	 *
+	 * @param coordinates the vertices of the line.
+	 * @return the interleaved longitude and latitude of the vertices of the divided line.
+	 */
+	private static double[] densify(Coordinate[] coordinates) {
+		int vertices = 1;
+		for (int i=1; i<coordinates.length; i++) {
+			vertices += divisions(coordinates[i-1], coordinates[i]);
+		}
+		double[] result = new double[vertices * 2];
+		result[0] = coordinates[0].x;
+		result[1] = coordinates[0].y;
+		int position = 2;
+		for (int i=1; i<coordinates.length; i++) {
+			Coordinate a = coordinates[i-1];
+			Coordinate b = coordinates[i];
+			int divisions = divisions(a, b);
+			for (int j=1; j<divisions; j++) {
+				double fraction = (double) j / divisions;
+				result[position++] = a.x + (b.x - a.x) * fraction;
+				result[position++] = a.y + (b.y - a.y) * fraction;
+			}
+			result[position++] = b.x;
+			result[position++] = b.y;
+		}
+		return result;
+	}
+
+	private static int divisions(Coordinate a, Coordinate b) {
+		return divisions(a.x, a.y, b.x, b.y);
+	}
+
+	private static int divisions(double xA, double yA, double xB, double yB) {
+		double length = Math.max(Math.abs(xB - xA), Math.abs(yB - yA));
+		return Math.max(1, (int) Math.ceil(length / MAX_EDGE_DEGREES));
+	}
+
+	private int insert(EdgeRun run) {
+		index.insert(run.getEnvelope(), run);
+		return 1;
+	}
+
+	/**
+	 * <p>Getter for the field <code>layer</code>.</p>
+	 *
+	 * @return the layer this index is over.
+	 */
+	public IndexedFeatureLayer getLayer() {
+		return layer;
+	}
+
+	/**
+	 * @return the number of runs of edges held in the index.
+	 */
+	public int getRunCount() {
+		return runCount;
+	}
+
+	/**
+	 * Find the features which contain a point or whose boundary lies within a distance of the point.
+	 *
+	 * @param longitude of the point.
+	 * @param latitude of the point.
+	 * @param distanceMeters the buffer distance in meters.
+	 * @return the features within the distance of the point, in id order.
+	 */
+	public List<SpatialFeature> findWithinDistance(double longitude, double latitude, double distanceMeters) {
+		BitSet ids = findBoundaryWithinDistance(longitude, latitude, distanceMeters, null);
+		for (SpatialFeature feature : layer.findContaining(longitude, latitude)) {
+			ids.set(feature.getId());
+		}
+		List<SpatialFeature> result = new ArrayList<SpatialFeature>(ids.cardinality());
+		for (int id = ids.nextSetBit(0); id >= 0; id = ids.nextSetBit(id + 1)) {
+			result.add(layer.getFeatures().get(id));
+		}
+		return result;
+	}
+
+	/**
+	 * Test whether any of a set of features contains a point or has a boundary within a
+	 * distance of the point.
+	 *
+	 * @param longitude of the point.
+	 * @param latitude of the point.
+	 * @param distanceMeters the buffer distance in meters.
+	 * @param features the ids of the features to consider, null for all features.
+	 * @return true if any of the features is within the distance of the point.
+	 */
+	public boolean isWithinDistance(double longitude, double latitude, double distanceMeters, BitSet features) {
+		if (features!=null && features.isEmpty()) {
+			return false;
+		}
+		for (SpatialFeature feature : layer.findContaining(longitude, latitude)) {
+			if (features==null || features.get(feature.getId())) {
+				return true;
+			}
+		}
+		return isBoundaryWithinDistance(longitude, latitude, distanceMeters, features);
+	}
+
+	/**
+	 * Test whether the boundary of any of a set of features lies within a distance of a point,
+	 * without testing whether the point is inside a feature.
+	 *
+	 * @param longitude of the point.
+	 * @param latitude of the point.
+	 * @param distanceMeters the buffer distance in meters.
+	 * @param features the ids of the features to consider, null for all features.
+	 * @return true if the boundary of any of the features is within the distance of the point.
+	 */
+	public boolean isBoundaryWithinDistance(double longitude, double latitude, double distanceMeters, BitSet features) {
+		double maxAngle = distanceMeters / EARTH_MEAN_RADIUS_METERS;
+		double[] p = toUnitVector(longitude, latitude);
+		for (EdgeRun run : queryRuns(longitude, latitude, distanceMeters)) {
+			if ((features==null || features.get(run.featureId)) && run.angleTo(p[0], p[1], p[2]) <= maxAngle) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Find the features whose boundary lies within a distance of a point, without testing
+	 * whether the point is inside a feature.
+	 *
+	 * @param longitude of the point.
+	 * @param latitude of the point.
+	 * @param distanceMeters the buffer distance in meters.
+	 * @param features the ids of the features to consider, null for all features.
+	 * @return the ids of the features whose boundary is within the distance of the point.
+	 */
+	public BitSet findBoundaryWithinDistance(double longitude, double latitude, double distanceMeters, BitSet features) {
+		BitSet result = new BitSet();
+		double maxAngle = distanceMeters / EARTH_MEAN_RADIUS_METERS;
+		double[] p = toUnitVector(longitude, latitude);
+		for (EdgeRun run : queryRuns(longitude, latitude, distanceMeters)) {
+			if (!result.get(run.featureId) && (features==null || features.get(run.featureId)) && run.angleTo(p[0], p[1], p[2]) <= maxAngle) {
+				result.set(run.featureId);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Find the distance in meters from a point to the nearest boundary of a set of features,
+	 * looking no further than a limit.
+	 *
+	 * @param longitude of the point.
+	 * @param latitude of the point.
+	 * @param limitMeters the largest distance to search.
+	 * @param features the ids of the features to consider, null for all features.
+	 * @return the distance in meters to the nearest boundary, or Double.POSITIVE_INFINITY
+	 *   if no boundary lies within limitMeters.
+	 */
+	public double distanceToBoundary(double longitude, double latitude, double limitMeters, BitSet features) {
+		double result = Double.POSITIVE_INFINITY;
+		double[] p = toUnitVector(longitude, latitude);
+		for (EdgeRun run : queryRuns(longitude, latitude, limitMeters)) {
+			if (features==null || features.get(run.featureId)) {
+				double distance = run.angleTo(p[0], p[1], p[2]) * EARTH_MEAN_RADIUS_METERS;
+				if (distance <= limitMeters && distance < result) {
+					result = distance;
+				}
+			}
+		}
+		return result;
+	}
+
+	@SuppressWarnings("unchecked")
+	private List<EdgeRun> queryRuns(double longitude, double latitude, double distanceMeters) {
+		double latitudeSpan = latitudeSpan(distanceMeters) + ENVELOPE_MARGIN;
+		double longitudeSpan = longitudeSpan(latitude, distanceMeters) + ENVELOPE_MARGIN;
+		List<Envelope> searches = Antimeridian.queryEnvelopes(longitude, latitude, longitudeSpan, latitudeSpan);
+		List<EdgeRun> result = index.query(searches.get(0));
+		// the search area wraps across the antimeridian
+		if (searches.size() > 1) {
+			result = new ArrayList<EdgeRun>(result);
+			result.addAll(index.query(searches.get(1)));
+		}
+		return result;
+	}
+
+	/**
+	 * The span in degrees of latitude of a distance.
+	 *
+	 * @param distanceMeters a distance in meters.
+	 * @return the number of degrees of latitude covered by the distance.
+	 */
+	public static double latitudeSpan(double distanceMeters) {
+		return distanceMeters / METERS_PER_DEGREE;
+	}
+
+	/**
+	 * The largest span in degrees of longitude of the points within a distance of a point
+	 * at a latitude.
+	 *
+	 * @param latitude of the point.
+	 * @param distanceMeters a distance in meters.
+	 * @return the number of degrees of longitude on either side of the point within which
+	 *   all points within the distance lie, 180 if the distance reaches a pole.
+	 */
+	public static double longitudeSpan(double latitude, double distanceMeters) {
+		double angle = distanceMeters / EARTH_MEAN_RADIUS_METERS;
+		double cosLatitude = Math.cos(Math.toRadians(latitude));
+		double sinAngle = Math.sin(angle);
+		if (angle >= Math.PI / 2d || sinAngle >= cosLatitude) {
+			return 180d;
+		}
+		return Math.toDegrees(Math.asin(sinAngle / cosLatitude));
+	}
+
+	/**
+	 * The great circle distance in meters between two points.
+	 *
+	 * @param longitude1 of the first point.
+	 * @param latitude1 of the first point.
+	 * @param longitude2 of the second point.
+	 * @param latitude2 of the second point.
+	 * @return the distance in meters.
+	 */
+	public static double distanceMeters(double longitude1, double latitude1, double longitude2, double latitude2) {
+		double[] a = toUnitVector(longitude1, latitude1);
+		double[] b = toUnitVector(longitude2, latitude2);
+		return angleBetween(a[0], a[1], a[2], b[0], b[1], b[2]) * EARTH_MEAN_RADIUS_METERS;
+	}
+
+	/**
+	 * The great circle distance in meters from a point to an edge drawn as a straight line
+	 * in longitude and latitude between two points, as the edges of the shapefiles are.
+	 *
+	 * @param longitude of the point.
+	 * @param latitude of the point.
+	 * @param longitudeA of the start of the edge.
+	 * @param latitudeA of the start of the edge.
+	 * @param longitudeB of the end of the edge.
+	 * @param latitudeB of the end of the edge.
+	 * @return the distance in meters.
+	 */
+	public static double distanceToSegmentMeters(double longitude, double latitude, double longitudeA, double latitudeA, double longitudeB, double latitudeB) {
+		return angleToEdge(toUnitVector(longitude, latitude), longitudeA, latitudeA, longitudeB, latitudeB) * EARTH_MEAN_RADIUS_METERS;
+	}
+
+	/**
+	 * Test whether a point is inside, on, or within a distance in meters of a geometry,
+	 * measuring to the straight edges in longitude and latitude of the geometry, without
+	 * building an index.  Used where geometries are read one at a time for a query.
+	 *
+	 * @param geometry the geometry, in longitude and latitude.
+	 * @param longitude of the point.
+	 * @param latitude of the point.
+	 * @param distanceMeters the buffer distance in meters.
+	 * @return true if a polygon of the geometry covers the point or any part of the geometry
+	 *   lies within the distance of the point.
+	 */
+	public static boolean isWithinDistance(Geometry geometry, double longitude, double latitude, double distanceMeters) {
+		if (geometry==null || geometry.isEmpty()) {
+			return false;
+		}
+		if (geometry.getDimension()==2 && geometry.covers(geometry.getFactory().createPoint(new Coordinate(longitude, latitude)))) {
+			return true;
+		}
+		double maxAngle = distanceMeters / EARTH_MEAN_RADIUS_METERS;
+		// no point further in latitude than this from the point can be within the distance
+		double latitudeSpan = latitudeSpan(distanceMeters) + ENVELOPE_MARGIN;
+		double[] p = toUnitVector(longitude, latitude);
+		if (geometry.getDimension()==0) {
+			for (Coordinate coordinate : geometry.getCoordinates()) {
+				if (Math.abs(coordinate.y - latitude) <= latitudeSpan && angleToEdge(p, coordinate.x, coordinate.y, coordinate.x, coordinate.y) <= maxAngle) {
+					return true;
+				}
+			}
+			return false;
+		}
+		@SuppressWarnings("unchecked")
+		List<LineString> lines = LinearComponentExtracter.getLines(geometry);
+		for (LineString line : lines) {
+			Coordinate[] coordinates = line.getCoordinates();
+			// a line of a single vertex is tested as one edge of no length
+			for (int i=coordinates.length==1 ? 0 : 1; i<coordinates.length; i++) {
+				Coordinate a = coordinates[Math.max(0, i - 1)];
+				Coordinate b = coordinates[i];
+				if (Math.min(a.y, b.y) - latitude > latitudeSpan || latitude - Math.max(a.y, b.y) > latitudeSpan) {
+					continue;
+				}
+				if (angleToEdge(p, a.x, a.y, b.x, b.y) <= maxAngle) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * The angle in radians from a unit vector to an edge drawn as a straight line in
+	 * longitude and latitude, divided as the edges of the index are into arcs no longer
+	 * than MAX_EDGE_DEGREES.
+	 */
+	static double angleToEdge(double[] p, double longitudeA, double latitudeA, double longitudeB, double latitudeB) {
+		double[] a = toUnitVector(longitudeA, latitudeA);
+		if (longitudeA==longitudeB && latitudeA==latitudeB) {
+			return angleBetween(p[0], p[1], p[2], a[0], a[1], a[2]);
+		}
+		int divisions = divisions(longitudeA, latitudeA, longitudeB, latitudeB);
+		double result = Double.MAX_VALUE;
+		for (int j=1; j<=divisions; j++) {
+			double fraction = (double) j / divisions;
+			double[] b = toUnitVector(longitudeA + (longitudeB - longitudeA) * fraction, latitudeA + (latitudeB - latitudeA) * fraction);
+			result = Math.min(result, angleToArc(p[0], p[1], p[2], a, b));
+			a = b;
+		}
+		return result;
+	}
+
+	static double[] toUnitVector(double longitude, double latitude) {
+		double lambda = Math.toRadians(longitude);
+		double phi = Math.toRadians(latitude);
+		double cosPhi = Math.cos(phi);
+		return new double[] { cosPhi * Math.cos(lambda), cosPhi * Math.sin(lambda), Math.sin(phi) };
+	}
+
+	private static double angleBetween(double ax, double ay, double az, double bx, double by, double bz) {
+		double cx = ay * bz - az * by;
+		double cy = az * bx - ax * bz;
+		double cz = ax * by - ay * bx;
+		return Math.atan2(Math.sqrt(cx * cx + cy * cy + cz * cz), ax * bx + ay * by + az * bz);
+	}
+
+	/**
+	 * Expand an envelope to the most northerly and southerly latitudes of the minor arc
+	 * from a to b, which lie between a and b when the arc crosses the highest or lowest
+	 * point of its great circle.
+	 */
+	private static void expandToArcLatitudes(Envelope envelope, double[] a, double[] b) {
+		double nx = a[1] * b[2] - a[2] * b[1];
+		double ny = a[2] * b[0] - a[0] * b[2];
+		double nz = a[0] * b[1] - a[1] * b[0];
+		double length = Math.sqrt(nx * nx + ny * ny + nz * nz);
+		if (length <= 1e-15d) {
+			return;
+		}
+		nx = nx / length;
+		ny = ny / length;
+		nz = nz / length;
+		double horizontal = Math.sqrt(Math.max(0d, 1d - nz * nz));
+		if (horizontal <= 1e-15d) {
+			// the arc lies along the equator
+			return;
+		}
+		// the highest point of the great circle, its lowest point is opposite
+		double hx = -nz * nx / horizontal;
+		double hy = -nz * ny / horizontal;
+		double hz = horizontal;
+		double latitude = Math.toDegrees(Math.asin(Math.min(1d, hz)));
+		if (isOnArc(hx, hy, hz, a, b, nx, ny, nz)) {
+			envelope.expandToInclude(envelope.getMinX(), latitude + ENVELOPE_MARGIN);
+		}
+		if (isOnArc(-hx, -hy, -hz, a, b, nx, ny, nz)) {
+			envelope.expandToInclude(envelope.getMinX(), -latitude - ENVELOPE_MARGIN);
+		}
+	}
+
+	/**
+	 * @return true if the point c on the great circle with unit normal n lies after a and before b.
+	 */
+	private static boolean isOnArc(double cx, double cy, double cz, double[] a, double[] b, double nx, double ny, double nz) {
+		double afterA = (a[1] * cz - a[2] * cy) * nx + (a[2] * cx - a[0] * cz) * ny + (a[0] * cy - a[1] * cx) * nz;
+		double beforeB = (cy * b[2] - cz * b[1]) * nx + (cz * b[0] - cx * b[2]) * ny + (cx * b[1] - cy * b[0]) * nz;
+		return afterA >= 0d && beforeB >= 0d;
+	}
+
+	/**
+	 * @return the angle in radians from p to the nearest point on the minor arc from a to b.
+	 */
+	private static double angleToArc(double px, double py, double pz, double[] a, double[] b) {
+		// normal to the great circle through a and b
+		double nx = a[1] * b[2] - a[2] * b[1];
+		double ny = a[2] * b[0] - a[0] * b[2];
+		double nz = a[0] * b[1] - a[1] * b[0];
+		double length = Math.sqrt(nx * nx + ny * ny + nz * nz);
+		if (length > 1e-15d) {
+			nx = nx / length;
+			ny = ny / length;
+			nz = nz / length;
+			double sinCrossTrack = px * nx + py * ny + pz * nz;
+			// projection of p onto the great circle
+			double cx = px - sinCrossTrack * nx;
+			double cy = py - sinCrossTrack * ny;
+			double cz = pz - sinCrossTrack * nz;
+			// the projection lies on the arc if it is after a and before b
+			if (isOnArc(cx, cy, cz, a, b, nx, ny, nz)) {
+				return Math.asin(Math.min(1d, Math.abs(sinCrossTrack)));
+			}
+		}
+		return Math.min(angleBetween(px, py, pz, a[0], a[1], a[2]), angleBetween(px, py, pz, b[0], b[1], b[2]));
+	}
+
+}
@@ -70,11 +70,11 @@ public class GeolocationAlternative {
 	 * Construct a geolocation alternative specifying the latitude, longitude, and which
 	 * variation (transposition, sign change, etc.) is represented by this alternative.
 	 * 
-	 * @param latitude
-	 * @param longitude
-	 * @param whichAlternative
+	 * @param latitude the latitude of the alternative.
+	 * @param longitude the longitude of the alternative.
+	 * @param whichAlternative a description of the variation.
 	 */
-	GeolocationAlternative(double latitude, double longitude, String whichAlternative) { 
+	public GeolocationAlternative(double latitude, double longitude, String whichAlternative) { 
 		this.latitude = latitude;
 		this.longitude = longitude;
 		this.alternative = whichAlternative;
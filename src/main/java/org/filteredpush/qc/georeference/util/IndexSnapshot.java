@@ -0,0 +1,361 @@
+/**
+ * IndexSnapshot.java
+ *
+ * Copyright 2026 President and Fellows of Harvard College
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.filteredpush.qc.georeference.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.io.ParseException;
+import org.locationtech.jts.io.WKBReader;
+import org.locationtech.jts.io.WKBWriter;
+
+/**
+ * Snapshot on disk of the indexes built over one spatial layer, so that a JVM can load
+ * indexes built by an earlier JVM rather than building them again.  Each JVM started by a
+ * batch run otherwise repeats the clipping of the large polygons into the pieces of a
+ * {@link SubdividedPolygonIndex} and the collection of the attribute values of an
+ * {@link AttributeIndex}.
+ *
+ * Snapshots are written to a directory for the version of the data, by default
+ * ~/.cache/geo_ref_qc/&lt;data version&gt;/, so a change to the VERSION file beside a bundled
+ * shapefile leads to the indexes being built and written again, and snapshots of the old
+ * version are no longer read.  The root directory may be changed with the system property
+ * {@link #DIRECTORY_PROPERTY}, an empty value disables snapshots.  Layers without a VERSION
+ * file have no snapshot, as there would be no way to tell when the snapshot was stale.
+ *
+ * Each snapshot file carries the parameters the index was built with and the number of
+ * features of the layer, and a file which does not match is ignored.  Files are written
+ * beside and then moved over their final name, so that concurrent JVMs only ever read a
+ * complete snapshot.  Failure to read or write a snapshot is logged and the index is built
+ * in memory as if there were no snapshot.
+ *
+ * The spatial index over the feature envelopes needs no snapshot, as it is already held in
+ * the packed R-tree of the {@link BoundaryFile}; the STRtree over the pieces of a subdivided
+ * index is bulk loaded from the envelopes of the pieces read from the snapshot.
+ *
+ * @author mole
+ * @version $Id: $Id
+ */
+public class IndexSnapshot {
+
+	private static final Log logger = LogFactory.getLog(IndexSnapshot.class);
+
+	/**
+	 * System property holding the root directory for snapshots, empty to disable snapshots.
+	 */
+	public static final String DIRECTORY_PROPERTY = "org.filteredpush.qc.georeference.snapshotDirectory";
+
+	private static final int MAGIC = 0x47534E50; // GSNP
+	private static final int FORMAT_VERSION = 1;
+
+	private static final byte SUBDIVIDED = 1;
+	private static final byte ATTRIBUTE = 2;
+
+	private final File directory;
+	private final String name;
+
+	/**
+	 * Construct a snapshot of the indexes of one layer in a directory.
+	 *
+	 * @param directory the directory holding the snapshot files, created on first write.
+	 * @param name the name of the layer, used as the start of the name of each file.
+	 */
+	public IndexSnapshot(File directory, String name) {
+		this.directory = directory;
+		this.name = name;
+	}
+
+	/**
+	 * @return the default root directory for snapshots, ~/.cache/geo_ref_qc.
+	 */
+	public static File getDefaultDirectory() {
+		return new File(new File(System.getProperty("user.home"), ".cache"), "geo_ref_qc");
+	}
+
+	/**
+	 * Obtain the snapshot for a bundled shapefile, in the directory for the version of the
+	 * shapefile under the root directory given by {@link #DIRECTORY_PROPERTY}.
+	 *
+	 * @param shapeFileResource the classpath location of the shapefile.
+	 * @return the snapshot, or null if snapshots are disabled or the shapefile has no
+	 *   VERSION file.
+	 */
+	public static IndexSnapshot forResource(String shapeFileResource) {
+		String root = System.getProperty(DIRECTORY_PROPERTY);
+		if (root!=null && root.trim().length()==0) {
+			return null;
+		}
+		String dataVersion;
+		try {
+			dataVersion = BoundaryFile.readDataVersion(shapeFileResource);
+		} catch (IOException e) {
+			logger.error(e.getMessage(), e);
+			return null;
+		}
+		if (dataVersion.length()==0) {
+			return null;
+		}
+		File rootDirectory = root==null ? getDefaultDirectory() : new File(root.trim());
+		String layerName = shapeFileResource.substring(shapeFileResource.lastIndexOf('/') + 1);
+		if (layerName.endsWith(".shp")) {
+			layerName = layerName.substring(0, layerName.length() - 4);
+		}
+		return new IndexSnapshot(new File(rootDirectory, safeName(dataVersion)), layerName);
+	}
+
+	/**
+	 * <p>Getter for the field <code>directory</code>.</p>
+	 *
+	 * @return the directory holding the snapshot files.
+	 */
+	public File getDirectory() {
+		return directory;
+	}
+
+	/**
+	 * <p>Getter for the field <code>name</code>.</p>
+	 *
+	 * @return the name of the layer.
+	 */
+	public String getName() {
+		return name;
+	}
+
+	static String safeName(String value) {
+		return value.replaceAll("[^A-Za-z0-9._-]", "_");
+	}
+
+	private File subdividedFile(int maxVertices, double tileDegrees) {
+		return new File(directory, name + ".pieces." + maxVertices + "." + safeName(Double.toString(tileDegrees)) + ".snapshot");
+	}
+
+	private File attributeFile(String attribute) {
+		return new File(directory, name + ".values." + safeName(attribute) + ".snapshot");
+	}
+
+	/**
+	 * Load a subdivided index over a layer from this snapshot.
+	 *
+	 * @param layer the layer the index is over.
+	 * @param maxVertices the maximum number of vertices in a piece.
+	 * @param tileDegrees the size of the grid tiles large polygons are clipped to.
+	 * @return the index, or null if there is no matching snapshot of the index.
+	 */
+	public SubdividedPolygonIndex loadSubdividedIndex(IndexedFeatureLayer layer, int maxVertices, double tileDegrees) {
+		File file = subdividedFile(maxVertices, tileDegrees);
+		if (!file.exists()) {
+			return null;
+		}
+		long startTime = System.currentTimeMillis();
+		DataInputStream data = null;
+		try {
+			data = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+			if (!readHeader(data, SUBDIVIDED, layer) || data.readInt()!=maxVertices || data.readDouble()!=tileDegrees) {
+				logger.debug("Ignoring snapshot " + file.getPath() + " built for other data or parameters");
+				return null;
+			}
+			int pieceCount = data.readInt();
+			int[] parents = new int[pieceCount];
+			List<Geometry> geometries = new ArrayList<Geometry>(pieceCount);
+			WKBReader reader = new WKBReader(layer.createPoint(0d, 0d).getFactory());
+			for (int i=0; i<pieceCount; i++) {
+				parents[i] = data.readInt();
+				byte[] wkb = new byte[data.readInt()];
+				data.readFully(wkb);
+				geometries.add(reader.read(wkb));
+			}
+			SubdividedPolygonIndex result = new SubdividedPolygonIndex(layer, maxVertices, tileDegrees, parents, geometries);
+			logger.debug("Loaded " + pieceCount + " pieces of " + name + " from " + file.getPath() + " in " + (System.currentTimeMillis() - startTime) + " ms");
+			return result;
+		} catch (IOException e) {
+			logger.error("Unable to read snapshot " + file.getPath() + ": " + e.getMessage());
+		} catch (ParseException e) {
+			logger.error("Unable to read snapshot " + file.getPath() + ": " + e.getMessage());
+		} catch (IndexOutOfBoundsException e) {
+			logger.error("Snapshot " + file.getPath() + " does not match the layer: " + e.getMessage());
+		} finally {
+			close(data);
+		}
+		return null;
+	}
+
+	/**
+	 * Save the pieces of a subdivided index to this snapshot.
+	 *
+	 * @param index the index to save.
+	 * @return true if the snapshot was written.
+	 */
+	public boolean saveSubdividedIndex(SubdividedPolygonIndex index) {
+		File file = subdividedFile(index.getMaxVertices(), index.getTileDegrees());
+		DataOutputStream data = null;
+		File temporary = null;
+		try {
+			temporary = createTemporary(file);
+			data = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary)));
+			writeHeader(data, SUBDIVIDED, index.getLayer());
+			data.writeInt(index.getMaxVertices());
+			data.writeDouble(index.getTileDegrees());
+			data.writeInt(index.getPieceCount());
+			WKBWriter writer = new WKBWriter();
+			for (int i=0; i<index.getPieceCount(); i++) {
+				byte[] wkb = writer.write(index.getPieceGeometry(i));
+				data.writeInt(index.getPieceParent(i));
+				data.writeInt(wkb.length);
+				data.write(wkb);
+			}
+			data.close();
+			data = null;
+			Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			logger.debug("Wrote " + index.getPieceCount() + " pieces of " + name + " to " + file.getPath());
+			return true;
+		} catch (IOException e) {
+			logger.error("Unable to write snapshot " + file.getPath() + ": " + e.getMessage());
+			close(data);
+			if (temporary!=null) {
+				temporary.delete();
+			}
+			return false;
+		}
+	}
+
+	/**
+	 * Load an index of the values of an attribute of a layer from this snapshot.
+	 *
+	 * @param layer the layer the index is over.
+	 * @param attribute the name of the attribute.
+	 * @return the index, or null if there is no matching snapshot of the index.
+	 */
+	public AttributeIndex loadAttributeIndex(IndexedFeatureLayer layer, String attribute) {
+		File file = attributeFile(attribute);
+		if (!file.exists()) {
+			return null;
+		}
+		DataInputStream data = null;
+		try {
+			data = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+			if (!readHeader(data, ATTRIBUTE, layer) || !attribute.equals(data.readUTF())) {
+				logger.debug("Ignoring snapshot " + file.getPath() + " built for other data");
+				return null;
+			}
+			int valueCount = data.readInt();
+			Map<String,BitSet> values = new HashMap<String,BitSet>();
+			for (int i=0; i<valueCount; i++) {
+				String value = data.readUTF();
+				long[] words = new long[data.readInt()];
+				for (int j=0; j<words.length; j++) {
+					words[j] = data.readLong();
+				}
+				values.put(value, BitSet.valueOf(words));
+			}
+			return new AttributeIndex(attribute, layer.getFeatures(), values);
+		} catch (IOException e) {
+			logger.error("Unable to read snapshot " + file.getPath() + ": " + e.getMessage());
+		} finally {
+			close(data);
+		}
+		return null;
+	}
+
+	/**
+	 * Save an index of the values of an attribute of a layer to this snapshot.
+	 *
+	 * @param layer the layer the index is over.
+	 * @param index the index to save.
+	 * @return true if the snapshot was written.
+	 */
+	public boolean saveAttributeIndex(IndexedFeatureLayer layer, AttributeIndex index) {
+		File file = attributeFile(index.getAttribute());
+		DataOutputStream data = null;
+		File temporary = null;
+		try {
+			temporary = createTemporary(file);
+			data = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary)));
+			writeHeader(data, ATTRIBUTE, layer);
+			data.writeUTF(index.getAttribute());
+			Map<String,BitSet> values = index.getValues();
+			data.writeInt(values.size());
+			for (Map.Entry<String,BitSet> entry : values.entrySet()) {
+				data.writeUTF(entry.getKey());
+				long[] words = entry.getValue().toLongArray();
+				data.writeInt(words.length);
+				for (long word : words) {
+					data.writeLong(word);
+				}
+			}
+			data.close();
+			data = null;
+			Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			logger.debug("Wrote values of " + index.getAttribute() + " of " + name + " to " + file.getPath());
+			return true;
+		} catch (IOException e) {
+			logger.error("Unable to write snapshot " + file.getPath() + ": " + e.getMessage());
+			close(data);
+			if (temporary!=null) {
+				temporary.delete();
+			}
+			return false;
+		}
+	}
+
+	private File createTemporary(File file) throws IOException {
+		if (!directory.isDirectory() && !directory.mkdirs() && !directory.isDirectory()) {
+			throw new IOException("Unable to create directory " + directory.getPath());
+		}
+		return File.createTempFile(file.getName(), ".tmp", directory);
+	}
+
+	private static void writeHeader(DataOutputStream data, byte kind, IndexedFeatureLayer layer) throws IOException {
+		data.writeInt(MAGIC);
+		data.writeInt(FORMAT_VERSION);
+		data.writeByte(kind);
+		data.writeInt(layer.getFeatures().size());
+	}
+
+	private static boolean readHeader(DataInputStream data, byte kind, IndexedFeatureLayer layer) throws IOException {
+		return data.readInt()==MAGIC && data.readInt()==FORMAT_VERSION && data.readByte()==kind
+				&& data.readInt()==layer.getFeatures().size();
+	}
+
+	private static void close(Closeable closeable) {
+		if (closeable!=null) {
+			try {
+				closeable.close();
+			} catch (IOException e) {
+				logger.debug(e.getMessage());
+			}
+		}
+	}
+
+}
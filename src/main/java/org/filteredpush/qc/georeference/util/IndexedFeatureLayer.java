@@ -0,0 +1,360 @@
+/**
+ * IndexedFeatureLayer.java
+ *
+ * Copyright 2026 President and Fellows of Harvard College
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.filteredpush.qc.georeference.util;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.geotools.api.data.FileDataStore;
+import org.geotools.api.data.FileDataStoreFinder;
+import org.geotools.api.data.SimpleFeatureSource;
+import org.geotools.api.feature.simple.SimpleFeature;
+import org.geotools.api.feature.type.AttributeDescriptor;
+import org.geotools.api.feature.type.GeometryDescriptor;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.geometry.jts.JTSFactoryFinder;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.Point;
+import org.locationtech.jts.index.strtree.STRtree;
+
+/**
+ * A shapefile layer loaded once into memory, with an STRtree over the feature envelopes
+ * and case insensitive indexes on attribute values, so that point in polygon, point near
+ * polygon, and name lookups can be answered without reopening and scanning the shapefile.
+ * Features which cross the antimeridian are indexed under an envelope on each side of it,
+ * see {@link Antimeridian#splitEnvelope(Geometry)}, so that they are not candidates for
+ * every point at their latitudes.  Attribute indexes are read from and written to an
+ * {@link IndexSnapshot} when one is set.
+ *
+ * Instances are immutable once loaded and are safe to share between threads.
+ *
+ * @author mole
+ * @version $Id: $Id
+ */
+public class IndexedFeatureLayer {
+
+	private static final Log logger = LogFactory.getLog(IndexedFeatureLayer.class);
+
+	private final String name;
+	private final List<SpatialFeature> features;
+	private final STRtree index;
+	private final boolean split;
+	private final GeometryFactory geometryFactory;
+	private final Map<String,AttributeIndex> attributeIndexes;
+	private volatile GeodesicDistanceIndex distanceIndex;
+	private volatile IndexSnapshot snapshot;
+
+	/**
+	 * Construct a layer from a list of features.
+	 *
+	 * @param name a name for the layer, used in log messages.
+	 * @param features the features of the layer, the id of each feature must be its
+	 *   position in the list.
+	 */
+	public IndexedFeatureLayer(String name, List<SpatialFeature> features) {
+		this.name = name;
+		this.features = Collections.unmodifiableList(new ArrayList<SpatialFeature>(features));
+		this.geometryFactory = JTSFactoryFinder.getGeometryFactory(null);
+		this.attributeIndexes = new ConcurrentHashMap<String,AttributeIndex>();
+		this.index = new STRtree();
+		boolean anySplit = false;
+		for (SpatialFeature feature : this.features) {
+			if (feature.getGeometry()!=null && !feature.getGeometry().isEmpty()) {
+				List<Envelope> envelopes = Antimeridian.splitEnvelope(feature.getGeometry());
+				for (Envelope envelope : envelopes) {
+					index.insert(envelope, feature);
+				}
+				anySplit = anySplit || envelopes.size() > 1;
+			}
+		}
+		index.build();
+		this.split = anySplit;
+	}
+
+	/**
+	 * Load all of the features of a shapefile into an indexed in memory layer.
+	 *
+	 * @param shapeFile the location of the shapefile.
+	 * @return a new IndexedFeatureLayer containing the features of the shapefile.
+	 * @throws IOException if the shapefile is not found or cannot be read.
+	 */
+	public static IndexedFeatureLayer load(URL shapeFile) throws IOException {
+		if (shapeFile==null) {
+			throw new IOException("Shapefile resource not found.");
+		}
+		long startTime = System.currentTimeMillis();
+		List<SpatialFeature> features = new ArrayList<SpatialFeature>();
+		FileDataStore store = null;
+		SimpleFeatureIterator iter = null;
+		try {
+			store = FileDataStoreFinder.getDataStore(shapeFile);
+			if (store==null) {
+				throw new IOException("No data store available for " + shapeFile.toString());
+			}
+			SimpleFeatureSource featureSource = store.getFeatureSource();
+			iter = featureSource.getFeatures().features();
+			while (iter.hasNext()) {
+				SimpleFeature feature = iter.next();
+				Map<String,Object> attributes = new LinkedHashMap<String,Object>();
+				for (AttributeDescriptor descriptor : feature.getFeatureType().getAttributeDescriptors()) {
+					if (!(descriptor instanceof GeometryDescriptor)) {
+						String attributeName = descriptor.getLocalName();
+						attributes.put(attributeName, feature.getAttribute(attributeName));
+					}
+				}
+				Geometry geometry = (Geometry) feature.getDefaultGeometry();
+				features.add(new SpatialFeature(features.size(), attributes, geometry));
+			}
+		} finally {
+			if (iter!=null) { iter.close(); }
+			if (store!=null) { store.dispose(); }
+		}
+		logger.debug("Loaded " + features.size() + " features from " + shapeFile.getPath() + " in " + (System.currentTimeMillis() - startTime) + " ms");
+		return new IndexedFeatureLayer(shapeFile.getPath(), features);
+	}
+
+	/**
+	 * <p>Getter for the field <code>name</code>.</p>
+	 *
+	 * @return the name of this layer.
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * <p>Getter for the field <code>features</code>.</p>
+	 *
+	 * @return an unmodifiable list of all of the features in this layer.
+	 */
+	public List<SpatialFeature> getFeatures() {
+		return features;
+	}
+
+	/**
+	 * Create a point geometry for a coordinate.
+	 *
+	 * @param longitude the x value.
+	 * @param latitude the y value.
+	 * @return a point.
+	 */
+	public Point createPoint(double longitude, double latitude) {
+		return geometryFactory.createPoint(new Coordinate(longitude, latitude));
+	}
+
+	/**
+	 * Find the features which contain a point (equivalent to CONTAINS(the_geom, POINT(x y))).
+	 *
+	 * @param longitude of the point.
+	 * @param latitude of the point.
+	 * @return a list of the features containing the point, empty if none.
+	 */
+	public List<SpatialFeature> findContaining(double longitude, double latitude) {
+		List<SpatialFeature> result = new ArrayList<SpatialFeature>();
+		Point point = createPoint(longitude, latitude);
+		List<SpatialFeature> candidates = query(new Envelope(longitude, longitude, latitude, latitude));
+		for (SpatialFeature candidate : candidates) {
+			if (candidate.contains(point)) {
+				result.add(candidate);
+			}
+		}
+		Collections.sort(result, FEATURE_ORDER);
+		return result;
+	}
+
+	/**
+	 * Find the features which lie within a distance of a point (equivalent to
+	 * DWITHIN(the_geom, POINT(x y), distance)).
+	 *
+	 * @param longitude of the point.
+	 * @param latitude of the point.
+	 * @param distance in the units of the layer (degrees).
+	 * @return a list of the features within the distance of the point, empty if none.
+	 */
+	public List<SpatialFeature> findWithinDistance(double longitude, double latitude, double distance) {
+		List<SpatialFeature> result = new ArrayList<SpatialFeature>();
+		Point point = createPoint(longitude, latitude);
+		Envelope searchEnvelope = new Envelope(longitude, longitude, latitude, latitude);
+		searchEnvelope.expandBy(distance);
+		List<SpatialFeature> candidates = query(searchEnvelope);
+		for (SpatialFeature candidate : candidates) {
+			if (candidate.isWithinDistance(point, distance)) {
+				result.add(candidate);
+			}
+		}
+		Collections.sort(result, FEATURE_ORDER);
+		return result;
+	}
+
+	/**
+	 * Find the features whose envelopes intersect a rectangle, without any test on the
+	 * geometries of the features.
+	 *
+	 * @param rectangle the rectangle to search.
+	 * @return a list of candidate features, empty if none.
+	 */
+	public List<SpatialFeature> queryEnvelope(Envelope rectangle) {
+		List<SpatialFeature> result = new ArrayList<SpatialFeature>(query(rectangle));
+		Collections.sort(result, FEATURE_ORDER);
+		return result;
+	}
+
+	/**
+	 * Query the STRtree, returning each feature once even where a feature indexed under
+	 * an envelope on each side of the antimeridian matches under both.
+	 */
+	@SuppressWarnings("unchecked")
+	private List<SpatialFeature> query(Envelope rectangle) {
+		List<SpatialFeature> candidates = index.query(rectangle);
+		if (!split) {
+			return candidates;
+		}
+		List<SpatialFeature> result = new ArrayList<SpatialFeature>(candidates.size());
+		BitSet seen = new BitSet(features.size());
+		for (SpatialFeature candidate : candidates) {
+			if (!seen.get(candidate.getId())) {
+				seen.set(candidate.getId());
+				result.add(candidate);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Find the features with a value for an attribute that matches, ignoring case,
+	 * a provided value (equivalent to attribute ILIKE 'value' where the value contains
+	 * no wildcards).
+	 *
+	 * @param attribute the name of the attribute to match.
+	 * @param value the value to match.
+	 * @return a list of the matching features, empty if none.
+	 */
+	public List<SpatialFeature> findByAttribute(String attribute, String value) {
+		if (value==null) {
+			return Collections.emptyList();
+		}
+		AttributeIndex attributeIndex = getAttributeIndex(attribute);
+		return attributeIndex.getFeatures(attributeIndex.selectEqual(value));
+	}
+
+	/**
+	 * Obtain the case insensitive index of values for an attribute, building it on first use.
+	 *
+	 * @param attribute the attribute to index.
+	 * @return an AttributeIndex over the values of the attribute.
+	 */
+	public AttributeIndex getAttributeIndex(String attribute) {
+		AttributeIndex attributeIndex = attributeIndexes.get(attribute);
+		if (attributeIndex==null) {
+			IndexSnapshot currentSnapshot = snapshot;
+			AttributeIndex built = currentSnapshot==null ? null : currentSnapshot.loadAttributeIndex(this, attribute);
+			if (built==null) {
+				built = new AttributeIndex(attribute, features);
+				if (currentSnapshot!=null) {
+					currentSnapshot.saveAttributeIndex(this, built);
+				}
+			}
+			attributeIndexes.putIfAbsent(attribute, built);
+			attributeIndex = attributeIndexes.get(attribute);
+			logger.debug("Indexed values of " + attribute + " in " + name);
+		}
+		return attributeIndex;
+	}
+
+	/**
+	 * Select the features of this layer satisfying a match, through the attribute indexes
+	 * of this layer.
+	 *
+	 * @param match the match.
+	 * @return a new set of the ids of the matching features.
+	 */
+	public BitSet select(AttributeMatch match) {
+		return match.select(new AttributeMatch.Selector() {
+			@Override
+			public BitSet selectEqual(String attribute, String value) {
+				return getAttributeIndex(attribute).selectEqual(value);
+			}
+			@Override
+			public BitSet selectPrefix(String attribute, String prefix) {
+				return getAttributeIndex(attribute).selectPrefix(prefix);
+			}
+			@Override
+			public BitSet selectSuffix(String attribute, String suffix) {
+				return getAttributeIndex(attribute).selectSuffix(suffix);
+			}
+			@Override
+			public BitSet selectElement(String attribute, String element) {
+				return getAttributeIndex(attribute).selectElement(element);
+			}
+		}, features.size());
+	}
+
+	/**
+	 * Set the snapshot attribute indexes of this layer are read from and written to.
+	 *
+	 * @param snapshot the snapshot for the data of this layer, null for none.
+	 */
+	void setSnapshot(IndexSnapshot snapshot) {
+		this.snapshot = snapshot;
+	}
+
+	/**
+	 * Obtain the index for buffer distance tests in meters against the boundaries of the
+	 * features of this layer, building it on first use.
+	 *
+	 * @return a GeodesicDistanceIndex over this layer.
+	 */
+	public GeodesicDistanceIndex getDistanceIndex() {
+		GeodesicDistanceIndex result = distanceIndex;
+		if (result==null) {
+			synchronized (this) {
+				result = distanceIndex;
+				if (result==null) {
+					result = new GeodesicDistanceIndex(this);
+					distanceIndex = result;
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Order features by their position in the layer, which is the order
+	 * in which a shapefile query would return them.
+	 */
+	private static final Comparator<SpatialFeature> FEATURE_ORDER = new Comparator<SpatialFeature>() {
+		@Override
+		public int compare(SpatialFeature a, SpatialFeature b) {
+			return Integer.compare(a.getId(), b.getId());
+		}
+	};
+
+}
@@ -0,0 +1,410 @@
+/**
+ * LandSeaGrid.java
+ *
+ * Copyright 2026 President and Fellows of Harvard College
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.filteredpush.qc.georeference.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.filteredpush.qc.georeference.EnumGeoRefSourceAuthority;
+import org.locationtech.jts.geom.Envelope;
+
+/**
+ * A global grid of cells over latitude and longitude, each cell classified as being
+ * entirely land, entirely sea, or mixed (containing some coastline), packed at two bits
+ * per cell.  Points in land or sea cells can be classified with a single array lookup,
+ * only points in mixed cells need an exact polygon test.
+ *
+ * A cell is classified as land only if the whole closed cell lies in the interior of the land
+ * polygons, and as sea only if no part of the land polygons touches the closed cell, so a
+ * land or sea classification of a cell always agrees with CONTAINS on the land polygons.
+ *
+ * The grid is generated from ne_10m_land at build time by {@link #main(String[])} and
+ * shipped as the resource {@value #RESOURCE}.
+ *
+ * @author mole
+ * @version $Id: $Id
+ */
+public class LandSeaGrid {
+
+	private static final Log logger = LogFactory.getLog(LandSeaGrid.class);
+
+	/** Cell value for a cell which lies entirely outside the land polygons. */
+	public static final int SEA = 0;
+	/** Cell value for a cell which lies entirely inside the land polygons. */
+	public static final int LAND = 1;
+	/** Cell value for a cell which contains part of a coastline, or which is unknown. */
+	public static final int MIXED = 2;
+
+	/** Classpath location of the generated grid. */
+	public static final String RESOURCE = "/org.filteredpush.kuration.services/ne_10m_land.grid";
+
+	/** Classpath location of the version of the land data the grid is generated from. */
+	public static final String VERSION_RESOURCE = "/org.filteredpush.kuration.services/ne_10m_land.VERSION.txt";
+
+	/** Default resolution, 20 cells per degree, that is 3 arc-minutes. */
+	public static final int DEFAULT_CELLS_PER_DEGREE = 20;
+
+	/** Limit on the number of cells across a buffer to scan before falling back to an exact test. */
+	private static final int MAX_SCAN_CELLS = 64;
+
+	private static final int MAGIC = 0x4C534744; // LSGD
+	private static final int FORMAT_VERSION = 1;
+
+	private final String dataVersion;
+	private final int cellsPerDegree;
+	private final int columns;
+	private final int rows;
+	private final long[] cells;
+
+	/**
+	 * Construct an empty grid, with every cell classified as sea.
+	 *
+	 * @param dataVersion the version of the land data the grid represents.
+	 * @param cellsPerDegree the number of cells along one degree of latitude or longitude.
+	 */
+	public LandSeaGrid(String dataVersion, int cellsPerDegree) {
+		this(dataVersion, cellsPerDegree, new long[(int)(((long)360 * cellsPerDegree * 180 * cellsPerDegree + 31) / 32)]);
+	}
+
+	private LandSeaGrid(String dataVersion, int cellsPerDegree, long[] cells) {
+		this.dataVersion = dataVersion;
+		this.cellsPerDegree = cellsPerDegree;
+		this.columns = 360 * cellsPerDegree;
+		this.rows = 180 * cellsPerDegree;
+		this.cells = cells;
+	}
+
+	/**
+	 * Generate a grid by classifying every cell against an index of land polygons.
+	 *
+	 * @param land the land polygons.
+	 * @param dataVersion the version of the land data.
+	 * @param cellsPerDegree the resolution of the grid.
+	 * @return a new classified grid.
+	 */
+	public static LandSeaGrid build(SubdividedPolygonIndex land, String dataVersion, int cellsPerDegree) {
+		long startTime = System.currentTimeMillis();
+		LandSeaGrid grid = new LandSeaGrid(dataVersion, cellsPerDegree);
+		for (int row=0; row<grid.rows; row=row+cellsPerDegree) {
+			for (int column=0; column<grid.columns; column=column+cellsPerDegree) {
+				grid.classifyBlock(land, row, column, cellsPerDegree, cellsPerDegree);
+			}
+		}
+		logger.debug("Generated land/sea grid at " + cellsPerDegree + " cells per degree in " + (System.currentTimeMillis() - startTime) + " ms");
+		return grid;
+	}
+
+	/**
+	 * Classify a block of cells, subdividing blocks which are neither entirely land nor entirely sea.
+	 */
+	private void classifyBlock(SubdividedPolygonIndex land, int row, int column, int height, int width) {
+		Envelope block = getEnvelope(row, column, height, width);
+		if (!land.intersects(block)) {
+			// cells default to sea
+			return;
+		}
+		if (land.containsProperly(block)) {
+			fill(row, column, height, width, LAND);
+			return;
+		}
+		if (height==1 && width==1) {
+			setCell(row, column, MIXED);
+			return;
+		}
+		int halfHeight = (height + 1) / 2;
+		int halfWidth = (width + 1) / 2;
+		classifyBlock(land, row, column, halfHeight, halfWidth);
+		if (width > halfWidth) {
+			classifyBlock(land, row, column + halfWidth, halfHeight, width - halfWidth);
+		}
+		if (height > halfHeight) {
+			classifyBlock(land, row + halfHeight, column, height - halfHeight, halfWidth);
+			if (width > halfWidth) {
+				classifyBlock(land, row + halfHeight, column + halfWidth, height - halfHeight, width - halfWidth);
+			}
+		}
+	}
+
+	private Envelope getEnvelope(int row, int column, int height, int width) {
+		double size = 1d / cellsPerDegree;
+		return new Envelope(-180d + column * size, -180d + (column + width) * size, -90d + row * size, -90d + (row + height) * size);
+	}
+
+	private void fill(int row, int column, int height, int width, int value) {
+		for (int r=row; r<row+height; r++) {
+			for (int c=column; c<column+width; c++) {
+				setCell(r, c, value);
+			}
+		}
+	}
+
+	private void setCell(int row, int column, int value) {
+		long position = (long)row * columns + column;
+		int word = (int)(position >>> 5);
+		int shift = (int)(position & 31) << 1;
+		cells[word] = (cells[word] & ~(3L << shift)) | ((long)value << shift);
+	}
+
+	private int getCell(int row, int column) {
+		long position = (long)row * columns + column;
+		return (int)(cells[(int)(position >>> 5)] >>> ((int)(position & 31) << 1)) & 3;
+	}
+
+	private int getRow(double latitude) {
+		return Math.min(rows - 1, (int)Math.floor((latitude + 90d) * cellsPerDegree));
+	}
+
+	private int getColumn(double longitude) {
+		return Math.min(columns - 1, (int)Math.floor((longitude + 180d) * cellsPerDegree));
+	}
+
+	/**
+	 * Classify a point.
+	 *
+	 * @param longitude of the point.
+	 * @param latitude of the point.
+	 * @return LAND if the point is on land, SEA if the point is not on land, MIXED if the
+	 *   point needs an exact test, including points outside the valid range of coordinates.
+	 */
+	public int classify(double longitude, double latitude) {
+		if (!(latitude >= -90d && latitude <= 90d && longitude >= -180d && longitude <= 180d)) {
+			return MIXED;
+		}
+		return getCell(getRow(latitude), getColumn(longitude));
+	}
+
+	/**
+	 * Classify a point with a buffer.
+	 *
+	 * @param longitude of the point.
+	 * @param latitude of the point.
+	 * @param distance the buffer in degrees.
+	 * @return LAND if the point is on land, SEA if no land lies within the distance of the point,
+	 *   MIXED if the point needs an exact test.
+	 */
+	public int classify(double longitude, double latitude, double distance) {
+		return classify(longitude, latitude, distance, distance);
+	}
+
+	/**
+	 * Classify a point with a buffer given as spans of longitude and latitude, scanning
+	 * the cells on both sides of the antimeridian where the buffer reaches across it.
+	 *
+	 * @param longitude of the point.
+	 * @param latitude of the point.
+	 * @param longitudeSpan the half width of the buffer in degrees of longitude.
+	 * @param latitudeSpan the half height of the buffer in degrees of latitude.
+	 * @return LAND if the point is on land, SEA if no land lies within the buffer of the point,
+	 *   MIXED if the point needs an exact test.
+	 */
+	public int classify(double longitude, double latitude, double longitudeSpan, double latitudeSpan) {
+		int result = classify(longitude, latitude);
+		if (result!=SEA || (longitudeSpan <= 0d && latitudeSpan <= 0d)) {
+			return result;
+		}
+		if (Math.max(longitudeSpan, latitudeSpan) * cellsPerDegree > MAX_SCAN_CELLS) {
+			return MIXED;
+		}
+		for (Envelope search : Antimeridian.queryEnvelopes(longitude, latitude, longitudeSpan, latitudeSpan)) {
+			int minRow = Math.max(0, (int)Math.floor((search.getMinY() + 90d) * cellsPerDegree));
+			int maxRow = getRow(Math.min(90d, search.getMaxY()));
+			int minColumn = Math.max(0, (int)Math.floor((search.getMinX() + 180d) * cellsPerDegree));
+			int maxColumn = getColumn(search.getMaxX());
+			for (int row=minRow; row<=maxRow; row++) {
+				for (int column=minColumn; column<=maxColumn; column++) {
+					if (getCell(row, column)!=SEA) {
+						return MIXED;
+					}
+				}
+			}
+		}
+		return SEA;
+	}
+
+	/**
+	 * <p>Getter for the field <code>dataVersion</code>.</p>
+	 *
+	 * @return the version of the land data the grid was generated from.
+	 */
+	public String getDataVersion() {
+		return dataVersion;
+	}
+
+	/**
+	 * <p>Getter for the field <code>cellsPerDegree</code>.</p>
+	 *
+	 * @return the number of cells along one degree.
+	 */
+	public int getCellsPerDegree() {
+		return cellsPerDegree;
+	}
+
+	/**
+	 * Write the grid in its compressed binary form.
+	 *
+	 * @param out the stream to write to, closed on completion.
+	 * @throws IOException on an error writing.
+	 */
+	public void write(OutputStream out) throws IOException {
+		DataOutputStream data = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(out)));
+		try {
+			data.writeInt(MAGIC);
+			data.writeInt(FORMAT_VERSION);
+			data.writeUTF(dataVersion);
+			data.writeInt(cellsPerDegree);
+			data.writeInt(cells.length);
+			for (int i=0; i<cells.length; i++) {
+				data.writeLong(cells[i]);
+			}
+		} finally {
+			data.close();
+		}
+	}
+
+	/**
+	 * Read a grid from its compressed binary form.
+	 *
+	 * @param in the stream to read from, closed on completion.
+	 * @return the grid.
+	 * @throws IOException on an error reading, or if the stream is not a grid.
+	 */
+	public static LandSeaGrid read(InputStream in) throws IOException {
+		DataInputStream data = new DataInputStream(new BufferedInputStream(new GZIPInputStream(in)));
+		try {
+			if (data.readInt()!=MAGIC || data.readInt()!=FORMAT_VERSION) {
+				throw new IOException("Not a land/sea grid, or unsupported format version.");
+			}
+			String dataVersion = data.readUTF();
+			int cellsPerDegree = data.readInt();
+			int length = data.readInt();
+			if (cellsPerDegree < 1 || length != (int)(((long)360 * cellsPerDegree * 180 * cellsPerDegree + 31) / 32)) {
+				throw new IOException("Land/sea grid has an inconsistent size.");
+			}
+			long[] cells = new long[length];
+			for (int i=0; i<length; i++) {
+				cells[i] = data.readLong();
+			}
+			return new LandSeaGrid(dataVersion, cellsPerDegree, cells);
+		} finally {
+			data.close();
+		}
+	}
+
+	/**
+	 * Load the grid shipped with this library, checking that it was generated from the
+	 * land data also shipped with this library.
+	 *
+	 * @return the grid, or null if the grid resource is not present or does not match the land data.
+	 */
+	public static LandSeaGrid load() {
+		LandSeaGrid result = null;
+		InputStream in = LandSeaGrid.class.getResourceAsStream(RESOURCE);
+		if (in==null) {
+			logger.debug("No land/sea grid resource " + RESOURCE + ", land tests will use polygons only.");
+		} else {
+			try {
+				LandSeaGrid grid = read(in);
+				String expectedVersion = readDataVersion();
+				if (grid.getDataVersion().equals(expectedVersion)) {
+					result = grid;
+				} else {
+					logger.warn("Land/sea grid was generated from land data version " + grid.getDataVersion() + " not " + expectedVersion + ", ignoring it.");
+				}
+			} catch (IOException e) {
+				logger.error(e.getMessage(), e);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @return the version of the ne_10m_land data on the classpath.
+	 * @throws IOException if the version cannot be read.
+	 */
+	private static String readDataVersion() throws IOException {
+		InputStream in = LandSeaGrid.class.getResourceAsStream(VERSION_RESOURCE);
+		if (in==null) {
+			return "";
+		}
+		BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+		try {
+			String line = reader.readLine();
+			return line==null ? "" : line.trim();
+		} finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * Generate the land/sea grid resource from the ne_10m_land shapefile on the classpath.
+	 *
+	 * @param args the output file, and optionally the number of cells per degree.
+	 * @throws IOException on an error reading the land data or writing the grid.
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1) {
+			System.out.println("Usage: LandSeaGrid outputfile [cellsPerDegree]");
+			System.exit(1);
+		}
+		File outputFile = new File(args[0]);
+		int cellsPerDegree = DEFAULT_CELLS_PER_DEGREE;
+		if (args.length > 1) {
+			cellsPerDegree = Integer.parseInt(args[1]);
+		}
+		String dataVersion = readDataVersion();
+		if (outputFile.exists()) {
+			try {
+				LandSeaGrid existing = read(new FileInputStream(outputFile));
+				if (existing.getDataVersion().equals(dataVersion) && existing.getCellsPerDegree()==cellsPerDegree) {
+					System.out.println("Land/sea grid " + outputFile.getPath() + " is up to date.");
+					return;
+				}
+			} catch (IOException e) {
+				logger.debug(e.getMessage());
+			}
+		}
+		SpatialLayerRegistry registry = SpatialLayerRegistry.getInstance();
+		if (LandSeaGrid.class.getResource(registry.getLayer(EnumGeoRefSourceAuthority.NE_LAND_UNION_ISLANDS).getResource())==null) {
+			System.out.println("No shapefile for " + EnumGeoRefSourceAuthority.NE_LAND_UNION_ISLANDS.getName() + ", skipping.");
+			return;
+		}
+		SubdividedPolygonIndex land = registry.getLandIndex();
+		LandSeaGrid grid = build(land, dataVersion, cellsPerDegree);
+		if (outputFile.getParentFile()!=null) {
+			outputFile.getParentFile().mkdirs();
+		}
+		grid.write(new FileOutputStream(outputFile));
+		System.out.println("Wrote land/sea grid " + outputFile.getPath());
+	}
+
+}
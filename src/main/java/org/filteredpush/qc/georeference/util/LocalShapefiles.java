@@ -0,0 +1,302 @@
+/**
+ * LocalShapefiles.java
+ *
+ * Copyright 2026 President and Fellows of Harvard College
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.filteredpush.qc.georeference.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.filteredpush.qc.georeference.EnumGeoRefSourceAuthority;
+import org.geotools.api.data.FileDataStore;
+import org.geotools.api.data.FileDataStoreFinder;
+import org.geotools.data.shapefile.ShapefileDataStore;
+
+/**
+ * Local copies of the shapefiles bundled in the jar, for GeoTools queries.  A shapefile
+ * read from inside a jar can be neither memory mapped nor given a quadtree spatial index
+ * (.qix), so every GeoTools query against it reads the whole file.  The components of
+ * each bundled shapefile are instead extracted once to a directory for the version of the
+ * shapefile under the root directory given by {@link #DIRECTORY_PROPERTY}, by default
+ * ~/.cache/geo_ref_qc/shapefiles, where GeoTools can map them and write their .qix index
+ * on first use.  An empty value of the property disables extraction.  Shapefiles which
+ * are already files, such as when running from the build directory, are used in place.
+ *
+ * Shapefiles without a VERSION file are extracted to an unversioned directory, and each
+ * extracted component is replaced when its size differs from the bundled component,
+ * which also discards the index built from the old copy.  Other files bundled beside a
+ * shapefile, such as its {@link BoundaryFile}, are extracted on request into the same
+ * directory in the same way, so that they too can be memory mapped and shared through
+ * the page cache by all of the JVMs on a host.
+ *
+ * @author mole
+ * @version $Id: $Id
+ */
+public class LocalShapefiles {
+
+	private static final Log logger = LogFactory.getLog(LocalShapefiles.class);
+
+	/** System property giving the root directory for extracted shapefiles. */
+	public static final String DIRECTORY_PROPERTY = "org.filteredpush.qc.georeference.shapefileDirectory";
+
+	/** The extensions of the files which make up a shapefile, copied when present. */
+	private static final String[] COMPONENTS = { ".shp", ".shx", ".dbf", ".prj", ".cpg" };
+
+	/** The extensions of the index files GeoTools writes beside a shapefile. */
+	private static final String[] INDEXES = { ".qix", ".fix" };
+
+	private static final String UNVERSIONED = "unversioned";
+
+	private LocalShapefiles() {
+	}
+
+	/**
+	 * @return the default root directory for extracted shapefiles, ~/.cache/geo_ref_qc/shapefiles.
+	 */
+	public static File getDefaultDirectory() {
+		return new File(IndexSnapshot.getDefaultDirectory(), "shapefiles");
+	}
+
+	/**
+	 * Obtain a local file for a bundled shapefile, extracting its components if they
+	 * have not been extracted or are out of date.
+	 *
+	 * @param shapeFileResource the classpath location of the shapefile.
+	 * @return the local .shp file, or null if extraction is disabled and the shapefile
+	 *   is not already a file.
+	 * @throws IOException if the shapefile is not on the classpath or cannot be extracted.
+	 */
+	public static File getLocalShapefile(String shapeFileResource) throws IOException {
+		URL location = LocalShapefiles.class.getResource(shapeFileResource);
+		if (location==null) {
+			throw new IOException("Shapefile resource not found: " + shapeFileResource);
+		}
+		if ("file".equals(location.getProtocol())) {
+			try {
+				return new File(location.toURI());
+			} catch (URISyntaxException e) {
+				throw new IOException(e.getMessage(), e);
+			}
+		}
+		File rootDirectory = getRootDirectory();
+		return rootDirectory==null ? null : extract(shapeFileResource, rootDirectory);
+	}
+
+	/**
+	 * Obtain a local file for a file bundled beside a shapefile, such as its boundary file,
+	 * extracting it if it has not been extracted or is out of date.
+	 *
+	 * @param shapeFileResource the classpath location of the shapefile.
+	 * @param extension the extension which replaces .shp in the name of the file.
+	 * @return the local file, or null if the file is not bundled, or if extraction is
+	 *   disabled and the file is not already a file.
+	 * @throws IOException if the file cannot be extracted.
+	 */
+	public static File getLocalCompanion(String shapeFileResource, String extension) throws IOException {
+		URL location = LocalShapefiles.class.getResource(baseName(shapeFileResource) + extension);
+		if (location==null) {
+			return null;
+		}
+		if ("file".equals(location.getProtocol())) {
+			try {
+				return new File(location.toURI());
+			} catch (URISyntaxException e) {
+				throw new IOException(e.getMessage(), e);
+			}
+		}
+		File rootDirectory = getRootDirectory();
+		return rootDirectory==null ? null : extractCompanion(shapeFileResource, extension, rootDirectory);
+	}
+
+	/**
+	 * @return the root directory for extracted shapefiles given by {@link #DIRECTORY_PROPERTY},
+	 *   or null if extraction is disabled.
+	 */
+	private static File getRootDirectory() {
+		String root = System.getProperty(DIRECTORY_PROPERTY);
+		if (root!=null && root.trim().length()==0) {
+			return null;
+		}
+		return root==null ? getDefaultDirectory() : new File(root.trim());
+	}
+
+	/**
+	 * Extract the components of a bundled shapefile into the directory for its version
+	 * under a root directory, replacing out of date components.
+	 *
+	 * @param shapeFileResource the classpath location of the shapefile.
+	 * @param rootDirectory the root directory for extracted shapefiles.
+	 * @return the extracted .shp file.
+	 * @throws IOException if the shapefile is not on the classpath or cannot be extracted.
+	 */
+	public static File extract(String shapeFileResource, File rootDirectory) throws IOException {
+		File directory = getVersionDirectory(shapeFileResource, rootDirectory);
+		String base = baseName(shapeFileResource);
+		String name = base.substring(base.lastIndexOf('/') + 1);
+		if (LocalShapefiles.class.getResource(base + ".shp")==null) {
+			throw new IOException("Shapefile resource not found: " + shapeFileResource);
+		}
+		boolean changed = false;
+		for (String extension : COMPONENTS) {
+			URL component = LocalShapefiles.class.getResource(base + extension);
+			if (component!=null) {
+				changed = extractComponent(component, directory, new File(directory, name + extension)) || changed;
+			}
+		}
+		if (changed) {
+			// an index built over the previous copy no longer matches the shapefile
+			for (String extension : INDEXES) {
+				File index = new File(directory, name + extension);
+				if (index.exists() && !index.delete()) {
+					logger.error("Unable to delete stale index " + index.getPath());
+				}
+			}
+			logger.debug("Extracted " + shapeFileResource + " to " + directory.getPath());
+		}
+		return new File(directory, name + ".shp");
+	}
+
+	/**
+	 * Extract a file bundled beside a shapefile into the directory for the version of the
+	 * shapefile under a root directory, unless it is already present with the same size.
+	 *
+	 * @param shapeFileResource the classpath location of the shapefile.
+	 * @param extension the extension which replaces .shp in the name of the file.
+	 * @param rootDirectory the root directory for extracted shapefiles.
+	 * @return the extracted file.
+	 * @throws IOException if the file is not on the classpath or cannot be extracted.
+	 */
+	public static File extractCompanion(String shapeFileResource, String extension, File rootDirectory) throws IOException {
+		String base = baseName(shapeFileResource);
+		URL component = LocalShapefiles.class.getResource(base + extension);
+		if (component==null) {
+			throw new IOException("Resource not found: " + base + extension);
+		}
+		File directory = getVersionDirectory(shapeFileResource, rootDirectory);
+		File target = new File(directory, base.substring(base.lastIndexOf('/') + 1) + extension);
+		if (extractComponent(component, directory, target)) {
+			logger.debug("Extracted " + base + extension + " to " + directory.getPath());
+		}
+		return target;
+	}
+
+	private static File getVersionDirectory(String shapeFileResource, File rootDirectory) throws IOException {
+		String dataVersion = BoundaryFile.readDataVersion(shapeFileResource);
+		return new File(rootDirectory, dataVersion.length()==0 ? UNVERSIONED : IndexSnapshot.safeName(dataVersion));
+	}
+
+	private static String baseName(String shapeFileResource) {
+		return shapeFileResource.toLowerCase().endsWith(".shp") ? shapeFileResource.substring(0, shapeFileResource.length() - 4) : shapeFileResource;
+	}
+
+	/**
+	 * Copy a bundled file to a local file, unless the local file is already present
+	 * with the same size.
+	 *
+	 * @return true if the file was copied.
+	 */
+	private static boolean extractComponent(URL component, File directory, File target) throws IOException {
+		URLConnection connection = component.openConnection();
+		long length = connection.getContentLengthLong();
+		if (target.isFile() && (length < 0 || target.length()==length)) {
+			return false;
+		}
+		if (!directory.isDirectory() && !directory.mkdirs() && !directory.isDirectory()) {
+			throw new IOException("Unable to create directory " + directory.getPath());
+		}
+		// copied beside and then moved over the old file, which another process may have open
+		File temporary = File.createTempFile(target.getName(), ".tmp", directory);
+		InputStream in = connection.getInputStream();
+		try {
+			Files.copy(in, temporary.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			Files.move(temporary.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		} catch (IOException e) {
+			temporary.delete();
+			throw e;
+		} finally {
+			in.close();
+		}
+		return true;
+	}
+
+	/**
+	 * Configure a data store opened on a local shapefile to memory map the shapefile and
+	 * to use its quadtree spatial index, creating the index if it does not exist.  If the
+	 * index cannot be created the store reads the shapefile without it.
+	 *
+	 * @param store the data store, stores other than shapefile data stores are left unchanged.
+	 */
+	public static void enableIndexing(FileDataStore store) {
+		if (store instanceof ShapefileDataStore) {
+			ShapefileDataStore shapefile = (ShapefileDataStore) store;
+			shapefile.setMemoryMapped(true);
+			shapefile.setIndexCreationEnabled(true);
+			shapefile.setIndexed(true);
+			try {
+				long startTime = System.currentTimeMillis();
+				shapefile.createSpatialIndex(false);
+				logger.debug("Spatial index for " + shapefile.getSchema().getTypeName() + " ready in " + (System.currentTimeMillis() - startTime) + " ms");
+			} catch (IOException e) {
+				logger.error("Unable to create spatial index: " + e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Extract the shapefile and boundary file of each of the layers of the
+	 * {@link SpatialLayerRegistry} and build its spatial index, so that a deployment can be prepared before first use.
+	 *
+	 * @param args the root directory for extracted shapefiles.
+	 * @throws IOException on an error extracting a shapefile.
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1) {
+			System.out.println("Usage: LocalShapefiles outputdirectory");
+			System.exit(1);
+		}
+		File rootDirectory = new File(args[0]);
+		SpatialLayerRegistry registry = SpatialLayerRegistry.getInstance();
+		for (EnumGeoRefSourceAuthority authority : registry.getAuthorities()) {
+			String resource = registry.getLayer(authority).getResource();
+			if (LocalShapefiles.class.getResource(resource)==null) {
+				System.out.println("No shapefile for " + authority.getName() + ", skipping.");
+				continue;
+			}
+			File shapeFile = extract(resource, rootDirectory);
+			if (LocalShapefiles.class.getResource(BoundaryFile.getResource(resource))!=null) {
+				extractCompanion(resource, BoundaryFile.EXTENSION, rootDirectory);
+			}
+			FileDataStore store = FileDataStoreFinder.getDataStore(shapeFile);
+			if (store!=null) {
+				try {
+					enableIndexing(store);
+				} finally {
+					store.dispose();
+				}
+			}
+			System.out.println("Extracted " + shapeFile.getPath());
+		}
+	}
+
+}
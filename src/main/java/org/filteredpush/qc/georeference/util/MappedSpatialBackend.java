@@ -0,0 +1,111 @@
+/**
+ * MappedSpatialBackend.java
+ *
+ * Copyright 2026 President and Fellows of Harvard College
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.filteredpush.qc.georeference.util;
+
+import java.io.IOException;
+import java.util.BitSet;
+import java.util.List;
+
+import org.filteredpush.qc.georeference.EnumGeoRefSourceAuthority;
+
+/**
+ * Spatial backend which answers queries from the compact boundary file of each layer,
+ * through the {@link OffHeapPolygonStore} of the registry, without building the JTS
+ * geometries of the features.  Candidates come from the packed R-tree of the boundary
+ * file and are tested against the coordinates in place.  Attribute matches use the
+ * {@link AttributeIndex}es of case folded values to feature ids which the store builds for
+ * each attribute on first use from the attribute columns of the boundary file.  Where a layer has no boundary file, the
+ * store copies the geometries of the in memory layer, see
+ * {@link SpatialLayerRegistry#getPolygonStore(EnumGeoRefSourceAuthority)}.
+ *
+ * @author mole
+ * @version $Id: $Id
+ */
+public class MappedSpatialBackend implements SpatialBackend {
+
+	/** The name of this backend. */
+	public static final String NAME = "mapped";
+
+	private final SpatialLayerRegistry registry;
+
+	/**
+	 * Construct a backend over the layers of a registry.
+	 *
+	 * @param registry the registry providing the layers.
+	 */
+	public MappedSpatialBackend(SpatialLayerRegistry registry) {
+		this.registry = registry;
+	}
+
+	@Override
+	public String getName() {
+		return NAME;
+	}
+
+	@Override
+	public boolean contains(EnumGeoRefSourceAuthority layer, AttributeMatch match, double longitude, double latitude) throws IOException {
+		OffHeapPolygonStore store = registry.getPolygonStore(layer);
+		BitSet selection = match.isAll() ? null : store.select(match);
+		return (selection==null || !selection.isEmpty()) && store.contains(longitude, latitude, selection);
+	}
+
+	@Override
+	public boolean isWithinDistance(EnumGeoRefSourceAuthority layer, AttributeMatch match, double longitude, double latitude, double distanceMeters) throws IOException {
+		OffHeapPolygonStore store = registry.getPolygonStore(layer);
+		BitSet selection = match.isAll() ? null : store.select(match);
+		return (selection==null || !selection.isEmpty()) && store.isWithinDistanceMeters(longitude, latitude, distanceMeters, selection);
+	}
+
+	@Override
+	public boolean isKnown(EnumGeoRefSourceAuthority layer, AttributeMatch match) throws IOException {
+		OffHeapPolygonStore store = registry.getPolygonStore(layer);
+		return match.isAll() ? store.getFeatureCount() > 0 : !store.select(match).isEmpty();
+	}
+
+	@Override
+	public List<String[]> findContaining(EnumGeoRefSourceAuthority layer, double longitude, double latitude, String... attributes) throws IOException {
+		OffHeapPolygonStore store = registry.getPolygonStore(layer);
+		return store.getAttributes(store.findContaining(longitude, latitude), attributes);
+	}
+
+	/**
+	 * Open the store of a layer, and build the attribute indexes the tests match on.
+	 */
+	@Override
+	public void warmUp(EnumGeoRefSourceAuthority layer) throws IOException {
+		OffHeapPolygonStore store = registry.getPolygonStore(layer);
+		switch (layer) {
+		case NE_ADMIN_0:
+			store.getAttributeIndex("NAME");
+			break;
+		case NE_ADMIN_1:
+			store.getAttributeIndex("name");
+			store.getAttributeIndex("admin");
+			break;
+		case ADM1_UNION_EEZ:
+			store.getAttributeIndex(SovereignCellIndex.SOVEREIGN_ATTRIBUTE);
+			break;
+		case GBIF_CENTROIDS:
+			store.getAttributeIndex(CentroidTable.CODE_ATTRIBUTE);
+			break;
+		default:
+			break;
+		}
+	}
+
+}
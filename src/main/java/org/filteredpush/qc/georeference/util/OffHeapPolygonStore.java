@@ -0,0 +1,568 @@
+/**
+ * OffHeapPolygonStore.java
+ *
+ * Copyright 2026 President and Fellows of Harvard College
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.filteredpush.qc.georeference.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.locationtech.jts.geom.Envelope;
+
+/**
+ * Polygon storage outside of the heap, for answering point in polygon and point near polygon
+ * tests against a layer without holding the layer as JTS geometries, whose many small
+ * Coordinate objects make up most of the heap used by the large layers and lengthen garbage
+ * collection pauses.  The ring coordinates are read in place from a {@link BoundaryFile},
+ * either memory mapped or held in a direct buffer, and only the envelopes of the rings and
+ * of runs of {@link #RUN_EDGES} consecutive edges of each ring are added, also in a direct
+ * buffer, so that a test against a ring with many vertices, such as the coast of a
+ * continent, only reads the runs near the point.  Candidate features for a point come from
+ * the packed R-tree of the boundary file, and attribute matches from {@link AttributeIndex}es
+ * read from its attribute columns, so that a layer can be queried without ever being loaded
+ * as an {@link IndexedFeatureLayer}.
+ *
+ * Point in polygon tests have the semantics of CONTAINS on the JTS geometry: the crossing
+ * number of a ray from the point is counted over all of the rings of a feature with
+ * {@link RingCrossingKernel#countSegment(double, double, double, double, double, double)},
+ * and a point on any ring is on the boundary and so is not contained.  Distance tests
+ * are made either with the semantics of DWITHIN, in the units of the layer (degrees), or
+ * in meters along the surface of the earth.
+ *
+ * Instances are immutable and are safe to share between threads, the flyweight
+ * {@link PolygonRef} accessors are not.
+ *
+ * @author mole
+ * @version $Id: $Id
+ */
+public class OffHeapPolygonStore {
+
+	private static final Log logger = LogFactory.getLog(OffHeapPolygonStore.class);
+
+	/** The number of consecutive edges of a ring covered by each run envelope. */
+	public static final int RUN_EDGES = 32;
+
+	/** Margin in degrees added to search envelopes to allow for rounding. */
+	private static final double ENVELOPE_MARGIN = 1e-9d;
+
+	private static final int ENVELOPE_BYTES = 4 * 8;
+
+	private static final int EXTERIOR = 0;
+	private static final int BOUNDARY = 1;
+	private static final int INTERIOR = 2;
+
+	private final BoundaryFile boundaries;
+	private final ByteBuffer ringEnvelopes;
+	/** The index of the first run of each ring, and the number of runs at the end. */
+	private final int[] firstRuns;
+	private final ByteBuffer runEnvelopes;
+	private final Map<String,AttributeIndex> attributeIndexes;
+
+	/**
+	 * A reusable accessor on one feature of the store, moved from feature to feature
+	 * rather than creating an object for each feature.
+	 */
+	public final class PolygonRef {
+
+		private int id;
+
+		private PolygonRef(int id) {
+			this.id = id;
+		}
+
+		/**
+		 * Move this accessor to another feature.
+		 *
+		 * @param id the id of the feature.
+		 * @return this accessor.
+		 */
+		public PolygonRef moveTo(int id) {
+			this.id = id;
+			return this;
+		}
+
+		/**
+		 * <p>Getter for the field <code>id</code>.</p>
+		 *
+		 * @return the id of the feature this accessor is on.
+		 */
+		public int getId() {
+			return id;
+		}
+
+		/**
+		 * @return the number of rings of the feature, shells and holes.
+		 */
+		public int getRingCount() {
+			return boundaries.getFirstRing(id + 1) - boundaries.getFirstRing(id);
+		}
+
+		/**
+		 * @return the number of vertices of the feature.
+		 */
+		public int getVertexCount() {
+			return boundaries.getFirstCoordinate(boundaries.getFirstRing(id + 1)) - boundaries.getFirstCoordinate(boundaries.getFirstRing(id));
+		}
+
+		/**
+		 * Test whether the feature contains a point, see {@link OffHeapPolygonStore#contains(int, double, double)}.
+		 *
+		 * @param x the longitude of the point.
+		 * @param y the latitude of the point.
+		 * @return true if the point is in the interior of the feature.
+		 */
+		public boolean contains(double x, double y) {
+			return OffHeapPolygonStore.this.contains(id, x, y);
+		}
+
+		/**
+		 * Test whether a point is within a distance of the feature, see
+		 * {@link OffHeapPolygonStore#isWithinDistance(int, double, double, double)}.
+		 *
+		 * @param x the longitude of the point.
+		 * @param y the latitude of the point.
+		 * @param distance the distance in degrees.
+		 * @return true if the point is inside, on, or within the distance of the feature.
+		 */
+		public boolean isWithinDistance(double x, double y, double distance) {
+			return OffHeapPolygonStore.this.isWithinDistance(id, x, y, distance);
+		}
+	}
+
+	/**
+	 * Construct a store over the geometries of a boundary file.
+	 *
+	 * @param boundaries the boundary file holding the geometries.
+	 */
+	public OffHeapPolygonStore(BoundaryFile boundaries) {
+		long startTime = System.currentTimeMillis();
+		this.boundaries = boundaries;
+		this.attributeIndexes = new ConcurrentHashMap<String,AttributeIndex>();
+		int ringCount = boundaries.getRingCount();
+		this.ringEnvelopes = ByteBuffer.allocateDirect(ringCount * ENVELOPE_BYTES);
+		this.firstRuns = new int[ringCount + 1];
+		int runCount = 0;
+		for (int ring=0; ring<ringCount; ring++) {
+			firstRuns[ring] = runCount;
+			int edges = boundaries.getFirstCoordinate(ring + 1) - boundaries.getFirstCoordinate(ring) - 1;
+			runCount += edges > 0 ? (edges + RUN_EDGES - 1) / RUN_EDGES : 0;
+		}
+		firstRuns[ringCount] = runCount;
+		this.runEnvelopes = ByteBuffer.allocateDirect(runCount * ENVELOPE_BYTES);
+		for (int ring=0; ring<ringCount; ring++) {
+			int first = boundaries.getFirstCoordinate(ring);
+			int last = boundaries.getFirstCoordinate(ring + 1);
+			putEnvelope(ringEnvelopes, ring, first, last);
+			for (int run=firstRuns[ring]; run<firstRuns[ring + 1]; run++) {
+				int runFirst = first + (run - firstRuns[ring]) * RUN_EDGES;
+				putEnvelope(runEnvelopes, run, runFirst, Math.min(last, runFirst + RUN_EDGES + 1));
+			}
+		}
+		logger.debug("Indexed " + ringCount + " rings in " + runCount + " runs of " + boundaries.getName() + " off heap in " + (System.currentTimeMillis() - startTime) + " ms");
+	}
+
+	/**
+	 * Write the envelope of the coordinates from first up to last into a buffer of envelopes.
+	 */
+	private void putEnvelope(ByteBuffer envelopes, int index, int first, int last) {
+		double minX = Double.POSITIVE_INFINITY;
+		double maxX = Double.NEGATIVE_INFINITY;
+		double minY = Double.POSITIVE_INFINITY;
+		double maxY = Double.NEGATIVE_INFINITY;
+		for (int i=first; i<last; i++) {
+			double x = boundaries.getX(i);
+			double y = boundaries.getY(i);
+			minX = Math.min(minX, x);
+			maxX = Math.max(maxX, x);
+			minY = Math.min(minY, y);
+			maxY = Math.max(maxY, y);
+		}
+		int offset = index * ENVELOPE_BYTES;
+		envelopes.putDouble(offset, minX);
+		envelopes.putDouble(offset + 8, maxX);
+		envelopes.putDouble(offset + 16, minY);
+		envelopes.putDouble(offset + 24, maxY);
+	}
+
+	/**
+	 * Construct a store holding the geometries of a layer in a direct buffer.
+	 *
+	 * @param layer the layer.
+	 * @return a new store.
+	 * @throws IOException if the layer has geometries other than points and polygons.
+	 */
+	public static OffHeapPolygonStore of(IndexedFeatureLayer layer) throws IOException {
+		return new OffHeapPolygonStore(BoundaryFile.fromLayer(layer, ""));
+	}
+
+	/**
+	 * <p>Getter for the field <code>boundaries</code>.</p>
+	 *
+	 * @return the boundary file holding the geometries and attributes of the features.
+	 */
+	public BoundaryFile getBoundaryFile() {
+		return boundaries;
+	}
+
+	/**
+	 * @return the number of features in the store.
+	 */
+	public int getFeatureCount() {
+		return boundaries.getFeatureCount();
+	}
+
+	/**
+	 * Obtain a flyweight accessor on a feature.
+	 *
+	 * @param id the id of the feature.
+	 * @return an accessor, which may be moved to other features.
+	 */
+	public PolygonRef get(int id) {
+		return new PolygonRef(id);
+	}
+
+	/**
+	 * Obtain the index of the case folded values of an attribute of the features, reading
+	 * the attribute column of the boundary file on first use.  The index selects features
+	 * by id, it does not hold the features.
+	 *
+	 * @param attribute the name of the attribute.
+	 * @return an AttributeIndex over the values of the attribute.
+	 */
+	public AttributeIndex getAttributeIndex(String attribute) {
+		AttributeIndex result = attributeIndexes.get(attribute);
+		if (result==null) {
+			attributeIndexes.putIfAbsent(attribute, AttributeIndex.fromBoundaryFile(attribute, boundaries));
+			result = attributeIndexes.get(attribute);
+			logger.debug("Indexed values of " + attribute + " in " + boundaries.getName());
+		}
+		return result;
+	}
+
+	/**
+	 * Select the features matching an attribute match.
+	 *
+	 * @param match the match.
+	 * @return a new set of the ids of the matching features.
+	 */
+	public BitSet select(AttributeMatch match) {
+		return match.select(new AttributeMatch.Selector() {
+			@Override
+			public BitSet selectEqual(String attribute, String value) {
+				return getAttributeIndex(attribute).selectEqual(value);
+			}
+			@Override
+			public BitSet selectPrefix(String attribute, String prefix) {
+				return getAttributeIndex(attribute).selectPrefix(prefix);
+			}
+			@Override
+			public BitSet selectSuffix(String attribute, String suffix) {
+				return getAttributeIndex(attribute).selectSuffix(suffix);
+			}
+			@Override
+			public BitSet selectElement(String attribute, String element) {
+				return getAttributeIndex(attribute).selectElement(element);
+			}
+		}, getFeatureCount());
+	}
+
+	/**
+	 * Find the features which contain a point.
+	 *
+	 * @param x the longitude of the point.
+	 * @param y the latitude of the point.
+	 * @return a new set of the ids of the features with the point in their interior.
+	 */
+	public BitSet findContaining(double x, double y) {
+		BitSet result = boundaries.query(new Envelope(x, x, y, y));
+		for (int id = result.nextSetBit(0); id >= 0; id = result.nextSetBit(id + 1)) {
+			if (!contains(id, x, y)) {
+				result.clear(id);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Test whether any of a selection of the features contains a point.
+	 *
+	 * @param x the longitude of the point.
+	 * @param y the latitude of the point.
+	 * @param selection the ids of the features to test, or null to test all of the features.
+	 * @return true if the point is in the interior of a selected feature.
+	 */
+	public boolean contains(double x, double y, BitSet selection) {
+		BitSet candidates = boundaries.query(new Envelope(x, x, y, y));
+		if (selection!=null) {
+			candidates.and(selection);
+		}
+		for (int id = candidates.nextSetBit(0); id >= 0; id = candidates.nextSetBit(id + 1)) {
+			if (contains(id, x, y)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Find the features which lie within a distance in meters of a point, see
+	 * {@link #isWithinDistanceMeters(int, double, double, double)}.
+	 *
+	 * @param x the longitude of the point.
+	 * @param y the latitude of the point.
+	 * @param distanceMeters the distance in meters.
+	 * @param selection the ids of the features to test, or null to test all of the features.
+	 * @return a new set of the ids of the selected features the point is inside, on, or
+	 *   within the distance of.
+	 */
+	public BitSet findWithinDistanceMeters(double x, double y, double distanceMeters, BitSet selection) {
+		BitSet result = candidatesWithinDistance(x, y, distanceMeters, selection);
+		for (int id = result.nextSetBit(0); id >= 0; id = result.nextSetBit(id + 1)) {
+			if (!isWithinDistanceMeters(id, x, y, distanceMeters)) {
+				result.clear(id);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Test whether any of a selection of the features lies within a distance in meters of
+	 * a point, see {@link #isWithinDistanceMeters(int, double, double, double)}.
+	 *
+	 * @param x the longitude of the point.
+	 * @param y the latitude of the point.
+	 * @param distanceMeters the distance in meters.
+	 * @param selection the ids of the features to test, or null to test all of the features.
+	 * @return true if the point is inside, on, or within the distance of a selected feature.
+	 */
+	public boolean isWithinDistanceMeters(double x, double y, double distanceMeters, BitSet selection) {
+		BitSet candidates = candidatesWithinDistance(x, y, distanceMeters, selection);
+		for (int id = candidates.nextSetBit(0); id >= 0; id = candidates.nextSetBit(id + 1)) {
+			if (isWithinDistanceMeters(id, x, y, distanceMeters)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Find the selected features whose envelopes lie within a distance in meters of a
+	 * point, searching on both sides of the antimeridian where the distance crosses it.
+	 */
+	private BitSet candidatesWithinDistance(double x, double y, double distanceMeters, BitSet selection) {
+		double latitudeSpan = GeodesicDistanceIndex.latitudeSpan(distanceMeters) + ENVELOPE_MARGIN;
+		double longitudeSpan = GeodesicDistanceIndex.longitudeSpan(y, distanceMeters) + ENVELOPE_MARGIN;
+		BitSet result = new BitSet();
+		for (Envelope searchEnvelope : Antimeridian.queryEnvelopes(x, y, longitudeSpan, latitudeSpan)) {
+			result.or(boundaries.query(searchEnvelope));
+		}
+		if (selection!=null) {
+			result.and(selection);
+		}
+		return result;
+	}
+
+	/**
+	 * Read attributes of features of the store.
+	 *
+	 * @param ids the ids of the features.
+	 * @param attributes the names of the attributes to read.
+	 * @return for each feature, in id order, the string values of the attributes in the
+	 *   order requested, an element being null where the feature has no value.
+	 */
+	public List<String[]> getAttributes(BitSet ids, String... attributes) {
+		List<String[]> result = new ArrayList<String[]>(ids.cardinality());
+		for (int id = ids.nextSetBit(0); id >= 0; id = ids.nextSetBit(id + 1)) {
+			String[] row = new String[attributes.length];
+			for (int i=0; i<attributes.length; i++) {
+				Object value = boundaries.getAttribute(id, attributes[i]);
+				row[i] = value==null ? null : value.toString();
+			}
+			result.add(row);
+		}
+		return result;
+	}
+
+	/**
+	 * Test whether a feature contains a point (equivalent to CONTAINS(the_geom, POINT(x y))).
+	 *
+	 * @param id the id of the feature.
+	 * @param x the longitude of the point.
+	 * @param y the latitude of the point.
+	 * @return true if the point is in the interior of the feature.
+	 */
+	public boolean contains(int id, double x, double y) {
+		return boundaries.isPolygonal(id) && locate(id, x, y)==INTERIOR;
+	}
+
+	/**
+	 * Test whether a point lies within a distance of a feature (equivalent to
+	 * DWITHIN(the_geom, POINT(x y), distance)).
+	 *
+	 * @param id the id of the feature.
+	 * @param x the longitude of the point.
+	 * @param y the latitude of the point.
+	 * @param distance the distance in degrees.
+	 * @return true if the point is inside, on, or within the distance of the feature.
+	 */
+	public boolean isWithinDistance(int id, double x, double y, double distance) {
+		if (boundaries.isPolygonal(id) && locate(id, x, y)!=EXTERIOR) {
+			return true;
+		}
+		int firstRing = boundaries.getFirstRing(id);
+		int lastRing = boundaries.getFirstRing(id + 1);
+		for (int ring=firstRing; ring<lastRing; ring++) {
+			int offset = ring * ENVELOPE_BYTES;
+			double dx = Math.max(0d, Math.max(ringEnvelopes.getDouble(offset) - x, x - ringEnvelopes.getDouble(offset + 8)));
+			double dy = Math.max(0d, Math.max(ringEnvelopes.getDouble(offset + 16) - y, y - ringEnvelopes.getDouble(offset + 24)));
+			if (dx > distance || dy > distance) {
+				continue;
+			}
+			int first = boundaries.getFirstCoordinate(ring);
+			int last = boundaries.getFirstCoordinate(ring + 1);
+			if (last - first==1) {
+				if (Math.hypot(boundaries.getX(first) - x, boundaries.getY(first) - y) <= distance) {
+					return true;
+				}
+				continue;
+			}
+			for (int i=first; i<last - 1; i++) {
+				if (segmentDistance(x, y, boundaries.getX(i), boundaries.getY(i), boundaries.getX(i + 1), boundaries.getY(i + 1)) <= distance) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Test whether a point lies within a distance in meters of a feature, measured along
+	 * the surface of the earth to the straight edges in longitude and latitude of its rings,
+	 * as {@link GeodesicDistanceIndex} measures.
+	 *
+	 * @param id the id of the feature.
+	 * @param x the longitude of the point.
+	 * @param y the latitude of the point.
+	 * @param distanceMeters the distance in meters.
+	 * @return true if the point is inside, on, or within the distance of the feature.
+	 */
+	public boolean isWithinDistanceMeters(int id, double x, double y, double distanceMeters) {
+		if (boundaries.isPolygonal(id) && locate(id, x, y)!=EXTERIOR) {
+			return true;
+		}
+		double maxAngle = distanceMeters / GeodesicDistanceIndex.EARTH_MEAN_RADIUS_METERS;
+		// no vertex or edge further in latitude than this from the point is within the distance
+		double latitudeSpan = GeodesicDistanceIndex.latitudeSpan(distanceMeters) + 1e-9d;
+		double[] p = GeodesicDistanceIndex.toUnitVector(x, y);
+		int firstRing = boundaries.getFirstRing(id);
+		int lastRing = boundaries.getFirstRing(id + 1);
+		for (int ring=firstRing; ring<lastRing; ring++) {
+			int offset = ring * ENVELOPE_BYTES;
+			if (ringEnvelopes.getDouble(offset + 16) - y > latitudeSpan || y - ringEnvelopes.getDouble(offset + 24) > latitudeSpan) {
+				continue;
+			}
+			int first = boundaries.getFirstCoordinate(ring);
+			int last = boundaries.getFirstCoordinate(ring + 1);
+			if (last - first==1) {
+				if (GeodesicDistanceIndex.angleToEdge(p, boundaries.getX(first), boundaries.getY(first), boundaries.getX(first), boundaries.getY(first)) <= maxAngle) {
+					return true;
+				}
+				continue;
+			}
+			for (int run=firstRuns[ring]; run<firstRuns[ring + 1]; run++) {
+				int runOffset = run * ENVELOPE_BYTES;
+				if (runEnvelopes.getDouble(runOffset + 16) - y > latitudeSpan || y - runEnvelopes.getDouble(runOffset + 24) > latitudeSpan) {
+					continue;
+				}
+				int runFirst = first + (run - firstRuns[ring]) * RUN_EDGES;
+				int runLast = Math.min(last - 1, runFirst + RUN_EDGES);
+				for (int i=runFirst; i<runLast; i++) {
+					double y1 = boundaries.getY(i);
+					double y2 = boundaries.getY(i + 1);
+					if (Math.min(y1, y2) - y > latitudeSpan || y - Math.max(y1, y2) > latitudeSpan) {
+						continue;
+					}
+					if (GeodesicDistanceIndex.angleToEdge(p, boundaries.getX(i), y1, boundaries.getX(i + 1), y2) <= maxAngle) {
+						return true;
+					}
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Locate a point with respect to the rings of a polygonal feature, counting crossings
+	 * of a ray in the positive x direction as JTS RayCrossingCounter does.
+	 */
+	private int locate(int id, double x, double y) {
+		int crossings = 0;
+		int firstRing = boundaries.getFirstRing(id);
+		int lastRing = boundaries.getFirstRing(id + 1);
+		for (int ring=firstRing; ring<lastRing; ring++) {
+			int offset = ring * ENVELOPE_BYTES;
+			if (x > ringEnvelopes.getDouble(offset + 8) || y < ringEnvelopes.getDouble(offset + 16) || y > ringEnvelopes.getDouble(offset + 24)) {
+				continue;
+			}
+			int first = boundaries.getFirstCoordinate(ring);
+			int last = boundaries.getFirstCoordinate(ring + 1);
+			for (int run=firstRuns[ring]; run<firstRuns[ring + 1]; run++) {
+				// as for the ring, no edge of a run wholly left of, above or below the point crosses the ray
+				int runOffset = run * ENVELOPE_BYTES;
+				if (x > runEnvelopes.getDouble(runOffset + 8) || y < runEnvelopes.getDouble(runOffset + 16) || y > runEnvelopes.getDouble(runOffset + 24)) {
+					continue;
+				}
+				int runFirst = first + (run - firstRuns[ring]) * RUN_EDGES;
+				int runLast = Math.min(last - 1, runFirst + RUN_EDGES);
+				for (int i=runFirst; i<runLast; i++) {
+					int result = RingCrossingKernel.countSegment(x, y, boundaries.getX(i), boundaries.getY(i), boundaries.getX(i + 1), boundaries.getY(i + 1));
+					if (result==RingCrossingKernel.ON_SEGMENT) {
+						return BOUNDARY;
+					}
+					crossings += result;
+				}
+			}
+		}
+		return (crossings % 2)==1 ? INTERIOR : EXTERIOR;
+	}
+
+	/**
+	 * Distance from a point to a line segment, as JTS Distance.pointToSegment.
+	 */
+	static double segmentDistance(double x, double y, double x1, double y1, double x2, double y2) {
+		if (x1==x2 && y1==y2) {
+			return Math.hypot(x - x1, y - y1);
+		}
+		double lengthSquared = (x2 - x1) * (x2 - x1) + (y2 - y1) * (y2 - y1);
+		double r = ((x - x1) * (x2 - x1) + (y - y1) * (y2 - y1)) / lengthSquared;
+		if (r <= 0d) {
+			return Math.hypot(x - x1, y - y1);
+		}
+		if (r >= 1d) {
+			return Math.hypot(x - x2, y - y2);
+		}
+		double s = ((y1 - y) * (x2 - x1) - (x1 - x) * (y2 - y1)) / lengthSquared;
+		return Math.abs(s) * Math.sqrt(lengthSquared);
+	}
+
+}
@@ -0,0 +1,226 @@
+/**
+ * ResidentSpatialBackend.java
+ *
+ * Copyright 2026 President and Fellows of Harvard College
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.filteredpush.qc.georeference.util;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+import org.filteredpush.qc.georeference.EnumGeoRefSourceAuthority;
+import org.locationtech.jts.geom.Point;
+
+/**
+ * Spatial backend which answers queries from the features of each layer held in memory,
+ * as {@link IndexedFeatureLayer}s with an STRtree over the features and case insensitive
+ * {@link AttributeIndex}es over the attributes.  Where the registry keeps a
+ * {@link SubdividedPolygonIndex} over a layer (the countries), point queries go to the
+ * small pieces of the subdivided index instead of to the whole features.  The layers the
+ * registry holds off heap (the primary divisions and the land) are queried through their
+ * {@link OffHeapPolygonStore}s, as by the {@link MappedSpatialBackend}, and are never loaded
+ * as features.
+ * Distance queries go to the {@link GeodesicDistanceIndex} of the layer, except that the
+ * queries for one sovereign of the merged countries and EEZ layer go to the
+ * {@link SovereignGeometryCache}, those for one country of the centroid layer go to the
+ * {@link CentroidTable}, and the sovereign for a point comes from the
+ * {@link SovereignCellIndex}.  Tests against all of the land are first answered from the
+ * {@link LandSeaGrid} where it has one.  This is the default backend.
+ *
+ * @author mole
+ * @version $Id: $Id
+ */
+public class ResidentSpatialBackend implements SpatialBackend {
+
+	/** The name of this backend. */
+	public static final String NAME = "resident";
+
+	private final SpatialLayerRegistry registry;
+	/** Answers the queries against the layers the registry holds off heap. */
+	private final MappedSpatialBackend offHeap;
+
+	/**
+	 * Construct a backend over the layers of a registry.
+	 *
+	 * @param registry the registry providing the layers.
+	 */
+	public ResidentSpatialBackend(SpatialLayerRegistry registry) {
+		this.registry = registry;
+		this.offHeap = new MappedSpatialBackend(registry);
+	}
+
+	@Override
+	public String getName() {
+		return NAME;
+	}
+
+	@Override
+	public boolean contains(EnumGeoRefSourceAuthority layer, AttributeMatch match, double longitude, double latitude) throws IOException {
+		if (layer==EnumGeoRefSourceAuthority.NE_LAND_UNION_ISLANDS && match.isAll()) {
+			LandSeaGrid grid = registry.getLandSeaGrid();
+			int cell = grid==null ? LandSeaGrid.MIXED : grid.classify(longitude, latitude);
+			if (cell!=LandSeaGrid.MIXED) {
+				return cell==LandSeaGrid.LAND;
+			}
+		}
+		if (registry.isOffHeap(layer)) {
+			return offHeap.contains(layer, match, longitude, latitude);
+		}
+		IndexedFeatureLayer features = registry.getFeatureLayer(layer);
+		SubdividedPolygonIndex subdivided = getSubdividedIndex(layer);
+		if (match.isAll()) {
+			return subdivided!=null ? subdivided.contains(longitude, latitude) : !features.findContaining(longitude, latitude).isEmpty();
+		}
+		BitSet selection = features.select(match);
+		if (selection.isEmpty()) {
+			return false;
+		}
+		if (subdivided!=null) {
+			return subdivided.contains(longitude, latitude, selection);
+		}
+		Point point = features.createPoint(longitude, latitude);
+		for (int id = selection.nextSetBit(0); id >= 0; id = selection.nextSetBit(id + 1)) {
+			if (features.getFeatures().get(id).contains(point)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public boolean isWithinDistance(EnumGeoRefSourceAuthority layer, AttributeMatch match, double longitude, double latitude, double distanceMeters) throws IOException {
+		switch (layer) {
+		case ADM1_UNION_EEZ:
+			// the land and EEZ of a sovereign are dissolved once and reused for every later test of the sovereign
+			String sovereign = match.getEqualValue(SovereignGeometryCache.SOVEREIGN_ATTRIBUTE);
+			if (sovereign!=null) {
+				return registry.getSovereignGeometryCache().isWithinDistance(sovereign, longitude, latitude, distanceMeters);
+			}
+			break;
+		case GBIF_CENTROIDS:
+			String code = match.getEqualValue(CentroidTable.CODE_ATTRIBUTE);
+			if (code!=null) {
+				return registry.getCentroidTable().isNearCentroid(code, longitude, latitude, distanceMeters);
+			}
+			break;
+		case NE_LAND_UNION_ISLANDS:
+			if (match.isAll()) {
+				LandSeaGrid grid = registry.getLandSeaGrid();
+				if (grid!=null) {
+					// longitudeSpan is already the widest extent in longitude of the buffer
+					int cell = grid.classify(longitude, latitude, GeodesicDistanceIndex.longitudeSpan(latitude, distanceMeters),
+							GeodesicDistanceIndex.latitudeSpan(distanceMeters));
+					if (cell!=LandSeaGrid.MIXED) {
+						return cell==LandSeaGrid.LAND;
+					}
+				}
+			}
+			break;
+		default:
+			break;
+		}
+		if (registry.isOffHeap(layer)) {
+			return offHeap.isWithinDistance(layer, match, longitude, latitude, distanceMeters);
+		}
+		IndexedFeatureLayer features = registry.getFeatureLayer(layer);
+		BitSet selection = match.isAll() ? null : features.select(match);
+		return features.getDistanceIndex().isWithinDistance(longitude, latitude, distanceMeters, selection);
+	}
+
+	@Override
+	public boolean isKnown(EnumGeoRefSourceAuthority layer, AttributeMatch match) throws IOException {
+		if (registry.isOffHeap(layer)) {
+			return offHeap.isKnown(layer, match);
+		}
+		IndexedFeatureLayer features = registry.getFeatureLayer(layer);
+		if (match.isAll()) {
+			return !features.getFeatures().isEmpty();
+		}
+		return !features.select(match).isEmpty();
+	}
+
+	@Override
+	public List<String[]> findContaining(EnumGeoRefSourceAuthority layer, double longitude, double latitude, String... attributes) throws IOException {
+		if (registry.isOffHeap(layer)) {
+			return offHeap.findContaining(layer, longitude, latitude, attributes);
+		}
+		SubdividedPolygonIndex subdivided = getSubdividedIndex(layer);
+		List<SpatialFeature> containing;
+		if (subdivided!=null) {
+			containing = subdivided.findAllContaining(longitude, latitude);
+		} else {
+			containing = registry.getFeatureLayer(layer).findContaining(longitude, latitude);
+		}
+		List<String[]> result = new ArrayList<String[]>(containing.size());
+		for (SpatialFeature feature : containing) {
+			String[] values = new String[attributes.length];
+			for (int i=0; i<attributes.length; i++) {
+				values[i] = feature.getAttributeAsString(attributes[i]);
+			}
+			result.add(values);
+		}
+		return result;
+	}
+
+	@Override
+	public String findSovereign(double longitude, double latitude) throws IOException {
+		return registry.getSovereignIndex().getSovereign(longitude, latitude);
+	}
+
+	/**
+	 * Load the features of a layer, or open its off heap store, and build the indexes
+	 * derived from it which this backend queries.
+	 */
+	@Override
+	public void warmUp(EnumGeoRefSourceAuthority layer) throws IOException {
+		if (registry.isOffHeap(layer)) {
+			if (layer==EnumGeoRefSourceAuthority.NE_LAND_UNION_ISLANDS) {
+				registry.getLandSeaGrid();
+			}
+			offHeap.warmUp(layer);
+			return;
+		}
+		IndexedFeatureLayer features = registry.getFeatureLayer(layer);
+		switch (layer) {
+		case NE_ADMIN_0:
+			registry.getCountryIndex();
+			features.getAttributeIndex("NAME");
+			features.getDistanceIndex();
+			break;
+		case ADM1_UNION_EEZ:
+			registry.getSovereignIndex();
+			registry.getSovereignGeometryCache();
+			features.getAttributeIndex(SovereignGeometryCache.SOVEREIGN_ATTRIBUTE);
+			break;
+		case GBIF_CENTROIDS:
+			registry.getCentroidTable();
+			break;
+		default:
+			break;
+		}
+	}
+
+	private SubdividedPolygonIndex getSubdividedIndex(EnumGeoRefSourceAuthority layer) throws IOException {
+		switch (layer) {
+		case NE_ADMIN_0:
+			return registry.getCountryIndex();
+		default:
+			return null;
+		}
+	}
+
+}
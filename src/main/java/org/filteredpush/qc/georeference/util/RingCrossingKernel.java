@@ -0,0 +1,262 @@
+/**
+ * RingCrossingKernel.java
+ *
+ * Copyright 2026 President and Fellows of Harvard College
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.filteredpush.qc.georeference.util;
+
+import org.locationtech.jts.algorithm.CGAlgorithmsDD;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.LineString;
+import org.locationtech.jts.geom.Location;
+import org.locationtech.jts.geom.MultiPolygon;
+import org.locationtech.jts.geom.Polygon;
+
+/**
+ * Point in polygon test on the rings of a polygon or multipolygon held in a flat array of
+ * coordinates, with the edges sorted into horizontal bands by latitude, so that a test only
+ * examines the edges whose latitude range includes the latitude of the point, and creates
+ * no objects.
+ *
+ * The test counts the crossings of a ray from the point in the positive x direction over all
+ * of the rings, in the same way as the JTS RayCrossingCounter and with the same robust
+ * orientation test, so it locates points exactly as JTS does: a point on any edge is on the
+ * boundary, otherwise a point with an odd number of crossings is in the interior.  The robust
+ * orientation test only falls back to extended precision arithmetic, which does allocate,
+ * for points almost exactly on the line of an edge.
+ *
+ * Instances are immutable and are safe to share between threads.
+ *
+ * @author mole
+ * @version $Id: $Id
+ */
+public final class RingCrossingKernel {
+
+	/** Result of countSegment for an edge the ray from the point does not cross. */
+	static final int NO_CROSSING = 0;
+	/** Result of countSegment for an edge the ray from the point crosses. */
+	static final int CROSSING = 1;
+	/** Result of countSegment for an edge the point lies on. */
+	static final int ON_SEGMENT = 2;
+
+	/** Target number of edges in each band. */
+	private static final int EDGES_PER_BAND = 8;
+
+	/** Limit on the number of bands. */
+	private static final int MAX_BANDS = 1 << 16;
+
+	private final double[] coordinates;
+	private final int edgeCount;
+	private final int bandCount;
+	private final int[] bandStart;
+	private final int[] bandEdges;
+	private final double minX;
+	private final double maxX;
+	private final double minY;
+	private final double maxY;
+	private final double bandScale;
+
+	/**
+	 * Test whether a geometry can be held in a kernel.
+	 *
+	 * @param geometry the geometry to test.
+	 * @return true if the geometry is a non-empty polygon or multipolygon.
+	 */
+	public static boolean supports(Geometry geometry) {
+		return geometry!=null && !geometry.isEmpty() && (geometry instanceof Polygon || geometry instanceof MultiPolygon);
+	}
+
+	/**
+	 * Construct a kernel over the rings of a polygon or multipolygon.
+	 *
+	 * @param geometry the polygonal geometry.
+	 * @throws IllegalArgumentException if the geometry is not supported.
+	 */
+	public RingCrossingKernel(Geometry geometry) {
+		if (!supports(geometry)) {
+			throw new IllegalArgumentException("Only polygons and multipolygons are supported.");
+		}
+		int vertexCount = geometry.getNumPoints();
+		this.coordinates = new double[vertexCount * 2];
+		int[] edges = new int[vertexCount];
+		int vertex = 0;
+		int edgeTotal = 0;
+		for (int i=0; i<geometry.getNumGeometries(); i++) {
+			Polygon polygon = (Polygon)geometry.getGeometryN(i);
+			for (int ring=-1; ring<polygon.getNumInteriorRing(); ring++) {
+				LineString lineString = ring < 0 ? polygon.getExteriorRing() : polygon.getInteriorRingN(ring);
+				Coordinate[] ringCoordinates = lineString.getCoordinates();
+				for (int j=0; j<ringCoordinates.length; j++) {
+					coordinates[(vertex + j) * 2] = ringCoordinates[j].x;
+					coordinates[(vertex + j) * 2 + 1] = ringCoordinates[j].y;
+					if (j < ringCoordinates.length - 1) {
+						edges[edgeTotal++] = vertex + j;
+					}
+				}
+				vertex += ringCoordinates.length;
+			}
+		}
+		this.edgeCount = edgeTotal;
+		Envelope envelope = geometry.getEnvelopeInternal();
+		this.minX = envelope.getMinX();
+		this.maxX = envelope.getMaxX();
+		this.minY = envelope.getMinY();
+		this.maxY = envelope.getMaxY();
+		this.bandCount = Math.max(1, Math.min(MAX_BANDS, edgeCount / EDGES_PER_BAND));
+		this.bandScale = envelope.getHeight() > 0d ? bandCount / envelope.getHeight() : 0d;
+
+		// each edge is placed in every band its closed latitude range overlaps
+		int[] counts = new int[bandCount + 1];
+		for (int e=0; e<edgeCount; e++) {
+			int first = edges[e];
+			double y1 = coordinates[first * 2 + 1];
+			double y2 = coordinates[first * 2 + 3];
+			int low = band(Math.min(y1, y2));
+			int high = band(Math.max(y1, y2));
+			for (int b=low; b<=high; b++) {
+				counts[b + 1]++;
+			}
+		}
+		for (int b=0; b<bandCount; b++) {
+			counts[b + 1] += counts[b];
+		}
+		this.bandStart = counts.clone();
+		this.bandEdges = new int[counts[bandCount]];
+		for (int e=0; e<edgeCount; e++) {
+			int first = edges[e];
+			double y1 = coordinates[first * 2 + 1];
+			double y2 = coordinates[first * 2 + 3];
+			int low = band(Math.min(y1, y2));
+			int high = band(Math.max(y1, y2));
+			for (int b=low; b<=high; b++) {
+				bandEdges[counts[b]++] = first;
+			}
+		}
+	}
+
+	private int band(double y) {
+		int result = (int)((y - minY) * bandScale);
+		if (result < 0) {
+			return 0;
+		}
+		if (result >= bandCount) {
+			return bandCount - 1;
+		}
+		return result;
+	}
+
+	/**
+	 * @return the number of edges of the rings.
+	 */
+	public int getEdgeCount() {
+		return edgeCount;
+	}
+
+	/**
+	 * @return the number of latitude bands the edges are sorted into.
+	 */
+	public int getBandCount() {
+		return bandCount;
+	}
+
+	/**
+	 * Locate a point with respect to the polygon.
+	 *
+	 * @param x the longitude of the point.
+	 * @param y the latitude of the point.
+	 * @return Location.INTERIOR, Location.BOUNDARY, or Location.EXTERIOR.
+	 */
+	public int locate(double x, double y) {
+		if (x < minX || x > maxX || y < minY || y > maxY) {
+			return Location.EXTERIOR;
+		}
+		int band = band(y);
+		int crossings = 0;
+		for (int i=bandStart[band]; i<bandStart[band + 1]; i++) {
+			int offset = bandEdges[i] * 2;
+			int result = countSegment(x, y, coordinates[offset], coordinates[offset + 1], coordinates[offset + 2], coordinates[offset + 3]);
+			if (result==ON_SEGMENT) {
+				return Location.BOUNDARY;
+			}
+			crossings += result;
+		}
+		return (crossings % 2)==1 ? Location.INTERIOR : Location.EXTERIOR;
+	}
+
+	/**
+	 * Test whether a point is in the interior of the polygon (equivalent to CONTAINS).
+	 *
+	 * @param x the longitude of the point.
+	 * @param y the latitude of the point.
+	 * @return true if the point is in the interior.
+	 */
+	public boolean contains(double x, double y) {
+		return locate(x, y)==Location.INTERIOR;
+	}
+
+	/**
+	 * Test whether a point is in the interior or on the boundary of the polygon.
+	 *
+	 * @param x the longitude of the point.
+	 * @param y the latitude of the point.
+	 * @return true if the point is not in the exterior.
+	 */
+	public boolean covers(double x, double y) {
+		return locate(x, y)!=Location.EXTERIOR;
+	}
+
+	/**
+	 * Test one edge against a ray from a point in the positive x direction, following
+	 * RayCrossingCounter.countSegment in JTS.
+	 *
+	 * @param x the longitude of the point.
+	 * @param y the latitude of the point.
+	 * @param x1 the longitude of the start of the edge.
+	 * @param y1 the latitude of the start of the edge.
+	 * @param x2 the longitude of the end of the edge.
+	 * @param y2 the latitude of the end of the edge.
+	 * @return CROSSING, NO_CROSSING, or ON_SEGMENT.
+	 */
+	static int countSegment(double x, double y, double x1, double y1, double x2, double y2) {
+		if (x1 < x && x2 < x) {
+			return NO_CROSSING;
+		}
+		if (x==x2 && y==y2) {
+			return ON_SEGMENT;
+		}
+		if (y1==y && y2==y) {
+			if (x >= Math.min(x1, x2) && x <= Math.max(x1, x2)) {
+				return ON_SEGMENT;
+			}
+			return NO_CROSSING;
+		}
+		if ((y1 > y && y2 <= y) || (y2 > y && y1 <= y)) {
+			int orientation = CGAlgorithmsDD.orientationIndex(x1, y1, x2, y2, x, y);
+			if (orientation==0) {
+				return ON_SEGMENT;
+			}
+			if (y2 < y1) {
+				orientation = -orientation;
+			}
+			if (orientation > 0) {
+				return CROSSING;
+			}
+		}
+		return NO_CROSSING;
+	}
+
+}
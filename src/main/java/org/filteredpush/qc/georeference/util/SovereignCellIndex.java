@@ -0,0 +1,247 @@
+/**
+ * SovereignCellIndex.java
+ *
+ * Copyright 2026 President and Fellows of Harvard College
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.filteredpush.qc.georeference.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.Point;
+
+/**
+ * Reverse geocoding index from a point to a sovereign country code over the merged
+ * countries and exclusive economic zones layer.
+ *
+ * The world is covered by one degree cells, each built on first use into a small quadtree.
+ * A leaf of the tree either holds a precomputed answer, which applies to every point in the
+ * leaf because every feature touching the leaf contains the whole leaf, or holds the short list
+ * of features touching the leaf which must be tested exactly.
+ *
+ * The answer is the ISO_SOV1 code of the containing features if all the containing features
+ * share the same ISO_SOV1 code and none has an ISO_SOV2 code, otherwise null.
+ *
+ * @author mole
+ * @version $Id: $Id
+ */
+public class SovereignCellIndex {
+
+	private static final Log logger = LogFactory.getLog(SovereignCellIndex.class);
+
+	/** Attribute holding the ISO three letter code of the sovereign of a feature. */
+	public static final String SOVEREIGN_ATTRIBUTE = "ISO_SOV1";
+
+	/** Attribute holding the code of a second sovereign of a jointly administered feature. */
+	public static final String JOINT_SOVEREIGN_ATTRIBUTE = "ISO_SOV2";
+
+	/**
+	 * Number of times a one degree cell may be split in four, 4 gives leaves of 1/16 degree.
+	 */
+	private static final int MAX_DEPTH = 4;
+
+	private final IndexedFeatureLayer layer;
+	private final GeometryFactory geometryFactory;
+	private final AtomicReferenceArray<Node> cells;
+
+	/**
+	 * A node in the quadtree of a one degree cell.
+	 */
+	private interface Node {
+		String lookup(Point point, double longitude, double latitude);
+	}
+
+	/**
+	 * Leaf for which every point has the same answer.
+	 */
+	private static class ResolvedNode implements Node {
+		private final String sovereign;
+		private ResolvedNode(String sovereign) {
+			this.sovereign = sovereign;
+		}
+		@Override
+		public String lookup(Point point, double longitude, double latitude) {
+			return sovereign;
+		}
+	}
+
+	/**
+	 * Leaf for which the features touching the leaf must be tested exactly.
+	 */
+	private static class CandidateNode implements Node {
+		private final List<SpatialFeature> candidates;
+		private CandidateNode(List<SpatialFeature> candidates) {
+			this.candidates = candidates;
+		}
+		@Override
+		public String lookup(Point point, double longitude, double latitude) {
+			List<SpatialFeature> matches = new ArrayList<SpatialFeature>();
+			for (SpatialFeature candidate : candidates) {
+				if (candidate.contains(point)) {
+					matches.add(candidate);
+				}
+			}
+			return resolveSovereign(matches);
+		}
+	}
+
+	/**
+	 * Node split into four quadrants about a midpoint.
+	 */
+	private static class SplitNode implements Node {
+		private final double middleX;
+		private final double middleY;
+		private final Node[] quadrants;
+		private SplitNode(double middleX, double middleY, Node[] quadrants) {
+			this.middleX = middleX;
+			this.middleY = middleY;
+			this.quadrants = quadrants;
+		}
+		@Override
+		public String lookup(Point point, double longitude, double latitude) {
+			int quadrant = (longitude < middleX ? 0 : 1) + (latitude < middleY ? 0 : 2);
+			return quadrants[quadrant].lookup(point, longitude, latitude);
+		}
+	}
+
+	private static final ResolvedNode NO_SOVEREIGN = new ResolvedNode(null);
+
+	/**
+	 * Construct an index over a layer with ISO_SOV1 and ISO_SOV2 attributes, cells are built on first use.
+	 *
+	 * @param layer the merged_countries_and_eez layer.
+	 */
+	public SovereignCellIndex(IndexedFeatureLayer layer) {
+		this.layer = layer;
+		this.geometryFactory = layer.createPoint(0d, 0d).getFactory();
+		this.cells = new AtomicReferenceArray<Node>(360 * 180);
+	}
+
+	/**
+	 * Find the sovereign country for a point.
+	 *
+	 * @param longitude of the point.
+	 * @param latitude of the point.
+	 * @return the three letter ISO_SOV1 code of the country, or null if the point is not
+	 *   within any feature, or if it is within features of more than one sovereign or of
+	 *   jointly administered areas.
+	 */
+	public String getSovereign(double longitude, double latitude) {
+		Point point = layer.createPoint(longitude, latitude);
+		if (!(latitude >= -90d && latitude <= 90d && longitude >= -180d && longitude <= 180d)) {
+			// outside the grid, test the whole layer
+			return resolveSovereign(layer.findContaining(longitude, latitude));
+		}
+		int row = Math.min(179, (int)Math.floor(latitude + 90d));
+		int column = Math.min(359, (int)Math.floor(longitude + 180d));
+		int cell = row * 360 + column;
+		Node node = cells.get(cell);
+		if (node==null) {
+			Envelope envelope = new Envelope(column - 180d, column - 179d, row - 90d, row - 89d);
+			node = buildNode(envelope, layer.queryEnvelope(envelope), 0);
+			if (!cells.compareAndSet(cell, null, node)) {
+				node = cells.get(cell);
+			}
+		}
+		return node.lookup(point, longitude, latitude);
+	}
+
+	/**
+	 * Build the quadtree node for a rectangle.
+	 *
+	 * @param envelope the rectangle.
+	 * @param candidates features which may touch the rectangle.
+	 * @param depth the depth of the node.
+	 * @return a node covering the rectangle.
+	 */
+	private Node buildNode(Envelope envelope, List<SpatialFeature> candidates, int depth) {
+		Geometry rectangle = geometryFactory.toGeometry(envelope);
+		List<SpatialFeature> touching = new ArrayList<SpatialFeature>();
+		boolean allContain = true;
+		for (SpatialFeature candidate : candidates) {
+			if (candidate.getGeometry().getEnvelopeInternal().intersects(envelope) && candidate.getPreparedGeometry().intersects(rectangle)) {
+				touching.add(candidate);
+				if (allContain && !candidate.getPreparedGeometry().containsProperly(rectangle)) {
+					allContain = false;
+				}
+			}
+		}
+		if (touching.isEmpty()) {
+			return NO_SOVEREIGN;
+		}
+		if (allContain) {
+			return new ResolvedNode(resolveSovereign(touching));
+		}
+		if (depth >= MAX_DEPTH) {
+			return new CandidateNode(touching);
+		}
+		double middleX = (envelope.getMinX() + envelope.getMaxX()) / 2d;
+		double middleY = (envelope.getMinY() + envelope.getMaxY()) / 2d;
+		Node[] quadrants = new Node[4];
+		quadrants[0] = buildNode(new Envelope(envelope.getMinX(), middleX, envelope.getMinY(), middleY), touching, depth + 1);
+		quadrants[1] = buildNode(new Envelope(middleX, envelope.getMaxX(), envelope.getMinY(), middleY), touching, depth + 1);
+		quadrants[2] = buildNode(new Envelope(envelope.getMinX(), middleX, middleY, envelope.getMaxY()), touching, depth + 1);
+		quadrants[3] = buildNode(new Envelope(middleX, envelope.getMaxX(), middleY, envelope.getMaxY()), touching, depth + 1);
+		return new SplitNode(middleX, middleY, quadrants);
+	}
+
+	/**
+	 * Apply the rule for a single sovereign to the features containing a point.
+	 *
+	 * @param matches the features containing a point.
+	 * @return the ISO_SOV1 value shared by all the matches if none of the matches has a value
+	 *   for ISO_SOV2, otherwise null.
+	 */
+	public static String resolveSovereign(List<SpatialFeature> matches) {
+		List<String[]> values = new ArrayList<String[]>(matches.size());
+		for (SpatialFeature match : matches) {
+			values.add(new String[] { match.getAttributeAsString(SOVEREIGN_ATTRIBUTE), match.getAttributeAsString(JOINT_SOVEREIGN_ATTRIBUTE) });
+		}
+		return resolveSovereignValues(values);
+	}
+
+	/**
+	 * Apply the rule for a single sovereign to the ISO_SOV1 and ISO_SOV2 values of the
+	 * features containing a point, as returned by
+	 * {@link SpatialBackend#findContaining(org.filteredpush.qc.georeference.EnumGeoRefSourceAuthority, double, double, String...)}.
+	 *
+	 * @param matches the ISO_SOV1 and ISO_SOV2 values of each of the features containing a point.
+	 * @return the ISO_SOV1 value shared by all the matches if none of the matches has a value
+	 *   for ISO_SOV2, otherwise null.
+	 */
+	public static String resolveSovereignValues(List<String[]> matches) {
+		if (matches.isEmpty()) {
+			return null;
+		}
+		String result = matches.get(0)[0];
+		for (String[] match : matches) {
+			if (!GEOUtil.isEmpty(match[1])) {
+				return null;
+			}
+			if (result==null || !result.equals(match[0])) {
+				return null;
+			}
+		}
+		logger.debug(result);
+		return result;
+	}
+
+}
@@ -0,0 +1,376 @@
+/**
+ * SovereignGeometryCache.java
+ *
+ * Copyright 2026 President and Fellows of Harvard College
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.filteredpush.qc.georeference.util;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.geotools.geometry.jts.JTSFactoryFinder;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.Point;
+import org.locationtech.jts.geom.prep.PreparedGeometry;
+import org.locationtech.jts.geom.prep.PreparedGeometryFactory;
+import org.locationtech.jts.operation.buffer.BufferOp;
+import org.locationtech.jts.operation.buffer.BufferParameters;
+import org.locationtech.jts.operation.overlayng.OverlayNGRobust;
+
+/**
+ * Cache of the land and EEZ of each sovereign country in the merged countries and EEZ layer,
+ * dissolved into a single prepared geometry on first use of the country code, so that a test
+ * of whether a point is in or near a country including its EEZ is one prepared geometry test
+ * instead of a selection of features and a distance test against each of them.
+ *
+ * For each buffer distance used with a country a buffered copy of the dissolved geometry is
+ * also kept.  The buffer is built in degrees, using the length of a degree of latitude, which
+ * is never shorter than a degree of longitude, so a point inside the buffered geometry is
+ * within the buffer distance in meters and is accepted without further work.  Points outside
+ * the buffered geometry, but within a bounding box of the buffer distance around the country,
+ * are tested against the boundary of the dissolved geometry with a {@link GeodesicDistanceIndex}.
+ *
+ * Both the dissolved geometries and the buffered copies are held in least recently used maps
+ * of bounded size, the least recently used entry is discarded when a map is full.
+ *
+ * Instances are safe to share between threads.
+ *
+ * @author mole
+ * @version $Id: $Id
+ */
+public class SovereignGeometryCache {
+
+	private static final Log logger = LogFactory.getLog(SovereignGeometryCache.class);
+
+	/** Attribute of the merged countries and EEZ layer holding the sovereign country code. */
+	public static final String SOVEREIGN_ATTRIBUTE = "ISO_SOV1";
+
+	/** Default number of dissolved sovereign geometries to keep. */
+	public static final int DEFAULT_MAX_SOVEREIGNS = 64;
+
+	/** Default number of buffered sovereign geometries to keep. */
+	public static final int DEFAULT_MAX_BUFFERED = 128;
+
+	/** Segments per quadrant of the buffered geometries, fewer segments keep the buffer inside the true buffer. */
+	private static final int BUFFER_QUADRANT_SEGMENTS = 2;
+
+	private final IndexedFeatureLayer layer;
+	private final GeometryFactory geometryFactory;
+	private final Map<String,SovereignGeometry> sovereigns;
+	private final Map<String,PreparedGeometry> buffered;
+
+	/**
+	 * The dissolved land and EEZ of one sovereign country.
+	 */
+	public static class SovereignGeometry {
+
+		private final String countryCode;
+		private final Geometry geometry;
+		private final PreparedGeometry prepared;
+		private final List<Envelope> envelopes;
+		private final GeodesicDistanceIndex distanceIndex;
+
+		private SovereignGeometry(String countryCode, Geometry geometry) {
+			this.countryCode = countryCode;
+			this.geometry = geometry;
+			this.prepared = PreparedGeometryFactory.prepare(geometry);
+			this.envelopes = Antimeridian.splitEnvelope(geometry);
+			Map<String,Object> attributes = new HashMap<String,Object>();
+			attributes.put(SOVEREIGN_ATTRIBUTE, countryCode);
+			List<SpatialFeature> features = Collections.singletonList(new SpatialFeature(0, attributes, geometry));
+			this.distanceIndex = new GeodesicDistanceIndex(new IndexedFeatureLayer(SOVEREIGN_ATTRIBUTE + " " + countryCode, features));
+		}
+
+		/**
+		 * <p>Getter for the field <code>countryCode</code>.</p>
+		 *
+		 * @return the sovereign country code, case folded.
+		 */
+		public String getCountryCode() {
+			return countryCode;
+		}
+
+		/**
+		 * <p>Getter for the field <code>geometry</code>.</p>
+		 *
+		 * @return the dissolved land and EEZ of the country.
+		 */
+		public Geometry getGeometry() {
+			return geometry;
+		}
+
+		/**
+		 * <p>Getter for the field <code>prepared</code>.</p>
+		 *
+		 * @return the dissolved geometry prepared for repeated point tests.
+		 */
+		public PreparedGeometry getPreparedGeometry() {
+			return prepared;
+		}
+
+		/**
+		 * <p>Getter for the field <code>distanceIndex</code>.</p>
+		 *
+		 * @return an index over the boundary of the dissolved geometry.
+		 */
+		public GeodesicDistanceIndex getDistanceIndex() {
+			return distanceIndex;
+		}
+	}
+
+	/**
+	 * Construct a cache over the merged countries and EEZ layer with the default sizes.
+	 *
+	 * @param layer the merged countries and EEZ features.
+	 */
+	public SovereignGeometryCache(IndexedFeatureLayer layer) {
+		this(layer, DEFAULT_MAX_SOVEREIGNS, DEFAULT_MAX_BUFFERED);
+	}
+
+	/**
+	 * Construct a cache over the merged countries and EEZ layer.
+	 *
+	 * @param layer the merged countries and EEZ features.
+	 * @param maxSovereigns the number of dissolved sovereign geometries to keep.
+	 * @param maxBuffered the number of buffered sovereign geometries to keep.
+	 */
+	public SovereignGeometryCache(IndexedFeatureLayer layer, int maxSovereigns, int maxBuffered) {
+		if (maxSovereigns < 1 || maxBuffered < 1) {
+			throw new IllegalArgumentException("Cache sizes must be at least one.");
+		}
+		this.layer = layer;
+		this.geometryFactory = JTSFactoryFinder.getGeometryFactory(null);
+		this.sovereigns = createLeastRecentlyUsedMap(maxSovereigns);
+		this.buffered = createLeastRecentlyUsedMap(maxBuffered);
+	}
+
+	private static <V> Map<String,V> createLeastRecentlyUsedMap(final int maxEntries) {
+		return new LinkedHashMap<String,V>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String,V> eldest) {
+				return size() > maxEntries;
+			}
+		};
+	}
+
+	/**
+	 * Obtain the dissolved land and EEZ of a sovereign country, dissolving the features of
+	 * the country on first use.
+	 *
+	 * @param countryCode the ISO_SOV1 code of the country, case is ignored.
+	 * @return the dissolved geometry, or null if no feature has the country code.
+	 */
+	public SovereignGeometry getSovereignGeometry(String countryCode) {
+		if (countryCode==null) {
+			return null;
+		}
+		String key = AttributeIndex.foldCase(countryCode.trim());
+		SovereignGeometry result;
+		synchronized (sovereigns) {
+			result = sovereigns.get(key);
+		}
+		if (result==null) {
+			// dissolved outside of the lock, if two threads race the first one stored wins
+			SovereignGeometry dissolved = dissolve(key);
+			if (dissolved==null) {
+				return null;
+			}
+			synchronized (sovereigns) {
+				result = sovereigns.get(key);
+				if (result==null) {
+					result = dissolved;
+					sovereigns.put(key, result);
+				}
+			}
+		}
+		return result;
+	}
+
+	private SovereignGeometry dissolve(String key) {
+		long startTime = System.currentTimeMillis();
+		BitSet ids = layer.getAttributeIndex(SOVEREIGN_ATTRIBUTE).selectEqual(key);
+		List<Geometry> parts = new ArrayList<Geometry>(ids.cardinality());
+		for (int id = ids.nextSetBit(0); id >= 0; id = ids.nextSetBit(id + 1)) {
+			Geometry geometry = layer.getFeatures().get(id).getGeometry();
+			if (geometry!=null && !geometry.isEmpty()) {
+				parts.add(geometry);
+			}
+		}
+		if (parts.isEmpty()) {
+			return null;
+		}
+		Geometry geometry;
+		try {
+			geometry = OverlayNGRobust.union(parts);
+		} catch (RuntimeException e) {
+			// keep the parts undissolved, tests against them give the same answers
+			logger.debug("Unable to dissolve " + key + ": " + e.getMessage());
+			geometry = geometryFactory.buildGeometry(parts);
+		}
+		logger.debug("Dissolved " + parts.size() + " features for " + key + " in " + (System.currentTimeMillis() - startTime) + " ms");
+		return new SovereignGeometry(key, geometry);
+	}
+
+	/**
+	 * Obtain the dissolved geometry of a sovereign country buffered by a distance, buffering
+	 * it on first use of the distance with the country.
+	 *
+	 * @param sovereign the dissolved geometry of the country.
+	 * @param distanceMeters the buffer distance in meters.
+	 * @return the buffered geometry, prepared for repeated point tests.
+	 */
+	private PreparedGeometry getBuffered(SovereignGeometry sovereign, double distanceMeters) {
+		String key = sovereign.getCountryCode() + " " + Double.toString(distanceMeters);
+		PreparedGeometry result;
+		synchronized (buffered) {
+			result = buffered.get(key);
+		}
+		if (result==null) {
+			long startTime = System.currentTimeMillis();
+			BufferParameters parameters = new BufferParameters(BUFFER_QUADRANT_SEGMENTS);
+			Geometry buffer = BufferOp.bufferOp(sovereign.getGeometry(), GeodesicDistanceIndex.latitudeSpan(distanceMeters), parameters);
+			PreparedGeometry prepared = PreparedGeometryFactory.prepare(buffer);
+			logger.debug("Buffered " + key + " in " + (System.currentTimeMillis() - startTime) + " ms");
+			synchronized (buffered) {
+				result = buffered.get(key);
+				if (result==null) {
+					result = prepared;
+					buffered.put(key, result);
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Test whether a point is inside or within a distance of the land or EEZ of a sovereign
+	 * country (equivalent to ISO_SOV1 ILIKE 'countryCode' AND DWITHIN(the_geom, point, distance),
+	 * with the distance in meters along the surface of the earth).
+	 *
+	 * @param countryCode the ISO_SOV1 code of the country, case is ignored.
+	 * @param longitude of the point.
+	 * @param latitude of the point.
+	 * @param distanceMeters the buffer distance in meters.
+	 * @return true if the point is inside or within the distance of the country, false
+	 *   if not or if no feature has the country code.
+	 */
+	public boolean isWithinDistance(String countryCode, double longitude, double latitude, double distanceMeters) {
+		SovereignGeometry sovereign = getSovereignGeometry(countryCode);
+		if (sovereign==null) {
+			return false;
+		}
+		return isWithinDistance(sovereign, longitude, latitude, distanceMeters);
+	}
+
+	/**
+	 * Test each of a list of alternative coordinates against the land and EEZ of a sovereign
+	 * country in one call, setting the matched flag of each alternative to whether it is inside
+	 * or within a distance of the country.  Alternatives outside a bounding box of the distance
+	 * around the country are rejected without a geometry test.
+	 *
+	 * @param countryCode the ISO_SOV1 code of the country, case is ignored.
+	 * @param alternatives the alternative coordinates to test.
+	 * @param distanceMeters the buffer distance in meters.
+	 * @return the alternatives inside or within the distance of the country, in the order of
+	 *   alternatives, empty if no feature has the country code.
+	 */
+	public List<GeolocationAlternative> findWithinDistance(String countryCode, List<GeolocationAlternative> alternatives, double distanceMeters) {
+		List<GeolocationAlternative> result = new ArrayList<GeolocationAlternative>();
+		SovereignGeometry sovereign = getSovereignGeometry(countryCode);
+		for (GeolocationAlternative alternative : alternatives) {
+			boolean matched = sovereign!=null && isWithinDistance(sovereign, alternative.getLongitude(), alternative.getLatitude(), distanceMeters);
+			alternative.setMatched(matched);
+			if (matched) {
+				result.add(alternative);
+			}
+		}
+		return result;
+	}
+
+	private boolean isWithinDistance(SovereignGeometry sovereign, double longitude, double latitude, double distanceMeters) {
+		double distance = Math.max(0d, distanceMeters);
+		if (!isInExpandedEnvelope(sovereign.envelopes, longitude, latitude, distance)) {
+			return false;
+		}
+		Point point = geometryFactory.createPoint(new Coordinate(longitude, latitude));
+		if (sovereign.getPreparedGeometry().covers(point)) {
+			return true;
+		}
+		if (distance==0d) {
+			return false;
+		}
+		if (getBuffered(sovereign, distance).covers(point)) {
+			return true;
+		}
+		return sovereign.getDistanceIndex().isBoundaryWithinDistance(longitude, latitude, distance, null);
+	}
+
+	private static boolean isInExpandedEnvelope(List<Envelope> envelopes, double longitude, double latitude, double distanceMeters) {
+		double latitudeSpan = GeodesicDistanceIndex.latitudeSpan(distanceMeters);
+		double longitudeSpan = GeodesicDistanceIndex.longitudeSpan(latitude, distanceMeters);
+		// the buffer may reach across the antimeridian, and a country which crosses it is
+		// held as an envelope on each side
+		for (Envelope search : Antimeridian.queryEnvelopes(longitude, latitude, longitudeSpan, latitudeSpan)) {
+			for (Envelope envelope : envelopes) {
+				if (search.intersects(envelope)) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return the number of dissolved sovereign geometries currently held.
+	 */
+	public int getSovereignCount() {
+		synchronized (sovereigns) {
+			return sovereigns.size();
+		}
+	}
+
+	/**
+	 * @return the number of buffered sovereign geometries currently held.
+	 */
+	public int getBufferedCount() {
+		synchronized (buffered) {
+			return buffered.size();
+		}
+	}
+
+	/**
+	 * Discard all of the dissolved and buffered geometries.
+	 */
+	public void clear() {
+		synchronized (sovereigns) {
+			sovereigns.clear();
+		}
+		synchronized (buffered) {
+			buffered.clear();
+		}
+	}
+
+}
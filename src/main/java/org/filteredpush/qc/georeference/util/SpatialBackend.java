@@ -0,0 +1,127 @@
+/**
+ * SpatialBackend.java
+ *
+ * Copyright 2026 President and Fellows of Harvard College
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.filteredpush.qc.georeference.util;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.filteredpush.qc.georeference.EnumGeoRefSourceAuthority;
+
+/**
+ * The queries the spatial tests make against a layer, independent of how the layer is
+ * stored and indexed.  Each query selects features of a layer by an {@link AttributeMatch}
+ * on attribute values, ignoring case, where {@link AttributeMatch#all()} selects every
+ * feature and a match on a null value selects no features.
+ *
+ * Implementations give the same answers for the same data: contains excludes points on
+ * the boundary of a feature, as the GeoTools CONTAINS filter does, and distances are in
+ * meters along the surface of the earth, from the point to the straight edges in longitude
+ * and latitude of the features, including the boundary, as measured by
+ * {@link GeodesicDistanceIndex}.  The implementation in use is chosen with
+ * {@link SpatialLayerRegistry#BACKEND_PROPERTY}, and may be replaced for a single layer with
+ * {@link SpatialLayerRegistry#registerBackend(EnumGeoRefSourceAuthority, SpatialBackend)}.
+ *
+ * @author mole
+ * @version $Id: $Id
+ */
+public interface SpatialBackend {
+
+	/**
+	 * <p>Getter for the name of the backend.</p>
+	 *
+	 * @return the name by which this backend is selected.
+	 */
+	String getName();
+
+	/**
+	 * Test whether any of the matching features of a layer contains a point (equivalent
+	 * to CONTAINS(the_geom, POINT(longitude latitude)) AND the match).
+	 *
+	 * @param layer the source authority of the layer.
+	 * @param match the match the features must satisfy.
+	 * @param longitude of the point.
+	 * @param latitude of the point.
+	 * @return true if the point is in the interior of a matching feature.
+	 * @throws IOException if the spatial data cannot be read.
+	 */
+	boolean contains(EnumGeoRefSourceAuthority layer, AttributeMatch match, double longitude, double latitude) throws IOException;
+
+	/**
+	 * Test whether any of the matching features of a layer lies within a distance in meters
+	 * of a point, measured along the surface of the earth.
+	 *
+	 * @param layer the source authority of the layer.
+	 * @param match the match the features must satisfy.
+	 * @param longitude of the point.
+	 * @param latitude of the point.
+	 * @param distanceMeters the buffer distance in meters.
+	 * @return true if the point is inside, on, or within the distance of a matching feature.
+	 * @throws IOException if the spatial data cannot be read.
+	 */
+	boolean isWithinDistance(EnumGeoRefSourceAuthority layer, AttributeMatch match, double longitude, double latitude, double distanceMeters) throws IOException;
+
+	/**
+	 * Test whether any feature of a layer satisfies a match.
+	 *
+	 * @param layer the source authority of the layer.
+	 * @param match the match to look for.
+	 * @return true if at least one feature matches.
+	 * @throws IOException if the spatial data cannot be read.
+	 */
+	boolean isKnown(EnumGeoRefSourceAuthority layer, AttributeMatch match) throws IOException;
+
+	/**
+	 * Find the features of a layer which contain a point, and return some of their attributes.
+	 *
+	 * @param layer the source authority of the layer.
+	 * @param longitude of the point.
+	 * @param latitude of the point.
+	 * @param attributes the names of the attributes to return.
+	 * @return for each feature containing the point, in the order of the features in the
+	 *   layer, the string values of the attributes in the order requested, an element being
+	 *   null where the feature has no value; empty if no feature contains the point.
+	 * @throws IOException if the spatial data cannot be read.
+	 */
+	List<String[]> findContaining(EnumGeoRefSourceAuthority layer, double longitude, double latitude, String... attributes) throws IOException;
+
+	/**
+	 * Find the sovereign country for a point from the merged countries and EEZ layer,
+	 * {@link EnumGeoRefSourceAuthority#ADM1_UNION_EEZ}.
+	 *
+	 * @param longitude of the point.
+	 * @param latitude of the point.
+	 * @return the ISO_SOV1 code shared by all of the features containing the point if none
+	 *   of them has an ISO_SOV2 code, otherwise null, see {@link SovereignCellIndex}.
+	 * @throws IOException if the spatial data cannot be read.
+	 */
+	default String findSovereign(double longitude, double latitude) throws IOException {
+		return SovereignCellIndex.resolveSovereignValues(findContaining(EnumGeoRefSourceAuthority.ADM1_UNION_EEZ, longitude, latitude,
+				SovereignCellIndex.SOVEREIGN_ATTRIBUTE, SovereignCellIndex.JOINT_SOVEREIGN_ATTRIBUTE));
+	}
+
+	/**
+	 * Open the data of a layer and build the indexes this backend queries it through, so
+	 * that the first query against the layer does not pay for them.  Does nothing by default.
+	 *
+	 * @param layer the source authority of the layer.
+	 * @throws IOException if the spatial data cannot be read.
+	 */
+	default void warmUp(EnumGeoRefSourceAuthority layer) throws IOException {
+	}
+
+}
@@ -0,0 +1,343 @@
+/**
+ * SpatialBatch.java
+ *
+ * Copyright 2026 President and Fellows of Harvard College
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.filteredpush.qc.georeference.util;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+import org.filteredpush.qc.georeference.EnumGeoRefSourceAuthority;
+
+/**
+ * Batch point queries against the spatial layers, for validating many records at once.
+ *
+ * Points are visited in the order of a Hilbert curve over longitude and latitude, so that
+ * successive lookups fall near each other and reuse the same index nodes and geometry
+ * edges, and the results are returned in the order of the input arrays.
+ *
+ * Feature ids returned by the classify methods are positions in the layer, the feature
+ * can be obtained with
+ * <code>SpatialLayerRegistry.getInstance().getFeatureLayer(layer).getFeatures().get(id)</code>,
+ * or for the layers held off heap (NE_ADMIN_1 and NE_LAND_UNION_ISLANDS), which are queried
+ * without loading their features, with
+ * <code>SpatialLayerRegistry.getInstance().getPolygonStore(layer).get(id)</code>.
+ *
+ * Supported layers are NE_ADMIN_0 (countries), NE_ADMIN_1 (primary divisions),
+ * NE_LAND_UNION_ISLANDS (land), and ADM1_UNION_EEZ (countries with EEZ).  Where another
+ * backend has been registered for a layer with
+ * {@link SpatialLayerRegistry#registerBackend(EnumGeoRefSourceAuthority, SpatialBackend)},
+ * the boolean and sovereign queries are answered by that backend, and the classify
+ * methods, whose feature ids are positions in the bundled layer, are not available.
+ *
+ * @author mole
+ * @version $Id: $Id
+ */
+public class SpatialBatch {
+
+	/** Value returned in place of a feature id for a point matching no feature. */
+	public static final int NO_FEATURE = -1;
+
+	/** Order of the Hilbert curve, 2^16 cells along each axis. */
+	private static final int HILBERT_ORDER = 16;
+
+	private SpatialBatch() {
+	}
+
+	/**
+	 * A query for one point, returning a feature id or NO_FEATURE.
+	 */
+	private interface PointQuery {
+		int query(double longitude, double latitude) throws IOException;
+	}
+
+	/**
+	 * Find, for each point, the feature of a layer containing that point
+	 * (equivalent to CONTAINS(the_geom, POINT(x y))).
+	 *
+	 * @param layer the layer to query.
+	 * @param latitudes the latitudes of the points.
+	 * @param longitudes the longitudes of the points, the same length as latitudes.
+	 * @return for each point the id of the containing feature with the lowest id, or NO_FEATURE.
+	 * @throws IOException if the layer cannot be loaded.
+	 * @throws IllegalArgumentException if the layer is not supported or is answered by a registered backend.
+	 */
+	public static int[] classify(EnumGeoRefSourceAuthority layer, double[] latitudes, double[] longitudes) throws IOException {
+		checkLayer(layer);
+		checkBundled(layer);
+		PointQuery query;
+		if (SpatialLayerRegistry.getInstance().isOffHeap(layer)) {
+			final OffHeapPolygonStore store = SpatialLayerRegistry.getInstance().getPolygonStore(layer);
+			query = new PointQuery() {
+				@Override
+				public int query(double longitude, double latitude) {
+					BitSet ids = store.findContaining(longitude, latitude);
+					return ids.isEmpty() ? NO_FEATURE : ids.nextSetBit(0);
+				}
+			};
+		} else if (layer==EnumGeoRefSourceAuthority.NE_ADMIN_0) {
+			final SubdividedPolygonIndex countries = SpatialLayerRegistry.getInstance().getCountryIndex();
+			query = new PointQuery() {
+				@Override
+				public int query(double longitude, double latitude) {
+					return firstIdOf(countries.findAllContaining(longitude, latitude));
+				}
+			};
+		} else {
+			final IndexedFeatureLayer features = SpatialLayerRegistry.getInstance().getFeatureLayer(layer);
+			query = new PointQuery() {
+				@Override
+				public int query(double longitude, double latitude) {
+					return firstIdOf(features.findContaining(longitude, latitude));
+				}
+			};
+		}
+		return run(query, latitudes, longitudes);
+	}
+
+	/**
+	 * Find, for each point, a feature of a layer containing or within a distance of that point,
+	 * with the distance measured in meters along the surface of the earth.
+	 *
+	 * @param layer the layer to query.
+	 * @param latitudes the latitudes of the points.
+	 * @param longitudes the longitudes of the points, the same length as latitudes.
+	 * @param distanceKm the buffer distance in km.
+	 * @return for each point the lowest id of a feature containing or within the distance
+	 *   of the point, or NO_FEATURE.
+	 * @throws IOException if the layer cannot be loaded.
+	 * @throws IllegalArgumentException if the layer is not supported or is answered by a registered backend.
+	 */
+	public static int[] classifyWithinDistance(EnumGeoRefSourceAuthority layer, double[] latitudes, double[] longitudes, double distanceKm) throws IOException {
+		checkLayer(layer);
+		checkBundled(layer);
+		final double distanceMeters = distanceKm * 1000d;
+		PointQuery query;
+		if (SpatialLayerRegistry.getInstance().isOffHeap(layer)) {
+			final OffHeapPolygonStore store = SpatialLayerRegistry.getInstance().getPolygonStore(layer);
+			query = new PointQuery() {
+				@Override
+				public int query(double longitude, double latitude) {
+					BitSet ids = store.findWithinDistanceMeters(longitude, latitude, distanceMeters, null);
+					return ids.isEmpty() ? NO_FEATURE : ids.nextSetBit(0);
+				}
+			};
+		} else {
+			final GeodesicDistanceIndex distances = SpatialLayerRegistry.getInstance().getFeatureLayer(layer).getDistanceIndex();
+			query = new PointQuery() {
+				@Override
+				public int query(double longitude, double latitude) {
+					return firstIdOf(distances.findWithinDistance(longitude, latitude, distanceMeters));
+				}
+			};
+		}
+		return run(query, latitudes, longitudes);
+	}
+
+	/**
+	 * Test, for each point, whether any feature of a layer contains that point.
+	 *
+	 * @param layer the layer to query.
+	 * @param latitudes the latitudes of the points.
+	 * @param longitudes the longitudes of the points, the same length as latitudes.
+	 * @return for each point true if a feature contains the point.
+	 * @throws IOException if the layer cannot be loaded.
+	 */
+	public static boolean[] contains(final EnumGeoRefSourceAuthority layer, double[] latitudes, double[] longitudes) throws IOException {
+		checkLayer(layer);
+		final SpatialBackend registered = SpatialLayerRegistry.getInstance().getRegisteredBackend(layer);
+		if (registered!=null) {
+			return toBooleans(run(new PointQuery() {
+				@Override
+				public int query(double longitude, double latitude) throws IOException {
+					return registered.contains(layer, AttributeMatch.all(), longitude, latitude) ? 0 : NO_FEATURE;
+				}
+			}, latitudes, longitudes));
+		}
+		if (layer==EnumGeoRefSourceAuthority.NE_LAND_UNION_ISLANDS) {
+			// the land/sea grid answers most points without finding the feature
+			return toBooleans(run(new PointQuery() {
+				@Override
+				public int query(double longitude, double latitude) throws IOException {
+					return GISDataLoader.isWithinLand(longitude, latitude) ? 0 : NO_FEATURE;
+				}
+			}, latitudes, longitudes));
+		}
+		return toBooleans(classify(layer, latitudes, longitudes));
+	}
+
+	/**
+	 * Test, for each point, whether any feature of a layer contains or lies within a distance of that point.
+	 *
+	 * @param layer the layer to query.
+	 * @param latitudes the latitudes of the points.
+	 * @param longitudes the longitudes of the points, the same length as latitudes.
+	 * @param distanceKm the buffer distance in km.
+	 * @return for each point true if a feature is within the distance of the point.
+	 * @throws IOException if the layer cannot be loaded.
+	 */
+	public static boolean[] isWithinDistance(final EnumGeoRefSourceAuthority layer, double[] latitudes, double[] longitudes, double distanceKm) throws IOException {
+		checkLayer(layer);
+		final double distanceMeters = distanceKm * 1000d;
+		final SpatialBackend registered = SpatialLayerRegistry.getInstance().getRegisteredBackend(layer);
+		if (registered!=null) {
+			return toBooleans(run(new PointQuery() {
+				@Override
+				public int query(double longitude, double latitude) throws IOException {
+					return registered.isWithinDistance(layer, AttributeMatch.all(), longitude, latitude, distanceMeters) ? 0 : NO_FEATURE;
+				}
+			}, latitudes, longitudes));
+		}
+		if (layer==EnumGeoRefSourceAuthority.NE_LAND_UNION_ISLANDS) {
+			return toBooleans(run(new PointQuery() {
+				@Override
+				public int query(double longitude, double latitude) throws IOException {
+					return GISDataLoader.isWithinDistanceOfLand(longitude, latitude, distanceMeters) ? 0 : NO_FEATURE;
+				}
+			}, latitudes, longitudes));
+		}
+		return toBooleans(classifyWithinDistance(layer, latitudes, longitudes, distanceKm));
+	}
+
+	/**
+	 * Find, for each point, the sovereign country code from the countries with EEZ layer,
+	 * with the rules of {@link GEOUtil#getCountryForPoint(String, String)}.
+	 *
+	 * @param latitudes the latitudes of the points.
+	 * @param longitudes the longitudes of the points, the same length as latitudes.
+	 * @return for each point the ISO_SOV1 code, or null.
+	 * @throws IOException if the layer cannot be loaded.
+	 */
+	public static String[] getSovereigns(double[] latitudes, double[] longitudes) throws IOException {
+		checkLengths(latitudes, longitudes);
+		String[] result = new String[latitudes.length];
+		SpatialBackend registered = SpatialLayerRegistry.getInstance().getRegisteredBackend(EnumGeoRefSourceAuthority.ADM1_UNION_EEZ);
+		if (registered!=null) {
+			for (int i : hilbertOrder(latitudes, longitudes)) {
+				result[i] = registered.findSovereign(longitudes[i], latitudes[i]);
+			}
+			return result;
+		}
+		SovereignCellIndex index = SpatialLayerRegistry.getInstance().getSovereignIndex();
+		for (int i : hilbertOrder(latitudes, longitudes)) {
+			result[i] = index.getSovereign(longitudes[i], latitudes[i]);
+		}
+		return result;
+	}
+
+	/**
+	 * Order points along a Hilbert curve.
+	 *
+	 * @param latitudes the latitudes of the points.
+	 * @param longitudes the longitudes of the points, the same length as latitudes.
+	 * @return the positions of the points in the input arrays, in the order in which they
+	 *   are visited by a Hilbert curve.
+	 */
+	public static int[] hilbertOrder(double[] latitudes, double[] longitudes) {
+		checkLengths(latitudes, longitudes);
+		int cells = 1 << HILBERT_ORDER;
+		long[] keys = new long[latitudes.length];
+		for (int i=0; i<keys.length; i++) {
+			int x = toCell(longitudes[i], -180d, 360d, cells);
+			int y = toCell(latitudes[i], -90d, 180d, cells);
+			keys[i] = (hilbertIndex(cells, x, y) << 32) | i;
+		}
+		Arrays.sort(keys);
+		int[] result = new int[keys.length];
+		for (int i=0; i<keys.length; i++) {
+			result[i] = (int)(keys[i] & 0xFFFFFFFFL);
+		}
+		return result;
+	}
+
+	/**
+	 * Distance along a Hilbert curve filling an n by n grid of a cell at x, y.
+	 *
+	 * @param n the size of the grid, a power of two.
+	 * @param x the column of the cell.
+	 * @param y the row of the cell.
+	 * @return the position of the cell along the curve.
+	 */
+	private static long hilbertIndex(int n, int x, int y) {
+		long d = 0;
+		for (int s = n / 2; s > 0; s = s / 2) {
+			int rx = (x & s) > 0 ? 1 : 0;
+			int ry = (y & s) > 0 ? 1 : 0;
+			d += (long)s * s * ((3 * rx) ^ ry);
+			if (ry == 0) {
+				if (rx == 1) {
+					x = s - 1 - x;
+					y = s - 1 - y;
+				}
+				int t = x;
+				x = y;
+				y = t;
+			}
+		}
+		return d;
+	}
+
+	private static int toCell(double value, double minimum, double range, int cells) {
+		if (Double.isNaN(value)) {
+			return 0;
+		}
+		int cell = (int)Math.floor((value - minimum) / range * cells);
+		return Math.max(0, Math.min(cells - 1, cell));
+	}
+
+	private static int[] run(PointQuery query, double[] latitudes, double[] longitudes) throws IOException {
+		int[] result = new int[latitudes.length];
+		for (int i : hilbertOrder(latitudes, longitudes)) {
+			result[i] = query.query(longitudes[i], latitudes[i]);
+		}
+		return result;
+	}
+
+	private static boolean[] toBooleans(int[] ids) {
+		boolean[] result = new boolean[ids.length];
+		for (int i=0; i<ids.length; i++) {
+			result[i] = ids[i]!=NO_FEATURE;
+		}
+		return result;
+	}
+
+	private static int firstIdOf(List<SpatialFeature> features) {
+		return features.isEmpty() ? NO_FEATURE : features.get(0).getId();
+	}
+
+	private static void checkLayer(EnumGeoRefSourceAuthority layer) {
+		if (layer!=EnumGeoRefSourceAuthority.NE_ADMIN_0 && layer!=EnumGeoRefSourceAuthority.NE_ADMIN_1
+				&& layer!=EnumGeoRefSourceAuthority.NE_LAND_UNION_ISLANDS && layer!=EnumGeoRefSourceAuthority.ADM1_UNION_EEZ) {
+			throw new IllegalArgumentException("Batch queries are not supported for " + layer);
+		}
+	}
+
+	private static void checkBundled(EnumGeoRefSourceAuthority layer) {
+		SpatialBackend registered = SpatialLayerRegistry.getInstance().getRegisteredBackend(layer);
+		if (registered!=null) {
+			throw new IllegalArgumentException("Feature ids are not available for " + layer + ", which is answered by the " + registered.getName() + " backend");
+		}
+	}
+
+	private static void checkLengths(double[] latitudes, double[] longitudes) {
+		if (latitudes.length!=longitudes.length) {
+			throw new IllegalArgumentException("Latitude and longitude arrays differ in length.");
+		}
+	}
+
+}
@@ -0,0 +1,227 @@
+/**
+ * SpatialContext.java
+ *
+ * Copyright 2026 President and Fellows of Harvard College
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.filteredpush.qc.georeference.util;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.filteredpush.qc.georeference.EnumGeoRefSourceAuthority;
+
+/**
+ * The results of spatial lookups for one coordinate, shared between the tests run on
+ * a record.  Each lookup (the attributes of the features of a layer containing the point,
+ * whether matching features of a layer lie within a buffer distance of the point, the
+ * sovereign country for the point, and whether the point is on or near land) is made
+ * through the {@link SpatialBackend} the registry has for the layer the first time it is
+ * asked for and remembered, so a record passing through several tests makes each lookup
+ * once instead of once per test.
+ *
+ * A SpatialContext is intended to be created for a record and discarded after the tests
+ * for that record have been run, it is not safe to share between threads.
+ *
+ * @author mole
+ * @version $Id: $Id
+ */
+public class SpatialContext {
+
+	private final double latitude;
+	private final double longitude;
+
+	private final Map<List<Object>,List<String[]>> containing;
+	private final Map<List<Object>,Boolean> withinDistance;
+	private final Map<Double,Boolean> nearLand;
+	private Boolean onLand;
+	private String sovereign;
+	private boolean sovereignFound = false;
+
+	/**
+	 * Construct a context for a coordinate, no lookups are made until they are asked for.
+	 *
+	 * @param latitude of the coordinate.
+	 * @param longitude of the coordinate.
+	 */
+	public SpatialContext(double latitude, double longitude) {
+		this.latitude = latitude;
+		this.longitude = longitude;
+		this.containing = new HashMap<List<Object>,List<String[]>>();
+		this.withinDistance = new HashMap<List<Object>,Boolean>();
+		this.nearLand = new HashMap<Double,Boolean>();
+	}
+
+	/**
+	 * Obtain a context for a coordinate, reusing a provided context if it is for the same coordinate.
+	 *
+	 * @param context a context to reuse, may be null.
+	 * @param latitude of the coordinate.
+	 * @param longitude of the coordinate.
+	 * @return context if it is for latitude and longitude, otherwise a new context for latitude and longitude.
+	 */
+	public static SpatialContext forCoordinate(SpatialContext context, double latitude, double longitude) {
+		if (context!=null && context.isAt(latitude, longitude)) {
+			return context;
+		}
+		return new SpatialContext(latitude, longitude);
+	}
+
+	/**
+	 * Obtain a context for a coordinate given as strings, reusing a provided context if it is for the same coordinate.
+	 *
+	 * @param context a context to reuse, may be null.
+	 * @param latitude of the coordinate.
+	 * @param longitude of the coordinate.
+	 * @return a context for latitude and longitude, or null if either is empty or not a number.
+	 */
+	public static SpatialContext forCoordinate(SpatialContext context, String latitude, String longitude) {
+		SpatialContext result = null;
+		try {
+			result = forCoordinate(context, Double.parseDouble(latitude.trim()), Double.parseDouble(longitude.trim()));
+		} catch (NumberFormatException e) {
+			// not a coordinate
+		} catch (NullPointerException e) {
+			// not a coordinate
+		}
+		return result;
+	}
+
+	/**
+	 * <p>Getter for the field <code>latitude</code>.</p>
+	 *
+	 * @return the latitude of the coordinate.
+	 */
+	public double getLatitude() {
+		return latitude;
+	}
+
+	/**
+	 * <p>Getter for the field <code>longitude</code>.</p>
+	 *
+	 * @return the longitude of the coordinate.
+	 */
+	public double getLongitude() {
+		return longitude;
+	}
+
+	/**
+	 * Test whether this context is for a coordinate.
+	 *
+	 * @param latitude of the coordinate.
+	 * @param longitude of the coordinate.
+	 * @return true if this context is for exactly latitude and longitude.
+	 */
+	public boolean isAt(double latitude, double longitude) {
+		return Double.compare(this.latitude, latitude)==0 && Double.compare(this.longitude, longitude)==0;
+	}
+
+	/**
+	 * Find the features of a layer which contain the coordinate (excluding features on
+	 * whose boundary the coordinate lies), and return some of their attributes.
+	 *
+	 * @param layer the spatial layer to query.
+	 * @param attributes the names of the attributes to return.
+	 * @return for each containing feature, in id order, the string values of the attributes
+	 *   in the order requested, see {@link SpatialBackend#findContaining(EnumGeoRefSourceAuthority, double, double, String...)}.
+	 * @throws IOException if the layer cannot be read.
+	 */
+	public List<String[]> getContaining(EnumGeoRefSourceAuthority layer, String... attributes) throws IOException {
+		List<Object> key = new ArrayList<Object>(attributes.length + 1);
+		key.add(layer);
+		key.addAll(Arrays.asList(attributes));
+		List<String[]> result = containing.get(key);
+		if (result==null) {
+			SpatialBackend backend = SpatialLayerRegistry.getInstance().getBackend(layer);
+			result = Collections.unmodifiableList(backend.findContaining(layer, longitude, latitude, attributes));
+			containing.put(key, result);
+		}
+		return result;
+	}
+
+	/**
+	 * Test whether any feature of a layer satisfying a match contains or lies within a
+	 * buffer distance of the coordinate.
+	 *
+	 * @param layer the spatial layer to query.
+	 * @param match the match the features must satisfy.
+	 * @param distanceKm the buffer distance in km, measured along the surface of the earth.
+	 * @return true if any of the matching features is within the distance of the coordinate.
+	 * @throws IOException if the layer cannot be read.
+	 */
+	public boolean isWithinDistance(EnumGeoRefSourceAuthority layer, AttributeMatch match, double distanceKm) throws IOException {
+		List<Object> key = Arrays.<Object>asList(layer, match, Double.valueOf(distanceKm));
+		Boolean result = withinDistance.get(key);
+		if (result==null) {
+			SpatialBackend backend = SpatialLayerRegistry.getInstance().getBackend(layer);
+			result = Boolean.valueOf(backend.isWithinDistance(layer, match, longitude, latitude, distanceKm * 1000d));
+			withinDistance.put(key, result);
+		}
+		return result.booleanValue();
+	}
+
+	/**
+	 * Find the sovereign country for the coordinate from the merged countries and EEZ layer.
+	 *
+	 * @return the ISO three letter code of the sovereign, or null if the coordinate is
+	 *   not inside any feature, or is inside features of more than one sovereign.
+	 * @throws IOException if the layer cannot be read.
+	 */
+	public String getSovereign() throws IOException {
+		if (!sovereignFound) {
+			sovereign = SpatialLayerRegistry.getInstance().getBackend(EnumGeoRefSourceAuthority.ADM1_UNION_EEZ).findSovereign(longitude, latitude);
+			sovereignFound = true;
+		}
+		return sovereign;
+	}
+
+	/**
+	 * Test whether the coordinate is on land.
+	 *
+	 * @return true if the coordinate is inside the land polygons.
+	 * @throws IOException if the land data cannot be loaded.
+	 */
+	public boolean isOnLand() throws IOException {
+		if (onLand==null) {
+			onLand = Boolean.valueOf(GISDataLoader.isWithinLand(longitude, latitude));
+		}
+		return onLand.booleanValue();
+	}
+
+	/**
+	 * Test whether the coordinate is on land or within a buffer distance of land.
+	 *
+	 * @param distanceKm the buffer distance in km.
+	 * @return true if the coordinate is inside or within the distance of the land polygons.
+	 * @throws IOException if the land data cannot be loaded.
+	 */
+	public boolean isOnOrNearLand(double distanceKm) throws IOException {
+		Boolean result = nearLand.get(distanceKm);
+		if (result==null) {
+			if (onLand!=null && onLand.booleanValue()) {
+				result = Boolean.TRUE;
+			} else {
+				result = Boolean.valueOf(GISDataLoader.isWithinDistanceOfLand(longitude, latitude, distanceKm * 1000d));
+			}
+			nearLand.put(distanceKm, result);
+		}
+		return result.booleanValue();
+	}
+
+}
@@ -0,0 +1,207 @@
+/**
+ * SpatialFeature.java
+ *
+ * Copyright 2026 President and Fellows of Harvard College
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.filteredpush.qc.georeference.util;
+
+import java.util.Collections;
+import java.util.Map;
+
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.Point;
+import org.locationtech.jts.geom.prep.PreparedGeometry;
+import org.locationtech.jts.geom.prep.PreparedGeometryFactory;
+
+/**
+ * A feature from a shapefile held in memory, with its attribute values and its
+ * geometry, the geometry being prepared on first use for repeated point tests.
+ * Polygons with many vertices are also generalized on first use into a
+ * {@link GeneralizedPolygon}, so that most point tests are answered without the
+ * full resolution geometry, and the remaining point tests on polygons are answered
+ * by a {@link RingCrossingKernel} built on first use.
+ *
+ * @author mole
+ * @version $Id: $Id
+ */
+public class SpatialFeature {
+
+	private final int id;
+	private final Map<String,Object> attributes;
+	private final Geometry geometry;
+	private volatile PreparedGeometry preparedGeometry;
+	private volatile GeneralizedPolygon generalizedPolygon;
+	private volatile boolean generalized = false;
+	private volatile RingCrossingKernel ringKernel;
+	private volatile boolean kernelBuilt = false;
+
+	/**
+	 * Construct a feature.
+	 *
+	 * @param id the position of this feature within its layer.
+	 * @param attributes the non-geometry attribute values of the feature keyed by attribute name.
+	 * @param geometry the geometry of the feature.
+	 */
+	public SpatialFeature(int id, Map<String,Object> attributes, Geometry geometry) {
+		this.id = id;
+		this.attributes = Collections.unmodifiableMap(attributes);
+		this.geometry = geometry;
+	}
+
+	/**
+	 * <p>Getter for the field <code>id</code>.</p>
+	 *
+	 * @return the position of this feature within its layer.
+	 */
+	public int getId() {
+		return id;
+	}
+
+	/**
+	 * <p>Getter for the field <code>geometry</code>.</p>
+	 *
+	 * @return the geometry of this feature.
+	 */
+	public Geometry getGeometry() {
+		return geometry;
+	}
+
+	/**
+	 * Obtain the prepared form of the geometry of this feature, preparing it on first use.
+	 *
+	 * @return a prepared geometry for this feature.
+	 */
+	public PreparedGeometry getPreparedGeometry() {
+		PreparedGeometry result = preparedGeometry;
+		if (result==null) {
+			result = PreparedGeometryFactory.prepare(geometry);
+			preparedGeometry = result;
+		}
+		return result;
+	}
+
+	/**
+	 * Obtain the inner and outer approximations of the geometry of this feature, building
+	 * them on first use.
+	 *
+	 * @return the approximations, or null if the geometry is not polygonal or has too
+	 *   few vertices to be worth approximating.
+	 */
+	public GeneralizedPolygon getGeneralizedPolygon() {
+		if (!generalized) {
+			synchronized (this) {
+				if (!generalized) {
+					if (geometry!=null && geometry.getDimension()==2 && geometry.getNumPoints() >= GeneralizedPolygon.MIN_VERTICES) {
+						generalizedPolygon = new GeneralizedPolygon(geometry, GeneralizedPolygon.DEFAULT_TOLERANCE);
+					}
+					generalized = true;
+				}
+			}
+		}
+		return generalizedPolygon;
+	}
+
+	/**
+	 * Obtain the point in polygon kernel over the rings of the geometry of this feature,
+	 * building it on first use.
+	 *
+	 * @return the kernel, or null if the geometry is not a polygon or multipolygon.
+	 */
+	public RingCrossingKernel getRingKernel() {
+		if (!kernelBuilt) {
+			synchronized (this) {
+				if (!kernelBuilt) {
+					if (RingCrossingKernel.supports(geometry)) {
+						ringKernel = new RingCrossingKernel(geometry);
+					}
+					kernelBuilt = true;
+				}
+			}
+		}
+		return ringKernel;
+	}
+
+	/**
+	 * Obtain the value of an attribute.
+	 *
+	 * @param name the name of the attribute.
+	 * @return the value of the attribute, or null if the attribute is not present.
+	 */
+	public Object getAttribute(String name) {
+		return attributes.get(name);
+	}
+
+	/**
+	 * Obtain the value of an attribute as a string.
+	 *
+	 * @param name the name of the attribute.
+	 * @return the string value of the attribute, or null if the attribute is not present
+	 *   or has no value.
+	 */
+	public String getAttributeAsString(String name) {
+		Object value = attributes.get(name);
+		if (value==null) {
+			return null;
+		}
+		return value.toString();
+	}
+
+	/**
+	 * <p>Getter for the field <code>attributes</code>.</p>
+	 *
+	 * @return an unmodifiable map of the attributes of this feature.
+	 */
+	public Map<String,Object> getAttributes() {
+		return attributes;
+	}
+
+	/**
+	 * Test whether this feature contains a point, with the semantics of the
+	 * CONTAINS spatial filter, that is a point on the boundary is not contained.
+	 *
+	 * @param point the point to test.
+	 * @return true if the point lies in the interior of this feature.
+	 */
+	public boolean contains(Point point) {
+		GeneralizedPolygon approximations = getGeneralizedPolygon();
+		if (approximations!=null) {
+			int classification = approximations.classify(point);
+			if (classification==GeneralizedPolygon.INSIDE) {
+				return true;
+			}
+			if (classification==GeneralizedPolygon.OUTSIDE) {
+				return false;
+			}
+		}
+		RingCrossingKernel kernel = getRingKernel();
+		if (kernel!=null) {
+			return kernel.contains(point.getX(), point.getY());
+		}
+		return getPreparedGeometry().contains(point);
+	}
+
+	/**
+	 * Test whether a point lies within a distance of this feature, with the
+	 * semantics of the DWITHIN spatial filter.
+	 *
+	 * @param point the point to test.
+	 * @param distance the distance in the units of the layer (degrees).
+	 * @return true if the point lies within distance of this feature.
+	 */
+	public boolean isWithinDistance(Point point, double distance) {
+		return geometry.isWithinDistance(point, distance);
+	}
+
+}
@@ -0,0 +1,247 @@
+/**
+ * SpatialFilters.java
+ *
+ * Copyright 2026 President and Fellows of Harvard College
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.filteredpush.qc.georeference.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.geotools.api.filter.Filter;
+import org.geotools.api.filter.FilterFactory;
+import org.geotools.api.filter.expression.Expression;
+import org.geotools.api.filter.expression.PropertyName;
+import org.geotools.factory.CommonFactoryFinder;
+import org.geotools.geometry.jts.JTSFactoryFinder;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.GeometryFactory;
+
+/**
+ * Filters for GeoTools queries against the spatial layers, built directly with a
+ * FilterFactory instead of by parsing ECQL text.  The property name expressions are
+ * created once, and only the literal values (names, points, distances) are bound on
+ * each call.  Names are bound as literal values with the like wildcards escaped, so
+ * a name containing a quote or a wildcard character only ever matches itself.
+ *
+ * @author mole
+ * @version $Id: $Id
+ */
+public class SpatialFilters {
+
+	private static final FilterFactory ff = CommonFactoryFinder.getFilterFactory();
+	private static final GeometryFactory geometryFactory = JTSFactoryFinder.getGeometryFactory(null);
+
+	private static final String WILDCARD = "%";
+	private static final String SINGLE_CHAR = "_";
+	private static final String ESCAPE = "\\";
+
+	/** The geometry attribute of a shapefile. */
+	public static final PropertyName THE_GEOM = ff.property("the_geom");
+
+	/** Units passed to DWITHIN, ignored by the shapefile data store, which uses the units of the layer (degrees). */
+	private static final String DISTANCE_UNITS = "kilometers";
+
+	private SpatialFilters() {
+	}
+
+	/**
+	 * Obtain a reusable property name expression.
+	 *
+	 * @param attribute the name of the attribute.
+	 * @return a property name expression for the attribute.
+	 */
+	public static PropertyName property(String attribute) {
+		return ff.property(attribute);
+	}
+
+	/**
+	 * Equivalent of attribute ILIKE 'value'.
+	 *
+	 * @param attribute the attribute to compare.
+	 * @param value the value to match, ignoring case.
+	 * @return a filter.
+	 */
+	public static Filter equalIgnoreCase(PropertyName attribute, String value) {
+		return ff.like(attribute, escape(value), WILDCARD, SINGLE_CHAR, ESCAPE, false);
+	}
+
+	/**
+	 * Equivalent of attribute ILIKE 'value%'.
+	 *
+	 * @param attribute the attribute to compare.
+	 * @param prefix the value to match at the start of the attribute, ignoring case.
+	 * @return a filter.
+	 */
+	public static Filter startsWithIgnoreCase(PropertyName attribute, String prefix) {
+		return ff.like(attribute, escape(prefix) + WILDCARD, WILDCARD, SINGLE_CHAR, ESCAPE, false);
+	}
+
+	/**
+	 * Equivalent of attribute ILIKE '%value'.
+	 *
+	 * @param attribute the attribute to compare.
+	 * @param suffix the value to match at the end of the attribute, ignoring case.
+	 * @return a filter.
+	 */
+	public static Filter endsWithIgnoreCase(PropertyName attribute, String suffix) {
+		return ff.like(attribute, WILDCARD + escape(suffix), WILDCARD, SINGLE_CHAR, ESCAPE, false);
+	}
+
+	/**
+	 * Equivalent of '|' || attribute || '|' ILIKE '%|value|%', matching an attribute
+	 * holding a list of values separated by {@link AttributeMatch#ELEMENT_DELIMITER}
+	 * where any one of the values equals a value.
+	 *
+	 * @param attribute the attribute to compare.
+	 * @param element the value to match against each value of the attribute, ignoring case.
+	 * @return a filter, Filter.EXCLUDE if element contains the delimiter.
+	 */
+	public static Filter hasElementIgnoreCase(PropertyName attribute, String element) {
+		if (element.contains(AttributeMatch.ELEMENT_DELIMITER)) {
+			return Filter.EXCLUDE;
+		}
+		String delimiter = escape(AttributeMatch.ELEMENT_DELIMITER);
+		return or(equalIgnoreCase(attribute, element),
+				startsWithIgnoreCase(attribute, element + AttributeMatch.ELEMENT_DELIMITER),
+				endsWithIgnoreCase(attribute, AttributeMatch.ELEMENT_DELIMITER + element),
+				ff.like(attribute, WILDCARD + delimiter + escape(element) + delimiter + WILDCARD, WILDCARD, SINGLE_CHAR, ESCAPE, false));
+	}
+
+	/**
+	 * Equivalent of CONTAINS(the_geom, POINT(longitude latitude)).
+	 *
+	 * @param longitude of the point.
+	 * @param latitude of the point.
+	 * @return a filter.
+	 */
+	public static Filter containsPoint(double longitude, double latitude) {
+		return ff.contains(THE_GEOM, point(longitude, latitude));
+	}
+
+	/**
+	 * Equivalent of DWITHIN(the_geom, POINT(longitude latitude), distance, kilometers).
+	 *
+	 * @param longitude of the point.
+	 * @param latitude of the point.
+	 * @param distance the distance in the units of the layer (degrees).
+	 * @return a filter.
+	 */
+	public static Filter withinDistanceOfPoint(double longitude, double latitude, double distance) {
+		return ff.dwithin(THE_GEOM, point(longitude, latitude), distance, DISTANCE_UNITS);
+	}
+
+	/**
+	 * Equivalent of BBOX(the_geom, minX, minY, maxX, maxY), passing the features whose
+	 * envelope intersects an envelope, a cheap candidate filter for the spatial index of
+	 * the data store.
+	 *
+	 * @param envelope the envelope, in longitude and latitude.
+	 * @return a filter.
+	 */
+	public static Filter intersectsEnvelope(Envelope envelope) {
+		return ff.bbox(THE_GEOM, envelope.getMinX(), envelope.getMinY(), envelope.getMaxX(), envelope.getMaxY(), null);
+	}
+
+	/**
+	 * Build the filter equivalent to a match on attribute values, each equal, prefix,
+	 * suffix, and element match becoming ILIKE comparisons.
+	 *
+	 * @param match the match.
+	 * @return a filter passing the features satisfying match, Filter.INCLUDE for
+	 *   {@link AttributeMatch#all()}, Filter.EXCLUDE for a comparison with a null value.
+	 */
+	public static Filter matching(AttributeMatch match) {
+		switch (match.getKind()) {
+		case ALL:
+			return Filter.INCLUDE;
+		case AND:
+		case OR:
+			Filter[] filters = new Filter[match.getOperands().size()];
+			for (int i=0; i<filters.length; i++) {
+				filters[i] = matching(match.getOperands().get(i));
+			}
+			return match.getKind()==AttributeMatch.Kind.AND ? and(filters) : or(filters);
+		default:
+			if (match.getValue()==null) {
+				return Filter.EXCLUDE;
+			}
+			PropertyName attribute = property(match.getAttribute());
+			if (match.getKind()==AttributeMatch.Kind.EQUAL) {
+				return equalIgnoreCase(attribute, match.getValue());
+			}
+			if (match.getKind()==AttributeMatch.Kind.ELEMENT) {
+				return hasElementIgnoreCase(attribute, match.getValue());
+			}
+			return match.getKind()==AttributeMatch.Kind.PREFIX ? startsWithIgnoreCase(attribute, match.getValue()) : endsWithIgnoreCase(attribute, match.getValue());
+		}
+	}
+
+	/**
+	 * Combine filters with AND.
+	 *
+	 * @param filters the filters to combine.
+	 * @return a filter which passes only features passing all of the filters.
+	 */
+	public static Filter and(Filter... filters) {
+		List<Filter> list = new ArrayList<Filter>(filters.length);
+		for (Filter filter : filters) {
+			list.add(filter);
+		}
+		return ff.and(list);
+	}
+
+	/**
+	 * Combine filters with OR.
+	 *
+	 * @param filters the filters to combine.
+	 * @return a filter which passes features passing any of the filters.
+	 */
+	public static Filter or(Filter... filters) {
+		List<Filter> list = new ArrayList<Filter>(filters.length);
+		for (Filter filter : filters) {
+			list.add(filter);
+		}
+		return ff.or(list);
+	}
+
+	private static Expression point(double longitude, double latitude) {
+		return ff.literal(geometryFactory.createPoint(new Coordinate(longitude, latitude)));
+	}
+
+	/**
+	 * Escape the wildcard, single character, and escape characters in a value for
+	 * use as a literal in a like pattern.
+	 *
+	 * @param value the value to escape.
+	 * @return the escaped value, an empty string if value is null.
+	 */
+	public static String escape(String value) {
+		if (value==null) {
+			return "";
+		}
+		StringBuilder result = new StringBuilder(value.length() + 8);
+		for (int i=0; i<value.length(); i++) {
+			char c = value.charAt(i);
+			if (c=='%' || c=='_' || c=='\\') {
+				result.append(ESCAPE);
+			}
+			result.append(c);
+		}
+		return result.toString();
+	}
+
+}
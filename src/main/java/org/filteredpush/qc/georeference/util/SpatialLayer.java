@@ -0,0 +1,264 @@
+/**
+ * SpatialLayer.java
+ *
+ * Copyright 2026 President and Fellows of Harvard College
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.filteredpush.qc.georeference.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.filteredpush.qc.georeference.EnumGeoRefSourceAuthority;
+import org.geotools.api.data.FileDataStore;
+import org.geotools.api.data.FileDataStoreFinder;
+import org.geotools.api.data.SimpleFeatureSource;
+
+/**
+ * Shared handle on the spatial data for one source authority.  The handle opens the
+ * underlying shapefile once, on first use, for queries through GeoTools, from a local
+ * copy with a spatial index where possible, and loads the features once, on first use,
+ * into an in memory indexed layer.  The features are loaded
+ * from the memory mapped {@link BoundaryFile} generated from the shapefile at build time
+ * when it is present and matches the version of the shapefile, otherwise from the shapefile.
+ * The boundary file is opened once, from its local copy, see {@link LocalShapefiles}, when
+ * it is bundled in a jar, and stays mapped when the layer is released.
+ * Indexes derived from the features are saved to and reloaded from the {@link IndexSnapshot}
+ * for the version of the shapefile, when the shapefile has a version.
+ *
+ * Instances are obtained from {@link SpatialLayerRegistry} and are safe to share between threads.
+ *
+ * @author mole
+ * @version $Id: $Id
+ */
+public class SpatialLayer {
+
+	private static final Log logger = LogFactory.getLog(SpatialLayer.class);
+
+	private final EnumGeoRefSourceAuthority authority;
+	private final String resource;
+	private FileDataStore store;
+	private volatile SimpleFeatureSource featureSource;
+	private volatile IndexedFeatureLayer featureLayer;
+	private volatile IndexSnapshot snapshot;
+	private volatile boolean snapshotChecked = false;
+	private volatile BoundaryFile boundaryFile;
+	private volatile boolean boundaryFileChecked = false;
+
+	/**
+	 * Construct a handle on a shapefile resource, nothing is opened until first use.
+	 *
+	 * @param authority the source authority the layer provides data for.
+	 * @param resource the classpath location of the shapefile.
+	 */
+	public SpatialLayer(EnumGeoRefSourceAuthority authority, String resource) {
+		this.authority = authority;
+		this.resource = resource;
+	}
+
+	/**
+	 * <p>Getter for the field <code>authority</code>.</p>
+	 *
+	 * @return the source authority for this layer.
+	 */
+	public EnumGeoRefSourceAuthority getAuthority() {
+		return authority;
+	}
+
+	/**
+	 * <p>Getter for the field <code>resource</code>.</p>
+	 *
+	 * @return the classpath location of the shapefile for this layer.
+	 */
+	public String getResource() {
+		return resource;
+	}
+
+	/**
+	 * Obtain the location of the shapefile for this layer.
+	 *
+	 * @return the URL of the shapefile.
+	 * @throws IOException if the shapefile is not on the classpath.
+	 */
+	public URL getURL() throws IOException {
+		URL result = SpatialLayer.class.getResource(resource);
+		if (result==null) {
+			throw new IOException("Spatial data for " + authority.getName() + " not found: " + resource);
+		}
+		return result;
+	}
+
+	/**
+	 * Obtain a feature source for GeoTools queries against this layer, opening the
+	 * shapefile on first use.  The shapefile is opened from its local copy, see
+	 * {@link LocalShapefiles}, memory mapped and with a spatial index, when there is one,
+	 * otherwise from the classpath.  The feature source is shared and must not be
+	 * disposed by callers.
+	 *
+	 * @return the feature source for this layer.
+	 * @throws IOException if the shapefile cannot be opened.
+	 */
+	public SimpleFeatureSource getFeatureSource() throws IOException {
+		SimpleFeatureSource result = featureSource;
+		if (result==null) {
+			synchronized (this) {
+				result = featureSource;
+				if (result==null) {
+					URL location = getURL();
+					File localFile = null;
+					try {
+						localFile = LocalShapefiles.getLocalShapefile(resource);
+					} catch (IOException e) {
+						logger.error("Unable to extract " + resource + ", reading it from the classpath: " + e.getMessage());
+					}
+					if (localFile!=null) {
+						location = localFile.toURI().toURL();
+					}
+					store = FileDataStoreFinder.getDataStore(location);
+					if (store==null) {
+						throw new IOException("No data store available for " + resource);
+					}
+					if (localFile!=null) {
+						LocalShapefiles.enableIndexing(store);
+					}
+					result = store.getFeatureSource();
+					featureSource = result;
+					logger.debug("Opened " + resource + " for " + authority.getName());
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Obtain the boundary file generated from the shapefile of this layer, opening it on first use.
+	 *
+	 * @return the boundary file, or null if there is no boundary file for the current
+	 *   version of the shapefile.
+	 */
+	public BoundaryFile getBoundaryFile() {
+		if (!boundaryFileChecked) {
+			synchronized (this) {
+				if (!boundaryFileChecked) {
+					boundaryFile = openBoundaryFile();
+					boundaryFileChecked = true;
+				}
+			}
+		}
+		return boundaryFile;
+	}
+
+	/**
+	 * Map the boundary file, from its local copy where there is one, otherwise from the classpath.
+	 *
+	 * @return the boundary file, or null if there is none for the current version of the shapefile.
+	 */
+	private BoundaryFile openBoundaryFile() {
+		BoundaryFile result = null;
+		URL location = SpatialLayer.class.getResource(BoundaryFile.getResource(resource));
+		if (location!=null) {
+			try {
+				File localFile = null;
+				try {
+					localFile = LocalShapefiles.getLocalCompanion(resource, BoundaryFile.EXTENSION);
+				} catch (IOException e) {
+					logger.error("Unable to extract the boundary file for " + resource + ", copying it: " + e.getMessage());
+				}
+				BoundaryFile opened = localFile==null ? BoundaryFile.open(location) : BoundaryFile.open(localFile);
+				String expectedVersion = BoundaryFile.readDataVersion(resource);
+				if (opened.getDataVersion().equals(expectedVersion)) {
+					result = opened;
+				} else {
+					logger.warn("Boundary file for " + authority.getName() + " was generated from data version " + opened.getDataVersion() + " not " + expectedVersion + ", ignoring it.");
+				}
+			} catch (IOException e) {
+				logger.error(e.getMessage(), e);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Obtain the snapshot of the indexes derived from the features of this layer.
+	 *
+	 * @return the snapshot, or null if snapshots are disabled or the shapefile has no version.
+	 */
+	public IndexSnapshot getSnapshot() {
+		if (!snapshotChecked) {
+			synchronized (this) {
+				if (!snapshotChecked) {
+					snapshot = IndexSnapshot.forResource(resource);
+					snapshotChecked = true;
+				}
+			}
+		}
+		return snapshot;
+	}
+
+	/**
+	 * Obtain the features of this layer in memory with a spatial index, loading them on first use.
+	 *
+	 * @return the indexed feature layer.
+	 * @throws IOException if neither the boundary file nor the shapefile can be loaded.
+	 */
+	public IndexedFeatureLayer getFeatureLayer() throws IOException {
+		IndexedFeatureLayer result = featureLayer;
+		if (result==null) {
+			synchronized (this) {
+				result = featureLayer;
+				if (result==null) {
+					BoundaryFile boundaryFile = getBoundaryFile();
+					if (boundaryFile!=null) {
+						result = boundaryFile.toFeatureLayer();
+					} else {
+						result = IndexedFeatureLayer.load(getURL());
+					}
+					result.setSnapshot(getSnapshot());
+					featureLayer = result;
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @return true if the features of this layer have been loaded into memory.
+	 */
+	public boolean isLoaded() {
+		return featureLayer!=null;
+	}
+
+	/**
+	 * Close the shapefile and discard the in memory features, they will be opened
+	 * and loaded again on next use.
+	 */
+	public synchronized void release() {
+		featureLayer = null;
+		snapshot = null;
+		snapshotChecked = false;
+		featureSource = null;
+		if (store!=null) {
+			try {
+				store.dispose();
+			} catch (Exception e) {
+				logger.error(e.getMessage());
+			}
+			store = null;
+		}
+	}
+
+}
@@ -0,0 +1,488 @@
+/**
+ * SpatialLayerRegistry.java
+ *
+ * Copyright 2026 President and Fellows of Harvard College
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.filteredpush.qc.georeference.util;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.filteredpush.qc.georeference.EnumGeoRefSourceAuthority;
+
+/**
+ * Registry of the spatial data shipped with this library, mapping each spatial source
+ * authority to a shared, lazily opened {@link SpatialLayer}, along with the derived indexes
+ * built from those layers.  All spatial lookups obtain their data through this registry,
+ * giving one place to control loading and release of the spatial data.
+ *
+ * The large primary division and land layers are held off heap, see {@link #isOffHeap(EnumGeoRefSourceAuthority)},
+ * and are queried through their {@link OffHeapPolygonStore}s rather than loaded as JTS geometries.
+ *
+ * @author mole
+ * @version $Id: $Id
+ */
+public class SpatialLayerRegistry {
+
+	private static final Log logger = LogFactory.getLog(SpatialLayerRegistry.class);
+
+	private static final String RESOURCE_PATH = "/org.filteredpush.kuration.services/";
+
+	/** System property naming the {@link SpatialBackend} to use: geotools, resident, or mapped. */
+	public static final String BACKEND_PROPERTY = "org.filteredpush.qc.georeference.spatialBackend";
+
+	/** The backend used when {@link #BACKEND_PROPERTY} is not set. */
+	public static final String DEFAULT_BACKEND = ResidentSpatialBackend.NAME;
+
+	/** The layers queried through their off heap polygon stores. */
+	private static final Set<EnumGeoRefSourceAuthority> OFF_HEAP_LAYERS = Collections.unmodifiableSet(
+			EnumSet.of(EnumGeoRefSourceAuthority.NE_ADMIN_1, EnumGeoRefSourceAuthority.NE_LAND_UNION_ISLANDS));
+
+	private static final SpatialLayerRegistry instance = new SpatialLayerRegistry();
+
+	private final Map<EnumGeoRefSourceAuthority,SpatialLayer> layers;
+	private final SpatialResultCache resultCache;
+	private final SpatialBackend backend;
+	private final Map<EnumGeoRefSourceAuthority,SpatialBackend> layerBackends;
+	private final Map<EnumGeoRefSourceAuthority,OffHeapPolygonStore> polygonStores;
+
+	private volatile SubdividedPolygonIndex landIndex;
+	private volatile SubdividedPolygonIndex countryIndex;
+	private volatile LandSeaGrid landSeaGrid;
+	private volatile boolean landSeaGridLoaded = false;
+	private volatile SovereignCellIndex sovereignIndex;
+	private volatile SovereignGeometryCache sovereignGeometries;
+	private volatile CentroidTable centroidTable;
+
+	private SpatialLayerRegistry() {
+		Map<EnumGeoRefSourceAuthority,SpatialLayer> map = new EnumMap<EnumGeoRefSourceAuthority,SpatialLayer>(EnumGeoRefSourceAuthority.class);
+		register(map, EnumGeoRefSourceAuthority.NE_ADMIN_0, "ne_10m_admin_0_countries.shp");
+		register(map, EnumGeoRefSourceAuthority.NE_ADMIN_1, "ne_10m_admin_1_states_provinces.shp");
+		register(map, EnumGeoRefSourceAuthority.NE_LAND_UNION_ISLANDS, "ne_10m_land.shp");
+		register(map, EnumGeoRefSourceAuthority.ADM1_UNION_EEZ, "merged_countries_and_eez.shp");
+		register(map, EnumGeoRefSourceAuthority.GBIF_CENTROIDS, "gbif_pcli_country_centroids.shp");
+		layers = Collections.unmodifiableMap(map);
+		resultCache = SpatialResultCache.fromSystemProperties();
+		polygonStores = new EnumMap<EnumGeoRefSourceAuthority,OffHeapPolygonStore>(EnumGeoRefSourceAuthority.class);
+		String backendName = System.getProperty(BACKEND_PROPERTY, DEFAULT_BACKEND);
+		SpatialBackend selected;
+		try {
+			selected = createBackend(backendName);
+		} catch (IllegalArgumentException e) {
+			logger.error("Unknown " + BACKEND_PROPERTY + " [" + backendName + "], using " + DEFAULT_BACKEND);
+			selected = createBackend(DEFAULT_BACKEND);
+		}
+		backend = selected;
+		logger.debug("Using the " + backend.getName() + " spatial backend");
+		layerBackends = new EnumMap<EnumGeoRefSourceAuthority,SpatialBackend>(EnumGeoRefSourceAuthority.class);
+		for (EnumGeoRefSourceAuthority authority : EnumGeoRefSourceAuthority.values()) {
+			String geoPackage = System.getProperty(GeoPackageSpatialBackend.PROPERTY_PREFIX + authority.name());
+			if (geoPackage!=null && geoPackage.trim().length() > 0) {
+				try {
+					registerBackend(authority, GeoPackageSpatialBackend.fromPropertyValue(authority, geoPackage));
+				} catch (IOException e) {
+					logger.error("Unable to use GeoPackage [" + geoPackage + "] for " + authority.getName() + ": " + e.getMessage(), e);
+				}
+			}
+		}
+	}
+
+	private static void register(Map<EnumGeoRefSourceAuthority,SpatialLayer> map, EnumGeoRefSourceAuthority authority, String shapeFile) {
+		map.put(authority, new SpatialLayer(authority, RESOURCE_PATH + shapeFile));
+	}
+
+	/**
+	 * <p>Getter for the field <code>instance</code>.</p>
+	 *
+	 * @return the shared registry.
+	 */
+	public static synchronized SpatialLayerRegistry getInstance() {
+		return instance;
+	}
+
+	/**
+	 * @return the source authorities for which spatial layers are available.
+	 */
+	public Set<EnumGeoRefSourceAuthority> getAuthorities() {
+		return layers.keySet();
+	}
+
+	/**
+	 * Test whether a source authority has a spatial layer in this registry.
+	 *
+	 * @param authority the source authority.
+	 * @return true if getLayer will return a layer for the authority.
+	 */
+	public boolean isSupported(EnumGeoRefSourceAuthority authority) {
+		return layers.containsKey(authority);
+	}
+
+	/**
+	 * Obtain the shared handle on the spatial data for a source authority.
+	 *
+	 * @param authority the source authority.
+	 * @return the layer for the source authority.
+	 * @throws IllegalArgumentException if the source authority has no spatial data.
+	 */
+	public SpatialLayer getLayer(EnumGeoRefSourceAuthority authority) {
+		SpatialLayer result = layers.get(authority);
+		if (result==null) {
+			throw new IllegalArgumentException("No spatial layer for source authority " + authority);
+		}
+		return result;
+	}
+
+	/**
+	 * Test whether the spatial tests query the layer of a source authority through its
+	 * {@link OffHeapPolygonStore} rather than through its in memory features.  These are the
+	 * layers with the most vertices, the primary divisions and the land, whose JTS geometries
+	 * would take hundreds of megabytes of heap.
+	 *
+	 * @param authority the source authority.
+	 * @return true if the layer is held off heap.
+	 */
+	public boolean isOffHeap(EnumGeoRefSourceAuthority authority) {
+		return OFF_HEAP_LAYERS.contains(authority);
+	}
+
+	/**
+	 * Obtain the in memory indexed features for a source authority, loading them on first use.
+	 *
+	 * @param authority the source authority.
+	 * @return the indexed features.
+	 * @throws IOException if the spatial data cannot be loaded.
+	 */
+	public IndexedFeatureLayer getFeatureLayer(EnumGeoRefSourceAuthority authority) throws IOException {
+		return getLayer(authority).getFeatureLayer();
+	}
+
+	/**
+	 * Obtain the land polygons as a shared index of small prepared pieces,
+	 * subdividing the polygons on first use unless the pieces are in the snapshot
+	 * of the layer.  This loads the land on heap, and is used to build the
+	 * {@link LandSeaGrid}, the spatial tests query the land off heap.
+	 *
+	 * @return a SubdividedPolygonIndex over NE_LAND_UNION_ISLANDS.
+	 * @throws IOException if the spatial data cannot be loaded.
+	 */
+	public SubdividedPolygonIndex getLandIndex() throws IOException {
+		SubdividedPolygonIndex result = landIndex;
+		if (result==null) {
+			synchronized (this) {
+				result = landIndex;
+				if (result==null) {
+					result = buildSubdividedIndex(EnumGeoRefSourceAuthority.NE_LAND_UNION_ISLANDS);
+					landIndex = result;
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Obtain the country polygons as a shared index of small prepared pieces, clipping
+	 * the large countries to grid tiles on first use unless the pieces are in the snapshot
+	 * of the layer.
+	 *
+	 * @return a SubdividedPolygonIndex over NE_ADMIN_0.
+	 * @throws IOException if the spatial data cannot be loaded.
+	 */
+	public SubdividedPolygonIndex getCountryIndex() throws IOException {
+		SubdividedPolygonIndex result = countryIndex;
+		if (result==null) {
+			synchronized (this) {
+				result = countryIndex;
+				if (result==null) {
+					result = buildSubdividedIndex(EnumGeoRefSourceAuthority.NE_ADMIN_0);
+					countryIndex = result;
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Load a subdivided index over a layer from the snapshot of the layer, or build it
+	 * and save it to the snapshot if there is no snapshot of it.
+	 */
+	private SubdividedPolygonIndex buildSubdividedIndex(EnumGeoRefSourceAuthority authority) throws IOException {
+		IndexedFeatureLayer features = getFeatureLayer(authority);
+		IndexSnapshot snapshot = getLayer(authority).getSnapshot();
+		SubdividedPolygonIndex result = null;
+		if (snapshot!=null) {
+			result = snapshot.loadSubdividedIndex(features, SubdividedPolygonIndex.DEFAULT_MAX_VERTICES, SubdividedPolygonIndex.DEFAULT_TILE_DEGREES);
+		}
+		if (result==null) {
+			result = new SubdividedPolygonIndex(features);
+			if (snapshot!=null) {
+				snapshot.saveSubdividedIndex(result);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Obtain the shared land/sea grid classifier, loading it on first use.
+	 *
+	 * @return the LandSeaGrid, or null if the grid resource is not available.
+	 */
+	public LandSeaGrid getLandSeaGrid() {
+		if (!landSeaGridLoaded) {
+			synchronized (this) {
+				if (!landSeaGridLoaded) {
+					landSeaGrid = LandSeaGrid.load();
+					landSeaGridLoaded = true;
+				}
+			}
+		}
+		return landSeaGrid;
+	}
+
+	/**
+	 * Obtain the shared reverse geocoding index over the merged countries and EEZ layer.
+	 *
+	 * @return a SovereignCellIndex over ADM1_UNION_EEZ.
+	 * @throws IOException if the spatial data cannot be loaded.
+	 */
+	public SovereignCellIndex getSovereignIndex() throws IOException {
+		SovereignCellIndex result = sovereignIndex;
+		if (result==null) {
+			synchronized (this) {
+				result = sovereignIndex;
+				if (result==null) {
+					result = new SovereignCellIndex(getFeatureLayer(EnumGeoRefSourceAuthority.ADM1_UNION_EEZ));
+					sovereignIndex = result;
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Obtain the shared cache of dissolved sovereign geometries over the merged countries and EEZ layer.
+	 *
+	 * @return a SovereignGeometryCache over ADM1_UNION_EEZ.
+	 * @throws IOException if the spatial data cannot be loaded.
+	 */
+	public SovereignGeometryCache getSovereignGeometryCache() throws IOException {
+		SovereignGeometryCache result = sovereignGeometries;
+		if (result==null) {
+			synchronized (this) {
+				result = sovereignGeometries;
+				if (result==null) {
+					result = new SovereignGeometryCache(getFeatureLayer(EnumGeoRefSourceAuthority.ADM1_UNION_EEZ));
+					sovereignGeometries = result;
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Obtain the shared resident tables of country centroids and areas.
+	 *
+	 * @return a CentroidTable over GBIF_CENTROIDS.
+	 * @throws IOException if the spatial data cannot be loaded.
+	 */
+	public CentroidTable getCentroidTable() throws IOException {
+		CentroidTable result = centroidTable;
+		if (result==null) {
+			synchronized (this) {
+				result = centroidTable;
+				if (result==null) {
+					result = new CentroidTable(getFeatureLayer(EnumGeoRefSourceAuthority.GBIF_CENTROIDS));
+					centroidTable = result;
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Obtain the shared off heap store of the polygons of a layer, opening it on first use.
+	 * The store reads the boundary file of the layer in place when there is one, so the
+	 * geometries of the layer never occupy the heap, otherwise it copies the geometries of
+	 * the layer into a direct buffer, from the in memory layer if it is loaded, or else
+	 * from the shapefile, without keeping the features read from it.
+	 *
+	 * @param authority the source authority.
+	 * @return an OffHeapPolygonStore over the layer.
+	 * @throws IOException if the spatial data cannot be loaded.
+	 */
+	public OffHeapPolygonStore getPolygonStore(EnumGeoRefSourceAuthority authority) throws IOException {
+		synchronized (polygonStores) {
+			OffHeapPolygonStore result = polygonStores.get(authority);
+			if (result==null) {
+				BoundaryFile boundaryFile = getLayer(authority).getBoundaryFile();
+				if (boundaryFile!=null) {
+					result = new OffHeapPolygonStore(boundaryFile);
+				} else {
+					SpatialLayer layer = getLayer(authority);
+					result = OffHeapPolygonStore.of(layer.isLoaded() ? layer.getFeatureLayer() : IndexedFeatureLayer.load(layer.getURL()));
+				}
+				polygonStores.put(authority, result);
+			}
+			return result;
+		}
+	}
+
+	/**
+	 * Open the data of a layer and build the indexes which the backend for the layer,
+	 * see {@link #getBackend(EnumGeoRefSourceAuthority)}, queries it through, so that the
+	 * first test against the layer does not pay for loading and indexing.
+	 *
+	 * @param authority the source authority.
+	 * @throws IOException if the spatial data cannot be loaded.
+	 * @throws IllegalArgumentException if the source authority has no spatial data.
+	 */
+	public void warmUp(EnumGeoRefSourceAuthority authority) throws IOException {
+		if (!isAvailable(authority)) {
+			throw new IllegalArgumentException("No spatial layer for source authority " + authority);
+		}
+		long startTime = System.currentTimeMillis();
+		SpatialBackend layerBackend = getBackend(authority);
+		layerBackend.warmUp(authority);
+		logger.debug("Warmed up " + authority.getName() + " for the " + layerBackend.getName() + " backend in " + (System.currentTimeMillis() - startTime) + " ms");
+	}
+
+	/**
+	 * Obtain the backend which answers the spatial queries of the tests, selected
+	 * with the system property {@link #BACKEND_PROPERTY}.
+	 *
+	 * @return the SpatialBackend.
+	 */
+	public SpatialBackend getBackend() {
+		return backend;
+	}
+
+	/**
+	 * Obtain the backend which answers the spatial queries against the layer of a source
+	 * authority, the backend registered for the source authority if there is one, otherwise
+	 * the backend selected with {@link #BACKEND_PROPERTY}.
+	 *
+	 * @param authority the source authority.
+	 * @return the SpatialBackend for the layer.
+	 */
+	public SpatialBackend getBackend(EnumGeoRefSourceAuthority authority) {
+		synchronized (layerBackends) {
+			SpatialBackend result = layerBackends.get(authority);
+			return result==null ? backend : result;
+		}
+	}
+
+	/**
+	 * Obtain the backend registered for the layer of a source authority.
+	 *
+	 * @param authority the source authority.
+	 * @return the backend registered with {@link #registerBackend(EnumGeoRefSourceAuthority, SpatialBackend)}
+	 *   or by system property, or null if the layer is answered by the selected backend.
+	 */
+	public SpatialBackend getRegisteredBackend(EnumGeoRefSourceAuthority authority) {
+		synchronized (layerBackends) {
+			return layerBackends.get(authority);
+		}
+	}
+
+	/**
+	 * Test whether spatial queries can be made against the layer of a source authority,
+	 * either from a layer in this registry or through a registered backend, such as a
+	 * GeoPackage of the GADM boundaries for GADM_ADM1, which cannot be distributed.
+	 *
+	 * @param authority the source authority.
+	 * @return true if {@link #getBackend(EnumGeoRefSourceAuthority)} can answer queries against the layer.
+	 */
+	public boolean isAvailable(EnumGeoRefSourceAuthority authority) {
+		return isSupported(authority) || getRegisteredBackend(authority)!=null;
+	}
+
+	/**
+	 * Answer the spatial queries against the layer of a source authority with a specific
+	 * backend, such as a {@link GeoPackageSpatialBackend} holding other boundaries for the
+	 * source authority.  Registered backends are kept when the spatial data is released.
+	 *
+	 * @param authority the source authority.
+	 * @param layerBackend the backend for the layer, or null to return to the backend
+	 *   selected with {@link #BACKEND_PROPERTY}.
+	 */
+	public void registerBackend(EnumGeoRefSourceAuthority authority, SpatialBackend layerBackend) {
+		synchronized (layerBackends) {
+			if (layerBackend==null) {
+				layerBackends.remove(authority);
+			} else {
+				layerBackends.put(authority, layerBackend);
+				logger.debug("Using the " + layerBackend.getName() + " spatial backend for " + authority.getName());
+			}
+		}
+		resultCache.clear();
+	}
+
+	/**
+	 * Create a backend over the layers of this registry.
+	 *
+	 * @param name the name of the backend, one of geotools, resident, or mapped, ignoring case.
+	 * @return a new SpatialBackend.
+	 * @throws IllegalArgumentException if there is no backend with the name.
+	 */
+	public SpatialBackend createBackend(String name) {
+		String key = name==null ? "" : name.trim().toLowerCase(Locale.ROOT);
+		if (key.equals(GeoToolsSpatialBackend.NAME)) {
+			return new GeoToolsSpatialBackend(this);
+		} else if (key.equals(ResidentSpatialBackend.NAME)) {
+			return new ResidentSpatialBackend(this);
+		} else if (key.equals(MappedSpatialBackend.NAME)) {
+			return new MappedSpatialBackend(this);
+		}
+		throw new IllegalArgumentException("No spatial backend named " + name);
+	}
+
+	/**
+	 * Obtain the shared cache of the results of spatial predicates.
+	 *
+	 * @return the SpatialResultCache.
+	 */
+	public SpatialResultCache getResultCache() {
+		return resultCache;
+	}
+
+	/**
+	 * Release all of the spatial data held by this registry, layers and indexes will be
+	 * loaded again on next use.
+	 */
+	public synchronized void release() {
+		landIndex = null;
+		countryIndex = null;
+		sovereignIndex = null;
+		sovereignGeometries = null;
+		centroidTable = null;
+		resultCache.clear();
+		synchronized (polygonStores) {
+			polygonStores.clear();
+		}
+		landSeaGrid = null;
+		landSeaGridLoaded = false;
+		for (SpatialLayer layer : layers.values()) {
+			layer.release();
+		}
+		logger.debug("Released spatial layers");
+	}
+
+}
@@ -0,0 +1,277 @@
+/**
+ * SpatialResultCache.java
+ *
+ * Copyright 2026 President and Fellows of Harvard College
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.filteredpush.qc.georeference.util;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.filteredpush.qc.georeference.EnumGeoRefSourceAuthority;
+
+/**
+ * Bounded cache of the results of spatial predicates, in front of the point in polygon and
+ * point near polygon tests of {@link GEOUtil} and {@link GISDataLoader}.  Datasets repeat
+ * coordinates often (many records from one collecting site, georeferences rounded to a few
+ * decimal places), and a repeated query is answered from the cache without consulting the
+ * spatial layers.
+ *
+ * Results are keyed on the layer, the predicate, the exact bits of the coordinate, the
+ * name arguments, and the buffer distance, so a cached result is only ever returned for
+ * exactly the same query.  Only results computed without error are cached.  When the cache
+ * is full the least recently used result is discarded.
+ *
+ * The size of the shared cache is set with the system property
+ * <code>org.filteredpush.qc.georeference.resultCacheSize</code>, a size of zero disables it.
+ *
+ * Instances are safe to share between threads.
+ *
+ * @author mole
+ * @version $Id: $Id
+ */
+public class SpatialResultCache {
+
+	private static final Log logger = LogFactory.getLog(SpatialResultCache.class);
+
+	/** System property setting the number of results held by the shared cache. */
+	public static final String SIZE_PROPERTY = "org.filteredpush.qc.georeference.resultCacheSize";
+
+	/** Default number of results held by the shared cache. */
+	public static final int DEFAULT_SIZE = 65536;
+
+	/** Stands in for a null result in the cache. */
+	private static final Object NULL_RESULT = new Object();
+
+	private final int maxSize;
+	private final Map<Key,Object> results;
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+
+	/**
+	 * A computation of the result of a spatial predicate, run on a cache miss.
+	 *
+	 * @param <T> the type of the result.
+	 */
+	public interface Computation<T> {
+		/**
+		 * Compute the result.
+		 *
+		 * @return the result, may be null.
+		 * @throws IOException if the spatial data cannot be read, the result is then not cached.
+		 */
+		T compute() throws IOException;
+	}
+
+	/**
+	 * The key of a cached result: a layer, a predicate, a coordinate, name arguments, and a buffer distance.
+	 */
+	public static final class Key {
+
+		private final EnumGeoRefSourceAuthority layer;
+		private final String predicate;
+		private final long latitudeBits;
+		private final long longitudeBits;
+		private final String[] names;
+		private final long bufferBits;
+		private final int hashCode;
+
+		/**
+		 * Construct a key.
+		 *
+		 * @param layer the layer the predicate is evaluated against.
+		 * @param predicate the name of the predicate.
+		 * @param latitude of the coordinate.
+		 * @param longitude of the coordinate.
+		 * @param buffer the buffer distance, 0 for predicates without one.
+		 * @param names the name arguments of the predicate, may contain nulls.
+		 */
+		public Key(EnumGeoRefSourceAuthority layer, String predicate, double latitude, double longitude, double buffer, String... names) {
+			this.layer = layer;
+			this.predicate = predicate;
+			this.latitudeBits = Double.doubleToLongBits(latitude);
+			this.longitudeBits = Double.doubleToLongBits(longitude);
+			this.bufferBits = Double.doubleToLongBits(buffer);
+			this.names = names.clone();
+			int hash = layer==null ? 0 : layer.hashCode();
+			hash = 31 * hash + predicate.hashCode();
+			hash = 31 * hash + (int)(latitudeBits ^ (latitudeBits >>> 32));
+			hash = 31 * hash + (int)(longitudeBits ^ (longitudeBits >>> 32));
+			hash = 31 * hash + (int)(bufferBits ^ (bufferBits >>> 32));
+			hash = 31 * hash + Arrays.hashCode(this.names);
+			this.hashCode = hash;
+		}
+
+		@Override
+		public int hashCode() {
+			return hashCode;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this==obj) {
+				return true;
+			}
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+			Key other = (Key)obj;
+			return hashCode==other.hashCode && layer==other.layer && predicate.equals(other.predicate)
+					&& latitudeBits==other.latitudeBits && longitudeBits==other.longitudeBits
+					&& bufferBits==other.bufferBits && Arrays.equals(names, other.names);
+		}
+
+		@Override
+		public String toString() {
+			return predicate + "(" + layer + ", " + Double.longBitsToDouble(latitudeBits) + ", "
+					+ Double.longBitsToDouble(longitudeBits) + ", " + Double.longBitsToDouble(bufferBits) + ", " + Arrays.toString(names) + ")";
+		}
+	}
+
+	/**
+	 * Construct a cache.
+	 *
+	 * @param maxSize the number of results to hold, zero to cache nothing.
+	 */
+	public SpatialResultCache(final int maxSize) {
+		if (maxSize < 0) {
+			throw new IllegalArgumentException("Cache size must not be negative.");
+		}
+		this.maxSize = maxSize;
+		this.results = new LinkedHashMap<Key,Object>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key,Object> eldest) {
+				if (size() > maxSize) {
+					evictions.incrementAndGet();
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	/**
+	 * Construct a cache sized from the system property {@link #SIZE_PROPERTY}.
+	 *
+	 * @return a new cache.
+	 */
+	public static SpatialResultCache fromSystemProperties() {
+		int size = DEFAULT_SIZE;
+		String value = System.getProperty(SIZE_PROPERTY);
+		if (value!=null) {
+			try {
+				size = Math.max(0, Integer.parseInt(value.trim()));
+			} catch (NumberFormatException e) {
+				logger.error("Unable to parse " + SIZE_PROPERTY + " [" + value + "], using " + DEFAULT_SIZE);
+			}
+		}
+		return new SpatialResultCache(size);
+	}
+
+	/**
+	 * Obtain a result from the cache, computing and caching it on a miss.
+	 *
+	 * @param key the key of the result.
+	 * @param computation computes the result on a miss.
+	 * @param <T> the type of the result.
+	 * @return the result.
+	 * @throws IOException if the result is not cached and cannot be computed.
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> T get(Key key, Computation<T> computation) throws IOException {
+		if (maxSize==0) {
+			misses.incrementAndGet();
+			return computation.compute();
+		}
+		Object cached;
+		synchronized (results) {
+			cached = results.get(key);
+		}
+		if (cached!=null) {
+			hits.incrementAndGet();
+			return cached==NULL_RESULT ? null : (T)cached;
+		}
+		misses.incrementAndGet();
+		// computed outside of the lock, two threads missing on the same key both compute the same result
+		T result = computation.compute();
+		synchronized (results) {
+			results.put(key, result==null ? NULL_RESULT : result);
+		}
+		return result;
+	}
+
+	/**
+	 * @return the number of results this cache holds at most.
+	 */
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	/**
+	 * @return the number of results currently held.
+	 */
+	public int size() {
+		synchronized (results) {
+			return results.size();
+		}
+	}
+
+	/**
+	 * @return the number of queries answered from the cache.
+	 */
+	public long getHitCount() {
+		return hits.get();
+	}
+
+	/**
+	 * @return the number of queries which had to be computed.
+	 */
+	public long getMissCount() {
+		return misses.get();
+	}
+
+	/**
+	 * @return the number of results discarded to make room for newer results.
+	 */
+	public long getEvictionCount() {
+		return evictions.get();
+	}
+
+	/**
+	 * Discard all cached results and reset the counters.
+	 */
+	public void clear() {
+		synchronized (results) {
+			results.clear();
+		}
+		hits.set(0L);
+		misses.set(0L);
+		evictions.set(0L);
+	}
+
+	@Override
+	public String toString() {
+		return "SpatialResultCache [size=" + size() + ", maxSize=" + maxSize + ", hits=" + hits.get()
+				+ ", misses=" + misses.get() + ", evictions=" + evictions.get() + "]";
+	}
+
+}
@@ -0,0 +1,575 @@
+/**
+ * SubdividedPolygonIndex.java
+ *
+ * Copyright 2026 President and Fellows of Harvard College
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.filteredpush.qc.georeference.util;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.Location;
+import org.locationtech.jts.geom.Point;
+import org.locationtech.jts.geom.Polygon;
+import org.locationtech.jts.geom.TopologyException;
+import org.locationtech.jts.geom.prep.PreparedGeometry;
+import org.locationtech.jts.geom.prep.PreparedGeometryFactory;
+import org.locationtech.jts.geom.util.PolygonExtracter;
+import org.locationtech.jts.index.strtree.STRtree;
+
+/**
+ * Spatial index over the polygons of a layer after each polygon has been cut into small
+ * pieces, each piece being prepared, so that a point test only touches the edges of the
+ * pieces near the point rather than every edge of a large (continent sized) polygon.
+ *
+ * Polygons with more than the maximum number of vertices are first clipped to a grid of
+ * square tiles aligned on whole multiples of the tile size, so that no piece of a large
+ * feature spans more than one tile, and any tile piece still above the maximum number of
+ * vertices is then cut in half repeatedly until it is small enough.  Each piece is indexed
+ * under its parent feature.  A query thus touches only the fragments of a feature around
+ * the point, which bounds the cost of the worst case query (a point inside the United
+ * States, Russia, or Antarctica) rather than just the average one.
+ *
+ * Point in polygon tests have the semantics of CONTAINS on the original features, a point
+ * on the outer boundary is not contained.  A point which falls on one of the cut lines
+ * introduced by subdivision is resolved against the original feature.  Distance tests have
+ * the semantics of DWITHIN on the original features, as the pieces of a feature together
+ * cover exactly that feature.
+ *
+ * The pieces of an index can be saved to and reloaded from an {@link IndexSnapshot}, so
+ * that the clipping is done once for each version of the data rather than in each JVM.
+ *
+ * Instances are immutable once constructed and are safe to share between threads.
+ *
+ * @author mole
+ * @version $Id: $Id
+ */
+public class SubdividedPolygonIndex {
+
+	private static final Log logger = LogFactory.getLog(SubdividedPolygonIndex.class);
+
+	/**
+	 * Default maximum number of vertices in a piece.
+	 */
+	public static final int DEFAULT_MAX_VERTICES = 256;
+
+	/**
+	 * Default size in degrees of the grid tiles large polygons are clipped to.
+	 */
+	public static final double DEFAULT_TILE_DEGREES = 2d;
+
+	/**
+	 * Limit on the depth of subdivision, guards against degenerate geometries.
+	 */
+	private static final int MAX_DEPTH = 24;
+
+	private final IndexedFeatureLayer layer;
+	private final int maxVertices;
+	private final double tileDegrees;
+	private final STRtree index;
+	private final GeometryFactory geometryFactory;
+	private final List<Piece> pieces;
+
+	/**
+	 * A piece of a feature, with a prepared geometry for rectangle tests and a
+	 * kernel for point tests.
+	 */
+	private static class Piece {
+		private final SpatialFeature parent;
+		private final Geometry geometry;
+		private final PreparedGeometry prepared;
+		private final RingCrossingKernel kernel;
+
+		private Piece(SpatialFeature parent, Geometry geometry) {
+			this.parent = parent;
+			this.geometry = geometry;
+			this.prepared = PreparedGeometryFactory.prepare(geometry);
+			this.kernel = RingCrossingKernel.supports(geometry) ? new RingCrossingKernel(geometry) : null;
+		}
+
+		private int locate(Point point) {
+			if (kernel!=null) {
+				return kernel.locate(point.getX(), point.getY());
+			}
+			if (prepared.contains(point)) {
+				return Location.INTERIOR;
+			}
+			return prepared.covers(point) ? Location.BOUNDARY : Location.EXTERIOR;
+		}
+	}
+
+	/**
+	 * Construct an index over the subdivided features of a layer using the default
+	 * maximum number of vertices per piece and the default tile size.
+	 *
+	 * @param layer the layer containing the polygon features to index.
+	 */
+	public SubdividedPolygonIndex(IndexedFeatureLayer layer) {
+		this(layer, DEFAULT_MAX_VERTICES, DEFAULT_TILE_DEGREES);
+	}
+
+	/**
+	 * Construct an index over the subdivided features of a layer.
+	 *
+	 * @param layer the layer containing the polygon features to index.
+	 * @param maxVertices the maximum number of vertices in a piece, polygons with more
+	 *   vertices than this are cut in half along the longer side of their envelope until
+	 *   each piece is at or below this size.
+	 */
+	public SubdividedPolygonIndex(IndexedFeatureLayer layer, int maxVertices) {
+		this(layer, maxVertices, 0d);
+	}
+
+	/**
+	 * Construct an index over the features of a layer, clipping large polygons to grid tiles
+	 * before subdividing them.
+	 *
+	 * @param layer the layer containing the polygon features to index.
+	 * @param maxVertices the maximum number of vertices in a piece, polygons with more
+	 *   vertices than this are clipped to grid tiles, and then cut in half along the longer
+	 *   side of their envelope until each piece is at or below this size.
+	 * @param tileDegrees the size of the grid tiles in degrees, 0 to cut polygons in half
+	 *   without first clipping them to tiles.
+	 */
+	public SubdividedPolygonIndex(IndexedFeatureLayer layer, int maxVertices, double tileDegrees) {
+		if (tileDegrees < 0d) {
+			throw new IllegalArgumentException("Tile size must not be negative.");
+		}
+		long startTime = System.currentTimeMillis();
+		this.layer = layer;
+		this.maxVertices = maxVertices;
+		this.tileDegrees = tileDegrees;
+		this.geometryFactory = layer.createPoint(0d, 0d).getFactory();
+		this.index = new STRtree();
+		this.pieces = new ArrayList<Piece>();
+		for (SpatialFeature feature : layer.getFeatures()) {
+			Geometry geometry = feature.getGeometry();
+			if (geometry!=null) {
+				for (int i=0; i<geometry.getNumGeometries(); i++) {
+					tile(feature, geometry.getGeometryN(i), 0);
+				}
+			}
+		}
+		index.build();
+		logger.debug("Indexed " + layer.getFeatures().size() + " features of " + layer.getName() + " as " + pieces.size() + " pieces in " + (System.currentTimeMillis() - startTime) + " ms");
+	}
+
+	/**
+	 * Construct an index from pieces previously cut from the features of a layer, as read
+	 * back from an {@link IndexSnapshot}.
+	 *
+	 * @param layer the layer the pieces were cut from.
+	 * @param maxVertices the maximum number of vertices in a piece the pieces were cut with.
+	 * @param tileDegrees the size of the grid tiles the pieces were clipped to.
+	 * @param parents the id of the feature of each piece.
+	 * @param geometries the geometry of each piece.
+	 */
+	SubdividedPolygonIndex(IndexedFeatureLayer layer, int maxVertices, double tileDegrees, int[] parents, List<Geometry> geometries) {
+		this.layer = layer;
+		this.maxVertices = maxVertices;
+		this.tileDegrees = tileDegrees;
+		this.geometryFactory = layer.createPoint(0d, 0d).getFactory();
+		this.index = new STRtree();
+		this.pieces = new ArrayList<Piece>(geometries.size());
+		for (int i=0; i<geometries.size(); i++) {
+			addPiece(layer.getFeatures().get(parents[i]), geometries.get(i));
+		}
+		index.build();
+	}
+
+	/**
+	 * Recursively clip a geometry with more than maxVertices to the grid tiles it spans, then
+	 * subdivide the piece in each tile.  Each step cuts along the grid line nearest the middle
+	 * of the envelope, so each vertex of a large polygon is clipped a logarithmic rather than
+	 * linear number of times in the number of tiles the polygon spans.
+	 *
+	 * @param parent the feature the geometry is part of.
+	 * @param geometry the geometry to clip.
+	 * @param depth the depth of the recursion.
+	 */
+	private void tile(SpatialFeature parent, Geometry geometry, int depth) {
+		if (geometry.isEmpty()) {
+			return;
+		}
+		if (tileDegrees==0d || geometry.getNumPoints() <= maxVertices || depth >= MAX_DEPTH) {
+			subdivide(parent, geometry, depth);
+			return;
+		}
+		Envelope envelope = geometry.getEnvelopeInternal();
+		double firstColumn = Math.floor(envelope.getMinX() / tileDegrees);
+		double columns = Math.ceil(envelope.getMaxX() / tileDegrees) - firstColumn;
+		double firstRow = Math.floor(envelope.getMinY() / tileDegrees);
+		double rows = Math.ceil(envelope.getMaxY() / tileDegrees) - firstRow;
+		if (columns <= 1d && rows <= 1d) {
+			// within a single tile
+			subdivide(parent, geometry, depth);
+			return;
+		}
+		Envelope firstHalf;
+		Envelope secondHalf;
+		if (columns >= rows) {
+			double gridLine = (firstColumn + Math.floor(columns / 2d)) * tileDegrees;
+			firstHalf = new Envelope(envelope.getMinX(), gridLine, envelope.getMinY(), envelope.getMaxY());
+			secondHalf = new Envelope(gridLine, envelope.getMaxX(), envelope.getMinY(), envelope.getMaxY());
+		} else {
+			double gridLine = (firstRow + Math.floor(rows / 2d)) * tileDegrees;
+			firstHalf = new Envelope(envelope.getMinX(), envelope.getMaxX(), envelope.getMinY(), gridLine);
+			secondHalf = new Envelope(envelope.getMinX(), envelope.getMaxX(), gridLine, envelope.getMaxY());
+		}
+		Geometry first;
+		Geometry second;
+		try {
+			first = clip(geometry, firstHalf);
+			second = clip(geometry, secondHalf);
+		} catch (TopologyException e) {
+			logger.debug("Unable to tile part of " + parent.getId() + ": " + e.getMessage());
+			subdivide(parent, geometry, depth);
+			return;
+		}
+		tile(parent, first, depth + 1);
+		tile(parent, second, depth + 1);
+	}
+
+	/**
+	 * Recursively cut a geometry into pieces no larger than maxVertices and add them to the index.
+	 *
+	 * @param parent the feature the geometry is part of.
+	 * @param geometry the geometry to cut.
+	 * @param depth the depth of the recursion.
+	 */
+	private void subdivide(SpatialFeature parent, Geometry geometry, int depth) {
+		if (geometry.isEmpty()) {
+			return;
+		}
+		if (geometry.getNumPoints() <= maxVertices || depth >= MAX_DEPTH) {
+			addPieces(parent, geometry);
+			return;
+		}
+		Envelope envelope = geometry.getEnvelopeInternal();
+		Envelope firstHalf;
+		Envelope secondHalf;
+		if (envelope.getWidth() >= envelope.getHeight()) {
+			double middle = envelope.getMinX() + envelope.getWidth() / 2d;
+			firstHalf = new Envelope(envelope.getMinX(), middle, envelope.getMinY(), envelope.getMaxY());
+			secondHalf = new Envelope(middle, envelope.getMaxX(), envelope.getMinY(), envelope.getMaxY());
+		} else {
+			double middle = envelope.getMinY() + envelope.getHeight() / 2d;
+			firstHalf = new Envelope(envelope.getMinX(), envelope.getMaxX(), envelope.getMinY(), middle);
+			secondHalf = new Envelope(envelope.getMinX(), envelope.getMaxX(), middle, envelope.getMaxY());
+		}
+		Geometry first;
+		Geometry second;
+		try {
+			first = clip(geometry, firstHalf);
+			second = clip(geometry, secondHalf);
+		} catch (TopologyException e) {
+			logger.debug("Unable to subdivide part of " + parent.getId() + ": " + e.getMessage());
+			addPieces(parent, geometry);
+			return;
+		}
+		subdivide(parent, first, depth + 1);
+		subdivide(parent, second, depth + 1);
+	}
+
+	/**
+	 * Clip a geometry to a rectangle, retaining only the polygonal parts of the result.
+	 *
+	 * @param geometry to clip.
+	 * @param rectangle to clip to.
+	 * @return the polygonal part of the intersection of the geometry and the rectangle.
+	 */
+	@SuppressWarnings("unchecked")
+	private Geometry clip(Geometry geometry, Envelope rectangle) {
+		Geometry intersection = geometry.intersection(geometryFactory.toGeometry(rectangle));
+		List<Polygon> polygons = PolygonExtracter.getPolygons(intersection);
+		return geometryFactory.buildGeometry(polygons);
+	}
+
+	/**
+	 * Add each polygon in a geometry to the index as a piece of a feature.
+	 *
+	 * @param parent the feature the geometry is part of.
+	 * @param geometry the geometry to add.
+	 */
+	private void addPieces(SpatialFeature parent, Geometry geometry) {
+		for (int i=0; i<geometry.getNumGeometries(); i++) {
+			Geometry part = geometry.getGeometryN(i);
+			if (!part.isEmpty()) {
+				addPiece(parent, part);
+			}
+		}
+	}
+
+	private void addPiece(SpatialFeature parent, Geometry part) {
+		Piece piece = new Piece(parent, part);
+		index.insert(part.getEnvelopeInternal(), piece);
+		pieces.add(piece);
+	}
+
+	/**
+	 * <p>Getter for the field <code>layer</code>.</p>
+	 *
+	 * @return the layer indexed by this index.
+	 */
+	public IndexedFeatureLayer getLayer() {
+		return layer;
+	}
+
+	/**
+	 * <p>Getter for the field <code>tileDegrees</code>.</p>
+	 *
+	 * @return the size of the grid tiles in degrees, 0 if polygons are not clipped to tiles.
+	 */
+	public double getTileDegrees() {
+		return tileDegrees;
+	}
+
+	/**
+	 * <p>Getter for the field <code>maxVertices</code>.</p>
+	 *
+	 * @return the maximum number of vertices in a piece.
+	 */
+	public int getMaxVertices() {
+		return maxVertices;
+	}
+
+	/**
+	 * @return the number of pieces the features of the layer were cut into.
+	 */
+	public int getPieceCount() {
+		return pieces.size();
+	}
+
+	/**
+	 * @param i the position of a piece, from 0 to getPieceCount() - 1.
+	 * @return the id of the feature the piece was cut from.
+	 */
+	int getPieceParent(int i) {
+		return pieces.get(i).parent.getId();
+	}
+
+	/**
+	 * @param i the position of a piece, from 0 to getPieceCount() - 1.
+	 * @return the geometry of the piece.
+	 */
+	Geometry getPieceGeometry(int i) {
+		return pieces.get(i).geometry;
+	}
+
+	/**
+	 * Test whether a point lies inside any feature (equivalent to CONTAINS(the_geom, POINT(x y))).
+	 *
+	 * @param longitude of the point.
+	 * @param latitude of the point.
+	 * @return true if the point is in the interior of any feature.
+	 */
+	public boolean contains(double longitude, double latitude) {
+		return findContaining(longitude, latitude)!=null;
+	}
+
+	/**
+	 * Find a feature which contains a point.
+	 *
+	 * @param longitude of the point.
+	 * @param latitude of the point.
+	 * @return a feature containing the point, or null if no feature contains the point.
+	 */
+	@SuppressWarnings("unchecked")
+	public SpatialFeature findContaining(double longitude, double latitude) {
+		Point point = geometryFactory.createPoint(new Coordinate(longitude, latitude));
+		List<Piece> candidates = index.query(new Envelope(longitude, longitude, latitude, latitude));
+		List<Piece> onEdge = null;
+		for (Piece candidate : candidates) {
+			int location = candidate.locate(point);
+			if (location==Location.INTERIOR) {
+				return candidate.parent;
+			}
+			if (location==Location.BOUNDARY) {
+				// on the boundary of the piece, which may be a cut line inside the feature
+				if (onEdge==null) {
+					onEdge = new ArrayList<Piece>();
+				}
+				onEdge.add(candidate);
+			}
+		}
+		if (onEdge!=null) {
+			for (Piece candidate : onEdge) {
+				if (candidate.parent.contains(point)) {
+					return candidate.parent;
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Test whether a point lies inside any of a selection of features.
+	 *
+	 * @param longitude of the point.
+	 * @param latitude of the point.
+	 * @param selection the ids of the features to test, null to test all features.
+	 * @return true if the point is in the interior of a selected feature.
+	 */
+	public boolean contains(double longitude, double latitude, BitSet selection) {
+		return !findContaining(longitude, latitude, selection, true).isEmpty();
+	}
+
+	/**
+	 * Find all of the features which contain a point, the equivalent of
+	 * {@link IndexedFeatureLayer#findContaining(double, double)} for the indexed layer.
+	 *
+	 * @param longitude of the point.
+	 * @param latitude of the point.
+	 * @return a list of the features containing the point in id order, empty if none.
+	 */
+	public List<SpatialFeature> findAllContaining(double longitude, double latitude) {
+		return findContaining(longitude, latitude, null, false);
+	}
+
+	/**
+	 * Find the selected features which contain a point.
+	 *
+	 * @param longitude of the point.
+	 * @param latitude of the point.
+	 * @param selection the ids of the features to test, null to test all features.
+	 * @param firstOnly stop at the first containing feature found.
+	 * @return the containing features in id order.
+	 */
+	@SuppressWarnings("unchecked")
+	private List<SpatialFeature> findContaining(double longitude, double latitude, BitSet selection, boolean firstOnly) {
+		Point point = geometryFactory.createPoint(new Coordinate(longitude, latitude));
+		List<Piece> candidates = index.query(new Envelope(longitude, longitude, latitude, latitude));
+		BitSet found = new BitSet();
+		BitSet onEdge = null;
+		for (Piece candidate : candidates) {
+			int id = candidate.parent.getId();
+			if (found.get(id) || (selection!=null && !selection.get(id))) {
+				continue;
+			}
+			int location = candidate.locate(point);
+			if (location==Location.INTERIOR) {
+				found.set(id);
+				if (firstOnly) {
+					break;
+				}
+			} else if (location==Location.BOUNDARY) {
+				// on the boundary of the piece, which may be a cut line inside the feature
+				if (onEdge==null) {
+					onEdge = new BitSet();
+				}
+				onEdge.set(id);
+			}
+		}
+		if (onEdge!=null && !(firstOnly && !found.isEmpty())) {
+			onEdge.andNot(found);
+			for (int id = onEdge.nextSetBit(0); id >= 0; id = onEdge.nextSetBit(id + 1)) {
+				if (layer.getFeatures().get(id).contains(point)) {
+					found.set(id);
+					if (firstOnly) {
+						break;
+					}
+				}
+			}
+		}
+		if (found.isEmpty()) {
+			return Collections.emptyList();
+		}
+		List<SpatialFeature> result = new ArrayList<SpatialFeature>(found.cardinality());
+		for (int id = found.nextSetBit(0); id >= 0; id = found.nextSetBit(id + 1)) {
+			result.add(layer.getFeatures().get(id));
+		}
+		return result;
+	}
+
+	/**
+	 * Test whether a point lies within a distance of any feature (equivalent to
+	 * DWITHIN(the_geom, POINT(x y), distance)).
+	 *
+	 * @param longitude of the point.
+	 * @param latitude of the point.
+	 * @param distance in the units of the layer (degrees).
+	 * @return true if the point is inside or within the distance of any feature.
+	 */
+	@SuppressWarnings("unchecked")
+	public boolean isWithinDistance(double longitude, double latitude, double distance) {
+		Point point = geometryFactory.createPoint(new Coordinate(longitude, latitude));
+		Envelope searchEnvelope = new Envelope(longitude, longitude, latitude, latitude);
+		searchEnvelope.expandBy(distance);
+		List<Piece> candidates = index.query(searchEnvelope);
+		for (Piece candidate : candidates) {
+			if (candidate.locate(point)!=Location.EXTERIOR) {
+				return true;
+			}
+		}
+		for (Piece candidate : candidates) {
+			if (candidate.geometry.isWithinDistance(point, distance)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Test whether any feature intersects a rectangle, including touching its boundary.
+	 *
+	 * @param rectangle the rectangle to test.
+	 * @return true if any part of any feature lies in or on the rectangle.
+	 */
+	@SuppressWarnings("unchecked")
+	public boolean intersects(Envelope rectangle) {
+		List<Piece> candidates = index.query(rectangle);
+		if (candidates.isEmpty()) {
+			return false;
+		}
+		Geometry rectangleGeometry = geometryFactory.toGeometry(rectangle);
+		for (Piece candidate : candidates) {
+			if (candidate.prepared.intersects(rectangleGeometry)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Test whether a rectangle, including its boundary, lies entirely within the interior
+	 * of a single piece of a feature.
+	 *
+	 * @param rectangle the rectangle to test.
+	 * @return true if every point of the rectangle is contained by a feature.
+	 */
+	@SuppressWarnings("unchecked")
+	public boolean containsProperly(Envelope rectangle) {
+		List<Piece> candidates = index.query(rectangle);
+		if (candidates.isEmpty()) {
+			return false;
+		}
+		Geometry rectangleGeometry = geometryFactory.toGeometry(rectangle);
+		for (Piece candidate : candidates) {
+			if (candidate.geometry.getEnvelopeInternal().contains(rectangle) && candidate.prepared.containsProperly(rectangleGeometry)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+}
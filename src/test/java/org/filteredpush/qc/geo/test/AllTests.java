@@ -7,7 +7,7 @@ import org.junit.runners.Suite;
 import org.junit.runners.Suite.SuiteClasses;
 
 @RunWith(Suite.class)
-@SuiteClasses({ CountryLookupTest.class, GeoTesterTest.class, GeoUtiltsTest.class })
+@SuiteClasses({ CountryLookupTest.class, GeoTesterTest.class, GeoUtiltsTest.class, IndexedFeatureLayerTest.class, SubdividedPolygonIndexTest.class, LandSeaGridTest.class, SovereignCellIndexTest.class, AttributeIndexTest.class, SpatialLayerRegistryTest.class, SpatialFiltersTest.class, SpatialBatchTest.class, SpatialContextTest.class, GeodesicDistanceIndexTest.class, SovereignGeometryCacheTest.class, AlternativeEvaluatorTest.class, CentroidTableTest.class, SpatialResultCacheTest.class, GeneralizedPolygonTest.class, BoundaryFileTest.class, OffHeapPolygonStoreTest.class, RingCrossingKernelTest.class, AntimeridianTest.class, IndexSnapshotTest.class, GeoRefQCTest.class, SpatialBackendTest.class, GeoPackageSpatialBackendTest.class, LocalShapefilesTest.class })
 public class AllTests {
 
 	private static final Log logger = LogFactory.getLog(AllTests.class);
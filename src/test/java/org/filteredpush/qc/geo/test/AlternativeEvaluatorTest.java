@@ -0,0 +1,57 @@
+/**
+ *
+ */
+package org.filteredpush.qc.geo.test;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.filteredpush.qc.georeference.util.AlternativeEvaluator;
+import org.filteredpush.qc.georeference.util.GEOUtil;
+import org.filteredpush.qc.georeference.util.GeolocationAlternative;
+import org.junit.Test;
+
+/**
+ * Tests of evaluating transpositions and sign changes of a coordinate against a region in one call.
+ *
+ * @author mole
+ *
+ */
+public class AlternativeEvaluatorTest {
+
+	@Test
+	public void testCountry() throws Exception {
+		// Santiago, Chile, with latitude and longitude transposed
+		List<GeolocationAlternative> alternatives = GeolocationAlternative.constructListOfAlternatives(-70.66d, -33.45d);
+		AlternativeEvaluator chile = AlternativeEvaluator.forCountry("Chile");
+		assertTrue(chile.contains(-33.45d, -70.66d));
+		assertFalse(chile.contains(-70.66d, -33.45d));
+		List<GeolocationAlternative> matches = chile.findContained(alternatives);
+		assertEquals(1, matches.size());
+		assertEquals("Transposed", matches.get(0).getAlternative());
+		for (GeolocationAlternative alternative : alternatives) {
+			assertEquals(GEOUtil.isPointInCountry("Chile", alternative.getLatitude(), alternative.getLongitude()), alternative.isMatched());
+		}
+		assertTrue(AlternativeEvaluator.forCountry("No Such Country").findContained(alternatives).isEmpty());
+		assertEquals(matches, GEOUtil.findAlternativesInCountry("Chile", alternatives));
+	}
+
+	@Test
+	public void testCountryPlusEEZ() {
+		List<GeolocationAlternative> alternatives = new ArrayList<GeolocationAlternative>();
+		alternatives.add(new GeolocationAlternative(33.45d, -70.66d, "Latitude sign changed"));
+		alternatives.add(new GeolocationAlternative(-33.45d, -70.66d, "Original"));
+		alternatives.add(new GeolocationAlternative(-33.45d, 70.66d, "Longitude sign changed"));
+		List<GeolocationAlternative> matches = GEOUtil.findAlternativesNearCountryPlusEEZ("CHL", alternatives, 3d);
+		assertEquals(1, matches.size());
+		assertSame(alternatives.get(1), matches.get(0));
+		for (GeolocationAlternative alternative : alternatives) {
+			assertEquals(GEOUtil.isPointNearCountryPlusEEZ("CHL", alternative.getLatitude(), alternative.getLongitude(), 3d), alternative.isMatched());
+		}
+		assertTrue(GEOUtil.findAlternativesNearCountryPlusEEZ("XXX", alternatives, 3d).isEmpty());
+		assertFalse(alternatives.get(1).isMatched());
+	}
+
+}
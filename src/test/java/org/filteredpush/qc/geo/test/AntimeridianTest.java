@@ -0,0 +1,142 @@
+/**
+ *
+ */
+package org.filteredpush.qc.geo.test;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+
+import org.filteredpush.qc.georeference.EnumGeoRefSourceAuthority;
+import org.filteredpush.qc.georeference.util.Antimeridian;
+import org.filteredpush.qc.georeference.util.BoundaryFile;
+import org.filteredpush.qc.georeference.util.IndexedFeatureLayer;
+import org.filteredpush.qc.georeference.util.SpatialFeature;
+import org.filteredpush.qc.georeference.util.SpatialLayerRegistry;
+import org.geotools.geometry.jts.JTSFactoryFinder;
+import org.junit.Test;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.Point;
+import org.locationtech.jts.geom.Polygon;
+
+/**
+ * Tests of the handling of features and search areas which cross the antimeridian.
+ *
+ * @author mole
+ *
+ */
+public class AntimeridianTest {
+
+	private static Polygon box(GeometryFactory geometryFactory, double minX, double maxX, double minY, double maxY) {
+		return (Polygon)geometryFactory.toGeometry(new Envelope(minX, maxX, minY, maxY));
+	}
+
+	private static BitSet ids(List<SpatialFeature> features) {
+		BitSet result = new BitSet();
+		for (SpatialFeature feature : features) {
+			result.set(feature.getId());
+		}
+		return result;
+	}
+
+	@Test
+	public void testNormalizeLongitude() {
+		assertEquals(0d, Antimeridian.normalizeLongitude(0d), 0d);
+		assertEquals(180d, Antimeridian.normalizeLongitude(180d), 0d);
+		assertEquals(-180d, Antimeridian.normalizeLongitude(-180d), 0d);
+		assertEquals(-179d, Antimeridian.normalizeLongitude(181d), 1e-12d);
+		assertEquals(179d, Antimeridian.normalizeLongitude(-181d), 1e-12d);
+		assertEquals(10d, Antimeridian.normalizeLongitude(370d), 1e-12d);
+		assertEquals(-10d, Antimeridian.normalizeLongitude(-730d), 1e-12d);
+	}
+
+	@Test
+	public void testQueryEnvelopes() {
+		List<Envelope> searches = Antimeridian.queryEnvelopes(10d, 5d, 2d, 1d);
+		assertEquals(1, searches.size());
+		assertEquals(new Envelope(8d, 12d, 4d, 6d), searches.get(0));
+
+		searches = Antimeridian.queryEnvelopes(179d, 5d, 2d, 1d);
+		assertEquals(2, searches.size());
+		assertEquals(new Envelope(177d, 180d, 4d, 6d), searches.get(0));
+		assertEquals(new Envelope(-180d, -179d, 4d, 6d), searches.get(1));
+
+		searches = Antimeridian.queryEnvelopes(-179.5d, 5d, 1d, 1d);
+		assertEquals(2, searches.size());
+		assertEquals(new Envelope(-180d, -178.5d, 4d, 6d), searches.get(0));
+		assertEquals(new Envelope(179.5d, 180d, 4d, 6d), searches.get(1));
+
+		// a point given east of 180 is searched for at its place west of 180
+		searches = Antimeridian.queryEnvelopes(185d, 5d, 1d, 1d);
+		assertEquals(1, searches.size());
+		assertEquals(new Envelope(-176d, -174d, 4d, 6d), searches.get(0));
+
+		searches = Antimeridian.queryEnvelopes(0d, 89d, 200d, 1d);
+		assertEquals(1, searches.size());
+		assertEquals(new Envelope(-180d, 180d, 88d, 90d), searches.get(0));
+	}
+
+	@Test
+	public void testSplitFeature() throws Exception {
+		GeometryFactory geometryFactory = JTSFactoryFinder.getGeometryFactory(null);
+		Geometry crossing = geometryFactory.createMultiPolygon(new Polygon[] {
+				box(geometryFactory, 170d, 180d, -20d, -10d), box(geometryFactory, -180d, -170d, -20d, -10d) });
+		Geometry wide = box(geometryFactory, -170d, 170d, 30d, 40d);
+		List<Envelope> envelopes = Antimeridian.splitEnvelope(crossing);
+		assertEquals(2, envelopes.size());
+		assertEquals(new Envelope(-180d, -170d, -20d, -10d), envelopes.get(0));
+		assertEquals(new Envelope(170d, 180d, -20d, -10d), envelopes.get(1));
+		// a single polygon is left whole however wide it is
+		assertEquals(1, Antimeridian.splitEnvelope(wide).size());
+
+		List<SpatialFeature> features = new ArrayList<SpatialFeature>();
+		features.add(new SpatialFeature(0, new HashMap<String,Object>(), crossing));
+		features.add(new SpatialFeature(1, new HashMap<String,Object>(), wide));
+		IndexedFeatureLayer layer = new IndexedFeatureLayer("synthetic", features);
+		assertTrue(layer.queryEnvelope(new Envelope(0d, 0d, -15d, -15d)).isEmpty());
+		assertEquals(1, layer.findContaining(175d, -15d).size());
+		assertEquals(1, layer.findContaining(-175d, -15d).size());
+		assertEquals(1, layer.findWithinDistance(-169d, -15d, 2d).size());
+		// each feature is returned once, although one is indexed twice
+		assertEquals(2, layer.queryEnvelope(new Envelope(-180d, 180d, -90d, 90d)).size());
+
+		BoundaryFile boundaryFile = BoundaryFile.fromLayer(layer, "");
+		assertTrue(boundaryFile.query(new Envelope(0d, 0d, -15d, -15d)).isEmpty());
+		assertTrue(boundaryFile.query(new Envelope(175d, 175d, -15d, -15d)).get(0));
+		assertTrue(boundaryFile.query(new Envelope(-175d, -175d, -15d, -15d)).get(0));
+		assertEquals(2, boundaryFile.query(new Envelope(-180d, 180d, -90d, 90d)).cardinality());
+	}
+
+	@Test
+	public void testCountriesAcrossAntimeridian() throws Exception {
+		IndexedFeatureLayer countries = SpatialLayerRegistry.getInstance().getFeatureLayer(EnumGeoRefSourceAuthority.NE_ADMIN_0);
+		List<SpatialFeature> fiji = countries.findByAttribute("NAME", "Fiji");
+		assertEquals(1, fiji.size());
+		assertEquals(2, Antimeridian.splitEnvelope(fiji.get(0).getGeometry()).size());
+		assertFalse(ids(countries.queryEnvelope(new Envelope(0d, 0d, -17.5d, -17.5d))).get(fiji.get(0).getId()));
+		assertTrue(ids(countries.findContaining(178.0d, -17.8d)).get(fiji.get(0).getId()));
+
+		// splitting the index does not change which countries contain a point
+		BoundaryFile boundaryFile = BoundaryFile.fromLayer(countries, "");
+		for (double latitude=-88.5d; latitude<=88.5d; latitude=latitude+3d) {
+			for (double longitude=-180d; longitude<=180d; longitude=longitude+3d) {
+				Point point = countries.createPoint(longitude, latitude);
+				BitSet expected = new BitSet();
+				for (SpatialFeature feature : countries.getFeatures()) {
+					if (feature.getGeometry()!=null && feature.getPreparedGeometry().contains(point)) {
+						expected.set(feature.getId());
+					}
+				}
+				assertEquals(point.toText(), expected, ids(countries.findContaining(longitude, latitude)));
+				BitSet candidates = boundaryFile.query(new Envelope(longitude, longitude, latitude, latitude));
+				assertEquals(point.toText(), ids(countries.queryEnvelope(new Envelope(longitude, longitude, latitude, latitude))), candidates);
+			}
+		}
+	}
+
+}
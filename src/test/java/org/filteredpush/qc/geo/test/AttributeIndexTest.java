@@ -0,0 +1,109 @@
+/**
+ *
+ */
+package org.filteredpush.qc.geo.test;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.filteredpush.qc.georeference.util.AttributeIndex;
+import org.filteredpush.qc.georeference.util.AttributeMatch;
+import org.filteredpush.qc.georeference.util.GEOUtil;
+import org.filteredpush.qc.georeference.util.SpatialFeature;
+import org.junit.Test;
+
+/**
+ * Tests of the case insensitive exact, prefix, suffix, and element attribute matches
+ * used in place of ILIKE filters.
+ *
+ * @author mole
+ *
+ */
+public class AttributeIndexTest {
+
+	private static final Log logger = LogFactory.getLog(AttributeIndexTest.class);
+
+	private List<SpatialFeature> makeFeatures(String... values) {
+		List<SpatialFeature> features = new ArrayList<SpatialFeature>();
+		for (String value : values) {
+			Map<String,Object> attributes = new HashMap<String,Object>();
+			attributes.put("woe_label", value);
+			features.add(new SpatialFeature(features.size(), attributes, null));
+		}
+		return features;
+	}
+
+	@Test
+	public void testSelect() {
+		AttributeIndex index = new AttributeIndex("woe_label", makeFeatures("Alaska, US, United States", "Alabama, US, United States", "Rio Negro, AR, Argentina", null, "Alaska, US, United States"));
+
+		BitSet expected = new BitSet();
+		expected.set(0);
+		expected.set(4);
+		assertEquals(expected, index.selectEqual("ALASKA, us, united states"));
+		assertEquals(expected, index.selectPrefix("alaska"));
+		assertEquals(2, index.selectPrefix("Ala").cardinality());
+		assertEquals(3, index.selectSuffix("united states").cardinality());
+		assertEquals(1, index.selectSuffix("ARGENTINA").cardinality());
+		assertEquals(4, index.selectPrefix("").cardinality());
+		assertTrue(index.selectEqual("alaska").isEmpty());
+		assertTrue(index.selectEqual(null).isEmpty());
+		assertTrue(index.selectSuffix("Chile").isEmpty());
+		assertEquals("Rio Negro, AR, Argentina", index.getFeatures(index.selectPrefix("rio")).get(0).getAttributeAsString("woe_label"));
+	}
+
+	@Test
+	public void testSelectElement() {
+		final AttributeIndex index = new AttributeIndex("woe_label", makeFeatures("Alpha|Beta|Gamma", "Beta", "Alphabet|Delta", null, "gamma|BETA"));
+
+		BitSet expected = new BitSet();
+		expected.set(0);
+		expected.set(1);
+		expected.set(4);
+		assertEquals(expected, index.selectElement("beta"));
+		assertEquals(2, index.selectElement("Gamma").cardinality());
+		assertEquals(1, index.selectElement("alpha").cardinality());
+		assertEquals(1, index.selectElement("DELTA").cardinality());
+		assertTrue(index.selectElement("Alpha|Beta").isEmpty());
+		assertTrue(index.selectElement("Alph").isEmpty());
+		assertTrue(index.selectElement(null).isEmpty());
+		assertEquals(index.selectElement("beta"), AttributeMatch.element("woe_label", "Beta").select(new AttributeMatch.Selector() {
+			@Override
+			public BitSet selectEqual(String attribute, String value) {
+				return index.selectEqual(value);
+			}
+			@Override
+			public BitSet selectPrefix(String attribute, String prefix) {
+				return index.selectPrefix(prefix);
+			}
+			@Override
+			public BitSet selectSuffix(String attribute, String suffix) {
+				return index.selectSuffix(suffix);
+			}
+			@Override
+			public BitSet selectElement(String attribute, String element) {
+				return index.selectElement(element);
+			}
+		}, 5));
+	}
+
+	@Test
+	public void testKnownNames() {
+		assertTrue(GEOUtil.isCountryKnown("Chile"));
+		assertTrue(GEOUtil.isCountryKnown("CHILE"));
+		assertFalse(GEOUtil.isCountryKnown("Chil"));
+		assertFalse(GEOUtil.isCountryKnown("Chile's"));
+		assertTrue(GEOUtil.isPrimaryKnown("united states", "alaska"));
+		assertFalse(GEOUtil.isPrimaryKnown("Chile", "Alaska"));
+		assertTrue(GEOUtil.isPrimaryAloneKnown("RIO NEGRO"));
+		assertFalse(GEOUtil.isPrimaryAloneKnown("zzzzzzzzzz"));
+	}
+
+}
@@ -0,0 +1,129 @@
+/**
+ *
+ */
+package org.filteredpush.qc.geo.test;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.filteredpush.qc.georeference.EnumGeoRefSourceAuthority;
+import org.filteredpush.qc.georeference.util.BoundaryFile;
+import org.filteredpush.qc.georeference.util.IndexedFeatureLayer;
+import org.filteredpush.qc.georeference.util.SpatialFeature;
+import org.filteredpush.qc.georeference.util.SpatialLayer;
+import org.filteredpush.qc.georeference.util.SpatialLayerRegistry;
+import org.geotools.geometry.jts.JTSFactoryFinder;
+import org.junit.Test;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.LinearRing;
+
+/**
+ * Tests of writing and memory mapping the compact binary form of boundary layers.
+ *
+ * @author mole
+ *
+ */
+public class BoundaryFileTest {
+
+	private static BoundaryFile roundTrip(IndexedFeatureLayer layer, String dataVersion) throws Exception {
+		File file = File.createTempFile("BoundaryFileTest", BoundaryFile.EXTENSION);
+		file.deleteOnExit();
+		BoundaryFile.write(layer, dataVersion, new FileOutputStream(file));
+		return BoundaryFile.open(file);
+	}
+
+	private static BitSet ids(List<SpatialFeature> features) {
+		BitSet result = new BitSet();
+		for (SpatialFeature feature : features) {
+			result.set(feature.getId());
+		}
+		return result;
+	}
+
+	private static SpatialFeature feature(int id, Geometry geometry, Object name, Object count) {
+		Map<String,Object> attributes = new LinkedHashMap<String,Object>();
+		attributes.put("name", name);
+		attributes.put("count", count);
+		return new SpatialFeature(id, attributes, geometry);
+	}
+
+	@Test
+	public void testSyntheticLayer() throws Exception {
+		GeometryFactory geometryFactory = JTSFactoryFinder.getGeometryFactory(null);
+		LinearRing shell = geometryFactory.createLinearRing(new Coordinate[] {
+				new Coordinate(0d, 0d), new Coordinate(10d, 0d), new Coordinate(10d, 10d), new Coordinate(0d, 10d), new Coordinate(0d, 0d) });
+		LinearRing hole = geometryFactory.createLinearRing(new Coordinate[] {
+				new Coordinate(2d, 2d), new Coordinate(2d, 4d), new Coordinate(4d, 4d), new Coordinate(4d, 2d), new Coordinate(2d, 2d) });
+		List<SpatialFeature> features = new ArrayList<SpatialFeature>();
+		features.add(feature(0, geometryFactory.createPolygon(shell, new LinearRing[] { hole }), "Ä square", Integer.valueOf(3)));
+		features.add(feature(1, geometryFactory.createPoint(new Coordinate(-50d, 25d)), null, Long.valueOf(5000000000L)));
+		features.add(feature(2, null, "nothing", null));
+		features.add(feature(3, geometryFactory.createMultiPoint(new Coordinate[] { new Coordinate(1d, 1d), new Coordinate(-1d, -1d) }), "", Integer.valueOf(7)));
+		BoundaryFile boundaryFile = roundTrip(new IndexedFeatureLayer("synthetic", features), "1.0");
+
+		assertEquals("1.0", boundaryFile.getDataVersion());
+		assertEquals("synthetic", boundaryFile.getName());
+		assertEquals(4, boundaryFile.getFeatureCount());
+		assertEquals("[name, count]", boundaryFile.getAttributeNames().toString());
+		assertEquals("Ä square", boundaryFile.getAttribute(0, "name"));
+		assertNull(boundaryFile.getAttribute(1, "name"));
+		assertEquals("", boundaryFile.getAttribute(3, "name"));
+		assertEquals(Long.valueOf(3L), boundaryFile.getAttribute(0, "count"));
+		assertEquals(Long.valueOf(5000000000L), boundaryFile.getAttribute(1, "count"));
+		assertNull(boundaryFile.getAttribute(2, "count"));
+		assertNull(boundaryFile.getAttribute(0, "absent"));
+		for (SpatialFeature feature : features) {
+			Geometry geometry = boundaryFile.getGeometry(feature.getId(), geometryFactory);
+			if (feature.getGeometry()==null) {
+				assertNull(geometry);
+				assertTrue(boundaryFile.getEnvelope(feature.getId()).isNull());
+			} else {
+				assertEquals(feature.getGeometry().getGeometryType(), geometry.getGeometryType());
+				assertTrue(feature.getGeometry().equalsExact(geometry));
+				assertEquals(feature.getGeometry().getEnvelopeInternal(), boundaryFile.getEnvelope(feature.getId()));
+			}
+		}
+		BitSet found = boundaryFile.query(new Envelope(-60d, -40d, 20d, 30d));
+		assertEquals("{1}", found.toString());
+		found = boundaryFile.query(new Envelope(-2d, 0.5d, -2d, 0.5d));
+		assertEquals("{0, 3}", found.toString());
+	}
+
+	@Test
+	public void testCountriesMatchShapefile() throws Exception {
+		SpatialLayer countries = SpatialLayerRegistry.getInstance().getLayer(EnumGeoRefSourceAuthority.NE_ADMIN_0);
+		IndexedFeatureLayer shapeFileLayer = IndexedFeatureLayer.load(countries.getURL());
+		BoundaryFile boundaryFile = roundTrip(shapeFileLayer, BoundaryFile.readDataVersion(countries.getResource()));
+		assertFalse(boundaryFile.getDataVersion().isEmpty());
+		assertEquals(shapeFileLayer.getFeatures().size(), boundaryFile.getFeatureCount());
+
+		IndexedFeatureLayer mappedLayer = boundaryFile.toFeatureLayer();
+		for (SpatialFeature expected : shapeFileLayer.getFeatures()) {
+			SpatialFeature actual = mappedLayer.getFeatures().get(expected.getId());
+			assertEquals(expected.getAttributeAsString("NAME"), actual.getAttributeAsString("NAME"));
+			assertTrue(expected.getAttributeAsString("NAME"), expected.getGeometry().equalsExact(actual.getGeometry()));
+		}
+		for (double latitude=-85d; latitude<=85d; latitude=latitude+5d) {
+			for (double longitude=-180d; longitude<=180d; longitude=longitude+5d) {
+				Envelope rectangle = new Envelope(longitude, longitude + 2.5d, latitude, latitude + 2.5d);
+				BitSet expected = new BitSet();
+				for (SpatialFeature feature : shapeFileLayer.queryEnvelope(rectangle)) {
+					expected.set(feature.getId());
+				}
+				assertEquals(rectangle.toString(), expected, boundaryFile.query(rectangle));
+				assertEquals(ids(shapeFileLayer.findContaining(longitude, latitude)), ids(mappedLayer.findContaining(longitude, latitude)));
+			}
+		}
+	}
+
+}
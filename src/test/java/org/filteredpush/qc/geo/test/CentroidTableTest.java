@@ -0,0 +1,76 @@
+/**
+ *
+ */
+package org.filteredpush.qc.geo.test;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.filteredpush.qc.georeference.util.CentroidTable;
+import org.filteredpush.qc.georeference.util.IndexedFeatureLayer;
+import org.filteredpush.qc.georeference.util.SpatialFeature;
+import org.filteredpush.qc.georeference.util.SpatialLayerRegistry;
+import org.geotools.geometry.jts.JTSFactoryFinder;
+import org.junit.Test;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.GeometryFactory;
+
+/**
+ * Tests of the resident country centroid and area tables.
+ *
+ * @author mole
+ *
+ */
+public class CentroidTableTest {
+
+	private static SpatialFeature centroid(GeometryFactory geometryFactory, int id, String code, Object area, double longitude, double latitude) {
+		Map<String,Object> attributes = new HashMap<String,Object>();
+		attributes.put(CentroidTable.CODE_ATTRIBUTE, code);
+		attributes.put(CentroidTable.AREA_ATTRIBUTE, area);
+		return new SpatialFeature(id, attributes, geometryFactory.createPoint(new Coordinate(longitude, latitude)));
+	}
+
+	@Test
+	public void testSyntheticCentroids() {
+		GeometryFactory geometryFactory = JTSFactoryFinder.getGeometryFactory(null);
+		List<SpatialFeature> features = new ArrayList<SpatialFeature>();
+		features.add(centroid(geometryFactory, 0, "AA", "not a number", 10d, 10d));
+		features.add(centroid(geometryFactory, 1, "AA", Double.valueOf(100d), 20d, 10d));
+		features.add(centroid(geometryFactory, 2, "BB", Double.valueOf(200d), 20d, 10d));
+		features.add(centroid(geometryFactory, 3, "CC", Double.valueOf(300d), 179.99d, 0d));
+		CentroidTable table = new CentroidTable(new IndexedFeatureLayer("test", features));
+
+		assertEquals(4, table.getCentroidCount());
+		assertEquals(2, table.getCentroids("aa").size());
+		assertTrue(table.getCentroids("ZZ").isEmpty());
+		assertEquals(100d, table.getArea("aa"), 0d);
+		assertNull(table.getArea("ZZ"));
+		assertNull(table.getArea(null));
+
+		// coincident centroids of two countries are both found
+		assertEquals(2, table.findWithinDistance(20d, 10d, 1d).size());
+		assertTrue(table.isNearCentroid("AA", 10.01d, 10d, 2000d));
+		assertFalse(table.isNearCentroid("AA", 10.03d, 10d, 2000d));
+		assertTrue(table.isNearCentroid("BB", 20d, 10.01d, 2000d));
+		assertFalse(table.isNearCentroid("BB", 10d, 10d, 2000d));
+		assertFalse(table.isNearCentroid("ZZ", 10d, 10d, 2000d));
+		// across the antimeridian
+		assertTrue(table.isNearCentroid("CC", -179.99d, 0d, 3000d));
+	}
+
+	@Test
+	public void testGbifCentroids() throws Exception {
+		CentroidTable table = SpatialLayerRegistry.getInstance().getCentroidTable();
+		assertSame(table, SpatialLayerRegistry.getInstance().getCentroidTable());
+		assertTrue(table.getCentroidCount() > 0);
+		assertFalse(table.getCentroids("JM").isEmpty());
+		assertEquals(11032d, table.getArea("jm"), 1d);
+		assertTrue(table.isNearCentroid("JM", -77.250d, 18.1667d, 3000d));
+		assertFalse(table.isNearCentroid("JM", 77.250d, 18.1667d, 3000d));
+	}
+
+}
@@ -0,0 +1,95 @@
+/**
+ *
+ */
+package org.filteredpush.qc.geo.test;
+
+import static org.junit.Assert.*;
+
+import java.util.HashMap;
+import java.util.Random;
+
+import org.filteredpush.qc.georeference.EnumGeoRefSourceAuthority;
+import org.filteredpush.qc.georeference.util.GeneralizedPolygon;
+import org.filteredpush.qc.georeference.util.IndexedFeatureLayer;
+import org.filteredpush.qc.georeference.util.SpatialFeature;
+import org.filteredpush.qc.georeference.util.SpatialLayerRegistry;
+import org.geotools.geometry.jts.JTSFactoryFinder;
+import org.junit.Test;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.Point;
+import org.locationtech.jts.geom.Polygon;
+
+/**
+ * Tests of the inner and outer approximations of polygons.
+ *
+ * @author mole
+ *
+ */
+public class GeneralizedPolygonTest {
+
+	/**
+	 * A ragged coastline, a circle of radius 5 degrees with 4000 vertices whose radius jitters.
+	 */
+	private static Polygon raggedPolygon(GeometryFactory geometryFactory, Random random) {
+		int vertices = 4000;
+		Coordinate[] ring = new Coordinate[vertices + 1];
+		for (int i=0; i<vertices; i++) {
+			double angle = 2d * Math.PI * i / vertices;
+			double radius = 5d + random.nextDouble() * 0.3d;
+			ring[i] = new Coordinate(10d + radius * Math.cos(angle), 20d + radius * Math.sin(angle));
+		}
+		ring[vertices] = ring[0];
+		return geometryFactory.createPolygon(ring);
+	}
+
+	@Test
+	public void testApproximationsAreConservative() {
+		GeometryFactory geometryFactory = JTSFactoryFinder.getGeometryFactory(null);
+		Random random = new Random(42L);
+		Polygon polygon = raggedPolygon(geometryFactory, random);
+		GeneralizedPolygon generalized = new GeneralizedPolygon(polygon, GeneralizedPolygon.DEFAULT_TOLERANCE);
+		assertTrue(generalized.getInnerVertexCount() > 0);
+		assertTrue(generalized.getOuterVertexCount() > 0);
+		assertTrue(generalized.getOuterVertexCount() < polygon.getNumPoints());
+
+		int unknown = 0;
+		for (int i=0; i<20000; i++) {
+			Point point = geometryFactory.createPoint(new Coordinate(3d + random.nextDouble() * 14d, 13d + random.nextDouble() * 14d));
+			int classification = generalized.classify(point);
+			if (classification==GeneralizedPolygon.INSIDE) {
+				assertTrue(polygon.contains(point));
+			} else if (classification==GeneralizedPolygon.OUTSIDE) {
+				assertFalse(polygon.covers(point));
+			} else {
+				unknown++;
+			}
+		}
+		// only points in the band around the ragged boundary need the full polygon
+		assertTrue(unknown < 10000);
+
+		// the feature uses the approximations and gives the same answers as the full polygon
+		SpatialFeature feature = new SpatialFeature(0, new HashMap<String,Object>(), polygon);
+		assertNotNull(feature.getGeneralizedPolygon());
+		for (int i=0; i<2000; i++) {
+			Point point = geometryFactory.createPoint(new Coordinate(3d + random.nextDouble() * 14d, 13d + random.nextDouble() * 14d));
+			assertEquals(polygon.contains(point), feature.contains(point));
+		}
+		// small polygons are not approximated
+		SpatialFeature square = new SpatialFeature(1, new HashMap<String,Object>(), geometryFactory.createPoint(new Coordinate(0d, 0d)).buffer(1d, 4));
+		assertNull(square.getGeneralizedPolygon());
+	}
+
+	@Test
+	public void testCountries() throws Exception {
+		IndexedFeatureLayer countries = SpatialLayerRegistry.getInstance().getFeatureLayer(EnumGeoRefSourceAuthority.NE_ADMIN_0);
+		SpatialFeature norway = countries.findByAttribute("NAME", "Norway").get(0);
+		assertNotNull(norway.getGeneralizedPolygon());
+		Random random = new Random(7L);
+		for (int i=0; i<2000; i++) {
+			Point point = countries.createPoint(4d + random.nextDouble() * 28d, 57d + random.nextDouble() * 15d);
+			assertEquals(norway.getPreparedGeometry().contains(point), norway.contains(point));
+		}
+	}
+
+}
@@ -0,0 +1,329 @@
+/**
+ *
+ */
+package org.filteredpush.qc.geo.test;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.datakurator.ffdq.api.DQResponse;
+import org.datakurator.ffdq.api.ResultState;
+import org.datakurator.ffdq.api.result.ComplianceValue;
+import org.filteredpush.qc.georeference.DwCGeoRefDQ;
+import org.filteredpush.qc.georeference.EnumGeoRefSourceAuthority;
+import org.filteredpush.qc.georeference.GeoRefQC;
+import org.filteredpush.qc.georeference.util.AttributeMatch;
+import org.filteredpush.qc.georeference.util.GEOUtil;
+import org.filteredpush.qc.georeference.util.GISDataLoader;
+import org.filteredpush.qc.georeference.util.GeoPackageSpatialBackend;
+import org.filteredpush.qc.georeference.util.SpatialBatch;
+import org.filteredpush.qc.georeference.util.SpatialContext;
+import org.filteredpush.qc.georeference.util.SpatialLayerRegistry;
+import org.geotools.geometry.jts.JTSFactoryFinder;
+import org.junit.Test;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.Polygon;
+import org.locationtech.jts.io.ByteOrderValues;
+import org.locationtech.jts.io.WKBWriter;
+
+/**
+ * Tests of reading a boundary layer from a GeoPackage through its R*Tree index.
+ *
+ * @author mole
+ *
+ */
+public class GeoPackageSpatialBackendTest {
+
+	private static final GeometryFactory geometryFactory = JTSFactoryFinder.getGeometryFactory(null);
+
+	private static Polygon box(double minX, double maxX, double minY, double maxY) {
+		return (Polygon)geometryFactory.toGeometry(new Envelope(minX, maxX, minY, maxY));
+	}
+
+	/**
+	 * Encode a geometry in the GeoPackage binary format, with a little endian header and
+	 * optionally an xy envelope.
+	 */
+	private static byte[] encode(Geometry geometry, boolean withEnvelope) {
+		byte[] wkb = new WKBWriter(2, ByteOrderValues.LITTLE_ENDIAN).write(geometry);
+		ByteBuffer buffer = ByteBuffer.allocate(8 + (withEnvelope ? 32 : 0) + wkb.length).order(ByteOrder.LITTLE_ENDIAN);
+		buffer.put((byte)'G').put((byte)'P').put((byte)0).put((byte)(withEnvelope ? 0x03 : 0x01)).putInt(4326);
+		if (withEnvelope) {
+			Envelope envelope = geometry.getEnvelopeInternal();
+			buffer.putDouble(envelope.getMinX()).putDouble(envelope.getMaxX()).putDouble(envelope.getMinY()).putDouble(envelope.getMaxY());
+		}
+		buffer.put(wkb);
+		return buffer.array();
+	}
+
+	private static File createGeoPackage() throws Exception {
+		return createGeoPackage("NAME_0", "NAME_1");
+	}
+
+	/**
+	 * Create a GeoPackage of four primary divisions, with the names of their countries
+	 * and of the divisions in the given columns, and variant names in VARNAME_1.
+	 */
+	private static File createGeoPackage(String countryColumn, String primaryColumn) throws Exception {
+		File file = File.createTempFile("GeoPackageSpatialBackendTest", ".gpkg");
+		file.deleteOnExit();
+		file.delete();
+		Connection connection = DriverManager.getConnection("jdbc:sqlite:" + file.getAbsolutePath());
+		try {
+			Statement statement = connection.createStatement();
+			statement.execute("CREATE TABLE gpkg_contents (table_name TEXT NOT NULL PRIMARY KEY, data_type TEXT NOT NULL, identifier TEXT, srs_id INTEGER)");
+			statement.execute("CREATE TABLE gpkg_geometry_columns (table_name TEXT NOT NULL, column_name TEXT NOT NULL, geometry_type_name TEXT NOT NULL, srs_id INTEGER NOT NULL, z TINYINT NOT NULL, m TINYINT NOT NULL)");
+			statement.execute("CREATE TABLE adm1 (fid INTEGER PRIMARY KEY AUTOINCREMENT, geom BLOB, " + countryColumn + " TEXT, " + primaryColumn + " TEXT, VARNAME_1 TEXT)");
+			statement.execute("CREATE VIRTUAL TABLE rtree_adm1_geom USING rtree(id, minx, maxx, miny, maxy)");
+			statement.execute("INSERT INTO gpkg_contents VALUES ('adm1', 'features', 'adm1', 4326)");
+			statement.execute("INSERT INTO gpkg_geometry_columns VALUES ('adm1', 'geom', 'MULTIPOLYGON', 4326, 0, 0)");
+			statement.close();
+			Geometry[] geometries = {
+					box(0d, 10d, 0d, 10d),
+					geometryFactory.createMultiPolygon(new Polygon[] { box(20d, 30d, 0d, 10d), box(40d, 50d, 0d, 10d) }),
+					box(5d, 15d, 5d, 15d),
+					box(179d, 180d, 0d, 1d)
+			};
+			String[][] names = { { "Testland", "Alpha", null }, { "Testland", "Beta", "Bet|Middle|Beeta" }, { "Otherland", "Alpha", "Alfa" }, { "Farland", "Delta", "Del_ta|100%" } };
+			PreparedStatement feature = connection.prepareStatement("INSERT INTO adm1 VALUES (?, ?, ?, ?, ?)");
+			PreparedStatement entry = connection.prepareStatement("INSERT INTO rtree_adm1_geom VALUES (?, ?, ?, ?, ?)");
+			for (int i=0; i<geometries.length; i++) {
+				Envelope envelope = geometries[i].getEnvelopeInternal();
+				feature.setInt(1, i + 1);
+				feature.setBytes(2, encode(geometries[i], i==1));
+				feature.setString(3, names[i][0]);
+				feature.setString(4, names[i][1]);
+				feature.setString(5, names[i][2]);
+				feature.executeUpdate();
+				entry.setInt(1, i + 1);
+				entry.setDouble(2, envelope.getMinX());
+				entry.setDouble(3, envelope.getMaxX());
+				entry.setDouble(4, envelope.getMinY());
+				entry.setDouble(5, envelope.getMaxY());
+				entry.executeUpdate();
+			}
+			feature.close();
+			entry.close();
+		} finally {
+			connection.close();
+		}
+		return file;
+	}
+
+	private static AttributeMatch match(String... pairs) {
+		AttributeMatch[] matches = new AttributeMatch[pairs.length / 2];
+		for (int i=0; i<pairs.length; i=i+2) {
+			matches[i / 2] = AttributeMatch.equal(pairs[i], pairs[i + 1]);
+		}
+		return AttributeMatch.allOf(matches);
+	}
+
+	@Test
+	public void testQueries() throws Exception {
+		final EnumGeoRefSourceAuthority gadm = EnumGeoRefSourceAuthority.GADM_ADM1;
+		final GeoPackageSpatialBackend backend = new GeoPackageSpatialBackend(gadm, createGeoPackage(), null);
+		try {
+			assertEquals("adm1", backend.getTable());
+			AttributeMatch none = AttributeMatch.all();
+
+			assertTrue(backend.isKnown(gadm, match("NAME_1", "alpha")));
+			assertTrue(backend.isKnown(gadm, match("NAME_0", "Testland", "NAME_1", "BETA")));
+			assertFalse(backend.isKnown(gadm, match("NAME_0", "Otherland", "NAME_1", "Beta")));
+			assertFalse(backend.isKnown(gadm, match("NAME_1", null)));
+			assertFalse(backend.isKnown(gadm, match("NO_SUCH_COLUMN", "Alpha")));
+			assertTrue(backend.isKnown(gadm, AttributeMatch.allOf(AttributeMatch.prefix("NAME_0", "other"), AttributeMatch.suffix("NAME_1", "PHA"))));
+			assertFalse(backend.isKnown(gadm, AttributeMatch.allOf(AttributeMatch.prefix("NAME_0", "other"), AttributeMatch.suffix("NAME_1", "eta"))));
+			assertTrue(backend.isKnown(gadm, AttributeMatch.anyOf(match("NAME_1", "Gamma"), match("NAME_0", "otherland"))));
+			// wildcards in the value are matched literally
+			assertFalse(backend.isKnown(gadm, AttributeMatch.prefix("NAME_1", "%")));
+			// any one of the variant names matches, not only the first and last
+			assertTrue(backend.contains(gadm, AttributeMatch.element("VARNAME_1", "middle"), 45d, 5d));
+			assertTrue(backend.isKnown(gadm, AttributeMatch.element("VARNAME_1", "BET")));
+			assertTrue(backend.isKnown(gadm, AttributeMatch.element("VARNAME_1", "Beeta")));
+			assertTrue(backend.isKnown(gadm, AttributeMatch.element("VARNAME_1", "alfa")));
+			assertTrue(backend.isKnown(gadm, AttributeMatch.element("VARNAME_1", "100%")));
+			assertFalse(backend.isKnown(gadm, AttributeMatch.element("VARNAME_1", "Midd")));
+			assertFalse(backend.isKnown(gadm, AttributeMatch.element("VARNAME_1", "Bet|Middle")));
+			assertFalse(backend.isKnown(gadm, AttributeMatch.element("VARNAME_1", "Delta")));
+			assertFalse(backend.isKnown(gadm, AttributeMatch.element("VARNAME_1", "Del%")));
+
+			assertTrue(backend.contains(gadm, none, 2d, 2d));
+			assertTrue(backend.contains(gadm, match("NAME_1", "Beta"), 45d, 5d));
+			assertFalse(backend.contains(gadm, match("NAME_1", "Beta"), 35d, 5d));
+			assertFalse(backend.contains(gadm, match("NAME_0", "Otherland"), 2d, 2d));
+			// a point on the boundary is not contained
+			assertFalse(backend.contains(gadm, match("NAME_1", "Beta"), 20d, 5d));
+
+			assertTrue(backend.isWithinDistance(gadm, match("NAME_1", "Beta"), 20d, 5d, 0d));
+			// 5 degrees of longitude at 5 north is about 553.9 km
+			assertTrue(backend.isWithinDistance(gadm, match("NAME_1", "Beta"), 35d, 5d, 555000d));
+			assertFalse(backend.isWithinDistance(gadm, match("NAME_1", "Beta"), 35d, 5d, 550000d));
+			assertFalse(backend.isWithinDistance(gadm, match("NAME_1", null), 35d, 5d, 555000d));
+			// across the antimeridian, 0.01 degrees of longitude at the equator is about 1.1 km
+			assertTrue(backend.isWithinDistance(gadm, match("NAME_1", "Delta"), -179.99d, 0.5d, 2000d));
+			assertFalse(backend.isWithinDistance(gadm, match("NAME_1", "Delta"), -179.99d, 0.5d, 1000d));
+			assertFalse(backend.isWithinDistance(gadm, match("NAME_1", "Delta"), -170d, 0.5d, 2000d));
+			assertTrue(backend.isWithinDistance(gadm, none, 179.99d, 2d, 112000d));
+
+			List<String[]> containing = backend.findContaining(gadm, 7d, 7d, "NAME_0", "NAME_1", "NO_SUCH_COLUMN");
+			assertEquals(2, containing.size());
+			assertArrayEquals(new String[] { "Testland", "Alpha", null }, containing.get(0));
+			assertArrayEquals(new String[] { "Otherland", "Alpha", null }, containing.get(1));
+			assertTrue(backend.findContaining(gadm, 35d, 5d, "NAME_1").isEmpty());
+
+			// each thread queries through its own connection
+			ExecutorService executor = Executors.newFixedThreadPool(2);
+			try {
+				assertTrue(executor.submit(new Callable<Boolean>() {
+					@Override
+					public Boolean call() throws Exception {
+						return Boolean.valueOf(backend.contains(gadm, match("NAME_1", "Alpha"), 12d, 12d));
+					}
+				}).get().booleanValue());
+			} finally {
+				executor.shutdown();
+			}
+
+			try {
+				backend.contains(EnumGeoRefSourceAuthority.NE_ADMIN_1, none, 2d, 2d);
+				fail("Expected an IllegalArgumentException");
+			} catch (IllegalArgumentException e) {
+				// expected
+			}
+		} finally {
+			backend.close();
+		}
+	}
+
+	@Test
+	public void testRegister() throws Exception {
+		SpatialLayerRegistry registry = SpatialLayerRegistry.getInstance();
+		File file = createGeoPackage();
+		GeoPackageSpatialBackend backend = GeoPackageSpatialBackend.fromPropertyValue(EnumGeoRefSourceAuthority.GADM_ADM1, file.getPath() + "#adm1");
+		try {
+			assertEquals("adm1", backend.getTable());
+			assertSame(registry.getBackend(), registry.getBackend(EnumGeoRefSourceAuthority.GADM_ADM1));
+			assertFalse(registry.isAvailable(EnumGeoRefSourceAuthority.GADM_ADM1));
+			registry.registerBackend(EnumGeoRefSourceAuthority.GADM_ADM1, backend);
+			assertSame(backend, registry.getBackend(EnumGeoRefSourceAuthority.GADM_ADM1));
+			assertSame(backend, registry.getRegisteredBackend(EnumGeoRefSourceAuthority.GADM_ADM1));
+			assertNull(registry.getRegisteredBackend(EnumGeoRefSourceAuthority.NE_ADMIN_1));
+			assertTrue(registry.isAvailable(EnumGeoRefSourceAuthority.GADM_ADM1));
+			GeoRefQC.warmUp(EnumSet.of(EnumGeoRefSourceAuthority.GADM_ADM1)).get(5, TimeUnit.MINUTES);
+			assertSame(registry.getBackend(), registry.getBackend(EnumGeoRefSourceAuthority.NE_ADMIN_1));
+			assertTrue(registry.getBackend(EnumGeoRefSourceAuthority.GADM_ADM1).isKnown(EnumGeoRefSourceAuthority.GADM_ADM1, match("NAME_1", "Alpha")));
+			assertTrue(GEOUtil.isPrimaryAloneKnown(EnumGeoRefSourceAuthority.GADM_ADM1, "Middle"));
+			assertFalse(GEOUtil.isPrimaryAloneKnown(EnumGeoRefSourceAuthority.GADM_ADM1, "Midd"));
+		} finally {
+			registry.registerBackend(EnumGeoRefSourceAuthority.GADM_ADM1, null);
+			backend.close();
+		}
+		assertSame(registry.getBackend(), registry.getBackend(EnumGeoRefSourceAuthority.GADM_ADM1));
+
+		try {
+			GeoPackageSpatialBackend.fromPropertyValue(EnumGeoRefSourceAuthority.GADM_ADM1, file.getPath() + "#no_such_table");
+			fail("Expected an IOException");
+		} catch (IOException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testStateprovinceConsistent() throws Exception {
+		SpatialLayerRegistry registry = SpatialLayerRegistry.getInstance();
+		String adm1 = "ADM1 boundaries";
+
+		// not available until a GeoPackage is registered
+		DQResponse<ComplianceValue> result = DwCGeoRefDQ.validationCoordinatesStateprovinceConsistent("5", "45", "Beta", adm1, "3000");
+		assertEquals(ResultState.EXTERNAL_PREREQUISITES_NOT_MET.getLabel(), result.getResultState().getLabel());
+
+		GeoPackageSpatialBackend backend = new GeoPackageSpatialBackend(EnumGeoRefSourceAuthority.GADM_ADM1, createGeoPackage(), null);
+		try {
+			registry.registerBackend(EnumGeoRefSourceAuthority.GADM_ADM1, backend);
+			assertTrue(GEOUtil.isPrimaryAloneKnown(EnumGeoRefSourceAuthority.GADM_ADM1, "beta"));
+			assertFalse(GEOUtil.isPrimaryAloneKnown(EnumGeoRefSourceAuthority.GADM_ADM1, "Gamma"));
+
+			result = DwCGeoRefDQ.validationCoordinatesStateprovinceConsistent("5", "45", "Beta", adm1, "3000");
+			assertEquals(ResultState.RUN_HAS_RESULT.getLabel(), result.getResultState().getLabel());
+			assertEquals(ComplianceValue.COMPLIANT.getLabel(), result.getValue().getLabel());
+			// 0.02 degrees of longitude at 5 north is about 2.2 km outside Beta
+			result = DwCGeoRefDQ.validationCoordinatesStateprovinceConsistent("5", "30.02", "Beta", adm1, "3000");
+			assertEquals(ComplianceValue.COMPLIANT.getLabel(), result.getValue().getLabel());
+			result = DwCGeoRefDQ.validationCoordinatesStateprovinceConsistent("5", "30.02", "Beta", adm1, "1000");
+			assertEquals(ComplianceValue.NOT_COMPLIANT.getLabel(), result.getValue().getLabel());
+			result = DwCGeoRefDQ.validationCoordinatesStateprovinceConsistent("5", "35", "Beta", adm1, "3000");
+			assertEquals(ComplianceValue.NOT_COMPLIANT.getLabel(), result.getValue().getLabel());
+			// either division named Alpha
+			result = DwCGeoRefDQ.validationCoordinatesStateprovinceConsistent("14", "14", "Alpha", adm1, "3000");
+			assertEquals(ComplianceValue.COMPLIANT.getLabel(), result.getValue().getLabel());
+			// across the antimeridian
+			result = DwCGeoRefDQ.validationCoordinatesStateprovinceConsistent("0.5", "-179.99", "Delta", adm1, "3000");
+			assertEquals(ComplianceValue.COMPLIANT.getLabel(), result.getValue().getLabel());
+			result = DwCGeoRefDQ.validationCoordinatesStateprovinceConsistent("5", "45", "Gamma", adm1, "3000");
+			assertEquals(ResultState.INTERNAL_PREREQUISITES_NOT_MET.getLabel(), result.getResultState().getLabel());
+		} finally {
+			registry.registerBackend(EnumGeoRefSourceAuthority.GADM_ADM1, null);
+			backend.close();
+		}
+	}
+
+	@Test
+	public void testRegisteredLayers() throws Exception {
+		SpatialLayerRegistry registry = SpatialLayerRegistry.getInstance();
+		// the admin 1 layer with the attributes of the Natural Earth layer
+		GeoPackageSpatialBackend primaryDivisions = new GeoPackageSpatialBackend(EnumGeoRefSourceAuthority.NE_ADMIN_1, createGeoPackage("admin", "name"), null);
+		try {
+			registry.registerBackend(EnumGeoRefSourceAuthority.NE_ADMIN_1, primaryDivisions);
+			assertTrue(GEOUtil.isPrimaryKnown("Testland", "Beta"));
+			assertFalse(GEOUtil.isPrimaryKnown("Otherland", "Beta"));
+			assertTrue(GEOUtil.isPrimaryAloneKnown("Delta"));
+			assertTrue(GEOUtil.isPointInPrimary("Testland", "Beta", 5d, 45d));
+			assertFalse(GEOUtil.isPointInPrimary("Testland", "Beta", 5d, 35d));
+			assertTrue(GEOUtil.isPointNearPrimary("Testland", "Beta", 5d, 30.02d, 3d));
+			assertTrue(GEOUtil.isPointNearPrimaryAllowDuplicates("Delta", 0.5d, -179.99d, 3d));
+			assertArrayEquals(new boolean[] { true, false }, SpatialBatch.isWithinDistance(EnumGeoRefSourceAuthority.NE_ADMIN_1, new double[] { 5d, 5d }, new double[] { 30.02d, 35d }, 3d));
+			try {
+				SpatialBatch.classify(EnumGeoRefSourceAuthority.NE_ADMIN_1, new double[] { 5d }, new double[] { 45d });
+				fail("Expected an IllegalArgumentException");
+			} catch (IllegalArgumentException e) {
+				// expected
+			}
+		} finally {
+			registry.registerBackend(EnumGeoRefSourceAuthority.NE_ADMIN_1, null);
+			primaryDivisions.close();
+		}
+		assertFalse(GEOUtil.isPrimaryKnown("Testland", "Beta"));
+
+		// land, where 35 E 5 N, in the bundled land layer, is not land in the registered layer
+		GeoPackageSpatialBackend land = new GeoPackageSpatialBackend(EnumGeoRefSourceAuthority.NE_LAND_UNION_ISLANDS, createGeoPackage(), null);
+		try {
+			registry.registerBackend(EnumGeoRefSourceAuthority.NE_LAND_UNION_ISLANDS, land);
+			assertTrue(GISDataLoader.isWithinLand(45d, 5d));
+			assertFalse(GISDataLoader.isWithinLand(35d, 5d));
+			assertFalse(new SpatialContext(5d, 35d).isOnLand());
+			assertFalse(GISDataLoader.isWithinDistanceOfLand(35d, 5d, 550000d));
+			assertTrue(GISDataLoader.isWithinDistanceOfLand(35d, 5d, 555000d));
+			assertArrayEquals(new boolean[] { true, false }, SpatialBatch.contains(EnumGeoRefSourceAuthority.NE_LAND_UNION_ISLANDS, new double[] { 5d, 5d }, new double[] { 45d, 35d }));
+		} finally {
+			registry.registerBackend(EnumGeoRefSourceAuthority.NE_LAND_UNION_ISLANDS, null);
+			land.close();
+		}
+	}
+
+}
@@ -0,0 +1,54 @@
+/**
+ *
+ */
+package org.filteredpush.qc.geo.test;
+
+import static org.junit.Assert.*;
+
+import java.util.EnumSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.filteredpush.qc.georeference.EnumGeoRefSourceAuthority;
+import org.filteredpush.qc.georeference.GeoRefQC;
+import org.filteredpush.qc.georeference.util.GEOUtil;
+import org.filteredpush.qc.georeference.util.SpatialLayerRegistry;
+import org.junit.Test;
+
+/**
+ * Tests of warming up the spatial layers and the EPSG database in the background.
+ *
+ * @author mole
+ *
+ */
+public class GeoRefQCTest {
+
+	@Test
+	public void testWarmUp() throws Exception {
+		SpatialLayerRegistry registry = SpatialLayerRegistry.getInstance();
+		CompletableFuture<Void> warmUp = GeoRefQC.warmUp(EnumSet.of(EnumGeoRefSourceAuthority.GBIF_CENTROIDS, EnumGeoRefSourceAuthority.NE_ADMIN_0));
+		assertNotNull(GeoRefQC.getReadiness());
+		warmUp.get(5, TimeUnit.MINUTES);
+		assertTrue(GeoRefQC.isReady());
+		assertTrue(GeoRefQC.getReadiness().isDone());
+		assertTrue(registry.getLayer(EnumGeoRefSourceAuthority.GBIF_CENTROIDS).isLoaded());
+		assertTrue(registry.getLayer(EnumGeoRefSourceAuthority.NE_ADMIN_0).isLoaded());
+		// warm up does not change the results of the tests
+		assertTrue(GEOUtil.isDatumKnown("EPSG:4326"));
+		assertTrue(GEOUtil.isPointInCountry("Fiji", -17.8d, 178.0d));
+
+		GeoRefQC.warmUp(EnumSet.noneOf(EnumGeoRefSourceAuthority.class)).get(5, TimeUnit.MINUTES);
+		assertTrue(GeoRefQC.isReady());
+	}
+
+	@Test
+	public void testWarmUpUnsupported() {
+		try {
+			GeoRefQC.warmUp(EnumSet.of(EnumGeoRefSourceAuthority.GETTY_TGN));
+			fail("Expected an IllegalArgumentException");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+}
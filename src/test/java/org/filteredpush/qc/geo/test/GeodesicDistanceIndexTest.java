@@ -0,0 +1,100 @@
+/**
+ *
+ */
+package org.filteredpush.qc.geo.test;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import org.filteredpush.qc.georeference.EnumGeoRefSourceAuthority;
+import org.filteredpush.qc.georeference.util.GEOUtil;
+import org.filteredpush.qc.georeference.util.GeodesicDistanceIndex;
+import org.filteredpush.qc.georeference.util.IndexedFeatureLayer;
+import org.filteredpush.qc.georeference.util.SpatialFeature;
+import org.filteredpush.qc.georeference.util.SpatialLayerRegistry;
+import org.geotools.geometry.jts.JTSFactoryFinder;
+import org.junit.Test;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.GeometryFactory;
+
+/**
+ * Tests of buffer distance tests in meters.
+ *
+ * @author mole
+ *
+ */
+public class GeodesicDistanceIndexTest {
+
+	@Test
+	public void testDistances() {
+		assertEquals(GeodesicDistanceIndex.METERS_PER_DEGREE, GeodesicDistanceIndex.distanceMeters(10d, 0d, 10d, 1d), 0.001d);
+		assertEquals(GeodesicDistanceIndex.METERS_PER_DEGREE, GeodesicDistanceIndex.distanceMeters(179.5d, 0d, -179.5d, 0d), 0.001d);
+		// a degree of longitude at 60 degrees north is about half as long as at the equator
+		assertEquals(0.5d, GeodesicDistanceIndex.distanceMeters(10d, 60d, 11d, 60d) / GeodesicDistanceIndex.METERS_PER_DEGREE, 0.001d);
+		// agrees with the haversine distance
+		assertEquals(GEOUtil.getDistanceKm(42.37d, -71.1d, 51.5d, -0.12d), GeodesicDistanceIndex.distanceMeters(-71.1d, 42.37d, -0.12d, 51.5d) / 1000d, 5d);
+		// nearest point on the segment is its interior, then its end
+		assertEquals(GeodesicDistanceIndex.METERS_PER_DEGREE, GeodesicDistanceIndex.distanceToSegmentMeters(0d, 1d, -1d, 0d, 1d, 0d), 1d);
+		assertEquals(GeodesicDistanceIndex.distanceMeters(3d, 0d, 1d, 0d), GeodesicDistanceIndex.distanceToSegmentMeters(3d, 0d, -1d, 0d, 1d, 0d), 0.001d);
+	}
+
+	@Test
+	public void testSpans() {
+		assertEquals(1d, GeodesicDistanceIndex.latitudeSpan(GeodesicDistanceIndex.METERS_PER_DEGREE), 1e-9d);
+		assertEquals(1d, GeodesicDistanceIndex.longitudeSpan(0d, GeodesicDistanceIndex.METERS_PER_DEGREE), 1e-9d);
+		assertEquals(2d, GeodesicDistanceIndex.longitudeSpan(60d, GeodesicDistanceIndex.METERS_PER_DEGREE), 0.01d);
+		assertEquals(180d, GeodesicDistanceIndex.longitudeSpan(89.9d, 50000d), 0d);
+	}
+
+	@Test
+	public void testSquare() {
+		GeometryFactory geometryFactory = JTSFactoryFinder.getGeometryFactory(null);
+		List<SpatialFeature> features = new ArrayList<SpatialFeature>();
+		features.add(new SpatialFeature(0, new HashMap<String,Object>(), geometryFactory.toGeometry(new Envelope(0d, 1d, 60d, 61d))));
+		features.add(new SpatialFeature(1, new HashMap<String,Object>(), geometryFactory.toGeometry(new Envelope(179d, 180d, 0d, 1d))));
+		GeodesicDistanceIndex index = new GeodesicDistanceIndex(new IndexedFeatureLayer("test", features));
+
+		// inside, no boundary nearby
+		assertTrue(index.isWithinDistance(0.5d, 60.5d, 1000d, null));
+		assertFalse(index.isBoundaryWithinDistance(0.5d, 60.5d, 1000d, null));
+		// 0.03 degrees of longitude east of the square at 60.5 north is about 1.6 km, which km/111 would have treated as 3.3 km
+		assertTrue(index.isWithinDistance(1.03d, 60.5d, 2000d, null));
+		assertFalse(index.isWithinDistance(1.03d, 60.5d, 1500d, null));
+		assertEquals(GeodesicDistanceIndex.distanceMeters(1.03d, 60.5d, 1d, 60.5d), index.distanceToBoundary(1.03d, 60.5d, 5000d, null), 1d);
+		assertEquals(Double.POSITIVE_INFINITY, index.distanceToBoundary(1.03d, 60.5d, 1000d, null), 0d);
+		// across the antimeridian from the second square
+		assertTrue(index.isWithinDistance(-179.99d, 0.5d, 2000d, null));
+		assertEquals(1, index.findWithinDistance(-179.99d, 0.5d, 2000d).size());
+		assertEquals(1, index.findWithinDistance(-179.99d, 0.5d, 2000d).get(0).getId());
+		assertTrue(index.findWithinDistance(-170d, 0.5d, 2000d).isEmpty());
+	}
+
+	@Test
+	public void testLongEdges() {
+		GeometryFactory geometryFactory = JTSFactoryFinder.getGeometryFactory(null);
+		List<SpatialFeature> features = new ArrayList<SpatialFeature>();
+		// a northern edge along 49 north, 15 degrees long, whose great circle arc would bulge to about 49.24 north
+		features.add(new SpatialFeature(0, new HashMap<String,Object>(), geometryFactory.toGeometry(new Envelope(-120d, -105d, 45d, 49d))));
+		GeodesicDistanceIndex index = new GeodesicDistanceIndex(new IndexedFeatureLayer("test", features));
+
+		// 0.1 degrees north of the edge is about 11.1 km, not the 15 km to the arc
+		assertTrue(index.isWithinDistance(-112.5d, 49.1d, 11500d, null));
+		assertFalse(index.isWithinDistance(-112.5d, 49.1d, 10500d, null));
+		// 0.1 degrees south of the edge is inside the feature, and about 11.1 km from its boundary, not 16 km
+		assertEquals(0.1d * GeodesicDistanceIndex.METERS_PER_DEGREE, index.distanceToBoundary(-112.5d, 48.9d, 20000d, null), 100d);
+		assertTrue(index.findBoundaryWithinDistance(-112.5d, 49.2d, 20000d, null).get(0));
+	}
+
+	@Test
+	public void testCountries() throws Exception {
+		IndexedFeatureLayer countries = SpatialLayerRegistry.getInstance().getFeatureLayer(EnumGeoRefSourceAuthority.NE_ADMIN_0);
+		assertTrue(countries.getDistanceIndex().getRunCount() > 0);
+		assertSame(countries.getDistanceIndex(), countries.getDistanceIndex());
+		assertTrue(GEOUtil.isPointNearCountry("Chile", -33.45d, -70.66d, 1d));
+		assertFalse(GEOUtil.isPointNearCountry("Chile", 0d, -140d, 10d));
+	}
+
+}
@@ -0,0 +1,100 @@
+/**
+ *
+ */
+package org.filteredpush.qc.geo.test;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.nio.file.Files;
+
+import org.filteredpush.qc.georeference.EnumGeoRefSourceAuthority;
+import org.filteredpush.qc.georeference.util.AttributeIndex;
+import org.filteredpush.qc.georeference.util.IndexSnapshot;
+import org.filteredpush.qc.georeference.util.IndexedFeatureLayer;
+import org.filteredpush.qc.georeference.util.SpatialLayerRegistry;
+import org.filteredpush.qc.georeference.util.SubdividedPolygonIndex;
+import org.junit.Test;
+
+/**
+ * Tests of saving indexes to and loading them from a snapshot on disk.
+ *
+ * @author mole
+ *
+ */
+public class IndexSnapshotTest {
+
+	private static File temporaryDirectory() throws Exception {
+		File result = Files.createTempDirectory("IndexSnapshotTest").toFile();
+		result.deleteOnExit();
+		return result;
+	}
+
+	@Test
+	public void testForResource() throws Exception {
+		String previous = System.getProperty(IndexSnapshot.DIRECTORY_PROPERTY);
+		try {
+			File root = temporaryDirectory();
+			System.setProperty(IndexSnapshot.DIRECTORY_PROPERTY, root.getPath());
+			IndexSnapshot snapshot = IndexSnapshot.forResource("/org.filteredpush.kuration.services/ne_10m_admin_0_countries.shp");
+			assertNotNull(snapshot);
+			assertEquals(new File(root, "3.1.0"), snapshot.getDirectory());
+			assertEquals("ne_10m_admin_0_countries", snapshot.getName());
+			// no VERSION file, so no way to tell when a snapshot would be stale
+			assertNull(IndexSnapshot.forResource("/org.filteredpush.kuration.services/gbif_pcli_country_centroids.shp"));
+			System.setProperty(IndexSnapshot.DIRECTORY_PROPERTY, "");
+			assertNull(IndexSnapshot.forResource("/org.filteredpush.kuration.services/ne_10m_admin_0_countries.shp"));
+		} finally {
+			if (previous==null) {
+				System.clearProperty(IndexSnapshot.DIRECTORY_PROPERTY);
+			} else {
+				System.setProperty(IndexSnapshot.DIRECTORY_PROPERTY, previous);
+			}
+		}
+	}
+
+	@Test
+	public void testSubdividedIndexRoundTrip() throws Exception {
+		IndexedFeatureLayer countries = SpatialLayerRegistry.getInstance().getFeatureLayer(EnumGeoRefSourceAuthority.NE_ADMIN_0);
+		IndexSnapshot snapshot = new IndexSnapshot(temporaryDirectory(), "countries");
+		assertNull(snapshot.loadSubdividedIndex(countries, 256, 2d));
+
+		SubdividedPolygonIndex built = new SubdividedPolygonIndex(countries, 256, 2d);
+		assertTrue(snapshot.saveSubdividedIndex(built));
+		SubdividedPolygonIndex loaded = snapshot.loadSubdividedIndex(countries, 256, 2d);
+		assertNotNull(loaded);
+		assertEquals(built.getPieceCount(), loaded.getPieceCount());
+		assertEquals(2d, loaded.getTileDegrees(), 0d);
+		// a snapshot built with other parameters is not used
+		assertNull(snapshot.loadSubdividedIndex(countries, 128, 2d));
+
+		for (double latitude=-88.5d; latitude<=88.5d; latitude=latitude+2.5d) {
+			for (double longitude=-180d; longitude<=180d; longitude=longitude+2.5d) {
+				String message = longitude + " " + latitude;
+				assertEquals(message, built.findAllContaining(longitude, latitude), loaded.findAllContaining(longitude, latitude));
+				assertEquals(message, built.isWithinDistance(longitude, latitude, 0.5d), loaded.isWithinDistance(longitude, latitude, 0.5d));
+			}
+		}
+	}
+
+	@Test
+	public void testAttributeIndexRoundTrip() throws Exception {
+		IndexedFeatureLayer primaries = SpatialLayerRegistry.getInstance().getFeatureLayer(EnumGeoRefSourceAuthority.NE_ADMIN_1);
+		IndexSnapshot snapshot = new IndexSnapshot(temporaryDirectory(), "primaries");
+		assertNull(snapshot.loadAttributeIndex(primaries, "name"));
+
+		AttributeIndex built = new AttributeIndex("name", primaries.getFeatures());
+		assertTrue(snapshot.saveAttributeIndex(primaries, built));
+		AttributeIndex loaded = snapshot.loadAttributeIndex(primaries, "name");
+		assertNotNull(loaded);
+		assertEquals("name", loaded.getAttribute());
+		assertNull(snapshot.loadAttributeIndex(primaries, "admin"));
+		for (String name : new String[] { "Massachusetts", "massachusetts", "Queensland", "Chukchi Autonomous Okrug", "No Such Place" }) {
+			assertEquals(name, built.selectEqual(name), loaded.selectEqual(name));
+		}
+		assertEquals(built.selectPrefix("New "), loaded.selectPrefix("New "));
+		assertEquals(built.selectSuffix("shire"), loaded.selectSuffix("shire"));
+		assertFalse(loaded.selectEqual("Massachusetts").isEmpty());
+	}
+
+}
@@ -0,0 +1,108 @@
+/**
+ *
+ */
+package org.filteredpush.qc.geo.test;
+
+import static org.junit.Assert.*;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.filteredpush.qc.georeference.util.GEOUtil;
+import org.filteredpush.qc.georeference.util.GeodesicDistanceIndex;
+import org.filteredpush.qc.georeference.util.IndexedFeatureLayer;
+import org.geotools.api.data.FileDataStore;
+import org.geotools.api.data.FileDataStoreFinder;
+import org.geotools.api.data.SimpleFeatureSource;
+import org.geotools.api.filter.Filter;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.filter.text.ecql.ECQL;
+import org.junit.Test;
+import org.locationtech.jts.geom.Geometry;
+
+/**
+ * Compare the in memory indexed country layer with queries against the shapefile.
+ *
+ * @author mole
+ *
+ */
+public class IndexedFeatureLayerTest {
+
+	private static final Log logger = LogFactory.getLog(IndexedFeatureLayerTest.class);
+
+	private static final String[] COUNTRIES = { "Chile", "Argentina", "United States of America", "Fiji", "Italy", "Russia", "Indonesia" };
+
+	@Test
+	public void testLoad() throws Exception {
+		URL countryShapeFile = GEOUtil.class.getResource("/org.filteredpush.kuration.services/ne_10m_admin_0_countries.shp");
+		IndexedFeatureLayer layer = IndexedFeatureLayer.load(countryShapeFile);
+		assertEquals(255, layer.getFeatures().size());
+		assertEquals(1, layer.findByAttribute("NAME", "chile").size());
+		assertEquals(0, layer.findByAttribute("NAME", "Chil").size());
+		assertEquals(0, layer.findByAttribute("NAME", null).size());
+		assertEquals("Chile", layer.findContaining(-70.66d, -33.45d).get(0).getAttributeAsString("NAME"));
+		assertTrue(layer.findContaining(-76d, -21d).isEmpty());
+	}
+
+	@Test
+	public void testIsPointInCountryMatchesShapefile() throws Exception {
+		URL countryShapeFile = GEOUtil.class.getResource("/org.filteredpush.kuration.services/ne_10m_admin_0_countries.shp");
+		FileDataStore store = FileDataStoreFinder.getDataStore(countryShapeFile);
+		try {
+			SimpleFeatureSource featureSource = store.getFeatureSource();
+			for (String country : COUNTRIES) {
+				for (double latitude=-60d; latitude<=75d; latitude=latitude+7.5d) {
+					for (double longitude=-180d; longitude<=180d; longitude=longitude+7.5d) {
+						Filter filter = ECQL.toFilter("NAME ILIKE '"+ country +"' AND CONTAINS(the_geom, POINT(" + Double.toString(longitude) + " " + Double.toString(latitude) + "))");
+						boolean expected = !featureSource.getFeatures(filter).isEmpty();
+						assertEquals(country + " " + latitude + " " + longitude, expected, GEOUtil.isPointInCountry(country, latitude, longitude));
+					}
+				}
+			}
+		} finally {
+			store.dispose();
+		}
+	}
+
+	@Test
+	public void testIsPointNearCountryMatchesShapefile() throws Exception {
+		URL countryShapeFile = GEOUtil.class.getResource("/org.filteredpush.kuration.services/ne_10m_admin_0_countries.shp");
+		FileDataStore store = FileDataStoreFinder.getDataStore(countryShapeFile);
+		double distanceKm = 100d;
+		try {
+			SimpleFeatureSource featureSource = store.getFeatureSource();
+			for (String country : COUNTRIES) {
+				// the reference is the geodesic distance in meters from each geometry of the country in the shapefile
+				List<Geometry> geometries = new ArrayList<Geometry>();
+				SimpleFeatureIterator features = featureSource.getFeatures(ECQL.toFilter("NAME ILIKE '"+ country +"'")).features();
+				try {
+					while (features.hasNext()) {
+						geometries.add((Geometry)features.next().getDefaultGeometry());
+					}
+				} finally {
+					features.close();
+				}
+				assertFalse(country, geometries.isEmpty());
+				for (double latitude=-60d; latitude<=75d; latitude=latitude+7.5d) {
+					for (double longitude=-180d; longitude<=180d; longitude=longitude+7.5d) {
+						boolean expected = false;
+						for (Geometry geometry : geometries) {
+							expected = expected || GeodesicDistanceIndex.isWithinDistance(geometry, longitude, latitude, distanceKm * 1000d);
+						}
+						assertEquals(country + " " + latitude + " " + longitude, expected, GEOUtil.isPointNearCountry(country, latitude, longitude, distanceKm));
+					}
+				}
+			}
+		} finally {
+			store.dispose();
+		}
+
+		assertTrue(GEOUtil.isPointNearCountry("Chile", -33.45d, -70.66d, 10d));
+		assertFalse(GEOUtil.isPointNearCountry("Chile", -21d, -76d, 10d));
+		assertFalse(GEOUtil.isPointNearCountry("Chile's", -33.45d, -70.66d, 10d));
+	}
+
+}
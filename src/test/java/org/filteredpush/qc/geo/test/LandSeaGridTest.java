@@ -0,0 +1,100 @@
+/**
+ *
+ */
+package org.filteredpush.qc.geo.test;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.filteredpush.qc.georeference.util.GeodesicDistanceIndex;
+import org.filteredpush.qc.georeference.util.IndexedFeatureLayer;
+import org.filteredpush.qc.georeference.util.LandSeaGrid;
+import org.filteredpush.qc.georeference.util.SpatialFeature;
+import org.filteredpush.qc.georeference.util.SpatialLayerRegistry;
+import org.filteredpush.qc.georeference.util.SubdividedPolygonIndex;
+import org.geotools.geometry.jts.JTSFactoryFinder;
+import org.junit.Test;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.GeometryFactory;
+
+/**
+ * Check that land/sea grid classifications agree with exact tests against the land polygons.
+ *
+ * @author mole
+ *
+ */
+public class LandSeaGridTest {
+
+	private static final Log logger = LogFactory.getLog(LandSeaGridTest.class);
+
+	@Test
+	public void testClassificationsAgreeWithPolygons() throws Exception {
+		SubdividedPolygonIndex land = SpatialLayerRegistry.getInstance().getLandIndex();
+		LandSeaGrid grid = LandSeaGrid.build(land, "test", 2);
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		grid.write(out);
+		grid = LandSeaGrid.read(new ByteArrayInputStream(out.toByteArray()));
+		assertEquals("test", grid.getDataVersion());
+		assertEquals(2, grid.getCellsPerDegree());
+
+		int landCells = 0;
+		int seaCells = 0;
+		double distanceD = 25d / 111d;
+		for (double latitude=-89.9d; latitude<90d; latitude=latitude+1.3d) {
+			for (double longitude=-179.9d; longitude<180d; longitude=longitude+1.3d) {
+				int cell = grid.classify(longitude, latitude);
+				if (cell==LandSeaGrid.LAND) {
+					landCells++;
+					assertTrue(latitude + " " + longitude, land.contains(longitude, latitude));
+				} else if (cell==LandSeaGrid.SEA) {
+					seaCells++;
+					assertFalse(latitude + " " + longitude, land.contains(longitude, latitude));
+				}
+				cell = grid.classify(longitude, latitude, distanceD);
+				if (cell==LandSeaGrid.LAND) {
+					assertTrue(latitude + " " + longitude, land.isWithinDistance(longitude, latitude, distanceD));
+				} else if (cell==LandSeaGrid.SEA) {
+					assertFalse(latitude + " " + longitude, land.isWithinDistance(longitude, latitude, distanceD));
+				}
+			}
+		}
+		assertTrue(landCells > 0);
+		assertTrue(seaCells > 0);
+		assertEquals(LandSeaGrid.MIXED, grid.classify(Double.NaN, 0d));
+		assertEquals(LandSeaGrid.MIXED, grid.classify(0d, 91d));
+	}
+
+	@Test
+	public void testBufferAcrossAntimeridian() throws Exception {
+		GeometryFactory geometryFactory = JTSFactoryFinder.getGeometryFactory(null);
+		List<SpatialFeature> features = new ArrayList<SpatialFeature>();
+		// an island just east of the antimeridian, as in the Lau group of Fiji
+		features.add(new SpatialFeature(0, new HashMap<String,Object>(), geometryFactory.toGeometry(new Envelope(-179.95d, -179.9d, -17.5d, -17.4d))));
+		IndexedFeatureLayer island = new IndexedFeatureLayer("test", features);
+		LandSeaGrid grid = LandSeaGrid.build(new SubdividedPolygonIndex(island), "test", 2);
+
+		// 179.9 E is about 16 km west of the island, across 180
+		double distanceMeters = 25000d;
+		double latitudeSpan = GeodesicDistanceIndex.latitudeSpan(distanceMeters);
+		double longitudeSpan = GeodesicDistanceIndex.longitudeSpan(-17.45d, distanceMeters);
+		assertEquals(LandSeaGrid.SEA, grid.classify(179.9d, -17.45d));
+		assertTrue(island.getDistanceIndex().isWithinDistance(179.9d, -17.45d, distanceMeters, null));
+		assertEquals(LandSeaGrid.MIXED, grid.classify(179.9d, -17.45d, longitudeSpan, latitudeSpan));
+		assertEquals(LandSeaGrid.MIXED, grid.classify(179.9d, -17.45d, longitudeSpan));
+		// and from the other side
+		features.set(0, new SpatialFeature(0, new HashMap<String,Object>(), geometryFactory.toGeometry(new Envelope(179.9d, 179.95d, 71d, 71.1d))));
+		grid = LandSeaGrid.build(new SubdividedPolygonIndex(new IndexedFeatureLayer("test", features)), "test", 2);
+		assertEquals(LandSeaGrid.MIXED, grid.classify(-179.9d, 71.05d, GeodesicDistanceIndex.longitudeSpan(71.05d, distanceMeters), latitudeSpan));
+		// far from the island
+		assertEquals(LandSeaGrid.SEA, grid.classify(170d, 71.05d, GeodesicDistanceIndex.longitudeSpan(71.05d, distanceMeters), latitudeSpan));
+	}
+
+}
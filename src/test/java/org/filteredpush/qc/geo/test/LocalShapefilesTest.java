@@ -0,0 +1,138 @@
+/**
+ *
+ */
+package org.filteredpush.qc.geo.test;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+
+import org.filteredpush.qc.georeference.util.BoundaryFile;
+import org.filteredpush.qc.georeference.util.LocalShapefiles;
+import org.filteredpush.qc.georeference.util.SpatialFilters;
+import org.geotools.api.data.FileDataStore;
+import org.geotools.api.data.FileDataStoreFinder;
+import org.geotools.api.filter.Filter;
+import org.junit.Test;
+
+/**
+ * Tests of extracting the bundled shapefiles and indexing the local copies.
+ *
+ * @author mole
+ *
+ */
+public class LocalShapefilesTest {
+
+	private static final String COUNTRIES = "/org.filteredpush.kuration.services/ne_10m_admin_0_countries.shp";
+	private static final String CENTROIDS = "/org.filteredpush.kuration.services/gbif_pcli_country_centroids.shp";
+
+	private static File temporaryDirectory() throws Exception {
+		File result = Files.createTempDirectory("LocalShapefilesTest").toFile();
+		result.deleteOnExit();
+		return result;
+	}
+
+	private static int count(File shapeFile, Filter filter, boolean indexed) throws Exception {
+		FileDataStore store = FileDataStoreFinder.getDataStore(shapeFile);
+		try {
+			if (indexed) {
+				LocalShapefiles.enableIndexing(store);
+			}
+			return store.getFeatureSource().getFeatures(filter).size();
+		} finally {
+			store.dispose();
+		}
+	}
+
+	@Test
+	public void testExtract() throws Exception {
+		File root = temporaryDirectory();
+		File countries = LocalShapefiles.extract(COUNTRIES, root);
+		assertEquals(new File(new File(root, "3.1.0"), "ne_10m_admin_0_countries.shp"), countries);
+		assertTrue(countries.isFile());
+		assertTrue(new File(countries.getParentFile(), "ne_10m_admin_0_countries.dbf").isFile());
+		assertTrue(new File(countries.getParentFile(), "ne_10m_admin_0_countries.shx").isFile());
+		// no VERSION file
+		File centroids = LocalShapefiles.extract(CENTROIDS, root);
+		assertEquals(new File(root, "unversioned"), centroids.getParentFile());
+
+		// the index is built on first use and kept while the copy is current
+		File index = new File(countries.getParentFile(), "ne_10m_admin_0_countries.qix");
+		Filter fiji = SpatialFilters.containsPoint(178.0d, -17.8d);
+		assertEquals(count(countries, fiji, false), count(countries, fiji, true));
+		assertEquals(1, count(countries, fiji, true));
+		assertTrue(index.isFile());
+		long extracted = countries.lastModified();
+		assertEquals(countries, LocalShapefiles.extract(COUNTRIES, root));
+		assertEquals(extracted, countries.lastModified());
+		assertTrue(index.isFile());
+
+		// a damaged copy is replaced, along with its index
+		RandomAccessFile damaged = new RandomAccessFile(countries, "rw");
+		try {
+			damaged.setLength(100);
+		} finally {
+			damaged.close();
+		}
+		LocalShapefiles.extract(COUNTRIES, root);
+		assertEquals(LocalShapefilesTest.class.getResource(COUNTRIES).openConnection().getContentLengthLong(), countries.length());
+		assertFalse(index.exists());
+		assertEquals(1, count(countries, fiji, true));
+	}
+
+	@Test
+	public void testExtractCompanion() throws Exception {
+		File root = temporaryDirectory();
+		File boundaries = LocalShapefiles.extractCompanion(COUNTRIES, BoundaryFile.EXTENSION, root);
+		assertEquals(new File(new File(root, "3.1.0"), "ne_10m_admin_0_countries" + BoundaryFile.EXTENSION), boundaries);
+		assertEquals(LocalShapefilesTest.class.getResource(BoundaryFile.getResource(COUNTRIES)).openConnection().getContentLengthLong(), boundaries.length());
+		assertEquals(BoundaryFile.readDataVersion(COUNTRIES), BoundaryFile.open(boundaries).getDataVersion());
+		// kept while current, so that each JVM maps the same file
+		long extracted = boundaries.lastModified();
+		assertEquals(boundaries, LocalShapefiles.extractCompanion(COUNTRIES, BoundaryFile.EXTENSION, root));
+		assertEquals(extracted, boundaries.lastModified());
+		try {
+			LocalShapefiles.extractCompanion(COUNTRIES, ".no_such_extension", root);
+			fail("Expected an IOException");
+		} catch (IOException e) {
+			// expected
+		}
+		assertNull(LocalShapefiles.getLocalCompanion(COUNTRIES, ".no_such_extension"));
+	}
+
+	@Test
+	public void testGetLocalShapefile() throws Exception {
+		String previous = System.getProperty(LocalShapefiles.DIRECTORY_PROPERTY);
+		try {
+			File root = temporaryDirectory();
+			System.setProperty(LocalShapefiles.DIRECTORY_PROPERTY, root.getPath());
+			File local = LocalShapefiles.getLocalShapefile(COUNTRIES);
+			assertNotNull(local);
+			assertTrue(local.isFile());
+			if ("file".equals(LocalShapefilesTest.class.getResource(COUNTRIES).getProtocol())) {
+				// already a file, so used in place
+				assertEquals(new File(LocalShapefilesTest.class.getResource(COUNTRIES).toURI()), local);
+			} else {
+				assertEquals(new File(root, "3.1.0"), local.getParentFile());
+				System.setProperty(LocalShapefiles.DIRECTORY_PROPERTY, "");
+				assertNull(LocalShapefiles.getLocalShapefile(COUNTRIES));
+			}
+			try {
+				LocalShapefiles.getLocalShapefile("/org.filteredpush.kuration.services/no_such_layer.shp");
+				fail("Expected an IOException");
+			} catch (IOException e) {
+				// expected
+			}
+		} finally {
+			if (previous==null) {
+				System.clearProperty(LocalShapefiles.DIRECTORY_PROPERTY);
+			} else {
+				System.setProperty(LocalShapefiles.DIRECTORY_PROPERTY, previous);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,186 @@
+/**
+ *
+ */
+package org.filteredpush.qc.geo.test;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.filteredpush.qc.georeference.EnumGeoRefSourceAuthority;
+import org.filteredpush.qc.georeference.util.AttributeMatch;
+import org.filteredpush.qc.georeference.util.GEOUtil;
+import org.filteredpush.qc.georeference.util.GISDataLoader;
+import org.filteredpush.qc.georeference.util.GeodesicDistanceIndex;
+import org.filteredpush.qc.georeference.util.IndexedFeatureLayer;
+import org.filteredpush.qc.georeference.util.OffHeapPolygonStore;
+import org.filteredpush.qc.georeference.util.SpatialFeature;
+import org.filteredpush.qc.georeference.util.SpatialLayerRegistry;
+import org.geotools.geometry.jts.JTSFactoryFinder;
+import org.junit.Test;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.LinearRing;
+import org.locationtech.jts.geom.Point;
+
+/**
+ * Compare point tests against the off heap polygon store with the same tests on JTS geometries.
+ *
+ * @author mole
+ *
+ */
+public class OffHeapPolygonStoreTest {
+
+	private static void assertSameAsJts(IndexedFeatureLayer layer, OffHeapPolygonStore store, double step, double distance) {
+		OffHeapPolygonStore.PolygonRef polygon = store.get(0);
+		for (double latitude=-85d; latitude<=85d; latitude=latitude+step) {
+			for (double longitude=-180d; longitude<=180d; longitude=longitude+step) {
+				Point point = layer.createPoint(longitude, latitude);
+				Envelope search = new Envelope(longitude, longitude, latitude, latitude);
+				search.expandBy(distance);
+				for (SpatialFeature feature : layer.queryEnvelope(search)) {
+					polygon.moveTo(feature.getId());
+					String message = feature.getId() + " " + point.toText();
+					assertEquals(message, feature.getPreparedGeometry().contains(point), polygon.contains(longitude, latitude));
+					assertEquals(message, feature.isWithinDistance(point, distance), polygon.isWithinDistance(longitude, latitude, distance));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testSyntheticBoundaries() throws Exception {
+		GeometryFactory geometryFactory = JTSFactoryFinder.getGeometryFactory(null);
+		LinearRing shell = geometryFactory.createLinearRing(new Coordinate[] {
+				new Coordinate(0d, 0d), new Coordinate(10d, 0d), new Coordinate(10d, 10d), new Coordinate(0d, 10d), new Coordinate(0d, 0d) });
+		LinearRing hole = geometryFactory.createLinearRing(new Coordinate[] {
+				new Coordinate(2d, 2d), new Coordinate(2d, 4d), new Coordinate(4d, 4d), new Coordinate(4d, 2d), new Coordinate(2d, 2d) });
+		List<SpatialFeature> features = new ArrayList<SpatialFeature>();
+		features.add(new SpatialFeature(0, new HashMap<String,Object>(), geometryFactory.createPolygon(shell, new LinearRing[] { hole })));
+		features.add(new SpatialFeature(1, new HashMap<String,Object>(), geometryFactory.createPoint(new Coordinate(20d, 20d))));
+		OffHeapPolygonStore store = OffHeapPolygonStore.of(new IndexedFeatureLayer("synthetic", features));
+		assertEquals(2, store.getFeatureCount());
+		assertEquals(2, store.get(0).getRingCount());
+		assertEquals(10, store.get(0).getVertexCount());
+
+		assertTrue(store.contains(0, 5d, 5d));
+		assertTrue(store.contains(0, 1d, 3d));
+		// in the hole, on the boundary of the hole, on a vertex, on an edge, outside
+		assertFalse(store.contains(0, 3d, 3d));
+		assertFalse(store.contains(0, 2d, 3d));
+		assertFalse(store.contains(0, 10d, 10d));
+		assertFalse(store.contains(0, 5d, 0d));
+		assertFalse(store.contains(0, 11d, 5d));
+		assertTrue(store.isWithinDistance(0, 3d, 3d, 0.99d));
+		assertFalse(store.isWithinDistance(0, 3d, 3d, 0.5d));
+		assertTrue(store.isWithinDistance(0, 5d, 0d, 0d));
+		assertTrue(store.isWithinDistance(0, 11d, 5d, 1d));
+		assertFalse(store.isWithinDistance(0, 11d, 5d, 0.9d));
+		// a point feature contains nothing, but has a distance
+		assertFalse(store.contains(1, 20d, 20d));
+		assertTrue(store.isWithinDistance(1, 23d, 24d, 5d));
+		assertFalse(store.isWithinDistance(1, 23d, 24d, 4.9d));
+
+		IndexedFeatureLayer layer = new IndexedFeatureLayer("synthetic", features);
+		OffHeapPolygonStore.PolygonRef polygon = store.get(0);
+		for (double latitude=-1d; latitude<=11d; latitude=latitude+0.25d) {
+			for (double longitude=-1d; longitude<=11d; longitude=longitude+0.25d) {
+				Point point = layer.createPoint(longitude, latitude);
+				assertEquals(point.toText(), features.get(0).getPreparedGeometry().contains(point), polygon.contains(longitude, latitude));
+				assertEquals(point.toText(), features.get(0).isWithinDistance(point, 0.3d), polygon.isWithinDistance(longitude, latitude, 0.3d));
+			}
+		}
+	}
+
+	@Test
+	public void testLongRings() throws Exception {
+		GeometryFactory geometryFactory = JTSFactoryFinder.getGeometryFactory(null);
+		// a ring of many more vertices than a run, around 5 north 5 east, and a square
+		Coordinate[] coordinates = new Coordinate[1001];
+		for (int i=0; i<1000; i++) {
+			double angle = 2d * Math.PI * i / 1000d;
+			coordinates[i] = new Coordinate(5d + 4d * Math.cos(angle), 5d + 4d * Math.sin(angle) + 0.5d * Math.sin(7d * angle));
+		}
+		coordinates[1000] = coordinates[0];
+		List<SpatialFeature> features = new ArrayList<SpatialFeature>();
+		Map<String,Object> wavy = new HashMap<String,Object>();
+		wavy.put("name", "Wavy");
+		wavy.put("admin", "Testland");
+		features.add(new SpatialFeature(0, wavy, geometryFactory.createPolygon(coordinates)));
+		Map<String,Object> square = new HashMap<String,Object>();
+		square.put("name", "Square");
+		square.put("admin", "Testland");
+		features.add(new SpatialFeature(1, square, geometryFactory.toGeometry(new Envelope(179d, 180d, 0d, 1d))));
+		IndexedFeatureLayer layer = new IndexedFeatureLayer("long", features);
+		OffHeapPolygonStore store = OffHeapPolygonStore.of(layer);
+		GeodesicDistanceIndex distances = new GeodesicDistanceIndex(layer);
+
+		for (double latitude=-1d; latitude<=11d; latitude=latitude+0.1d) {
+			for (double longitude=-1d; longitude<=11d; longitude=longitude+0.1d) {
+				Point point = layer.createPoint(longitude, latitude);
+				String message = point.toText();
+				assertEquals(message, features.get(0).getPreparedGeometry().contains(point), store.contains(0, longitude, latitude));
+				assertEquals(message, !layer.findContaining(longitude, latitude).isEmpty(), store.contains(longitude, latitude, null));
+				assertEquals(message, distances.isWithinDistance(longitude, latitude, 20000d, null), store.isWithinDistanceMeters(longitude, latitude, 20000d, null));
+			}
+		}
+
+		// queries over the layer, by attribute and across the antimeridian
+		BitSet testland = store.select(AttributeMatch.equal("admin", "TESTLAND"));
+		assertEquals(2, testland.cardinality());
+		assertEquals(1, store.select(AttributeMatch.prefix("name", "squ")).cardinality());
+		assertTrue(store.select(AttributeMatch.equal("name", null)).isEmpty());
+		assertEquals(0, store.findContaining(5d, 5d).nextSetBit(0));
+		assertTrue(store.findContaining(179d, 0.5d).isEmpty());
+		assertTrue(store.isWithinDistanceMeters(-179.99d, 0.5d, 2000d, store.select(AttributeMatch.equal("name", "Square"))));
+		assertFalse(store.isWithinDistanceMeters(-179.99d, 0.5d, 2000d, store.select(AttributeMatch.equal("name", "Wavy"))));
+		assertEquals(1, store.findWithinDistanceMeters(-179.99d, 0.5d, 2000d, null).nextSetBit(0));
+		List<String[]> rows = store.getAttributes(store.findContaining(179.5d, 0.5d), "name", "admin", "no_such_attribute");
+		assertEquals(1, rows.size());
+		assertArrayEquals(new String[] { "Square", "Testland", null }, rows.get(0));
+	}
+
+	@Test
+	public void testQueriedWithoutLoading() throws Exception {
+		SpatialLayerRegistry registry = SpatialLayerRegistry.getInstance();
+		assertTrue(registry.isOffHeap(EnumGeoRefSourceAuthority.NE_ADMIN_1));
+		assertTrue(registry.isOffHeap(EnumGeoRefSourceAuthority.NE_LAND_UNION_ISLANDS));
+		assertFalse(registry.isOffHeap(EnumGeoRefSourceAuthority.NE_ADMIN_0));
+		registry.release();
+		registry.warmUp(EnumGeoRefSourceAuthority.NE_ADMIN_1);
+		registry.warmUp(EnumGeoRefSourceAuthority.NE_LAND_UNION_ISLANDS);
+		assertTrue(GEOUtil.isPrimaryKnown("United States of America", "Massachusetts"));
+		assertTrue(GEOUtil.isPointInPrimary("United States of America", "Massachusetts", 42.36d, -71.06d));
+		assertFalse(GEOUtil.isPointInPrimary("United States of America", "Massachusetts", -20d, 145d));
+		assertTrue(GEOUtil.isPointNearPrimaryAllowDuplicates("Massachusetts", 42.36d, -71.06d, 5d));
+		assertTrue(GISDataLoader.isWithinLand(-71.06d, 42.36d));
+		assertFalse(GISDataLoader.isWithinLand(-140d, 0d));
+		assertTrue(GISDataLoader.isWithinDistanceOfLand(-70.9d, 42.36d, 20000d));
+		assertFalse(registry.getLayer(EnumGeoRefSourceAuthority.NE_ADMIN_1).isLoaded());
+		assertFalse(registry.getLayer(EnumGeoRefSourceAuthority.NE_LAND_UNION_ISLANDS).isLoaded());
+	}
+
+	@Test
+	public void testPrimaryDivisionsMatchJts() throws Exception {
+		SpatialLayerRegistry registry = SpatialLayerRegistry.getInstance();
+		IndexedFeatureLayer layer = registry.getFeatureLayer(EnumGeoRefSourceAuthority.NE_ADMIN_1);
+		OffHeapPolygonStore store = registry.getPolygonStore(EnumGeoRefSourceAuthority.NE_ADMIN_1);
+		assertEquals(layer.getFeatures().size(), store.getFeatureCount());
+		assertSame(store, registry.getPolygonStore(EnumGeoRefSourceAuthority.NE_ADMIN_1));
+		assertSameAsJts(layer, store, 1.5d, 0.25d);
+	}
+
+	@Test
+	public void testLandMatchesJts() throws Exception {
+		SpatialLayerRegistry registry = SpatialLayerRegistry.getInstance();
+		IndexedFeatureLayer layer = registry.getFeatureLayer(EnumGeoRefSourceAuthority.NE_LAND_UNION_ISLANDS);
+		OffHeapPolygonStore store = registry.getPolygonStore(EnumGeoRefSourceAuthority.NE_LAND_UNION_ISLANDS);
+		assertSameAsJts(layer, store, 10d, 0.5d);
+	}
+
+}
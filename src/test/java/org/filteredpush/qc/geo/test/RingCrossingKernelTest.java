@@ -0,0 +1,110 @@
+/**
+ *
+ */
+package org.filteredpush.qc.geo.test;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.filteredpush.qc.georeference.EnumGeoRefSourceAuthority;
+import org.filteredpush.qc.georeference.util.IndexedFeatureLayer;
+import org.filteredpush.qc.georeference.util.RingCrossingKernel;
+import org.filteredpush.qc.georeference.util.SpatialFeature;
+import org.filteredpush.qc.georeference.util.SpatialLayerRegistry;
+import org.geotools.geometry.jts.JTSFactoryFinder;
+import org.junit.Test;
+import org.locationtech.jts.algorithm.locate.SimplePointInAreaLocator;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.LinearRing;
+import org.locationtech.jts.geom.Polygon;
+
+/**
+ * Check the point in polygon kernel against the JTS point locator.
+ *
+ * @author mole
+ *
+ */
+public class RingCrossingKernelTest {
+
+	private static LinearRing raggedRing(GeometryFactory geometryFactory, Random random, double x, double y, double radius, int vertices) {
+		Coordinate[] ring = new Coordinate[vertices + 1];
+		for (int i=0; i<vertices; i++) {
+			double angle = 2d * Math.PI * i / vertices;
+			double r = radius * (1d + random.nextDouble() * 0.2d);
+			// round the vertices so that test points can fall exactly on them and on horizontal edges
+			ring[i] = new Coordinate(Math.rint((x + r * Math.cos(angle)) * 100d) / 100d, Math.rint((y + r * Math.sin(angle)) * 100d) / 100d);
+		}
+		ring[vertices] = ring[0];
+		return geometryFactory.createLinearRing(ring);
+	}
+
+	private static void assertSameAsJts(Geometry geometry, RingCrossingKernel kernel, double x, double y) {
+		int expected = SimplePointInAreaLocator.locate(new Coordinate(x, y), geometry);
+		assertEquals("POINT(" + x + " " + y + ")", expected, kernel.locate(x, y));
+	}
+
+	@Test
+	public void testRaggedPolygonWithHoles() {
+		GeometryFactory geometryFactory = JTSFactoryFinder.getGeometryFactory(null);
+		Random random = new Random(7L);
+		LinearRing shell = raggedRing(geometryFactory, random, 0d, 0d, 10d, 2000);
+		LinearRing[] holes = new LinearRing[] {
+				raggedRing(geometryFactory, random, -3d, 0d, 2d, 200),
+				raggedRing(geometryFactory, random, 4d, 3d, 1.5d, 150) };
+		Polygon polygon = geometryFactory.createPolygon(shell, holes);
+		Polygon island = geometryFactory.createPolygon(raggedRing(geometryFactory, random, 30d, -5d, 3d, 300));
+		Geometry geometry = geometryFactory.createMultiPolygon(new Polygon[] { polygon, island });
+		RingCrossingKernel kernel = new RingCrossingKernel(geometry);
+		assertEquals(geometry.getNumPoints() - 4, kernel.getEdgeCount());
+		assertTrue(kernel.getBandCount() > 1);
+
+		for (int i=0; i<50000; i++) {
+			assertSameAsJts(geometry, kernel, -15d + random.nextDouble() * 50d, -15d + random.nextDouble() * 30d);
+		}
+		// points on the rounded grid hit vertices, edges, and horizontal edges exactly
+		for (double y=-13d; y<=13d; y=y+0.01d) {
+			double rounded = Math.rint(y * 100d) / 100d;
+			for (double x=-13d; x<=34d; x=x+0.37d) {
+				assertSameAsJts(geometry, kernel, Math.rint(x * 100d) / 100d, rounded);
+			}
+		}
+		for (Coordinate vertex : geometry.getCoordinates()) {
+			assertSameAsJts(geometry, kernel, vertex.x, vertex.y);
+		}
+	}
+
+	@Test
+	public void testSupports() {
+		GeometryFactory geometryFactory = JTSFactoryFinder.getGeometryFactory(null);
+		assertFalse(RingCrossingKernel.supports(null));
+		assertFalse(RingCrossingKernel.supports(geometryFactory.createPoint(new Coordinate(1d, 1d))));
+		assertFalse(RingCrossingKernel.supports(geometryFactory.createPolygon()));
+		try {
+			new RingCrossingKernel(geometryFactory.createPoint(new Coordinate(1d, 1d)));
+			fail("Expected an IllegalArgumentException");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testCountriesMatchJts() throws Exception {
+		IndexedFeatureLayer countries = SpatialLayerRegistry.getInstance().getFeatureLayer(EnumGeoRefSourceAuthority.NE_ADMIN_0);
+		for (double latitude=-89.5d; latitude<=89.5d; latitude=latitude+0.5d) {
+			for (double longitude=-180d; longitude<=180d; longitude=longitude+0.5d) {
+				for (SpatialFeature feature : countries.queryEnvelope(new Envelope(longitude, longitude, latitude, latitude))) {
+					RingCrossingKernel kernel = feature.getRingKernel();
+					if (kernel!=null) {
+						boolean expected = feature.getPreparedGeometry().contains(countries.createPoint(longitude, latitude));
+						assertEquals(feature.getAttributeAsString("NAME") + " " + longitude + " " + latitude, expected, kernel.contains(longitude, latitude));
+					}
+				}
+			}
+		}
+	}
+
+}
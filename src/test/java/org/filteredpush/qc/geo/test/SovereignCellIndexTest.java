@@ -0,0 +1,80 @@
+/**
+ *
+ */
+package org.filteredpush.qc.geo.test;
+
+import static org.junit.Assert.*;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.filteredpush.qc.georeference.util.GEOUtil;
+import org.filteredpush.qc.georeference.util.IndexedFeatureLayer;
+import org.filteredpush.qc.georeference.util.SovereignCellIndex;
+import org.filteredpush.qc.georeference.util.SpatialFeature;
+import org.geotools.api.data.FileDataStore;
+import org.geotools.api.data.FileDataStoreFinder;
+import org.geotools.api.data.SimpleFeatureSource;
+import org.geotools.api.feature.simple.SimpleFeature;
+import org.geotools.api.filter.Filter;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.filter.text.ecql.ECQL;
+import org.junit.Test;
+
+/**
+ * Compare the reverse geocoding cell index with queries against the merged countries and EEZ shapefile.
+ *
+ * @author mole
+ *
+ */
+public class SovereignCellIndexTest {
+
+	private static final Log logger = LogFactory.getLog(SovereignCellIndexTest.class);
+
+	@Test
+	public void testGetCountryForPoint() {
+		assertEquals("CHL", GEOUtil.getCountryForPoint("-20", "-72"));
+		assertEquals("CHL", GEOUtil.getCountryForPoint("-33.45", "-70.66"));
+		assertNull(GEOUtil.getCountryForPoint("0", "-140"));
+		assertNull(GEOUtil.getCountryForPoint("abc", "-72"));
+		assertNull(GEOUtil.getCountryForPoint(null, "-72"));
+	}
+
+	@Test
+	public void testIndexMatchesShapefile() throws Exception {
+		URL combinedShapeFile = GEOUtil.class.getResource("/org.filteredpush.kuration.services/merged_countries_and_eez.shp");
+		SovereignCellIndex index = new SovereignCellIndex(IndexedFeatureLayer.load(combinedShapeFile));
+		FileDataStore store = FileDataStoreFinder.getDataStore(combinedShapeFile);
+		try {
+			SimpleFeatureSource featureSource = store.getFeatureSource();
+			for (double latitude=-60d; latitude<=80d; latitude=latitude+3.7d) {
+				for (double longitude=-180d; longitude<=180d; longitude=longitude+3.7d) {
+					Filter filter = ECQL.toFilter("CONTAINS(the_geom, POINT(" + Double.toString(longitude) + " " + Double.toString(latitude) + "))");
+					List<SpatialFeature> matches = new ArrayList<SpatialFeature>();
+					SimpleFeatureIterator i = featureSource.getFeatures(filter).features();
+					try {
+						while (i.hasNext()) {
+							SimpleFeature feature = i.next();
+							Map<String,Object> attributes = new HashMap<String,Object>();
+							attributes.put("ISO_SOV1", feature.getAttribute("ISO_SOV1"));
+							attributes.put("ISO_SOV2", feature.getAttribute("ISO_SOV2"));
+							matches.add(new SpatialFeature(matches.size(), attributes, null));
+						}
+					} finally {
+						i.close();
+					}
+					String expected = SovereignCellIndex.resolveSovereign(matches);
+					assertEquals(latitude + " " + longitude, expected, index.getSovereign(longitude, latitude));
+				}
+			}
+		} finally {
+			store.dispose();
+		}
+	}
+
+}
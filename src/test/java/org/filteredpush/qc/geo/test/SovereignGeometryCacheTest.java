@@ -0,0 +1,97 @@
+/**
+ *
+ */
+package org.filteredpush.qc.geo.test;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.filteredpush.qc.georeference.EnumGeoRefSourceAuthority;
+import org.filteredpush.qc.georeference.util.GEOUtil;
+import org.filteredpush.qc.georeference.util.IndexedFeatureLayer;
+import org.filteredpush.qc.georeference.util.SovereignGeometryCache;
+import org.filteredpush.qc.georeference.util.SpatialFeature;
+import org.filteredpush.qc.georeference.util.SpatialLayerRegistry;
+import org.geotools.geometry.jts.JTSFactoryFinder;
+import org.junit.Test;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.GeometryFactory;
+
+/**
+ * Tests of the cache of dissolved sovereign land and EEZ geometries.
+ *
+ * @author mole
+ *
+ */
+public class SovereignGeometryCacheTest {
+
+	private static SpatialFeature square(GeometryFactory geometryFactory, int id, String sovereign, Envelope envelope) {
+		Map<String,Object> attributes = new HashMap<String,Object>();
+		attributes.put(SovereignGeometryCache.SOVEREIGN_ATTRIBUTE, sovereign);
+		return new SpatialFeature(id, attributes, geometryFactory.toGeometry(envelope));
+	}
+
+	@Test
+	public void testSyntheticSovereigns() {
+		GeometryFactory geometryFactory = JTSFactoryFinder.getGeometryFactory(null);
+		List<SpatialFeature> features = new ArrayList<SpatialFeature>();
+		// land and EEZ of AAA share an edge, and dissolve into one rectangle
+		features.add(square(geometryFactory, 0, "AAA", new Envelope(0d, 1d, 0d, 1d)));
+		features.add(square(geometryFactory, 1, "AAA", new Envelope(1d, 2d, 0d, 1d)));
+		features.add(square(geometryFactory, 2, "BBB", new Envelope(10d, 11d, 0d, 1d)));
+		features.add(square(geometryFactory, 3, "CCC", new Envelope(20d, 21d, 0d, 1d)));
+		SovereignGeometryCache cache = new SovereignGeometryCache(new IndexedFeatureLayer("test", features), 2, 2);
+
+		assertNull(cache.getSovereignGeometry("ZZZ"));
+		assertEquals(0, cache.getSovereignCount());
+		assertFalse(cache.isWithinDistance("ZZZ", 0.5d, 0.5d, 1000d));
+
+		assertEquals(2d, cache.getSovereignGeometry("aaa").getGeometry().getArea(), 1e-9d);
+		assertSame(cache.getSovereignGeometry("AAA"), cache.getSovereignGeometry("aaa"));
+		// on the former shared edge, on the outer boundary, and outside
+		assertTrue(cache.isWithinDistance("AAA", 1d, 0.5d, 0d));
+		assertTrue(cache.isWithinDistance("AAA", 2d, 0.5d, 0d));
+		assertFalse(cache.isWithinDistance("AAA", 2.01d, 0.5d, 0d));
+		// 0.01 degrees east at the equator is about 1.1 km
+		assertTrue(cache.isWithinDistance("AAA", 2.01d, 0.5d, 2000d));
+		assertFalse(cache.isWithinDistance("AAA", 2.01d, 0.5d, 1000d));
+		assertFalse(cache.isWithinDistance("AAA", 5d, 0.5d, 2000d));
+		assertEquals(1, cache.getBufferedCount());
+
+		// the least recently used entries are discarded
+		assertTrue(cache.isWithinDistance("BBB", 10.5d, 0.5d, 0d));
+		assertTrue(cache.isWithinDistance("CCC", 20.5d, 0.5d, 0d));
+		assertEquals(2, cache.getSovereignCount());
+		assertTrue(cache.isWithinDistance("AAA", 2.005d, 0.5d, 1000d));
+		assertTrue(cache.isWithinDistance("BBB", 11.005d, 0.5d, 1000d));
+		assertTrue(cache.isWithinDistance("BBB", 11.005d, 0.5d, 3000d));
+		assertEquals(2, cache.getBufferedCount());
+		cache.clear();
+		assertEquals(0, cache.getSovereignCount());
+		assertEquals(0, cache.getBufferedCount());
+	}
+
+	@Test
+	public void testCountriesPlusEEZ() throws Exception {
+		SovereignGeometryCache cache = SpatialLayerRegistry.getInstance().getSovereignGeometryCache();
+		assertSame(cache, SpatialLayerRegistry.getInstance().getSovereignGeometryCache());
+		assertNotNull(cache.getSovereignGeometry("CHL"));
+		assertTrue(cache.isWithinDistance("CHL", -70.66d, -33.45d, 0d));
+		assertTrue(GEOUtil.isPointNearCountryPlusEEZ("CHL", -33.45d, -70.66d, 3d));
+		assertFalse(GEOUtil.isPointNearCountryPlusEEZ("CHL", 33.45d, 70.66d, 3d));
+		assertFalse(GEOUtil.isPointNearCountryPlusEEZ("XXX", -33.45d, -70.66d, 3d));
+		// agrees with a test against each feature of the country
+		IndexedFeatureLayer countriesPlusEEZ = SpatialLayerRegistry.getInstance().getFeatureLayer(EnumGeoRefSourceAuthority.ADM1_UNION_EEZ);
+		double[][] points = { { -33.45d, -70.66d }, { -20d, -72d }, { -20d, -90d }, { -54.8d, -68.3d }, { 10d, -70d } };
+		for (double[] point : points) {
+			boolean expected = countriesPlusEEZ.getDistanceIndex().isWithinDistance(point[1], point[0], 3000d,
+					countriesPlusEEZ.getAttributeIndex(SovereignGeometryCache.SOVEREIGN_ATTRIBUTE).selectEqual("CHL"));
+			assertEquals(expected, cache.isWithinDistance("CHL", point[1], point[0], 3000d));
+		}
+	}
+
+}
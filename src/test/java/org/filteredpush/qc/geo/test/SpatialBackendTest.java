@@ -0,0 +1,163 @@
+/**
+ *
+ */
+package org.filteredpush.qc.geo.test;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.filteredpush.qc.georeference.EnumGeoRefSourceAuthority;
+import org.filteredpush.qc.georeference.util.AttributeMatch;
+import org.filteredpush.qc.georeference.util.GeoToolsSpatialBackend;
+import org.filteredpush.qc.georeference.util.MappedSpatialBackend;
+import org.filteredpush.qc.georeference.util.ResidentSpatialBackend;
+import org.filteredpush.qc.georeference.util.SpatialBackend;
+import org.filteredpush.qc.georeference.util.SpatialLayerRegistry;
+import org.junit.Test;
+
+/**
+ * Tests that the spatial backends give the same answers as the GeoTools reference backend.
+ *
+ * @author mole
+ *
+ */
+public class SpatialBackendTest {
+
+	/** longitude, latitude pairs, including points across the antimeridian and at sea. */
+	private static final double[][] POINTS = {
+			{ 178.0d, -17.8d }, { -179.9d, -16.5d }, { -71.06d, 42.36d }, { 0d, 0d },
+			{ 145d, -20d }, { 175d, 66d }, { 2.35d, 48.85d }, { -46.6d, -23.5d }, { -72.5d, 42.2d }
+	};
+
+	private static AttributeMatch match(String... pairs) {
+		AttributeMatch[] matches = new AttributeMatch[pairs.length / 2];
+		for (int i=0; i<pairs.length; i=i+2) {
+			matches[i / 2] = AttributeMatch.equal(pairs[i], pairs[i + 1]);
+		}
+		return AttributeMatch.allOf(matches);
+	}
+
+	private static void assertSameRows(String message, List<String[]> expected, List<String[]> actual) {
+		assertEquals(message, expected.size(), actual.size());
+		for (int i=0; i<expected.size(); i++) {
+			assertArrayEquals(message, expected.get(i), actual.get(i));
+		}
+	}
+
+	@Test
+	public void testSelection() {
+		SpatialLayerRegistry registry = SpatialLayerRegistry.getInstance();
+		assertEquals(System.getProperty(SpatialLayerRegistry.BACKEND_PROPERTY, SpatialLayerRegistry.DEFAULT_BACKEND), registry.getBackend().getName());
+		assertTrue(registry.createBackend("GeoTools") instanceof GeoToolsSpatialBackend);
+		assertTrue(registry.createBackend("resident") instanceof ResidentSpatialBackend);
+		assertTrue(registry.createBackend(" mapped ") instanceof MappedSpatialBackend);
+		try {
+			registry.createBackend("postgis");
+			fail("Expected an IllegalArgumentException");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testBackendsAgree() throws Exception {
+		SpatialLayerRegistry registry = SpatialLayerRegistry.getInstance();
+		SpatialBackend reference = registry.createBackend(GeoToolsSpatialBackend.NAME);
+		SpatialBackend[] backends = { registry.createBackend(ResidentSpatialBackend.NAME), registry.createBackend(MappedSpatialBackend.NAME) };
+		List<AttributeMatch> countryMatches = Arrays.asList(
+				AttributeMatch.all(), match("NAME", "Fiji"), match("NAME", "fiji"), match("NAME", "Russia"),
+				match("NAME", "United States of America"), match("NAME", "No Such Country"));
+		List<AttributeMatch> primaryMatches = Arrays.asList(
+				match("name", "Massachusetts", "admin", "United States of America"), match("name", "Queensland", "admin", "Australia"),
+				match("name", "Massachusetts", "admin", "Australia"), match("name", "Chukchi Autonomous Okrug"),
+				AttributeMatch.anyOf(AttributeMatch.equal("name", "Queensland"), AttributeMatch.prefix("woe_label", "Massachusetts")),
+				AttributeMatch.allOf(AttributeMatch.prefix("name", "mass"), AttributeMatch.suffix("woe_label", "united states")));
+		List<AttributeMatch> centroidMatches = Arrays.asList(
+				AttributeMatch.all(), match("iso2", "FJ"), match("iso2", "US"), match("iso2", null));
+
+		for (SpatialBackend backend : backends) {
+			for (AttributeMatch countryMatch : countryMatches) {
+				assertEquals(backend.getName() + countryMatch, reference.isKnown(EnumGeoRefSourceAuthority.NE_ADMIN_0, countryMatch), backend.isKnown(EnumGeoRefSourceAuthority.NE_ADMIN_0, countryMatch));
+			}
+			for (AttributeMatch primaryMatch : primaryMatches) {
+				assertEquals(backend.getName() + primaryMatch, reference.isKnown(EnumGeoRefSourceAuthority.NE_ADMIN_1, primaryMatch), backend.isKnown(EnumGeoRefSourceAuthority.NE_ADMIN_1, primaryMatch));
+			}
+			for (double[] point : POINTS) {
+				String at = " at " + point[0] + " " + point[1];
+				for (AttributeMatch countryMatch : countryMatches) {
+					String message = backend.getName() + countryMatch + at;
+					assertEquals(message, reference.contains(EnumGeoRefSourceAuthority.NE_ADMIN_0, countryMatch, point[0], point[1]),
+							backend.contains(EnumGeoRefSourceAuthority.NE_ADMIN_0, countryMatch, point[0], point[1]));
+					assertEquals(message, reference.isWithinDistance(EnumGeoRefSourceAuthority.NE_ADMIN_0, countryMatch, point[0], point[1], 50000d),
+							backend.isWithinDistance(EnumGeoRefSourceAuthority.NE_ADMIN_0, countryMatch, point[0], point[1], 50000d));
+				}
+				for (AttributeMatch primaryMatch : primaryMatches) {
+					assertEquals(backend.getName() + primaryMatch + at, reference.contains(EnumGeoRefSourceAuthority.NE_ADMIN_1, primaryMatch, point[0], point[1]),
+							backend.contains(EnumGeoRefSourceAuthority.NE_ADMIN_1, primaryMatch, point[0], point[1]));
+					assertEquals(backend.getName() + primaryMatch + at, reference.isWithinDistance(EnumGeoRefSourceAuthority.NE_ADMIN_1, primaryMatch, point[0], point[1], 50000d),
+							backend.isWithinDistance(EnumGeoRefSourceAuthority.NE_ADMIN_1, primaryMatch, point[0], point[1], 50000d));
+				}
+				assertSameRows(backend.getName() + at, reference.findContaining(EnumGeoRefSourceAuthority.NE_ADMIN_1, point[0], point[1], "name", "admin"),
+						backend.findContaining(EnumGeoRefSourceAuthority.NE_ADMIN_1, point[0], point[1], "name", "admin"));
+				for (AttributeMatch centroidMatch : centroidMatches) {
+					assertEquals(backend.getName() + centroidMatch + at, reference.isWithinDistance(EnumGeoRefSourceAuthority.GBIF_CENTROIDS, centroidMatch, point[0], point[1], 100000d),
+							backend.isWithinDistance(EnumGeoRefSourceAuthority.GBIF_CENTROIDS, centroidMatch, point[0], point[1], 100000d));
+				}
+				assertEquals(backend.getName() + at, reference.contains(EnumGeoRefSourceAuthority.NE_LAND_UNION_ISLANDS, AttributeMatch.all(), point[0], point[1]),
+						backend.contains(EnumGeoRefSourceAuthority.NE_LAND_UNION_ISLANDS, AttributeMatch.all(), point[0], point[1]));
+				assertEquals(backend.getName() + at, reference.isWithinDistance(EnumGeoRefSourceAuthority.NE_LAND_UNION_ISLANDS, AttributeMatch.all(), point[0], point[1], 100000d),
+						backend.isWithinDistance(EnumGeoRefSourceAuthority.NE_LAND_UNION_ISLANDS, AttributeMatch.all(), point[0], point[1], 100000d));
+				assertEquals(backend.getName() + at, reference.isWithinDistance(EnumGeoRefSourceAuthority.ADM1_UNION_EEZ, match("ISO_SOV1", "FJI"), point[0], point[1], 50000d),
+						backend.isWithinDistance(EnumGeoRefSourceAuthority.ADM1_UNION_EEZ, match("ISO_SOV1", "FJI"), point[0], point[1], 50000d));
+				assertEquals(backend.getName() + at, reference.findSovereign(point[0], point[1]), backend.findSovereign(point[0], point[1]));
+			}
+		}
+		assertTrue(reference.contains(EnumGeoRefSourceAuthority.NE_ADMIN_0, match("NAME", "fiji"), 178.0d, -17.8d));
+		assertFalse(reference.contains(EnumGeoRefSourceAuthority.NE_ADMIN_0, match("NAME", "Fiji"), 0d, 0d));
+		assertFalse(reference.isKnown(EnumGeoRefSourceAuthority.NE_ADMIN_0, match("NAME", null)));
+		assertEquals("FJI", reference.findSovereign(178.0d, -17.8d));
+	}
+
+	@Test
+	public void testWarmUp() throws Exception {
+		SpatialLayerRegistry registry = SpatialLayerRegistry.getInstance();
+		registry.release();
+		// the GeoTools backend opens the shapefile, without loading the features
+		registry.createBackend(GeoToolsSpatialBackend.NAME).warmUp(EnumGeoRefSourceAuthority.NE_ADMIN_0);
+		assertFalse(registry.getLayer(EnumGeoRefSourceAuthority.NE_ADMIN_0).isLoaded());
+		registry.createBackend(ResidentSpatialBackend.NAME).warmUp(EnumGeoRefSourceAuthority.NE_ADMIN_0);
+		assertTrue(registry.getLayer(EnumGeoRefSourceAuthority.NE_ADMIN_0).isLoaded());
+		// the registry warms up the layer for the backend which answers its queries
+		registry.warmUp(EnumGeoRefSourceAuthority.NE_LAND_UNION_ISLANDS);
+		assertFalse(registry.getLayer(EnumGeoRefSourceAuthority.NE_LAND_UNION_ISLANDS).isLoaded());
+		try {
+			registry.warmUp(EnumGeoRefSourceAuthority.GADM_ADM1);
+			fail("Expected an IllegalArgumentException");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testResidentAndMappedAgree() throws Exception {
+		SpatialLayerRegistry registry = SpatialLayerRegistry.getInstance();
+		SpatialBackend resident = registry.createBackend(ResidentSpatialBackend.NAME);
+		SpatialBackend mapped = registry.createBackend(MappedSpatialBackend.NAME);
+		for (double latitude=-88.5d; latitude<=88.5d; latitude=latitude+3d) {
+			for (double longitude=-180d; longitude<=180d; longitude=longitude+3d) {
+				String message = longitude + " " + latitude;
+				assertSameRows(message, resident.findContaining(EnumGeoRefSourceAuthority.NE_ADMIN_0, longitude, latitude, "NAME", "ISO_A3"),
+						mapped.findContaining(EnumGeoRefSourceAuthority.NE_ADMIN_0, longitude, latitude, "NAME", "ISO_A3"));
+				assertSameRows(message, resident.findContaining(EnumGeoRefSourceAuthority.ADM1_UNION_EEZ, longitude, latitude, "ISO_SOV1", "ISO_SOV2"),
+						mapped.findContaining(EnumGeoRefSourceAuthority.ADM1_UNION_EEZ, longitude, latitude, "ISO_SOV1", "ISO_SOV2"));
+				assertEquals(message, resident.contains(EnumGeoRefSourceAuthority.NE_LAND_UNION_ISLANDS, AttributeMatch.all(), longitude, latitude),
+						mapped.contains(EnumGeoRefSourceAuthority.NE_LAND_UNION_ISLANDS, AttributeMatch.all(), longitude, latitude));
+				assertEquals(message, resident.isWithinDistance(EnumGeoRefSourceAuthority.NE_LAND_UNION_ISLANDS, AttributeMatch.all(), longitude, latitude, 100000d),
+						mapped.isWithinDistance(EnumGeoRefSourceAuthority.NE_LAND_UNION_ISLANDS, AttributeMatch.all(), longitude, latitude, 100000d));
+			}
+		}
+	}
+
+}
@@ -0,0 +1,94 @@
+/**
+ *
+ */
+package org.filteredpush.qc.geo.test;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+
+import org.filteredpush.qc.georeference.EnumGeoRefSourceAuthority;
+import org.filteredpush.qc.georeference.util.GEOUtil;
+import org.filteredpush.qc.georeference.util.GISDataLoader;
+import org.filteredpush.qc.georeference.util.SpatialBatch;
+import org.filteredpush.qc.georeference.util.SpatialFeature;
+import org.filteredpush.qc.georeference.util.SpatialLayerRegistry;
+import org.junit.Test;
+
+/**
+ * Tests of batch point queries against the single point lookups.
+ *
+ * @author mole
+ *
+ */
+public class SpatialBatchTest {
+
+	private static final double[] LATITUDES = { -33.45d, 42.37d, 0d, -20d, 90d, Double.NaN, 41.3d, -33.45d };
+	private static final double[] LONGITUDES = { -70.66d, -71.1d, -140d, -72d, 0d, 10d, 2.17d, -70.66d };
+
+	@Test
+	public void testHilbertOrder() {
+		int[] order = SpatialBatch.hilbertOrder(LATITUDES, LONGITUDES);
+		int[] sorted = order.clone();
+		Arrays.sort(sorted);
+		for (int i=0; i<sorted.length; i++) {
+			assertEquals(i, sorted[i]);
+		}
+		assertEquals(0, SpatialBatch.hilbertOrder(new double[0], new double[0]).length);
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testMismatchedLengths() {
+		SpatialBatch.hilbertOrder(new double[1], new double[2]);
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testUnsupportedLayer() throws Exception {
+		SpatialBatch.classify(EnumGeoRefSourceAuthority.GBIF_CENTROIDS, LATITUDES, LONGITUDES);
+	}
+
+	@Test
+	public void testClassifyCountries() throws Exception {
+		int[] ids = SpatialBatch.classify(EnumGeoRefSourceAuthority.NE_ADMIN_0, LATITUDES, LONGITUDES);
+		assertEquals(LATITUDES.length, ids.length);
+		for (int i=0; i<ids.length; i++) {
+			if (ids[i]==SpatialBatch.NO_FEATURE) {
+				continue;
+			}
+			SpatialFeature feature = SpatialLayerRegistry.getInstance().getFeatureLayer(EnumGeoRefSourceAuthority.NE_ADMIN_0).getFeatures().get(ids[i]);
+			assertTrue(GEOUtil.isPointInCountry(feature.getAttributeAsString("NAME"), LATITUDES[i], LONGITUDES[i]));
+		}
+		SpatialFeature chile = SpatialLayerRegistry.getInstance().getFeatureLayer(EnumGeoRefSourceAuthority.NE_ADMIN_0).getFeatures().get(ids[0]);
+		assertEquals("Chile", chile.getAttributeAsString("NAME"));
+		assertEquals(ids[0], ids[7]);
+		assertEquals(SpatialBatch.NO_FEATURE, ids[2]);
+		assertEquals(SpatialBatch.NO_FEATURE, ids[5]);
+	}
+
+	@Test
+	public void testLand() throws Exception {
+		boolean[] onLand = SpatialBatch.contains(EnumGeoRefSourceAuthority.NE_LAND_UNION_ISLANDS, LATITUDES, LONGITUDES);
+		int[] ids = SpatialBatch.classify(EnumGeoRefSourceAuthority.NE_LAND_UNION_ISLANDS, LATITUDES, LONGITUDES);
+		boolean[] nearLand = SpatialBatch.isWithinDistance(EnumGeoRefSourceAuthority.NE_LAND_UNION_ISLANDS, LATITUDES, LONGITUDES, 50d);
+		for (int i=0; i<LATITUDES.length; i++) {
+			assertEquals(GISDataLoader.isWithinLand(LONGITUDES[i], LATITUDES[i]), onLand[i]);
+			assertEquals(onLand[i], ids[i]!=SpatialBatch.NO_FEATURE);
+			assertEquals(GISDataLoader.isWithinDistanceOfLand(LONGITUDES[i], LATITUDES[i], 50000d), nearLand[i]);
+		}
+		assertTrue(onLand[0]);
+		assertFalse(onLand[2]);
+		assertFalse(onLand[3]);
+	}
+
+	@Test
+	public void testSovereigns() throws Exception {
+		String[] sovereigns = SpatialBatch.getSovereigns(LATITUDES, LONGITUDES);
+		for (int i=0; i<LATITUDES.length; i++) {
+			if (!Double.isNaN(LATITUDES[i])) {
+				assertEquals(GEOUtil.getCountryForPoint(Double.toString(LATITUDES[i]), Double.toString(LONGITUDES[i])), sovereigns[i]);
+			}
+		}
+		assertEquals("CHL", sovereigns[3]);
+	}
+
+}
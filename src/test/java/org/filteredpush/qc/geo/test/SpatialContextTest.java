@@ -0,0 +1,74 @@
+/**
+ *
+ */
+package org.filteredpush.qc.geo.test;
+
+import static org.junit.Assert.*;
+
+import org.datakurator.ffdq.api.DQResponse;
+import org.datakurator.ffdq.api.ResultState;
+import org.datakurator.ffdq.api.result.AmendmentValue;
+import org.datakurator.ffdq.api.result.ComplianceValue;
+import org.filteredpush.qc.georeference.DwCGeoRefDQ;
+import org.filteredpush.qc.georeference.EnumGeoRefSourceAuthority;
+import org.filteredpush.qc.georeference.util.AttributeMatch;
+import org.filteredpush.qc.georeference.util.GEOUtil;
+import org.filteredpush.qc.georeference.util.SpatialContext;
+import org.junit.Test;
+
+/**
+ * Tests of the per coordinate spatial lookups shared between tests on a record.
+ *
+ * @author mole
+ *
+ */
+public class SpatialContextTest {
+
+	@Test
+	public void testForCoordinate() {
+		SpatialContext context = new SpatialContext(-33.45d, -70.66d);
+		assertSame(context, SpatialContext.forCoordinate(context, -33.45d, -70.66d));
+		assertSame(context, SpatialContext.forCoordinate(context, " -33.45", "-70.66 "));
+		assertNotSame(context, SpatialContext.forCoordinate(context, -70.66d, -33.45d));
+		assertNotNull(SpatialContext.forCoordinate(null, -33.45d, -70.66d));
+		assertNull(SpatialContext.forCoordinate(context, "abc", "-70.66"));
+		assertNull(SpatialContext.forCoordinate(context, null, "-70.66"));
+	}
+
+	@Test
+	public void testLookups() throws Exception {
+		SpatialContext context = new SpatialContext(-33.45d, -70.66d);
+		assertEquals("CHL", context.getSovereign());
+		assertEquals("CHL", GEOUtil.getCountryForPoint(context));
+		assertTrue(context.isOnLand());
+		assertTrue(context.isOnOrNearLand(3d));
+		assertEquals(1, context.getContaining(EnumGeoRefSourceAuthority.NE_ADMIN_0, "NAME").size());
+		assertEquals("Chile", context.getContaining(EnumGeoRefSourceAuthority.NE_ADMIN_0, "NAME").get(0)[0]);
+		assertSame(context.getContaining(EnumGeoRefSourceAuthority.NE_ADMIN_0, "NAME"), context.getContaining(EnumGeoRefSourceAuthority.NE_ADMIN_0, "NAME"));
+		assertTrue(context.isWithinDistance(EnumGeoRefSourceAuthority.NE_ADMIN_1, AttributeMatch.equal("admin", "Chile"), 3d));
+		assertFalse(context.isWithinDistance(EnumGeoRefSourceAuthority.NE_ADMIN_1, AttributeMatch.equal("admin", "Australia"), 3d));
+		assertTrue(GEOUtil.isPointNearCountryPlusEEZ("CHL", context, 3d));
+		assertFalse(GEOUtil.isPointNearCountryPlusEEZ("ARG", context, 3d));
+
+		SpatialContext ocean = new SpatialContext(0d, -140d);
+		assertNull(ocean.getSovereign());
+		assertFalse(ocean.isOnLand());
+		assertTrue(ocean.getContaining(EnumGeoRefSourceAuthority.NE_ADMIN_0, "NAME").isEmpty());
+		assertEquals(GEOUtil.isOnOrNearLand(-140d, 0d, true, 3000d), GEOUtil.isOnOrNearLand(ocean, true, 3000d));
+	}
+
+	@Test
+	public void testSharedBetweenTests() {
+		SpatialContext context = new SpatialContext(-20d, -72d);
+		DQResponse<ComplianceValue> consistent = DwCGeoRefDQ.validationCoordinatesCountrycodeConsistent("-20", "-72", "CL", null, null, context);
+		assertEquals(ResultState.RUN_HAS_RESULT.getLabel(), consistent.getResultState().getLabel());
+		assertEquals(ComplianceValue.COMPLIANT.getLabel(), consistent.getValue().getLabel());
+		DQResponse<AmendmentValue> filled = DwCGeoRefDQ.amendmentCountrycodeFromCoordinates("-20", "-72", null, null, context);
+		assertEquals(ResultState.FILLED_IN.getLabel(), filled.getResultState().getLabel());
+		assertEquals("CL", filled.getValue().getObject().get("dwc:countryCode"));
+		// a context for a different coordinate is not used
+		DQResponse<AmendmentValue> other = DwCGeoRefDQ.amendmentCountrycodeFromCoordinates("0", "-140", null, null, context);
+		assertEquals(ResultState.NOT_AMENDED.getLabel(), other.getResultState().getLabel());
+	}
+
+}
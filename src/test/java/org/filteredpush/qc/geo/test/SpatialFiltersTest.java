@@ -0,0 +1,67 @@
+/**
+ *
+ */
+package org.filteredpush.qc.geo.test;
+
+import static org.junit.Assert.*;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.filteredpush.qc.georeference.util.AttributeMatch;
+import org.filteredpush.qc.georeference.util.GEOUtil;
+import org.filteredpush.qc.georeference.util.SpatialFilters;
+import org.geotools.api.feature.simple.SimpleFeatureType;
+import org.geotools.api.filter.Filter;
+import org.geotools.data.DataUtilities;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.filter.text.ecql.ECQL;
+import org.junit.Test;
+
+/**
+ * Tests of the FilterFactory built filters used in place of parsed ECQL.
+ *
+ * @author mole
+ *
+ */
+public class SpatialFiltersTest {
+
+	private static final Log logger = LogFactory.getLog(SpatialFiltersTest.class);
+
+	@Test
+	public void testEscape() {
+		assertEquals("Cote d'Ivoire", SpatialFilters.escape("Cote d'Ivoire"));
+		assertEquals("100\\% \\_\\\\", SpatialFilters.escape("100% _\\"));
+		assertEquals("", SpatialFilters.escape(null));
+	}
+
+	@Test
+	public void testFiltersMatchEcql() throws Exception {
+		Filter built = SpatialFilters.and(
+				SpatialFilters.equalIgnoreCase(SpatialFilters.property("NAME"), "Chile"),
+				SpatialFilters.containsPoint(-70.5d, -33.5d));
+		Filter parsed = ECQL.toFilter("NAME ILIKE 'Chile' AND CONTAINS(the_geom, POINT(-70.5 -33.5))");
+		assertEquals(ECQL.toCQL(parsed), ECQL.toCQL(built));
+	}
+
+	@Test
+	public void testElementMatch() throws Exception {
+		SimpleFeatureType type = DataUtilities.createType("adm1", "VARNAME_1:String");
+		Filter middle = SpatialFilters.matching(AttributeMatch.element("VARNAME_1", "middle"));
+		assertTrue(middle.evaluate(SimpleFeatureBuilder.build(type, new Object[] { "First|Middle|Last" }, null)));
+		assertTrue(middle.evaluate(SimpleFeatureBuilder.build(type, new Object[] { "Middle|Last" }, null)));
+		assertTrue(middle.evaluate(SimpleFeatureBuilder.build(type, new Object[] { "First|Middle" }, null)));
+		assertTrue(middle.evaluate(SimpleFeatureBuilder.build(type, new Object[] { "MIDDLE" }, null)));
+		assertFalse(middle.evaluate(SimpleFeatureBuilder.build(type, new Object[] { "First|Middling|Last" }, null)));
+		assertFalse(middle.evaluate(SimpleFeatureBuilder.build(type, new Object[] { null }, null)));
+		assertEquals(Filter.EXCLUDE, SpatialFilters.matching(AttributeMatch.element("VARNAME_1", "First|Middle")));
+	}
+
+	@Test
+	public void testQuotedNames() {
+		assertTrue(GEOUtil.isPointNearCountryPlusEEZ("CHL", -20d, -72d, 10d));
+		assertFalse(GEOUtil.isPointNearCountryPlusEEZ("CH'L", -20d, -72d, 10d));
+		assertFalse(GEOUtil.isPointNearCountryPlusEEZ("%", -20d, -72d, 10d));
+		assertFalse(GEOUtil.isPointInPrimary("United States", "Hawai'i", 38.5d, -98d));
+	}
+
+}
@@ -0,0 +1,46 @@
+/**
+ *
+ */
+package org.filteredpush.qc.geo.test;
+
+import static org.junit.Assert.*;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.filteredpush.qc.georeference.EnumGeoRefSourceAuthority;
+import org.filteredpush.qc.georeference.util.IndexedFeatureLayer;
+import org.filteredpush.qc.georeference.util.SpatialLayerRegistry;
+import org.junit.Test;
+
+/**
+ * Tests of the shared registry of spatial layers.
+ *
+ * @author mole
+ *
+ */
+public class SpatialLayerRegistryTest {
+
+	private static final Log logger = LogFactory.getLog(SpatialLayerRegistryTest.class);
+
+	@Test
+	public void testLayers() throws Exception {
+		SpatialLayerRegistry registry = SpatialLayerRegistry.getInstance();
+		assertTrue(registry.isSupported(EnumGeoRefSourceAuthority.NE_ADMIN_0));
+		assertTrue(registry.isSupported(EnumGeoRefSourceAuthority.NE_ADMIN_1));
+		assertTrue(registry.isSupported(EnumGeoRefSourceAuthority.NE_LAND_UNION_ISLANDS));
+		assertTrue(registry.isSupported(EnumGeoRefSourceAuthority.ADM1_UNION_EEZ));
+		assertTrue(registry.isSupported(EnumGeoRefSourceAuthority.GBIF_CENTROIDS));
+		assertFalse(registry.isSupported(EnumGeoRefSourceAuthority.GETTY_TGN));
+
+		IndexedFeatureLayer centroids = registry.getFeatureLayer(EnumGeoRefSourceAuthority.GBIF_CENTROIDS);
+		assertSame(centroids, registry.getFeatureLayer(EnumGeoRefSourceAuthority.GBIF_CENTROIDS));
+		assertEquals(1103, centroids.getFeatures().size());
+		assertSame(registry.getLayer(EnumGeoRefSourceAuthority.GBIF_CENTROIDS).getFeatureSource(), registry.getLayer(EnumGeoRefSourceAuthority.GBIF_CENTROIDS).getFeatureSource());
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testUnsupportedLayer() {
+		SpatialLayerRegistry.getInstance().getLayer(EnumGeoRefSourceAuthority.GETTY_TGN);
+	}
+
+}
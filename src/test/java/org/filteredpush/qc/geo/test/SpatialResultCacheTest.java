@@ -0,0 +1,126 @@
+/**
+ *
+ */
+package org.filteredpush.qc.geo.test;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.filteredpush.qc.georeference.EnumGeoRefSourceAuthority;
+import org.filteredpush.qc.georeference.util.GEOUtil;
+import org.filteredpush.qc.georeference.util.SpatialLayerRegistry;
+import org.filteredpush.qc.georeference.util.SpatialResultCache;
+import org.junit.Test;
+
+/**
+ * Tests of the cache of spatial predicate results.
+ *
+ * @author mole
+ *
+ */
+public class SpatialResultCacheTest {
+
+	private static class Counting implements SpatialResultCache.Computation<String> {
+		private final AtomicInteger calls = new AtomicInteger();
+		private final String value;
+		private Counting(String value) {
+			this.value = value;
+		}
+		@Override
+		public String compute() {
+			calls.incrementAndGet();
+			return value;
+		}
+	}
+
+	private static SpatialResultCache.Key key(double latitude, double longitude, String name) {
+		return new SpatialResultCache.Key(EnumGeoRefSourceAuthority.NE_ADMIN_0, "test", latitude, longitude, 3d, name);
+	}
+
+	@Test
+	public void testKeys() {
+		assertEquals(key(1d, 2d, "a"), key(1d, 2d, "a"));
+		assertEquals(key(1d, 2d, "a").hashCode(), key(1d, 2d, "a").hashCode());
+		assertEquals(key(1d, 2d, null), key(1d, 2d, null));
+		assertFalse(key(1d, 2d, "a").equals(key(2d, 1d, "a")));
+		assertFalse(key(1d, 2d, "a").equals(key(1d, 2d, "b")));
+		// exact bits, 0.0 and -0.0 are different coordinates
+		assertFalse(key(0d, 2d, "a").equals(key(-0d, 2d, "a")));
+		assertFalse(key(1d, 2d, "a").equals(new SpatialResultCache.Key(EnumGeoRefSourceAuthority.NE_ADMIN_1, "test", 1d, 2d, 3d, "a")));
+		assertFalse(key(1d, 2d, "a").equals(new SpatialResultCache.Key(EnumGeoRefSourceAuthority.NE_ADMIN_0, "test", 1d, 2d, 4d, "a")));
+	}
+
+	@Test
+	public void testHitsMissesAndEviction() throws Exception {
+		SpatialResultCache cache = new SpatialResultCache(2);
+		Counting a = new Counting("a");
+		assertEquals("a", cache.get(key(1d, 1d, "a"), a));
+		assertEquals("a", cache.get(key(1d, 1d, "a"), a));
+		assertEquals(1, a.calls.get());
+		assertEquals(1L, cache.getHitCount());
+		assertEquals(1L, cache.getMissCount());
+
+		// null results are cached
+		Counting none = new Counting(null);
+		assertNull(cache.get(key(2d, 2d, "b"), none));
+		assertNull(cache.get(key(2d, 2d, "b"), none));
+		assertEquals(1, none.calls.get());
+
+		// the least recently used result is evicted
+		cache.get(key(1d, 1d, "a"), a);
+		cache.get(key(3d, 3d, "c"), new Counting("c"));
+		assertEquals(2, cache.size());
+		assertEquals(1L, cache.getEvictionCount());
+		cache.get(key(1d, 1d, "a"), a);
+		assertEquals(1, a.calls.get());
+		cache.get(key(2d, 2d, "b"), none);
+		assertEquals(2, none.calls.get());
+
+		cache.clear();
+		assertEquals(0, cache.size());
+		assertEquals(0L, cache.getHitCount());
+	}
+
+	@Test
+	public void testErrorsNotCached() throws Exception {
+		SpatialResultCache cache = new SpatialResultCache(10);
+		try {
+			cache.get(key(1d, 1d, "a"), new SpatialResultCache.Computation<String>() {
+				@Override
+				public String compute() throws IOException {
+					throw new IOException("unreadable");
+				}
+			});
+			fail("Expected exception");
+		} catch (IOException e) {
+			// expected
+		}
+		assertEquals(0, cache.size());
+		assertEquals("a", cache.get(key(1d, 1d, "a"), new Counting("a")));
+	}
+
+	@Test
+	public void testDisabled() throws Exception {
+		SpatialResultCache cache = new SpatialResultCache(0);
+		Counting a = new Counting("a");
+		cache.get(key(1d, 1d, "a"), a);
+		cache.get(key(1d, 1d, "a"), a);
+		assertEquals(2, a.calls.get());
+		assertEquals(0, cache.size());
+	}
+
+	@Test
+	public void testPredicates() {
+		SpatialResultCache cache = SpatialLayerRegistry.getInstance().getResultCache();
+		assertTrue(GEOUtil.isPointInCountry("Chile", -33.4512345d, -70.66d));
+		long hits = cache.getHitCount();
+		assertTrue(GEOUtil.isPointInCountry("Chile", -33.4512345d, -70.66d));
+		assertFalse(GEOUtil.isPointInCountry("Argentina", -33.4512345d, -70.66d));
+		if (cache.getMaxSize() > 0) {
+			assertEquals(hits + 1L, cache.getHitCount());
+		}
+	}
+
+}
@@ -0,0 +1,112 @@
+/**
+ *
+ */
+package org.filteredpush.qc.geo.test;
+
+import static org.junit.Assert.*;
+
+import java.net.URL;
+import java.util.BitSet;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.filteredpush.qc.georeference.EnumGeoRefSourceAuthority;
+import org.filteredpush.qc.georeference.util.GEOUtil;
+import org.filteredpush.qc.georeference.util.IndexedFeatureLayer;
+import org.filteredpush.qc.georeference.util.SpatialLayerRegistry;
+import org.filteredpush.qc.georeference.util.SubdividedPolygonIndex;
+import org.geotools.api.data.FileDataStore;
+import org.geotools.api.data.FileDataStoreFinder;
+import org.geotools.api.data.SimpleFeatureSource;
+import org.geotools.api.filter.Filter;
+import org.geotools.filter.text.ecql.ECQL;
+import org.junit.Test;
+
+/**
+ * Compare the subdivided land index with queries against the land shapefile.
+ *
+ * @author mole
+ *
+ */
+public class SubdividedPolygonIndexTest {
+
+	private static final Log logger = LogFactory.getLog(SubdividedPolygonIndexTest.class);
+
+	@Test
+	public void testLandMatchesShapefile() throws Exception {
+		URL landShapeFile = GEOUtil.class.getResource("/org.filteredpush.kuration.services/ne_10m_land.shp");
+		SubdividedPolygonIndex landIndex = new SubdividedPolygonIndex(IndexedFeatureLayer.load(landShapeFile));
+		assertTrue(landIndex.getPieceCount() > landIndex.getLayer().getFeatures().size());
+
+		FileDataStore store = FileDataStoreFinder.getDataStore(landShapeFile);
+		double distanceD = 50d / 111d;
+		try {
+			SimpleFeatureSource featureSource = store.getFeatureSource();
+			for (double latitude=-85d; latitude<=85d; latitude=latitude+2.5d) {
+				for (double longitude=-180d; longitude<=180d; longitude=longitude+2.5d) {
+					String point = "POINT(" + Double.toString(longitude) + " " + Double.toString(latitude) + ")";
+					Filter filter = ECQL.toFilter("CONTAINS(the_geom, " + point + ")");
+					boolean expected = !featureSource.getFeatures(filter).isEmpty();
+					assertEquals(point, expected, landIndex.contains(longitude, latitude));
+					filter = ECQL.toFilter("DWITHIN(the_geom, " + point + ", "+ distanceD +", kilometers)");
+					expected = !featureSource.getFeatures(filter).isEmpty();
+					assertEquals(point, expected, landIndex.isWithinDistance(longitude, latitude, distanceD));
+				}
+			}
+		} finally {
+			store.dispose();
+		}
+	}
+
+	@Test
+	public void testIsOnLand() {
+		// Kansas
+		assertTrue(GEOUtil.isOnLand(-98d, 38.5d, false));
+		assertFalse(GEOUtil.isOnLand(-98d, 38.5d, true));
+		// mid Pacific
+		assertFalse(GEOUtil.isOnLand(-140d, 0d, false));
+		assertTrue(GEOUtil.isOnLand(-140d, 0d, true));
+	}
+
+	@Test
+	public void testCountryTilesMatchLayer() throws Exception {
+		IndexedFeatureLayer countries = SpatialLayerRegistry.getInstance().getFeatureLayer(EnumGeoRefSourceAuthority.NE_ADMIN_0);
+		SubdividedPolygonIndex untiled = new SubdividedPolygonIndex(countries, SubdividedPolygonIndex.DEFAULT_MAX_VERTICES);
+		SubdividedPolygonIndex tiled = SpatialLayerRegistry.getInstance().getCountryIndex();
+		assertEquals(SubdividedPolygonIndex.DEFAULT_TILE_DEGREES, tiled.getTileDegrees(), 0d);
+		assertEquals(0d, untiled.getTileDegrees(), 0d);
+		assertTrue(tiled.getPieceCount() > untiled.getPieceCount());
+
+		// whole degrees fall on the tile boundaries, exercising the fallback to the parent feature on cut lines
+		for (double latitude=-89d; latitude<=89d; latitude=latitude+1d) {
+			for (double longitude=-180d; longitude<=180d; longitude=longitude+1d) {
+				String point = "POINT(" + Double.toString(longitude) + " " + Double.toString(latitude) + ")";
+				assertEquals(point, countries.findContaining(longitude, latitude), tiled.findAllContaining(longitude, latitude));
+			}
+		}
+	}
+
+	@Test
+	public void testContainsSelection() throws Exception {
+		SubdividedPolygonIndex countries = SpatialLayerRegistry.getInstance().getCountryIndex();
+		BitSet unitedStates = countries.getLayer().getAttributeIndex("NAME").selectEqual("United States of America");
+		assertFalse(unitedStates.isEmpty());
+		// Kansas
+		assertTrue(countries.contains(-98d, 38.5d, unitedStates));
+		assertTrue(countries.contains(-98d, 38.5d, null));
+		// Kansas, on the corner of four tiles
+		assertTrue(countries.contains(-98d, 38d, unitedStates));
+		// Alaska
+		assertTrue(countries.contains(-150d, 64d, unitedStates));
+		// Mexico City
+		assertFalse(countries.contains(-99.13d, 19.43d, unitedStates));
+		assertTrue(countries.contains(-99.13d, 19.43d, null));
+		// Siberia, Antarctic plateau
+		assertEquals(1, countries.findAllContaining(105d, 62d).size());
+		assertEquals(1, countries.findAllContaining(45d, -80d).size());
+		assertTrue(GEOUtil.isPointInCountry("Russia", 62d, 105d));
+		assertFalse(GEOUtil.isPointInCountry("Russia", 38.5d, -98d));
+		assertFalse(GEOUtil.isPointInCountry(null, 38.5d, -98d));
+	}
+
+}